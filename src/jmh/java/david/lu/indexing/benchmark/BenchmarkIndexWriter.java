@@ -0,0 +1,50 @@
+package david.lu.indexing.benchmark;
+
+import david.lu.indexing.utils.IndexUtils;
+import david.lu.indexing.writer.AbstractDelimiterIndexWriter;
+import david.lu.indexing.writer.IndexWriterConfig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Index {@link SyntheticDataset} by id, located by bytes so benchmarks of writer don't measure a JSON parser.
+ */
+public class BenchmarkIndexWriter extends AbstractDelimiterIndexWriter {
+    private final static byte[] ID_FIELD = "{\"id\":\"".getBytes(StandardCharsets.US_ASCII);
+
+    public BenchmarkIndexWriter(int size, String sourceFilePath, String indexFilePath, IndexWriterConfig config) throws IOException {
+        super(size, sourceFilePath, indexFilePath, new char[]{'\n'}, config.toBuilder()
+            .hashFunction(BenchmarkIndexWriter::hash)
+            .fingerprintFunction(BenchmarkIndexWriter::fingerprint)
+            .build());
+    }
+
+    private static int[] hash(byte[] data, int from, int length) throws IOException {
+        int end = idEnd(data, from, length);
+        return new int[] {
+            new String(data, from + ID_FIELD.length, end - from - ID_FIELD.length, StandardCharsets.UTF_8).hashCode()
+        };
+    }
+
+    private static long[] fingerprint(byte[] data, int from, int length) throws IOException {
+        int end = idEnd(data, from, length);
+        return new long[] {
+            IndexUtils.fingerprint(data, from + ID_FIELD.length, end - from - ID_FIELD.length)
+        };
+    }
+
+    /**
+     * @return index of the quote closing id of record
+     */
+    private static int idEnd(byte[] data, int from, int length) throws IOException {
+        int end = from + ID_FIELD.length;
+        while (end < from + length && data[end] != '"') {
+            end++;
+        }
+        if (end >= from + length) {
+            throw new IOException("Record without id at " + from);
+        }
+        return end;
+    }
+}
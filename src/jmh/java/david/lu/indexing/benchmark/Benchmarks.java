@@ -0,0 +1,24 @@
+package david.lu.indexing.benchmark;
+
+import java.io.File;
+
+/**
+ * Settings shared by benchmarks
+ */
+final class Benchmarks {
+    /**
+     * system property of the directory of datasets and index files, a directory in temporary directory of JVM by
+     * default. Point it to the disk under test.
+     */
+    static final String DIRECTORY_PROPERTY = "benchmark.dir";
+
+    private Benchmarks() {
+    }
+
+    static File directory() {
+        return new File(System.getProperty(
+            DIRECTORY_PROPERTY,
+            new File(System.getProperty("java.io.tmpdir"), "file-indexing-benchmark").getPath()
+        ));
+    }
+}
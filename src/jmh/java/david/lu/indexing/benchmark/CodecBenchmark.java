@@ -0,0 +1,119 @@
+package david.lu.indexing.benchmark;
+
+import david.lu.indexing.pojo.IndexFingerprintTunnel;
+import david.lu.indexing.pojo.IndexNode;
+import david.lu.indexing.pojo.IndexTunnel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of {@link IndexNode}, {@link IndexTunnel} and {@link IndexFingerprintTunnel} from {@link #ENTRIES} encoded
+ * entries, by absolute accessors used by reader and by objects built by {@code fromByteBuffer}. Scores are per entry.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    static final int ENTRIES = 1024;
+
+    @Param({"false", "true"})
+    boolean direct;
+
+    private ByteBuffer nodes;
+    private ByteBuffer tunnels;
+    private ByteBuffer fingerprintTunnels;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(SyntheticDataset.DEFAULT_SEED);
+        nodes = allocate(IndexNode.SIZE * ENTRIES);
+        tunnels = allocate(IndexTunnel.SIZE * ENTRIES);
+        fingerprintTunnels = allocate(IndexFingerprintTunnel.SIZE * ENTRIES);
+        for (int i = 0; i < ENTRIES; i++) {
+            IndexNode.put(nodes, (byte) random.nextInt(8), random.nextLong(1L << 40));
+            IndexTunnel.put(tunnels, random.nextInt(), random.nextLong(1L << 40), random.nextInt(1 << 12));
+            IndexFingerprintTunnel.put(fingerprintTunnels, random.nextLong(), random.nextLong(1L << 40), random.nextInt(1 << 12));
+        }
+        nodes.flip();
+        tunnels.flip();
+        fingerprintTunnels.flip();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTRIES)
+    public long nodeAt() {
+        long sum = 0;
+        for (int i = 0; i < ENTRIES; i++) {
+            int position = i * IndexNode.SIZE;
+            sum += IndexNode.collisionAt(nodes, position) + IndexNode.offsetAt(nodes, position);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTRIES)
+    public long nodeFromByteBuffer() {
+        ByteBuffer buffer = nodes.duplicate();
+        long sum = 0;
+        for (int i = 0; i < ENTRIES; i++) {
+            IndexNode node = IndexNode.fromByteBuffer(buffer);
+            sum += node.getCollision() + node.getOffset();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTRIES)
+    public long tunnelAt() {
+        long sum = 0;
+        for (int i = 0; i < ENTRIES; i++) {
+            sum += IndexTunnel.hashAt(tunnels, i) + IndexTunnel.offsetAt(tunnels, i) + IndexTunnel.lengthAt(tunnels, i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTRIES)
+    public long tunnelFromByteBuffer() {
+        long sum = 0;
+        for (int i = 0; i < ENTRIES; i++) {
+            IndexTunnel tunnel = IndexTunnel.fromByteBuffer(tunnels, i);
+            sum += tunnel.getHash() + tunnel.getOffset() + tunnel.getLength();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTRIES)
+    public long fingerprintTunnelAt() {
+        long sum = 0;
+        for (int i = 0; i < ENTRIES; i++) {
+            sum += IndexFingerprintTunnel.fingerprintAt(fingerprintTunnels, i)
+                + IndexFingerprintTunnel.offsetAt(fingerprintTunnels, i)
+                + IndexFingerprintTunnel.lengthAt(fingerprintTunnels, i);
+        }
+        return sum;
+    }
+
+    private ByteBuffer allocate(int size) {
+        return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+}
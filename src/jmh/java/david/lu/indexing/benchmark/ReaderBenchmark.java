@@ -0,0 +1,135 @@
+package david.lu.indexing.benchmark;
+
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.IndexReaderConfig;
+import david.lu.indexing.reader.JsonFieldMatcher;
+import david.lu.indexing.reader.KeyMatcher;
+import david.lu.indexing.writer.IndexWriterConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Lookups of {@link IndexReader} on an index of {@link SyntheticDataset}, hits and misses, one key and batches of
+ * {@link #BATCH} keys like the load test. Depth of collisions is set by sizing the writer for fewer records, so a node
+ * holds about {@code collisionDepth} tunnels on average. Index is rebuilt per trial, dataset is reused.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReaderBenchmark {
+    static final int BATCH = 50;
+    private static final Function<byte[], byte[]> RAW = bytes -> bytes;
+    private static final KeyMatcher ID_MATCHER = new JsonFieldMatcher("id");
+
+    @State(Scope.Benchmark)
+    public static class Index {
+        @Param({"100000"})
+        int records;
+        @Param({"256"})
+        int recordSize;
+        @Param({"1", "8"})
+        int collisionDepth;
+        @Param({"1", "2"})
+        int version;
+        @Param({"false", "true"})
+        boolean mapped;
+
+        IndexReader reader;
+        List<String> ids;
+        List<String> missingIds;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            File directory = Benchmarks.directory();
+            SyntheticDataset dataset = new SyntheticDataset(records, recordSize, SyntheticDataset.DEFAULT_SEED);
+            File source = dataset.generate(directory);
+            File index = new File(directory, String.format("reader-%d-%d-%d.index", records, collisionDepth, version));
+            // capacity of writer is about twice its size
+            new BenchmarkIndexWriter(
+                Math.max(1, records / 2 / collisionDepth),
+                source.getPath(),
+                index.getPath(),
+                IndexWriterConfig.builder().version((byte) version).build()
+            ).process();
+            reader = IndexReader.init(source, index, IndexReaderConfig.builder().mapped(mapped).build());
+            ids = dataset.ids();
+            missingIds = dataset.missingIds(records);
+            if (reader.loadByKey(ids.get(records - 1), RAW, ID_MATCHER) == null) {
+                throw new IllegalStateException("Index misses records of dataset.");
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            reader.cleanup();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+        private SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            random = new SplittableRandom(Thread.currentThread().getId());
+        }
+
+        String next(List<String> keys) {
+            return keys.get(random.nextInt(keys.size()));
+        }
+
+        List<String> batch(List<String> keys) {
+            List<String> batch = new ArrayList<>(BATCH);
+            for (int i = 0; i < BATCH; i++) {
+                batch.add(next(keys));
+            }
+            return batch;
+        }
+    }
+
+    @Benchmark
+    public byte[] loadByKeyHit(Index index, Keys keys) throws IOException {
+        return index.reader.loadByKey(keys.next(index.ids), RAW, ID_MATCHER);
+    }
+
+    @Benchmark
+    public byte[] loadByKeyMiss(Index index, Keys keys) throws IOException {
+        return index.reader.loadByKey(keys.next(index.missingIds), RAW, ID_MATCHER);
+    }
+
+    @Benchmark
+    public boolean containsKeyMiss(Index index, Keys keys) throws IOException {
+        return index.reader.containsKey(keys.next(index.missingIds));
+    }
+
+    @Benchmark
+    public List<byte[]> loadByKeysHit(Index index, Keys keys) throws IOException {
+        return index.reader.loadByKeys(keys.batch(index.ids), RAW, ID_MATCHER);
+    }
+
+    @Benchmark
+    public List<byte[]> loadByKeysMiss(Index index, Keys keys) throws IOException {
+        return index.reader.loadByKeys(keys.batch(index.missingIds), RAW, ID_MATCHER);
+    }
+}
@@ -0,0 +1,63 @@
+package david.lu.indexing.benchmark;
+
+import david.lu.indexing.writer.DelimiterScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delimiter scanning of {@link david.lu.indexing.writer.AbstractDelimiterIndexWriter#nextItem}, a pass over
+ * {@link SyntheticDataset} by {@link DelimiterScanner} without hashing, by chunk size. Source is in page cache after
+ * warmup, so it measures the scan, not the disk.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScannerBenchmark {
+    @Param({"1000000"})
+    int records;
+    @Param({"256"})
+    int recordSize;
+    @Param({"65536", "1048576"})
+    int chunkSize;
+
+    private File source;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        source = new SyntheticDataset(records, recordSize, SyntheticDataset.DEFAULT_SEED).generate(Benchmarks.directory());
+    }
+
+    /**
+     * @return bytes of items
+     */
+    @Benchmark
+    public long scan() throws IOException {
+        long bytes = 0;
+        try (FileChannel channel = new RandomAccessFile(source, "r").getChannel()) {
+            DelimiterScanner scanner = new DelimiterScanner(channel, 0, new char[]{'\n'}, chunkSize);
+            while (scanner.next()) {
+                bytes += scanner.length();
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,131 @@
+package david.lu.indexing.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * <pre>
+ * Reproducible newline delimited JSON source for benchmarks, the same records for the same records, record size and
+ * seed:
+ *  {"id":"...","alias":"...","payload":"..."}
+ * Ids are 22 characters of base64url like the sample, aliases are {@code alias-<n>}, payload pads a record to about
+ * {@code recordSize} bytes. A dataset is generated once per directory and reused by later runs, run {@link #main} to
+ * generate one for the load test.
+ * </pre>
+ */
+public final class SyntheticDataset {
+    public final static long DEFAULT_SEED = 0x5EEDL;
+    private final static char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private final static int ID_LENGTH = 22;
+    // bytes of a record besides payload
+    private final static int FRAME = 40;
+
+    private final int records;
+    private final int recordSize;
+    private final long seed;
+
+    public SyntheticDataset(int records, int recordSize, long seed) {
+        this.records = records;
+        this.recordSize = recordSize;
+        this.seed = seed;
+    }
+
+    /**
+     * @return source file of dataset in {@code directory}, generated if missing
+     */
+    public File generate(File directory) throws IOException {
+        File file = new File(directory, String.format("dataset-%d-%d-%x.data", records, recordSize, seed));
+        if (file.exists()) {
+            return file;
+        }
+        directory.mkdirs();
+        File temp = new File(file.getPath() + ".tmp");
+        SplittableRandom random = new SplittableRandom(seed);
+        char[] payload = new char[Math.max(0, recordSize - FRAME - ID_LENGTH)];
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8), 1 << 16)) {
+            for (int i = 0; i < records; i++) {
+                String id = id(random);
+                for (int j = 0; j < payload.length; j++) {
+                    payload[j] = ALPHABET[random.nextInt(ALPHABET.length)];
+                }
+                writer.write("{\"id\":\"");
+                writer.write(id);
+                writer.write("\",\"alias\":\"alias-");
+                writer.write(Integer.toString(i));
+                writer.write("\",\"payload\":\"");
+                writer.write(payload);
+                writer.write("\"}\n");
+            }
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    /**
+     * @return ids of records, in order of source
+     */
+    public List<String> ids() {
+        SplittableRandom random = new SplittableRandom(seed);
+        char[] payload = new char[Math.max(0, recordSize - FRAME - ID_LENGTH)];
+        List<String> ids = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            ids.add(id(random));
+            // keep random in step with generate
+            for (int j = 0; j < payload.length; j++) {
+                random.nextInt(ALPHABET.length);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return ids never generated, they differ from generated ids by length
+     */
+    public List<String> missingIds(int count) {
+        SplittableRandom random = new SplittableRandom(~seed);
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(id(random) + "~");
+        }
+        return ids;
+    }
+
+    private static String id(SplittableRandom random) {
+        char[] id = new char[ID_LENGTH];
+        for (int i = 0; i < ID_LENGTH; i++) {
+            id[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+        return new String(id);
+    }
+
+    /**
+     * Generate a dataset: {@code <directory> <records> [recordSize] [seed]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SyntheticDataset <directory> <records> [recordSize] [seed]");
+            System.exit(1);
+        }
+        SyntheticDataset dataset = new SyntheticDataset(
+            Integer.parseInt(args[1]),
+            args.length > 2 ? Integer.parseInt(args[2]) : 256,
+            args.length > 3 ? Long.decode(args[3]) : DEFAULT_SEED
+        );
+        System.out.println(dataset.generate(new File(args[0])));
+    }
+}
@@ -0,0 +1,61 @@
+package david.lu.indexing.benchmark;
+
+import david.lu.indexing.writer.IndexWriterConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full build of {@link david.lu.indexing.writer.AbstractIndexWriter#process()} on {@link SyntheticDataset}, by
+ * threads and index version. Each build is measured once, divide records by the score for records per millisecond.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriterBenchmark {
+    @Param({"1000000"})
+    int records;
+    @Param({"256"})
+    int recordSize;
+    @Param({"1", "4"})
+    int threads;
+    @Param({"1", "2"})
+    int version;
+
+    private File source;
+    private File index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File directory = Benchmarks.directory();
+        source = new SyntheticDataset(records, recordSize, SyntheticDataset.DEFAULT_SEED).generate(directory);
+        index = new File(directory, String.format("writer-%d-%d-%d.index", records, threads, version));
+    }
+
+    @Benchmark
+    public long process() throws IOException {
+        new BenchmarkIndexWriter(
+            records,
+            source.getPath(),
+            index.getPath(),
+            IndexWriterConfig.builder().version((byte) version).threads(threads).build()
+        ).process();
+        return index.length();
+    }
+}
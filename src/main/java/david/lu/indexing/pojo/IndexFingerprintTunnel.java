@@ -0,0 +1,78 @@
+package david.lu.indexing.pojo;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <pre>
+ * Tunnel of {@link IndexHeader#FINGERPRINT_VERSION}, same as {@link IndexTunnel} with a 64 bits fingerprint of key
+ * instead of 32 bits hash. The sorting order is based {@link IndexNode} order, then fingerprint.
+ *  fingerprint     8 bytes
+ *  source offset   8 bytes
+ *  source length   4 bytes
+ *  </pre>
+ */
+@Builder
+@Getter
+public class IndexFingerprintTunnel {
+    public final static int SIZE = 20;
+    /**
+     * fingerprint of key, see {@link david.lu.indexing.utils.IndexUtils#fingerprint(String)}
+     */
+    private long fingerprint;
+    /**
+     * offset of source block
+     */
+    private long offset;
+    /**
+     * length of source block
+     */
+    private int length;
+
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer byteBuffer = ByteBuffer.allocate(SIZE);
+        put(byteBuffer, fingerprint, offset, length);
+        byteBuffer.flip();
+        return byteBuffer;
+    }
+
+    /**
+     * Encode a tunnel to {@code target} at its position without building {@link IndexFingerprintTunnel}
+     */
+    public static void put(ByteBuffer target, long fingerprint, long offset, int length) {
+        target.putLong(fingerprint)
+            .putLong(offset)
+            .putInt(length);
+    }
+
+    /**
+     * Decode fingerprint of the {@code index}th tunnel without building {@link IndexFingerprintTunnel}
+     */
+    public static long fingerprintAt(ByteBuffer byteBuffer, int index) {
+        return byteBuffer.getLong(index * SIZE);
+    }
+
+    /**
+     * Decode source offset of the {@code index}th tunnel without building {@link IndexFingerprintTunnel}
+     */
+    public static long offsetAt(ByteBuffer byteBuffer, int index) {
+        return byteBuffer.getLong(index * SIZE + 8);
+    }
+
+    /**
+     * Decode source length of the {@code index}th tunnel without building {@link IndexFingerprintTunnel}
+     */
+    public static int lengthAt(ByteBuffer byteBuffer, int index) {
+        return byteBuffer.getInt(index * SIZE + 16);
+    }
+
+    public static IndexFingerprintTunnel fromByteBuffer(ByteBuffer byteBuffer, int index) {
+        return builder()
+            .fingerprint(fingerprintAt(byteBuffer, index))
+            .offset(offsetAt(byteBuffer, index))
+            .length(lengthAt(byteBuffer, index))
+            .build();
+    }
+}
@@ -8,16 +8,99 @@ import java.nio.ByteBuffer;
 /**
  * <pre>
  * This is the first block of index file. It's a generic description, including following:
+ *  magic                   4 bytes, since version 2
+ *  version                 1 byte, since version 2, low 4 bits are version, high 4 bits are flags
  *  create time             8 bytes
- *  data capacity           4 bytes
  *  data size               8 bytes
+ *  data capacity           4 bytes
  *  max collision           1 byte
+ * Legacy index file (version 1) starts with create time directly, see {@link #MAGIC}, unless it has flags. Header of
+ * {@link #SECTIONED_VERSION} is followed by {@link IndexSection} directory instead of nodes. With {@link #FILTER_FLAG},
+ * header is followed by a {@link david.lu.indexing.utils.BloomFilter} of all key hashes, then nodes. Nodes of
+ * {@link #PERFECT_HASH_VERSION} are pilots of a {@link david.lu.indexing.utils.PerfectHash}, 4 bytes each. With
+ * {@link #INLINE_FLAG}, index file ends with payload region of inlined records, then 8 bytes offset of the region.
+ * With {@link #RECORD_TABLE_FLAG}, tunnels are {@link IndexRecordTunnel}, index file ends with an
+ * {@link IndexRecordTable} shared by all sections, before payload region, and 8 bytes offset of the table before
+ * offset of payload region. With {@link #SEGMENT_FLAG}, index file ends with source start and end offsets of indexed
+ * items, 8 bytes each, after all other offsets.
  *  </pre>
  */
-@Builder
+@Builder(toBuilder = true)
 @Getter
 public class IndexHeader {
+    /**
+     * size of version 1 header
+     */
     public final static int SIZE = 21;
+    /**
+     * size of header since version 2
+     */
+    public final static int VERSIONED_SIZE = SIZE + 5;
+    /**
+     * high bit is set, so it never matches high bytes of create time of a legacy index file
+     */
+    public final static int MAGIC = 0xF11E1DE8;
+    /**
+     * {@link IndexTunnel} with 32 bits hash of key
+     */
+    public final static byte LEGACY_VERSION = 1;
+    /**
+     * {@link IndexFingerprintTunnel} with 64 bits fingerprint of key
+     */
+    public final static byte FINGERPRINT_VERSION = 2;
+    /**
+     * one section per key namespace, each section is an index of {@link #LEGACY_VERSION},
+     * {@link #FINGERPRINT_VERSION} or {@link #PERFECT_HASH_VERSION}, see {@link IndexSection}
+     */
+    public final static byte SECTIONED_VERSION = 3;
+    /**
+     * one {@link IndexFingerprintTunnel} per distinct key, placed by a minimal perfect hash of fingerprints. Capacity
+     * is buckets of pilots, size is tunnels. Keys of an index are distinct, a duplicated key fails the build.
+     */
+    public final static byte PERFECT_HASH_VERSION = 4;
+    /**
+     * flag of filter, in version byte
+     */
+    public final static byte FILTER_FLAG = 0x10;
+    /**
+     * flag of inlined records, in version byte of the first header
+     */
+    public final static byte INLINE_FLAG = 0x20;
+    /**
+     * flag of record table, in version byte of every header
+     */
+    public final static byte RECORD_TABLE_FLAG = 0x40;
+    /**
+     * flag of a segment of source, in version byte of the first header
+     */
+    public final static byte SEGMENT_FLAG = (byte) 0x80;
+    private final static int FLAGS = FILTER_FLAG | INLINE_FLAG | RECORD_TABLE_FLAG | (SEGMENT_FLAG & 0xFF);
+    private final static byte VERSION_MASK = 0x0F;
+    /**
+     * version of index format
+     */
+    @Builder.Default
+    private byte version = LEGACY_VERSION;
+    /**
+     * header is followed by a filter of key hashes
+     */
+    @Builder.Default
+    private boolean filtered = false;
+    /**
+     * index file ends with payload region of records inlined by {@link IndexTunnel#INLINE_BIT}
+     */
+    @Builder.Default
+    private boolean inlined = false;
+    /**
+     * tunnels refer to records of {@link IndexRecordTable} by id
+     */
+    @Builder.Default
+    private boolean recordTable = false;
+    /**
+     * index file ends with source range of indexed items, so it can be followed by a segment of appended items
+     */
+    @Builder.Default
+    private boolean segment = false;
     /**
      * timestamp of index created
      */
@@ -35,9 +118,39 @@ public class IndexHeader {
      */
     private byte maxCollision;
 
+    /**
+     * @return bytes of this header in index file
+     */
+    public int getHeaderSize() {
+        return version == LEGACY_VERSION && !filtered && !inlined && !recordTable && !segment ? SIZE : VERSIONED_SIZE;
+    }
+
+    /**
+     * @return bytes of each tunnel
+     */
+    public int getTunnelSize() {
+        if (recordTable && (version == FINGERPRINT_VERSION || version == PERFECT_HASH_VERSION)) {
+            return IndexRecordTunnel.SIZE;
+        }
+        switch (version) {
+            case LEGACY_VERSION:
+                return IndexTunnel.SIZE;
+            case FINGERPRINT_VERSION:
+            case PERFECT_HASH_VERSION:
+                return IndexFingerprintTunnel.SIZE;
+            default:
+                throw new IllegalStateException(String.format("No tunnel in index version[%d].", version));
+        }
+    }
+
     public ByteBuffer toByteBuffer() {
-        ByteBuffer byteBuffer = ByteBuffer.allocate(SIZE)
-            .putLong(createTime)
+        ByteBuffer byteBuffer = ByteBuffer.allocate(getHeaderSize());
+        if (getHeaderSize() == VERSIONED_SIZE) {
+            byteBuffer.putInt(MAGIC)
+                .put((byte) (version | (filtered ? FILTER_FLAG : 0) | (inlined ? INLINE_FLAG : 0) | (recordTable ? RECORD_TABLE_FLAG : 0)
+                    | (segment ? SEGMENT_FLAG : 0)));
+        }
+        byteBuffer.putLong(createTime)
             .putLong(size)
             .putInt(capacity)
             .put(maxCollision);
@@ -45,8 +158,27 @@ public class IndexHeader {
         return byteBuffer;
     }
 
+    /**
+     * @param byteBuffer at least {@link #VERSIONED_SIZE} bytes, or {@link #SIZE} bytes of a legacy header
+     */
     public static IndexHeader fromByteBuffer(ByteBuffer byteBuffer) {
+        byte version = LEGACY_VERSION;
+        int flags = 0;
+        if (byteBuffer.remaining() >= VERSIONED_SIZE && byteBuffer.getInt(byteBuffer.position()) == MAGIC) {
+            byteBuffer.getInt();
+            byte versionFlags = byteBuffer.get();
+            version = (byte) (versionFlags & VERSION_MASK);
+            flags = versionFlags & ~VERSION_MASK & 0xFF;
+            if (version < LEGACY_VERSION || version > PERFECT_HASH_VERSION || (flags & ~FLAGS) != 0) {
+                throw new IllegalArgumentException(String.format("Unsupported index version[%d].", versionFlags));
+            }
+        }
         return builder()
+            .version(version)
+            .filtered((flags & FILTER_FLAG) != 0)
+            .inlined((flags & INLINE_FLAG) != 0)
+            .recordTable((flags & RECORD_TABLE_FLAG) != 0)
+            .segment((flags & SEGMENT_FLAG & 0xFF) != 0)
             .createTime(byteBuffer.getLong())
             .size(byteBuffer.getLong())
             .capacity(byteBuffer.getInt())
@@ -33,6 +33,28 @@ public class IndexNode {
         return byteBuffer;
     }
 
+    /**
+     * Encode a node to {@code target} at its position without building {@link IndexNode}
+     */
+    public static void put(ByteBuffer target, byte collision, long offset) {
+        target.put(collision)
+            .putLong(offset);
+    }
+
+    /**
+     * Decode collision of node at {@code position} without building {@link IndexNode}
+     */
+    public static int collisionAt(ByteBuffer byteBuffer, int position) {
+        return byteBuffer.get(position) & 0xFF;
+    }
+
+    /**
+     * Decode offset of node at {@code position} without building {@link IndexNode}
+     */
+    public static long offsetAt(ByteBuffer byteBuffer, int position) {
+        return byteBuffer.getLong(position + 1);
+    }
+
     public static IndexNode fromByteBuffer(ByteBuffer byteBuffer) {
         return builder()
             .collision(byteBuffer.get())
@@ -0,0 +1,98 @@
+package david.lu.indexing.pojo;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <pre>
+ * Source offset and length of each record, stored once for all keys of the record, by id of record. Blocks of
+ * {@link #BLOCK_RECORDS} records are delta and varint encoded:
+ *  records         4 bytes, unsigned
+ *  block offsets   8 bytes per block plus the end of table, offset from start of table
+ *  blocks          offset and length of the first record of block, then for each following record, offset from end
+ *                  of previous record (zigzag encoded) and length, all varints
+ * Records of source in order take 2 or 3 bytes each.
+ * </pre>
+ */
+public final class IndexRecordTable {
+    public final static int BLOCK_RECORDS = 64;
+    /**
+     * bytes of a varint of long
+     */
+    final static int MAX_VARLONG = 10;
+    /**
+     * max bytes of an encoded block
+     */
+    public final static int MAX_BLOCK = BLOCK_RECORDS * (MAX_VARLONG + 5);
+    public final static int RECORDS_SIZE = 4;
+
+    private IndexRecordTable() {
+    }
+
+    public static int getBlocks(long records) {
+        return (int) ((records + BLOCK_RECORDS - 1) / BLOCK_RECORDS);
+    }
+
+    /**
+     * @return offset of block offsets from start of table
+     */
+    public static long getBlockOffsetsOffset() {
+        return RECORDS_SIZE;
+    }
+
+    /**
+     * @return offset of blocks from start of table
+     */
+    public static long getFirstBlockOffset(long records) {
+        return RECORDS_SIZE + (getBlocks(records) + 1L) * Long.BYTES;
+    }
+
+    /**
+     * Encode the {@code index}th record of a block to {@code target} at its position
+     * @param previousEnd end of previous record of block, ignored for the first record
+     */
+    public static void put(ByteBuffer target, int index, long offset, int length, long previousEnd) {
+        if (index == 0) {
+            putVarLong(target, offset);
+        } else {
+            long delta = offset - previousEnd;
+            putVarLong(target, (delta << 1) ^ (delta >> 63));
+        }
+        putVarLong(target, length & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Decode the {@code index}th record of a block from position of {@code block}, moving its position, without
+     * allocation.
+     * @param pointer filled with offset and length of record
+     */
+    public static void decode(ByteBuffer block, int index, long[] pointer) {
+        long offset = getVarLong(block);
+        long length = getVarLong(block);
+        for (int i = 1; i <= index; i++) {
+            long delta = getVarLong(block);
+            offset += length + ((delta >>> 1) ^ -(delta & 1));
+            length = getVarLong(block);
+        }
+        pointer[0] = offset;
+        pointer[1] = length;
+    }
+
+    static void putVarLong(ByteBuffer target, long value) {
+        while ((value & ~0x7FL) != 0) {
+            target.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        target.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer source) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = source.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package david.lu.indexing.pojo;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <pre>
+ * Tunnel of index file with {@link IndexHeader#RECORD_TABLE_FLAG}, same as {@link IndexFingerprintTunnel} with id of
+ * record in {@link IndexRecordTable} instead of source offset and length.
+ *  fingerprint     8 bytes
+ *  record id       4 bytes, unsigned
+ *  </pre>
+ */
+@Builder
+@Getter
+public class IndexRecordTunnel {
+    public final static int SIZE = 12;
+    /**
+     * fingerprint of key, see {@link david.lu.indexing.utils.IndexUtils#fingerprint(String)}
+     */
+    private long fingerprint;
+    /**
+     * id of record in {@link IndexRecordTable}
+     */
+    private long recordId;
+
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer byteBuffer = ByteBuffer.allocate(SIZE);
+        put(byteBuffer, fingerprint, recordId);
+        byteBuffer.flip();
+        return byteBuffer;
+    }
+
+    /**
+     * Encode a tunnel to {@code target} at its position without building {@link IndexRecordTunnel}
+     */
+    public static void put(ByteBuffer target, long fingerprint, long recordId) {
+        target.putLong(fingerprint)
+            .putInt((int) recordId);
+    }
+
+    /**
+     * Decode fingerprint of the {@code index}th tunnel without building {@link IndexRecordTunnel}
+     */
+    public static long fingerprintAt(ByteBuffer byteBuffer, int index) {
+        return byteBuffer.getLong(index * SIZE);
+    }
+
+    /**
+     * Decode record id of the {@code index}th tunnel without building {@link IndexRecordTunnel}
+     */
+    public static long recordIdAt(ByteBuffer byteBuffer, int index) {
+        return byteBuffer.getInt(index * SIZE + 8) & 0xFFFFFFFFL;
+    }
+
+    public static IndexRecordTunnel fromByteBuffer(ByteBuffer byteBuffer, int index) {
+        return builder()
+            .fingerprint(fingerprintAt(byteBuffer, index))
+            .recordId(recordIdAt(byteBuffer, index))
+            .build();
+    }
+}
@@ -0,0 +1,68 @@
+package david.lu.indexing.pojo;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <pre>
+ * Entry of section directory in index file of {@link IndexHeader#SECTIONED_VERSION}. Directory follows the header:
+ *  directory length        4 bytes, bytes of all entries
+ *  entries                 one per key namespace, in order of keys hashed by writer
+ * Each entry:
+ *  name length             2 bytes
+ *  name                    UTF-8 bytes
+ *  section offset          8 bytes, offset of section in index file
+ * A section is a complete index of one namespace: {@link IndexHeader}, nodes and tunnels.
+ *  </pre>
+ */
+@Builder
+@Getter
+public class IndexSection {
+    /**
+     * bytes of directory length
+     */
+    public final static int DIRECTORY_LENGTH_SIZE = 4;
+    /**
+     * namespace of keys in section
+     */
+    private String name;
+    /**
+     * offset of section in index file
+     */
+    private long offset;
+
+    /**
+     * @return bytes of this entry in directory
+     */
+    public int getSize() {
+        return 2 + name.getBytes(StandardCharsets.UTF_8).length + 8;
+    }
+
+    public ByteBuffer toByteBuffer() {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Section name[%s] is too long.", name));
+        }
+        ByteBuffer byteBuffer = ByteBuffer.allocate(getSize())
+            .putShort((short) bytes.length)
+            .put(bytes)
+            .putLong(offset);
+        byteBuffer.flip();
+        return byteBuffer;
+    }
+
+    /**
+     * Decode the entry at position of {@code byteBuffer}, position is moved to next entry
+     */
+    public static IndexSection fromByteBuffer(ByteBuffer byteBuffer) {
+        byte[] bytes = new byte[byteBuffer.getShort()];
+        byteBuffer.get(bytes);
+        return builder()
+            .name(new String(bytes, StandardCharsets.UTF_8))
+            .offset(byteBuffer.getLong())
+            .build();
+    }
+}
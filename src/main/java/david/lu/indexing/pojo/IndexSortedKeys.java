@@ -0,0 +1,101 @@
+package david.lu.indexing.pojo;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <pre>
+ * Sorted keys of records, written next to index file with {@link #SUFFIX}, for prefix and range lookups. It's a static
+ * B+tree of two levels, keys of each namespace are split to blocks of about {@link #BLOCK_SIZE} bytes, and the first
+ * key of each block is kept by the directory, which is loaded to heap by reader:
+ *  magic               4 bytes
+ *  blocks              keys of each namespace in unsigned byte order of UTF-8, then by source offset, each
+ *                      front coded to the previous key of block: shared bytes, suffix length, suffix, source offset
+ *                      and source length, varints except suffix. The first key of a block shares nothing.
+ *  directory           namespaces (4 bytes), then for each namespace its name (modified UTF-8), keys (8 bytes),
+ *                      blocks (4 bytes), and for each block its first key (4 bytes length and bytes), offset
+ *                      (8 bytes) and length (4 bytes)
+ *  directory offset    8 bytes
+ * </pre>
+ */
+public final class IndexSortedKeys {
+    public final static String SUFFIX = ".sorted";
+    public final static int MAGIC = 0x5F2D50F7;
+    /**
+     * bytes of a block, a block is closed by the first key reaching it
+     */
+    public final static int BLOCK_SIZE = 4096;
+
+    private IndexSortedKeys() {
+    }
+
+    /**
+     * @return max bytes of an encoded key
+     */
+    public static int getMaxSize(byte[] key) {
+        return key.length + IndexRecordTable.MAX_VARLONG * 4;
+    }
+
+    /**
+     * Front code {@code key} to {@code target} at its position
+     * @param previous previous key of block, null for the first key of block
+     */
+    public static void put(ByteBuffer target, byte[] key, byte[] previous, long offset, int length) {
+        int shared = 0;
+        if (previous != null) {
+            int max = Math.min(key.length, previous.length);
+            while (shared < max && key[shared] == previous[shared]) {
+                shared++;
+            }
+        }
+        IndexRecordTable.putVarLong(target, shared);
+        IndexRecordTable.putVarLong(target, key.length - shared);
+        target.put(key, shared, key.length - shared);
+        IndexRecordTable.putVarLong(target, offset);
+        IndexRecordTable.putVarLong(target, length & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Decode the key at position of {@code block}, moving its position
+     * @param previous previous key of block, null for the first key
+     * @param pointer filled with source offset and length of key
+     * @return the key
+     */
+    public static byte[] decode(ByteBuffer block, byte[] previous, long[] pointer) {
+        int shared = (int) IndexRecordTable.getVarLong(block);
+        int suffix = (int) IndexRecordTable.getVarLong(block);
+        byte[] key = new byte[shared + suffix];
+        if (shared > 0) {
+            System.arraycopy(previous, 0, key, 0, shared);
+        }
+        block.get(key, shared, suffix);
+        pointer[0] = IndexRecordTable.getVarLong(block);
+        pointer[1] = IndexRecordTable.getVarLong(block);
+        return key;
+    }
+
+    /**
+     * Compare keys by unsigned bytes, which is code point order of UTF-8
+     */
+    public static int compare(byte[] a, byte[] b) {
+        int max = Math.min(a.length, b.length);
+        for (int i = 0; i < max; i++) {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    public static boolean startsWith(byte[] key, byte[] prefix) {
+        if (key.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (key[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,23 @@
+package david.lu.indexing.pojo;
+
+/**
+ * <pre>
+ * Source file rewritten to compressed blocks, see {@link david.lu.indexing.writer.IndexWriterConfig#getBlockSourceFile()}.
+ * Tunnels keep offsets of the original source, a reader maps them to blocks by the directory, so index files of the
+ * original source and of the blocks are the same. Blocks end at the end of an item, so a record is decompressed from
+ * one block:
+ *  magic               4 bytes, which is not valid UTF-8, so a text source never starts with it
+ *  blocks              each a raw deflate stream of about {@code blockSize} bytes of source
+ *  directory           blocks (4 bytes), source offset of the first block (8 bytes), then for each block its offset
+ *                      in file (8 bytes), compressed length (4 bytes) and source length (4 bytes)
+ *  directory offset    8 bytes
+ * </pre>
+ */
+public final class IndexSourceBlocks {
+    public final static int MAGIC = 0xB10C5EED;
+    public final static int DEFAULT_BLOCK_SIZE = 1 << 16;
+    public final static int DIRECTORY_ENTRY_SIZE = Long.BYTES + Integer.BYTES * 2;
+
+    private IndexSourceBlocks() {
+    }
+}
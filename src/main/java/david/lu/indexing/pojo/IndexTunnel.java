@@ -17,6 +17,11 @@ import java.nio.ByteBuffer;
 @Getter
 public class IndexTunnel {
     public final static int SIZE = 16;
+    /**
+     * high bit of offset of a record inlined in index file, see {@link IndexHeader#INLINE_FLAG}. Other bits are offset
+     * in payload region. Shared by {@link IndexFingerprintTunnel}.
+     */
+    public final static long INLINE_BIT = 1L << 63;
     /**
      * hash of source block
      */
@@ -39,6 +44,36 @@ public class IndexTunnel {
         return byteBuffer;
     }
 
+    /**
+     * Encode a tunnel to {@code target} at its position without building {@link IndexTunnel}
+     */
+    public static void put(ByteBuffer target, int hash, long offset, int length) {
+        target.putInt(hash)
+            .putLong(offset)
+            .putInt(length);
+    }
+
+    /**
+     * Decode hash of the {@code index}th tunnel without building {@link IndexTunnel}
+     */
+    public static int hashAt(ByteBuffer byteBuffer, int index) {
+        return byteBuffer.getInt(index * SIZE);
+    }
+
+    /**
+     * Decode source offset of the {@code index}th tunnel without building {@link IndexTunnel}
+     */
+    public static long offsetAt(ByteBuffer byteBuffer, int index) {
+        return byteBuffer.getLong(index * SIZE + 4);
+    }
+
+    /**
+     * Decode source length of the {@code index}th tunnel without building {@link IndexTunnel}
+     */
+    public static int lengthAt(ByteBuffer byteBuffer, int index) {
+        return byteBuffer.getInt(index * SIZE + 12);
+    }
+
     public static IndexTunnel fromByteBuffer(ByteBuffer byteBuffer, int index) {
         byteBuffer.position(index * SIZE);
         return builder()
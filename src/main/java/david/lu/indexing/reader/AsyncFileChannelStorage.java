@@ -0,0 +1,93 @@
+package david.lu.indexing.reader;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * {@link IndexStorage} backed by an {@link AsynchronousFileChannel}, so loads don't block any thread while waiting for
+ * disk. Synchronous reads wait for the asynchronous ones.
+ */
+public class AsyncFileChannelStorage implements IndexStorage {
+    private final AsynchronousFileChannel fileChannel;
+    private final long size;
+
+    /**
+     * @param file
+     * @param executor thread pool running completion of reads, default thread pool of JVM if null
+     * @throws IOException
+     */
+    public AsyncFileChannelStorage(File file, ExecutorService executor) throws IOException {
+        fileChannel = executor == null
+            ? AsynchronousFileChannel.open(file.toPath(), READ)
+            : AsynchronousFileChannel.open(file.toPath(), Collections.singleton(READ), executor);
+        size = fileChannel.size();
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public ByteBuffer load(long offset, int size) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(size);
+        read(offset, block);
+        block.flip();
+        return block;
+    }
+
+    @Override
+    public void read(long offset, ByteBuffer target) throws IOException {
+        try {
+            readAsync(offset, target).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> readAsync(long offset, ByteBuffer target) {
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        fileChannel.read(target, offset, future, new CompletionHandler<Integer, CompletableFuture<ByteBuffer>>() {
+            private long position = offset;
+
+            @Override
+            public void completed(Integer read, CompletableFuture<ByteBuffer> future) {
+                if (read < 0) {
+                    future.completeExceptionally(new EOFException(String.format("Unexpected end of file @ %d.", position)));
+                    return;
+                }
+                position += read;
+                if (target.hasRemaining()) {
+                    fileChannel.read(target, position, future, this);
+                } else {
+                    future.complete(target);
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, CompletableFuture<ByteBuffer> future) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+}
@@ -0,0 +1,398 @@
+package david.lu.indexing.reader;
+
+import david.lu.indexing.pojo.IndexTunnel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static java.util.Comparator.comparingLong;
+
+/**
+ * <pre>
+ * Batched lookup of multi keys. Instead of walking node, tunnels and record key by key, each step is done for all keys:
+ *  1. hash all keys, read nodes ordered by node offset, unless nodes are pinned in {@link NodeTable}. Keys rejected
+ *     by filter of index are skipped
+ *  2. read tunnel blocks ordered by tunnel offset
+ *  3. read candidate records ordered by source offset, except records in {@link RecordCache}. Inlined records are
+ *     read from index file the same way. With {@link RecordTable}, blocks of candidate records are read first
+ *  4. verify keys of candidates, by {@link KeyMatcher} on raw bytes or by key of unmarshalled candidates
+ * Blocks closer than {@link #MAX_GAP} are merged to one read. With an {@link Executor}, reads of each step and the
+ * verification are split to {@link #parallelism} tasks. Each step is reported as a {@link ReadPhase} of the batch to
+ * {@link ReaderMetricsListener}, with bytes of merged reads.
+ * </pre>
+ */
+final class BatchLookup {
+    /**
+     * max gap between two blocks to be merged to one read
+     */
+    private final static int MAX_GAP = 4096;
+    /**
+     * max bytes of a merged read
+     */
+    private final static int MAX_BLOCK = 1 << 20;
+    private final IndexStorage sourceStorage;
+    private final IndexStorage indexStorage;
+    private final IndexLayout layout;
+    private final NodeTable nodeTable;
+    private final long payloadBase;
+    private final RecordTable recordTable;
+    private final RecordCache recordCache;
+    private final NegativeCache negativeCache;
+    private final Executor executor;
+    private final int parallelism;
+    private final ReaderMetricsListener listener;
+
+    /**
+     * @param nodeTable null if nodes are not pinned
+     * @param payloadBase offset of inlined records in index file, see {@link IndexTunnel#INLINE_BIT}
+     * @param recordTable null without record table
+     * @param recordCache null without record cache
+     * @param negativeCache null without negative cache
+     * @param listener null if lookups are not measured
+     */
+    BatchLookup(IndexStorage sourceStorage, IndexStorage indexStorage, IndexLayout layout, NodeTable nodeTable, long payloadBase, RecordTable recordTable, RecordCache recordCache, NegativeCache negativeCache, Executor executor, int parallelism, ReaderMetricsListener listener) {
+        this.sourceStorage = sourceStorage;
+        this.indexStorage = indexStorage;
+        this.layout = layout;
+        this.nodeTable = nodeTable;
+        this.payloadBase = payloadBase;
+        this.recordTable = recordTable;
+        this.recordCache = recordCache;
+        this.negativeCache = negativeCache;
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+        this.listener = listener;
+    }
+
+    /**
+     * Candidates are verified by {@code keyMatcher} if it's not null, or by {@code keyExtractor}
+     */
+    @SuppressWarnings("unchecked")
+    <T> List<T> load(List<String> keys, Function<ByteBuffer, T> unmarshaller, KeyMatcher keyMatcher, Function<T, String> keyExtractor) throws IOException {
+        long time = listener == null ? 0 : System.nanoTime();
+        int size = keys.size();
+        long[] hashes = new long[size];
+        // bucket of key i, -1 if key is in negative cache or rejected by filter
+        int[] buckets = new int[size];
+        // read of node of key i without node table
+        int[] nodeReads = new int[size];
+        Reads nodes = new Reads(nodeTable == null ? size : 0);
+        for (int i = 0; i < size; i++) {
+            if (negativeCache != null && negativeCache.contains(keys.get(i))) {
+                buckets[i] = -1;
+                continue;
+            }
+            hashes[i] = layout.hash(keys.get(i));
+            if (!layout.mightContain(hashes[i])) {
+                buckets[i] = -1;
+                if (negativeCache != null) {
+                    negativeCache.add(keys.get(i));
+                }
+                continue;
+            }
+            buckets[i] = layout.bucket(hashes[i]);
+            if (nodeTable == null) {
+                nodeReads[i] = nodes.count;
+                nodes.add(layout.nodeOffset(buckets[i]), layout.getNodeSize());
+            }
+        }
+        nodes.load(indexStorage);
+        if (nodeTable == null) {
+            time = phase(ReadPhase.NODE, time, nodes.bytes);
+        }
+
+        // key index of each tunnel block
+        int[] tunnelKeys = new int[size];
+        Reads tunnels = new Reads(size);
+        int candidates = 0;
+        for (int i = 0; i < size; i++) {
+            if (buckets[i] < 0) {
+                continue;
+            }
+            int collision;
+            long firstTunnel;
+            if (nodeTable != null) {
+                collision = nodeTable.collision(buckets[i]);
+                firstTunnel = layout.firstTunnel(hashes[i], nodeTable.offset(buckets[i]));
+            } else {
+                ByteBuffer node = nodes.slice(nodeReads[i]);
+                collision = layout.collisionAt(node, 0);
+                firstTunnel = layout.firstTunnel(hashes[i], layout.nodeValueAt(node, 0));
+            }
+            if (collision > 0) {
+                candidates += collision;
+                tunnelKeys[tunnels.count] = i;
+                tunnels.add(layout.tunnelOffset(firstTunnel), layout.getTunnelSize() * collision);
+            } else if (negativeCache != null) {
+                negativeCache.add(keys.get(i));
+            }
+        }
+        tunnels.load(indexStorage);
+        time = phase(ReadPhase.TUNNEL, time, tunnels.bytes);
+
+        // candidates of key i are [candidateStarts[i], candidateStarts[i + 1]) in chain order
+        int[] candidateStarts = new int[size + 1];
+        // tunnel offset of each candidate, record id with record table
+        long[] candidateOffsets = new long[candidates];
+        // source offset and length of each candidate
+        long[] recordOffsets = new long[candidates];
+        int[] recordLengths = new int[candidates];
+        // tunnels walked for key i, 0 if its tunnels are not read
+        int[] walked = new int[size];
+        // cached record of each candidate, or null if it's read to records
+        ByteBuffer[] cachedRecords = new ByteBuffer[candidates];
+        // read of record table block of each candidate not in record cache
+        int[] blockReads = new int[candidates];
+        Reads recordBlocks = new Reads(layout.isRecordTable() ? candidates : 0);
+        for (int t = 0, i = 0, c = 0; i <= size; i++) {
+            candidateStarts[i] = c;
+            if (i == size || t >= tunnels.count || tunnelKeys[t] != i) {
+                continue;
+            }
+            ByteBuffer block = tunnels.slice(t++);
+            long hash = hashes[i];
+            int count = block.remaining() / layout.getTunnelSize();
+            walked[i] = count;
+            for (int j = 0; j < count; j++) {
+                long actual = layout.hashAt(block, j);
+                if (actual == hash) {
+                    candidateOffsets[c] = layout.offsetAt(block, j);
+                    recordOffsets[c] = candidateOffsets[c];
+                    recordLengths[c] = layout.lengthAt(block, j);
+                    cachedRecords[c] = recordCache == null ? null : recordCache.get(candidateOffsets[c], null);
+                    if (cachedRecords[c] == null && layout.isRecordTable()) {
+                        blockReads[c] = recordBlocks.count;
+                        recordBlocks.add(recordTable.blockOffset(recordOffsets[c]), recordTable.blockLength(recordOffsets[c]));
+                    }
+                    c++;
+                } else if (actual > hash) {
+                    walked[i] = j + 1;
+                    break;
+                }
+            }
+            if (c == candidateStarts[i] && negativeCache != null) {
+                negativeCache.add(keys.get(i));
+            }
+        }
+        recordBlocks.load(indexStorage);
+
+        // read of each candidate not in record cache, from inlineRecords if offset of candidate is inlined
+        int[] recordReads = new int[candidates];
+        Reads records = new Reads(candidates);
+        Reads inlineRecords = new Reads(payloadBase < 0 ? 0 : candidates);
+        long[] pointer = new long[2];
+        for (int c = 0; c < candidates; c++) {
+            if (cachedRecords[c] != null) {
+                continue;
+            }
+            if (layout.isRecordTable()) {
+                RecordTable.decode(recordBlocks.slice(blockReads[c]), candidateOffsets[c], pointer);
+                recordOffsets[c] = pointer[0];
+                recordLengths[c] = (int) pointer[1];
+            }
+            long offset = recordOffsets[c];
+            if ((offset & IndexTunnel.INLINE_BIT) != 0) {
+                recordReads[c] = inlineRecords.count;
+                inlineRecords.add(payloadBase + (offset & ~IndexTunnel.INLINE_BIT), recordLengths[c]);
+            } else {
+                recordReads[c] = records.count;
+                records.add(offset, recordLengths[c]);
+            }
+        }
+        records.load(sourceStorage);
+        inlineRecords.load(indexStorage);
+        time = phase(ReadPhase.SOURCE, time, recordBlocks.bytes + records.bytes + inlineRecords.bytes);
+
+        Object[] items = new Object[size];
+        run(size, i -> {
+            String key = keys.get(i);
+            int c = candidateStarts[i];
+            for (; c < candidateStarts[i + 1]; c++) {
+                boolean cached = cachedRecords[c] != null;
+                ByteBuffer record;
+                if (cached) {
+                    record = cachedRecords[c];
+                } else if ((recordOffsets[c] & IndexTunnel.INLINE_BIT) != 0) {
+                    record = inlineRecords.slice(recordReads[c]);
+                } else {
+                    record = records.slice(recordReads[c]);
+                }
+                if (keyMatcher != null) {
+                    if (keyMatcher.matches(key, record)) {
+                        cache(candidateOffsets[c], record, cached);
+                        items[i] = unmarshaller.apply(record);
+                        break;
+                    }
+                    continue;
+                }
+                T item = unmarshaller.apply(recordCache == null ? record : record.duplicate());
+                if (key.equals(keyExtractor.apply(item))) {
+                    cache(candidateOffsets[c], record, cached);
+                    items[i] = item;
+                    break;
+                }
+            }
+            if (listener != null && walked[i] > 0) {
+                // candidates before the matched one, or all of them
+                listener.chain(walked[i], c - candidateStarts[i]);
+            }
+        });
+        phase(ReadPhase.UNMARSHAL, time, 0);
+        List<T> result = new ArrayList<>(size);
+        for (Object item : items) {
+            if (item != null) {
+                result.add((T) item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Report a phase started at {@code start} to {@link #listener}
+     * @return end of the phase, 0 if lookups are not measured
+     */
+    private long phase(ReadPhase phase, long start, long bytes) {
+        if (listener == null) {
+            return 0;
+        }
+        long end = System.nanoTime();
+        listener.phase(phase, end - start, bytes);
+        return end;
+    }
+
+    /**
+     * Cache a verified record read from source file
+     */
+    private void cache(long offset, ByteBuffer record, boolean cached) {
+        if (recordCache != null && !cached) {
+            recordCache.put(offset, record);
+        }
+    }
+
+    /**
+     * Run {@code task} for [0, size), split to contiguous ranges over {@link #executor}. Current thread runs the first
+     * range.
+     */
+    private void run(int size, IndexTask task) throws IOException {
+        int tasks = executor == null ? 1 : Math.min(size, parallelism);
+        if (tasks <= 1) {
+            for (int i = 0; i < size; i++) {
+                task.run(i);
+            }
+            return;
+        }
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks - 1];
+        for (int t = 1; t < tasks; t++) {
+            int from = size * t / tasks;
+            int to = size * (t + 1) / tasks;
+            futures[t - 1] = CompletableFuture.runAsync(() -> {
+                try {
+                    for (int i = from; i < to; i++) {
+                        task.run(i);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+        }
+        try {
+            for (int i = 0; i < size / tasks; i++) {
+                task.run(i);
+            }
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface IndexTask {
+        void run(int index) throws IOException;
+    }
+
+    /**
+     * Blocks to read from one file, merged to fewer reads in offset order.
+     */
+    private final class Reads {
+        private final long[] offsets;
+        private final int[] lengths;
+        private final ByteBuffer[] blocks;
+        private final int[] positions;
+        private int count;
+        // bytes of merged reads
+        private long bytes;
+
+        private Reads(int size) {
+            offsets = new long[size];
+            lengths = new int[size];
+            blocks = new ByteBuffer[size];
+            positions = new int[size];
+        }
+
+        private void add(long offset, int length) {
+            offsets[count] = offset;
+            lengths[count] = length;
+            count++;
+        }
+
+        private void load(IndexStorage storage) throws IOException {
+            int[] order = IntStream.range(0, count)
+                .boxed()
+                .sorted(comparingLong(i -> offsets[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+            // merged reads, each one covers order[starts[r]] to order[starts[r + 1] - 1]
+            int[] starts = new int[count + 1];
+            int reads = 0;
+            long end = Long.MIN_VALUE;
+            long start = 0;
+            for (int i = 0; i < count; i++) {
+                long offset = offsets[order[i]];
+                long itemEnd = offset + lengths[order[i]];
+                if (offset > end + MAX_GAP || Math.max(end, itemEnd) - start > MAX_BLOCK) {
+                    starts[reads++] = i;
+                    start = offset;
+                }
+                end = Math.max(end, itemEnd);
+            }
+            starts[reads] = count;
+            int[] readStarts = Arrays.copyOf(starts, reads + 1);
+            long[] readBytes = new long[reads];
+            run(reads, r -> {
+                long blockStart = offsets[order[readStarts[r]]];
+                long blockEnd = blockStart;
+                for (int i = readStarts[r]; i < readStarts[r + 1]; i++) {
+                    blockEnd = Math.max(blockEnd, offsets[order[i]] + lengths[order[i]]);
+                }
+                ByteBuffer block = ByteBuffer.allocate((int) (blockEnd - blockStart));
+                storage.read(blockStart, block);
+                readBytes[r] = block.capacity();
+                for (int i = readStarts[r]; i < readStarts[r + 1]; i++) {
+                    blocks[order[i]] = block;
+                    positions[order[i]] = (int) (offsets[order[i]] - blockStart);
+                }
+            });
+            for (long blockBytes : readBytes) {
+                bytes += blockBytes;
+            }
+        }
+
+        private ByteBuffer slice(int index) {
+            ByteBuffer block = blocks[index].duplicate();
+            block.limit(positions[index] + lengths[index]).position(positions[index]);
+            return block.slice();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package david.lu.indexing.reader;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import david.lu.indexing.pojo.IndexSourceBlocks;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * {@link IndexStorage} of a source rewritten to {@link IndexSourceBlocks}, addressed by offsets of the original
+ * source. Directory of blocks is kept in heap, a load finds its block by binary search and copies from the block
+ * decompressed. Decompressed blocks are cached up to a budget of bytes, see {@link IndexReaderConfig#getBlockCacheSize()}.
+ */
+final class BlockSourceStorage implements IndexStorage {
+    private final static ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+    private final IndexStorage storage;
+    // source offset of each block, then source end
+    private final long[] starts;
+    private final long[] offsets;
+    private final int[] lengths;
+    // null without cache
+    private final Cache<Integer, byte[]> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param storage storage of compressed blocks
+     * @param cacheSize max bytes of decompressed blocks cached, no cache if 0
+     */
+    BlockSourceStorage(IndexStorage storage, long cacheSize) throws IOException {
+        this.storage = storage;
+        long directoryOffset = storage.load(storage.size() - Long.BYTES, Long.BYTES).getLong();
+        ByteBuffer head = storage.load(directoryOffset, Integer.BYTES + Long.BYTES);
+        int blocks = head.getInt();
+        long start = head.getLong();
+        ByteBuffer directory = storage.load(
+            directoryOffset + Integer.BYTES + Long.BYTES,
+            blocks * IndexSourceBlocks.DIRECTORY_ENTRY_SIZE
+        );
+        starts = new long[blocks + 1];
+        offsets = new long[blocks];
+        lengths = new int[blocks];
+        starts[0] = start;
+        for (int i = 0; i < blocks; i++) {
+            offsets[i] = directory.getLong();
+            lengths[i] = directory.getInt();
+            starts[i + 1] = starts[i] + directory.getInt();
+        }
+        cache = cacheSize > 0
+            ? CacheBuilder.newBuilder()
+                .maximumWeight(cacheSize)
+                .<Integer, byte[]>weigher((block, bytes) -> bytes.length)
+                .concurrencyLevel(16)
+                .build()
+            : null;
+    }
+
+    /**
+     * @return whether {@code file} starts with magic of {@link IndexSourceBlocks}
+     */
+    static boolean isBlockSource(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            return input.length() >= Integer.BYTES && input.readInt() == IndexSourceBlocks.MAGIC;
+        }
+    }
+
+    /**
+     * @return source offset after the last block
+     */
+    @Override
+    public long size() {
+        return starts[starts.length - 1];
+    }
+
+    @Override
+    public ByteBuffer load(long offset, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        read(offset, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void read(long offset, ByteBuffer target) throws IOException {
+        int block = block(offset);
+        while (target.hasRemaining()) {
+            if (block >= lengths.length) {
+                throw new EOFException(String.format("Source offset %d is after the last block.", offset));
+            }
+            byte[] data = decompressed(block);
+            int from = (int) (offset - starts[block]);
+            int size = Math.min(target.remaining(), data.length - from);
+            target.put(data, from, size);
+            offset += size;
+            block++;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+        storage.close();
+    }
+
+    /**
+     * @return blocks decompressed from storage, which is cache misses with cache
+     */
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return blocks loaded from cache
+     */
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the block holding {@code offset}
+     */
+    private int block(long offset) throws IOException {
+        if (offset < starts[0] || offset >= starts[starts.length - 1]) {
+            throw new EOFException(String.format("Source offset %d is out of blocks.", offset));
+        }
+        int low = 0;
+        int high = lengths.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private byte[] decompressed(int block) throws IOException {
+        if (cache == null) {
+            return decompress(block);
+        }
+        byte[] data = cache.getIfPresent(block);
+        if (data != null) {
+            hits.increment();
+            return data;
+        }
+        try {
+            return cache.get(block, () -> decompress(block));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Block decompression failed.", e.getCause());
+        }
+    }
+
+    private byte[] decompress(int block) throws IOException {
+        misses.increment();
+        ByteBuffer compressed = storage.load(offsets[block], lengths[block]);
+        // raw inflater may need a dummy byte after the stream
+        byte[] input = new byte[compressed.remaining() + 1];
+        compressed.get(input, 0, input.length - 1);
+        byte[] data = new byte[(int) (starts[block + 1] - starts[block])];
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(input);
+        try {
+            int size = 0;
+            while (size < data.length) {
+                int inflated = inflater.inflate(data, size, data.length - size);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (size < data.length) {
+                throw new IOException(String.format("Block %d is truncated, %d of %d bytes.", block, size, data.length));
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(String.format("Block %d is corrupted.", block), e);
+        }
+        return data;
+    }
+}
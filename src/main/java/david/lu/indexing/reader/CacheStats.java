@@ -0,0 +1,56 @@
+package david.lu.indexing.reader;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Snapshot of record cache, negative cache and block cache of {@link IndexReader}, see
+ * {@link IndexReaderConfig#getRecordCacheSize()}, {@link IndexReaderConfig#getNegativeCacheSize()} and
+ * {@link IndexReaderConfig#getBlockCacheSize()}.
+ */
+@Builder(toBuilder = true)
+@Getter
+@ToString
+public class CacheStats {
+    /**
+     * records loaded from record cache
+     */
+    private long hitCount;
+    /**
+     * records read from source file
+     */
+    private long missCount;
+    /**
+     * records evicted from record cache
+     */
+    private long evictionCount;
+    /**
+     * bytes of cached records
+     */
+    private long size;
+    /**
+     * cached records
+     */
+    private long entries;
+    /**
+     * keys found missing by negative cache
+     */
+    private long negativeHitCount;
+    /**
+     * blocks of compressed source loaded from block cache
+     */
+    private long blockHitCount;
+    /**
+     * blocks of compressed source decompressed
+     */
+    private long blockMissCount;
+
+    /**
+     * @return hits of record cache per lookup of it, 0 without lookup
+     */
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+}
@@ -0,0 +1,63 @@
+package david.lu.indexing.reader;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static david.lu.indexing.utils.IndexUtils.loadByteBuffer;
+import static org.apache.commons.lang3.RandomUtils.nextInt;
+
+/**
+ * {@link IndexStorage} backed by a pool of {@link FileChannel}, a random one is picked for each load.
+ */
+public class FileChannelStorage implements IndexStorage {
+    private final FileChannel[] fileChannels;
+    private final long size;
+
+    public FileChannelStorage(int channels, File file) throws IOException {
+        fileChannels = new FileChannel[channels];
+        for (int i = 0; i < channels; i++) {
+            fileChannels[i] = new RandomAccessFile(file, "r").getChannel();
+        }
+        size = fileChannels[0].size();
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public ByteBuffer load(long offset, int size) throws IOException {
+        return loadByteBuffer(getRandomFileChannel(), offset, size);
+    }
+
+    @Override
+    public void read(long offset, ByteBuffer target) throws IOException {
+        FileChannel fileChannel = getRandomFileChannel();
+        long position = offset;
+        while (target.hasRemaining()) {
+            int read = fileChannel.read(target, position);
+            if (read < 0) {
+                throw new EOFException(String.format("Unexpected end of file @ %d.", position));
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FileChannel fileChannel : fileChannels) {
+            if (fileChannel != null) {
+                fileChannel.close();
+            }
+        }
+    }
+
+    private FileChannel getRandomFileChannel() {
+        return fileChannels[nextInt(0, fileChannels.length)];
+    }
+}
@@ -0,0 +1,155 @@
+package david.lu.indexing.reader;
+
+import david.lu.indexing.pojo.IndexFingerprintTunnel;
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.pojo.IndexNode;
+import david.lu.indexing.pojo.IndexRecordTunnel;
+import david.lu.indexing.pojo.IndexTunnel;
+import david.lu.indexing.utils.BloomFilter;
+import david.lu.indexing.utils.IndexUtils;
+import david.lu.indexing.utils.PerfectHash;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static david.lu.indexing.utils.IndexUtils.fingerprint;
+import static david.lu.indexing.utils.IndexUtils.getIndex;
+import static david.lu.indexing.utils.IndexUtils.getNodeOffset;
+import static david.lu.indexing.utils.IndexUtils.getTunnelOffset;
+
+/**
+ * Offsets and tunnel encoding of an index file by its {@link IndexHeader}. Hash of key is a 32 bits
+ * {@link String#hashCode()} widened to long for {@link IndexHeader#LEGACY_VERSION}, or a 64 bits fingerprint. Nodes
+ * follow the filter of hashes if {@link IndexHeader#isFiltered()}.
+ * <p>
+ * Node of a bucket is decoded to its collision and a value, which is index of first tunnel of the node, or pilot of
+ * the bucket for {@link IndexHeader#PERFECT_HASH_VERSION}. {@link #firstTunnel(long, long)} maps the value and hash of
+ * key to the first tunnel to read.
+ * <p>
+ * Tunnels of {@link IndexHeader#isRecordTable()} hold record id instead of source offset and length, which are
+ * resolved by {@link RecordTable}.
+ */
+@Getter
+final class IndexLayout {
+    private final IndexHeader header;
+    private final int capacity;
+    private final long firstNodeOffset;
+    private final long firstTunnelOffset;
+    private final int tunnelSize;
+    private final int nodeSize;
+    private final boolean fingerprinted;
+    private final boolean perfect;
+    private final boolean recordTable;
+    // tunnels of PERFECT_HASH_VERSION, one per slot
+    private final int slots;
+    private final BloomFilter filter;
+
+    /**
+     * @param base offset of header in index file, not 0 for a section of {@link IndexHeader#SECTIONED_VERSION}
+     * @param filter filter following header, null if not {@link IndexHeader#isFiltered()}
+     */
+    IndexLayout(IndexHeader header, long base, BloomFilter filter) {
+        this.header = header;
+        this.filter = filter;
+        capacity = header.getCapacity();
+        firstNodeOffset = base + header.getHeaderSize() + (filter == null ? 0 : filter.getSize());
+        perfect = header.getVersion() == IndexHeader.PERFECT_HASH_VERSION;
+        nodeSize = perfect ? Integer.BYTES : IndexNode.SIZE;
+        slots = perfect ? (int) header.getSize() : 0;
+        firstTunnelOffset = perfect
+            ? firstNodeOffset + (long) capacity * nodeSize
+            : IndexUtils.getFirstTunnelOffset(firstNodeOffset, capacity);
+        tunnelSize = header.getTunnelSize();
+        fingerprinted = header.getVersion() != IndexHeader.LEGACY_VERSION;
+        recordTable = header.isRecordTable();
+    }
+
+    /**
+     * Layout of index at {@code base}, with its filter loaded to heap
+     */
+    static IndexLayout load(IndexStorage indexStorage, IndexHeader header, long base) throws IOException {
+        if (!header.isFiltered()) {
+            return new IndexLayout(header, base, null);
+        }
+        long filterOffset = base + header.getHeaderSize();
+        int length = indexStorage.load(filterOffset, Integer.BYTES).getInt();
+        BloomFilter filter = BloomFilter.fromByteBuffer(indexStorage.load(filterOffset + Integer.BYTES, length));
+        return new IndexLayout(header, base, filter);
+    }
+
+    /**
+     * @return false if no key of {@code hash} is indexed, always true without filter
+     */
+    boolean mightContain(long hash) {
+        return filter == null || filter.mightContain(hash);
+    }
+
+    long hash(String key) {
+        return fingerprinted ? fingerprint(key) : key.hashCode();
+    }
+
+    int bucket(long hash) {
+        return perfect ? PerfectHash.bucket(hash, capacity) : getIndex((int) hash, capacity);
+    }
+
+    long nodeOffset(int bucket) {
+        return perfect ? firstNodeOffset + (long) bucket * nodeSize : getNodeOffset(firstNodeOffset, bucket);
+    }
+
+    int collisionAt(ByteBuffer nodes, int position) {
+        if (perfect) {
+            return slots > 0 ? 1 : 0;
+        }
+        return IndexNode.collisionAt(nodes, position);
+    }
+
+    long nodeValueAt(ByteBuffer nodes, int position) {
+        return perfect ? nodes.getInt(position) : IndexNode.offsetAt(nodes, position);
+    }
+
+    /**
+     * @param nodeValue decoded by {@link #nodeValueAt(ByteBuffer, int)}
+     * @return index of first tunnel to read for {@code hash}
+     */
+    long firstTunnel(long hash, long nodeValue) {
+        return perfect ? PerfectHash.slot(hash, (int) nodeValue, slots) : nodeValue;
+    }
+
+    long tunnelOffset(long index) {
+        return getTunnelOffset(firstTunnelOffset, index, tunnelSize);
+    }
+
+    long hashAt(ByteBuffer tunnels, int index) {
+        if (recordTable) {
+            return IndexRecordTunnel.fingerprintAt(tunnels, index);
+        }
+        return fingerprinted
+            ? IndexFingerprintTunnel.fingerprintAt(tunnels, index)
+            : IndexTunnel.hashAt(tunnels, index);
+    }
+
+    /**
+     * @return source offset, or record id with record table
+     */
+    long offsetAt(ByteBuffer tunnels, int index) {
+        if (recordTable) {
+            return IndexRecordTunnel.recordIdAt(tunnels, index);
+        }
+        return fingerprinted
+            ? IndexFingerprintTunnel.offsetAt(tunnels, index)
+            : IndexTunnel.offsetAt(tunnels, index);
+    }
+
+    /**
+     * @return source length, or 0 with record table
+     */
+    int lengthAt(ByteBuffer tunnels, int index) {
+        if (recordTable) {
+            return 0;
+        }
+        return fingerprinted
+            ? IndexFingerprintTunnel.lengthAt(tunnels, index)
+            : IndexTunnel.lengthAt(tunnels, index);
+    }
+}
@@ -1,131 +1,1043 @@
 package david.lu.indexing.reader;
 
 import david.lu.indexing.pojo.IndexHeader;
-import david.lu.indexing.pojo.IndexNode;
+import david.lu.indexing.pojo.IndexSection;
+import david.lu.indexing.pojo.IndexSortedKeys;
 import david.lu.indexing.pojo.IndexTunnel;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import static david.lu.indexing.utils.IndexUtils.DEFAULT_CHANNELS;
-import static david.lu.indexing.utils.IndexUtils.getFirstTunnelOffset;
-import static david.lu.indexing.utils.IndexUtils.getIndex;
-import static david.lu.indexing.utils.IndexUtils.getNodeOffset;
-import static david.lu.indexing.utils.IndexUtils.getTunnelOffset;
-import static david.lu.indexing.utils.IndexUtils.loadByteBuffer;
-import static org.apache.commons.lang3.RandomUtils.nextInt;
+import static david.lu.indexing.utils.IndexUtils.formatTime;
+import static java.util.Comparator.comparingLong;
 
+/**
+ * Lookups without namespace go to the only section of index file, or the first namespace of index file of
+ * {@link IndexHeader#SECTIONED_VERSION}. Records inlined by {@link IndexHeader#INLINE_FLAG} are read from index file.
+ * Record ids of tunnels are resolved by {@link RecordTable} with {@link IndexHeader#RECORD_TABLE_FLAG}. Record cache is
+ * keyed by offset of tunnel, which is record id with record table. Source file rewritten to compressed blocks is read
+ * by offsets of the original source through a block cache, see {@link BlockSourceStorage}. Prefix and range lookups need sorted keys written
+ * next to index file, see {@link IndexSortedKeys}. Lookups are measured by {@link IndexReaderConfig#getMetricsListener()}.
+ */
 @Slf4j
 public class IndexReader {
-    private FileChannel[] sourceFileChannels;
-    private FileChannel[] indexFileChannels;
-    private int capacity;
-    private long firstTunnelIndex;
-
-    private IndexReader(int channels, File sourceFilePath, File indexFilePath) throws IOException {
-        sourceFileChannels = new FileChannel[channels];
-        indexFileChannels = new FileChannel[channels];
-        for (int i = 0; i < channels; i ++) {
-            sourceFileChannels[i] = new RandomAccessFile(sourceFilePath, "r").getChannel();
-            indexFileChannels[i] = new RandomAccessFile(indexFilePath, "r").getChannel();
+    /**
+     * bytes of nodes read at a time by {@link #warmUp()}
+     */
+    private final static int WARM_UP_BLOCK = 1 << 20;
+    /**
+     * keys of profile loaded by batch at a time
+     */
+    private final static int REPLAY_BATCH = 4096;
+    /**
+     * accepts any candidate, so replaying a key reads its first record without unmarshalling
+     */
+    final static KeyMatcher ANY_RECORD = (key, record) -> true;
+    private IndexStorage sourceStorage;
+    private IndexStorage indexStorage;
+    private final Map<String, Section> sections = new LinkedHashMap<>();
+    private Section defaultSection;
+    private RecordCache recordCache;
+    // offset of payload region of inlined records, -1 if no record is inlined
+    private long payloadBase = -1;
+    // null without record table
+    private RecordTable recordTable;
+    // hot keys of sections are saved to it, null if not profiled
+    private final File profileFile;
+    private final CompletableFuture<Integer> profileReplay;
+    // source range of a segment, see IndexHeader#isSegment()
+    private long sourceStart = 0;
+    private long sourceEnd = -1;
+    // null without sorted keys
+    private SortedIndex sortedIndex;
+    // null if lookups are not measured
+    private final ReaderMetricsListener listener;
+
+    private IndexReader(File sourceFilePath, File indexFilePath, IndexReaderConfig config) throws IOException {
+        listener = config.getMetricsListener();
+        sourceStorage = openStorage(sourceFilePath, config);
+        if (BlockSourceStorage.isBlockSource(sourceFilePath)) {
+            sourceStorage = new BlockSourceStorage(sourceStorage, config.getBlockCacheSize());
+        }
+        indexStorage = openStorage(indexFilePath, config);
+        if (config.getRecordCacheSize() > 0) {
+            recordCache = new RecordCache(config.getRecordCacheSize());
         }
         IndexHeader indexHeader = IndexHeader.fromByteBuffer(
-            loadByteBuffer(getRandomIndexFileChannel(), 0, IndexHeader.SIZE)
+            indexStorage.load(0, (int) Math.min(indexStorage.size(), IndexHeader.VERSIONED_SIZE))
         );
-        capacity = indexHeader.getCapacity();
-        firstTunnelIndex = getFirstTunnelOffset(capacity);
+        // offsets of record table and payload region, then source range of segment end index file
+        long trailer = indexStorage.size();
+        if (indexHeader.isSegment()) {
+            trailer -= Long.BYTES * 2;
+            ByteBuffer range = indexStorage.load(trailer, Long.BYTES * 2);
+            sourceStart = range.getLong();
+            sourceEnd = range.getLong();
+        }
+        if (indexHeader.isInlined()) {
+            trailer -= Long.BYTES;
+            payloadBase = indexStorage.load(trailer, Long.BYTES).getLong();
+        }
+        if (indexHeader.isRecordTable()) {
+            trailer -= Long.BYTES;
+            recordTable = RecordTable.load(indexStorage, indexStorage.load(trailer, Long.BYTES).getLong());
+            log.debug("Record table: {} bytes in heap.", recordTable.footprint());
+        }
+        if (indexHeader.getVersion() == IndexHeader.SECTIONED_VERSION) {
+            int directoryLength = indexStorage.load(IndexHeader.VERSIONED_SIZE, IndexSection.DIRECTORY_LENGTH_SIZE).getInt();
+            ByteBuffer directory = indexStorage.load(
+                IndexHeader.VERSIONED_SIZE + IndexSection.DIRECTORY_LENGTH_SIZE,
+                directoryLength
+            );
+            while (directory.hasRemaining()) {
+                IndexSection indexSection = IndexSection.fromByteBuffer(directory);
+                IndexHeader sectionHeader = IndexHeader.fromByteBuffer(indexStorage.load(
+                    indexSection.getOffset(),
+                    (int) Math.min(indexStorage.size() - indexSection.getOffset(), IndexHeader.VERSIONED_SIZE)
+                ));
+                sections.put(
+                    indexSection.getName(),
+                    new Section(indexSection.getName(), IndexLayout.load(indexStorage, sectionHeader, indexSection.getOffset()), config)
+                );
+                log.debug(
+                    "Section: {}, offset: {}, total: {}, max stack size: {}.",
+                    indexSection.getName(),
+                    indexSection.getOffset(),
+                    sectionHeader.getSize(),
+                    sectionHeader.getMaxCollision()
+                );
+            }
+            defaultSection = sections.values().iterator().next();
+        } else {
+            defaultSection = new Section("", IndexLayout.load(indexStorage, indexHeader, 0), config);
+        }
         log.debug(
-            "Index time: {}, total: {}, capacity: {}, max stack size: {}.",
+            "Index version: {}, time: {}, total: {}, capacity: {}, max stack size: {}.",
+            indexHeader.getVersion(),
             indexHeader.getCreateTime(),
             indexHeader.getSize(),
-            capacity,
+            indexHeader.getCapacity(),
             indexHeader.getMaxCollision()
         );
+        File sortedFile = new File(indexFilePath.getPath() + IndexSortedKeys.SUFFIX);
+        if (sortedFile.exists()) {
+            sortedIndex = SortedIndex.load(openStorage(sortedFile, config));
+            log.debug("Sorted namespaces: {}.", sortedIndex.getNamespaces());
+        }
+        profileFile = config.getProfileFile();
+        if (profileFile != null) {
+            Map<String, List<String>> profiles = KeyProfile.read(profileFile);
+            for (Map.Entry<String, List<String>> profile : profiles.entrySet()) {
+                Section section = profiledSection(profile.getKey());
+                if (section != null) {
+                    section.profile.seed(profile.getValue());
+                }
+            }
+            if (config.getProfileExecutor() == null) {
+                profileReplay = CompletableFuture.completedFuture(replay(profiles));
+            } else {
+                profileReplay = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return replay(profiles);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, config.getProfileExecutor());
+            }
+        } else {
+            profileReplay = CompletableFuture.completedFuture(0);
+        }
     }
 
     public static IndexReader init(File sourceFile, File indexFile) throws IOException {
-        return init(DEFAULT_CHANNELS, sourceFile, indexFile);
+        return init(sourceFile, indexFile, IndexReaderConfig.defaults());
     }
 
     public static IndexReader init(int channels, File sourceFile, File indexFile) throws IOException {
-        return new IndexReader(channels, sourceFile, indexFile);
+        return init(sourceFile, indexFile, IndexReaderConfig.builder().channels(channels).build());
     }
 
+    public static IndexReader init(File sourceFile, File indexFile, IndexReaderConfig config) throws IOException {
+        return new IndexReader(sourceFile, indexFile, config);
+    }
+
+    /**
+     * Close source file and index file, lookups running meanwhile fail. Swap readers by {@link IndexReaderHandle} to
+     * retire a reader after its lookups complete.
+     */
     public void cleanup() throws IOException {
-        for (FileChannel sourceFileChannel : sourceFileChannels) {
-            if (sourceFileChannel != null) {
-                sourceFileChannel.close();
+        if (profileFile != null) {
+            saveProfile();
+        }
+        if (sourceStorage != null) {
+            sourceStorage.close();
+        }
+        if (indexStorage != null) {
+            indexStorage.close();
+        }
+        if (sortedIndex != null) {
+            sortedIndex.close();
+        }
+    }
+
+    /**
+     * Save hottest keys of all sections to {@link IndexReaderConfig#getProfileFile()}, which is also done by
+     * {@link #cleanup()}. Call it periodically to keep the profile of a reader which may not be cleaned up.
+     */
+    public void saveProfile() throws IOException {
+        if (profileFile == null) {
+            throw new IllegalStateException("Key profile is not enabled.");
+        }
+        Map<String, List<String>> profiles = new LinkedHashMap<>();
+        for (Section section : sections.isEmpty() ? Collections.singletonList(defaultSection) : sections.values()) {
+            profiles.put(section.name, section.profile.hottest());
+        }
+        KeyProfile.write(profileFile, profiles);
+    }
+
+    /**
+     * @return future of profile replay started by init, completed with keys replayed, see
+     * {@link IndexReaderConfig#getProfileFile()}
+     */
+    public CompletableFuture<Integer> getProfileReplay() {
+        return profileReplay;
+    }
+
+    /**
+     * Read nodes of all sections sequentially by large blocks, so they are in page cache or mapped before the first
+     * lookups instead of being faulted in one by one. Pinned nodes are already in heap and skipped.
+     * @return bytes of nodes read
+     */
+    public long warmUp() throws IOException {
+        long warmUpStartTime = System.currentTimeMillis();
+        long bytes = 0;
+        ByteBuffer block = ByteBuffer.allocate(WARM_UP_BLOCK);
+        for (Section section : sections.isEmpty() ? Collections.singletonList(defaultSection) : sections.values()) {
+            if (section.nodeTable != null) {
+                continue;
+            }
+            long end = section.layout.getFirstTunnelOffset();
+            for (long offset = section.layout.getFirstNodeOffset(); offset < end; offset += block.limit()) {
+                block.clear().limit((int) Math.min(WARM_UP_BLOCK, end - offset));
+                indexStorage.read(offset, block);
+                bytes += block.limit();
             }
         }
-        for (FileChannel indexFileChannel : indexFileChannels) {
-            if (indexFileChannel != null) {
-                indexFileChannel.close();
+        log.debug("{} bytes of nodes warmed up in {}.", bytes, formatTime(System.currentTimeMillis() - warmUpStartTime));
+        return bytes;
+    }
+
+    /**
+     * @return stats of record cache and negative cache, zero if they are not enabled by {@link IndexReaderConfig}
+     */
+    public CacheStats getCacheStats() {
+        long negativeHits = 0;
+        for (Section section : sections.isEmpty() ? Collections.singletonList(defaultSection) : sections.values()) {
+            negativeHits += section.negativeCache == null ? 0 : section.negativeCache.getHitCount();
+        }
+        CacheStats.CacheStatsBuilder builder = recordCache == null
+            ? CacheStats.builder()
+            : recordCache.stats().toBuilder();
+        builder.negativeHitCount(negativeHits);
+        if (sourceStorage instanceof BlockSourceStorage) {
+            BlockSourceStorage blockSource = (BlockSourceStorage) sourceStorage;
+            builder.blockHitCount(blockSource.getHitCount()).blockMissCount(blockSource.getMissCount());
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return source offset of the first indexed item, 0 unless index file is a segment of
+     * {@link david.lu.indexing.writer.IncrementalIndexer}
+     */
+    public long getSourceStart() {
+        return sourceStart;
+    }
+
+    /**
+     * @return source offset after the last indexed item, -1 unless index file is a segment
+     */
+    public long getSourceEnd() {
+        return sourceEnd;
+    }
+
+    /**
+     * @return key namespaces of index file, empty if keys share one section
+     */
+    public List<String> getNamespaces() {
+        return new ArrayList<>(sections.keySet());
+    }
+
+    /**
+     * @return namespaces of sorted keys, the first one is searched by prefix and range lookups without namespace,
+     * empty without sorted keys
+     */
+    public List<String> getSortedNamespaces() {
+        return sortedIndex != null ? sortedIndex.getNamespaces() : Collections.emptyList();
+    }
+
+    public <T> Stream<T> loadByPrefix(String prefix, Function<byte[], T> unmarshaller) {
+        return loadByPrefix(null, prefix, unmarshaller);
+    }
+
+    /**
+     * Load records whose keys of sorted {@code namespace} start with {@code prefix}, in order of keys, then of source
+     * offsets. Records are read lazily a block of keys at a time, failures are thrown as {@link UncheckedIOException}.
+     */
+    public <T> Stream<T> loadByPrefix(String namespace, String prefix, Function<byte[], T> unmarshaller) {
+        byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        return scan(namespace, bytes, null, bytes, unmarshaller);
+    }
+
+    public <T> Stream<T> loadByRange(String from, String to, Function<byte[], T> unmarshaller) {
+        return loadByRange(null, from, to, unmarshaller);
+    }
+
+    /**
+     * Load records whose keys of sorted {@code namespace} are within range, like {@link #loadByPrefix(String, String, Function)}
+     * @param from inclusive, null if not bounded
+     * @param to exclusive, null if not bounded
+     */
+    public <T> Stream<T> loadByRange(String namespace, String from, String to, Function<byte[], T> unmarshaller) {
+        return scan(
+            namespace,
+            from != null ? from.getBytes(StandardCharsets.UTF_8) : null,
+            to != null ? to.getBytes(StandardCharsets.UTF_8) : null,
+            null,
+            unmarshaller
+        );
+    }
+
+    /**
+     * Check whether {@code key} is indexed without reading source file. Filter of index file rejects most missing keys
+     * without I/O, others are checked by tunnels of the key. True for a key sharing its hash with an indexed key,
+     * which never happens with 64 bits fingerprints in practice.
+     */
+    public boolean containsKey(String key) throws IOException {
+        return containsKey(null, key);
+    }
+
+    public boolean containsKey(String namespace, String key) throws IOException {
+        Section section = section(namespace);
+        if (listener == null) {
+            return contains(section, key, 0);
+        }
+        listener.lookupStarted();
+        long start = System.nanoTime();
+        boolean found = false;
+        try {
+            found = contains(section, key, start);
+            return found;
+        } finally {
+            listener.lookupFinished(1, found ? 1 : 0, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param time start of lookup if it's measured
+     */
+    private boolean contains(Section section, String key, long time) throws IOException {
+        if (section.profile != null) {
+            section.profile.record(key);
+        }
+        if (section.negativeCache != null && section.negativeCache.contains(key)) {
+            return false;
+        }
+        IndexLayout layout = section.layout;
+        long hash = layout.hash(key);
+        if (layout.mightContain(hash)) {
+            int bucket = layout.bucket(hash);
+            ReadBuffers readBuffers = ReadBuffers.get();
+            int size;
+            long firstTunnel;
+            if (section.nodeTable != null) {
+                size = section.nodeTable.collision(bucket);
+                firstTunnel = layout.firstTunnel(hash, section.nodeTable.offset(bucket));
+            } else {
+                ByteBuffer node = readBuffers.node(layout.getNodeSize());
+                indexStorage.read(layout.nodeOffset(bucket), node);
+                time = phase(ReadPhase.NODE, time, node.limit());
+                size = layout.collisionAt(node, 0);
+                firstTunnel = layout.firstTunnel(hash, layout.nodeValueAt(node, 0));
+            }
+            if (size > 0) {
+                ByteBuffer tunnels = readBuffers.tunnels(layout.getTunnelSize() * size);
+                indexStorage.read(layout.tunnelOffset(firstTunnel), tunnels);
+                phase(ReadPhase.TUNNEL, time, tunnels.limit());
+                int walked = size;
+                for (int i = 0; i < size; i++) {
+                    long actual = layout.hashAt(tunnels, i);
+                    if (actual == hash) {
+                        chain(i + 1, 0);
+                        return true;
+                    } else if (actual > hash) {
+                        walked = i + 1;
+                        break;
+                    }
+                }
+                chain(walked, 0);
             }
         }
-        capacity = 0;
+        if (section.negativeCache != null) {
+            section.negativeCache.add(key);
+        }
+        return false;
     }
 
     public <T> T loadByKey(String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
-        int hash = key.hashCode();
-        int index = getIndex(hash, capacity);
-        FileChannel indexFileChannel = getRandomIndexFileChannel();
-        IndexNode indexNode = IndexNode.fromByteBuffer(
-            loadByteBuffer(
-                indexFileChannel,
-                getNodeOffset(index),
-                IndexNode.SIZE
-            )
-        );
-        int size = indexNode.getCollision();
+        return loadByKey(null, key, unmarshaller, keyExtractor);
+    }
+
+    /**
+     * Load record by key of {@code namespace}, only the section of the namespace is searched.
+     */
+    public <T> T loadByKey(String namespace, String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        return loadByKeyInPlace(namespace, key, record -> unmarshaller.apply(toByteArray(record)), keyExtractor);
+    }
+
+    public <T> List<T> loadByKeys(List<String> keys, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        return loadByKeys(null, keys, unmarshaller, keyExtractor);
+    }
+
+    public <T> List<T> loadByKeys(String namespace, List<String> keys, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        return loadByKeysInPlace(namespace, keys, record -> unmarshaller.apply(toByteArray(record)), keyExtractor);
+    }
+
+    /**
+     * Load record verified by {@code keyMatcher} on raw bytes, only the matched record is copied and unmarshalled.
+     */
+    public <T> T loadByKey(String key, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher) throws IOException {
+        return loadByKey(null, key, unmarshaller, keyMatcher);
+    }
+
+    public <T> T loadByKey(String namespace, String key, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher) throws IOException {
+        return loadByKeyInPlace(namespace, key, record -> unmarshaller.apply(toByteArray(record)), keyMatcher);
+    }
+
+    public <T> List<T> loadByKeys(List<String> keys, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher) throws IOException {
+        return loadByKeys(null, keys, unmarshaller, keyMatcher);
+    }
+
+    public <T> List<T> loadByKeys(String namespace, List<String> keys, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher) throws IOException {
+        return loadByKeysInPlace(namespace, keys, record -> unmarshaller.apply(toByteArray(record)), keyMatcher);
+    }
+
+    /**
+     * Load record without allocating node, tunnel or record buffers. {@code unmarshaller} reads the record from a per
+     * thread buffer, which is reused by next lookup of the same thread, so it must not keep reference to the buffer.
+     */
+    public <T> T loadByKeyInPlace(String key, Function<ByteBuffer, T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        return loadByKeyInPlace(null, key, unmarshaller, keyExtractor);
+    }
+
+    public <T> T loadByKeyInPlace(String namespace, String key, Function<ByteBuffer, T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        return load(section(namespace), key, unmarshaller, null, keyExtractor);
+    }
+
+    /**
+     * Same as {@link #loadByKeyInPlace(String, Function, Function)}, candidates are verified by {@code keyMatcher} before
+     * unmarshalling.
+     */
+    public <T> T loadByKeyInPlace(String key, Function<ByteBuffer, T> unmarshaller, KeyMatcher keyMatcher) throws IOException {
+        return loadByKeyInPlace(null, key, unmarshaller, keyMatcher);
+    }
+
+    public <T> T loadByKeyInPlace(String namespace, String key, Function<ByteBuffer, T> unmarshaller, KeyMatcher keyMatcher) throws IOException {
+        return load(section(namespace), key, unmarshaller, keyMatcher, null);
+    }
+
+    /**
+     * Verify candidates by {@code keyMatcher} if it's not null, or by {@code keyExtractor} of unmarshalled candidates.
+     */
+    private <T> T load(Section section, String key, Function<ByteBuffer, T> unmarshaller, KeyMatcher keyMatcher, Function<T, String> keyExtractor) throws IOException {
+        if (listener == null) {
+            return load(section, key, unmarshaller, keyMatcher, keyExtractor, 0);
+        }
+        listener.lookupStarted();
+        long start = System.nanoTime();
+        T item = null;
+        try {
+            item = load(section, key, unmarshaller, keyMatcher, keyExtractor, start);
+            return item;
+        } finally {
+            listener.lookupFinished(1, item == null ? 0 : 1, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param time start of lookup if it's measured, phases are measured from it one after another
+     */
+    private <T> T load(Section section, String key, Function<ByteBuffer, T> unmarshaller, KeyMatcher keyMatcher, Function<T, String> keyExtractor, long time) throws IOException {
+        if (section.profile != null) {
+            section.profile.record(key);
+        }
+        if (section.negativeCache != null && section.negativeCache.contains(key)) {
+            return null;
+        }
+        IndexLayout layout = section.layout;
+        long hash = layout.hash(key);
+        if (!layout.mightContain(hash)) {
+            if (section.negativeCache != null) {
+                section.negativeCache.add(key);
+            }
+            return null;
+        }
+        int bucket = layout.bucket(hash);
+        ReadBuffers readBuffers = ReadBuffers.get();
+        int size;
+        long firstTunnel;
+        if (section.nodeTable != null) {
+            size = section.nodeTable.collision(bucket);
+            firstTunnel = layout.firstTunnel(hash, section.nodeTable.offset(bucket));
+        } else {
+            ByteBuffer node = readBuffers.node(layout.getNodeSize());
+            indexStorage.read(layout.nodeOffset(bucket), node);
+            time = phase(ReadPhase.NODE, time, node.limit());
+            size = layout.collisionAt(node, 0);
+            firstTunnel = layout.firstTunnel(hash, layout.nodeValueAt(node, 0));
+        }
+        boolean candidate = false;
         if (size > 0) {
-            ByteBuffer indexTunnelsBlock = loadByteBuffer(
-                indexFileChannel,
-                getTunnelOffset(firstTunnelIndex, indexNode.getOffset()),
-                IndexTunnel.SIZE * size
-            );
-            FileChannel sourceFileChannel = getRandomSourceFileChannel();
+            ByteBuffer tunnels = readBuffers.tunnels(layout.getTunnelSize() * size);
+            indexStorage.read(layout.tunnelOffset(firstTunnel), tunnels);
+            time = phase(ReadPhase.TUNNEL, time, tunnels.limit());
+            int walked = size;
+            int falsePositives = 0;
             for (int i = 0; i < size; i++) {
-                IndexTunnel indexTunnel = IndexTunnel.fromByteBuffer(indexTunnelsBlock, i);
-                int actual = indexTunnel.getHash();
+                long actual = layout.hashAt(tunnels, i);
                 if (actual == hash) {
-                    byte[] data = loadByteBuffer(sourceFileChannel, indexTunnel.getOffset(), indexTunnel.getLength()).array();
-                    T item = unmarshaller.apply(data);
-                    if (key.equals(keyExtractor.apply(item))) {
+                    candidate = true;
+                    long offset = layout.offsetAt(tunnels, i);
+                    ByteBuffer record = recordCache == null ? null : recordCache.get(offset, readBuffers);
+                    boolean cached = record != null;
+                    if (!cached) {
+                        long recordOffset = offset;
+                        int length = layout.lengthAt(tunnels, i);
+                        if (layout.isRecordTable()) {
+                            long[] pointer = readBuffers.pointer();
+                            recordTable.read(indexStorage, offset, readBuffers, pointer);
+                            recordOffset = pointer[0];
+                            length = (int) pointer[1];
+                        }
+                        record = readBuffers.record(length);
+                        readRecord(recordOffset, record);
+                        record.flip();
+                        time = phase(ReadPhase.SOURCE, time, length);
+                    }
+                    boolean matched = false;
+                    T item = null;
+                    if (keyMatcher != null) {
+                        if (keyMatcher.matches(key, record)) {
+                            cache(offset, record, cached);
+                            matched = true;
+                            item = unmarshaller.apply(record);
+                        }
+                    } else {
+                        item = unmarshaller.apply(recordCache == null ? record : record.duplicate());
+                        if (key.equals(keyExtractor.apply(item))) {
+                            cache(offset, record, cached);
+                            matched = true;
+                        }
+                    }
+                    time = phase(ReadPhase.UNMARSHAL, time, 0);
+                    if (matched) {
+                        chain(i + 1, falsePositives);
                         return item;
                     }
+                    falsePositives++;
                 } else if (actual > hash) {
+                    walked = i + 1;
                     break;
                 }
             }
+            chain(walked, falsePositives);
+        }
+        if (!candidate && section.negativeCache != null) {
+            section.negativeCache.add(key);
         }
         return null;
     }
 
-    public <T> List<T> loadByKeys(List<String> keys, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
-        List<T> items = new ArrayList<>();
+    /**
+     * Report a phase started at {@code start} to {@link #listener}
+     * @return end of the phase, 0 if lookups are not measured
+     */
+    private long phase(ReadPhase phase, long start, long bytes) {
+        if (listener == null) {
+            return 0;
+        }
+        long end = System.nanoTime();
+        listener.phase(phase, end - start, bytes);
+        return end;
+    }
+
+    private void chain(int tunnels, int falsePositives) {
+        if (listener != null) {
+            listener.chain(tunnels, falsePositives);
+        }
+    }
+
+    /**
+     * Read record of tunnel {@code offset}, from payload region of index file if it's inlined
+     */
+    private void readRecord(long offset, ByteBuffer record) throws IOException {
+        if ((offset & IndexTunnel.INLINE_BIT) != 0) {
+            indexStorage.read(payloadBase + (offset & ~IndexTunnel.INLINE_BIT), record);
+        } else {
+            sourceStorage.read(offset, record);
+        }
+    }
+
+    private CompletableFuture<ByteBuffer> readRecordAsync(long offset, ByteBuffer record) {
+        if ((offset & IndexTunnel.INLINE_BIT) != 0) {
+            return indexStorage.readAsync(payloadBase + (offset & ~IndexTunnel.INLINE_BIT), record);
+        }
+        return sourceStorage.readAsync(offset, record);
+    }
+
+    /**
+     * Read record of a tunnel, resolved by record table first if {@code offset} is a record id
+     */
+    private CompletableFuture<ByteBuffer> readRecordAsync(IndexLayout layout, long offset, int length) {
+        if (layout.isRecordTable()) {
+            return recordTable.readAsync(indexStorage, offset)
+                .thenCompose(pointer -> readRecordAsync(pointer[0], ByteBuffer.allocate((int) pointer[1])));
+        }
+        return readRecordAsync(offset, ByteBuffer.allocate(length));
+    }
+
+    /**
+     * Cache a verified record read from source file
+     */
+    private void cache(long offset, ByteBuffer record, boolean cached) {
+        if (recordCache != null && !cached) {
+            recordCache.put(offset, record);
+        }
+    }
+
+    /**
+     * Load records of all keys by batch: nodes, tunnels and records are read in file offset order, close blocks are
+     * merged to one read, see {@link BatchLookup}. Missing keys are skipped, others keep the order of {@code keys}.
+     * With {@link IndexReaderConfig#getBatchExecutor()}, {@code unmarshaller} and {@code keyExtractor} are called
+     * concurrently.
+     */
+    public <T> List<T> loadByKeysInPlace(List<String> keys, Function<ByteBuffer, T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        return loadByKeysInPlace(null, keys, unmarshaller, keyExtractor);
+    }
+
+    public <T> List<T> loadByKeysInPlace(String namespace, List<String> keys, Function<ByteBuffer, T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        Section section = section(namespace);
+        if (keys.size() == 1) {
+            T item = load(section, keys.get(0), unmarshaller, null, keyExtractor);
+            return item == null ? new ArrayList<>() : new ArrayList<>(Collections.singletonList(item));
+        }
+        record(section, keys);
+        return loadBatch(section, keys, unmarshaller, null, keyExtractor);
+    }
+
+    /**
+     * Same as {@link #loadByKeysInPlace(List, Function, Function)}, candidates are verified by {@code keyMatcher} before
+     * unmarshalling.
+     */
+    public <T> List<T> loadByKeysInPlace(List<String> keys, Function<ByteBuffer, T> unmarshaller, KeyMatcher keyMatcher) throws IOException {
+        return loadByKeysInPlace(null, keys, unmarshaller, keyMatcher);
+    }
+
+    public <T> List<T> loadByKeysInPlace(String namespace, List<String> keys, Function<ByteBuffer, T> unmarshaller, KeyMatcher keyMatcher) throws IOException {
+        Section section = section(namespace);
+        if (keys.size() == 1) {
+            T item = load(section, keys.get(0), unmarshaller, keyMatcher, null);
+            return item == null ? new ArrayList<>() : new ArrayList<>(Collections.singletonList(item));
+        }
+        record(section, keys);
+        return loadBatch(section, keys, unmarshaller, keyMatcher, null);
+    }
+
+    private <T> List<T> loadBatch(Section section, List<String> keys, Function<ByteBuffer, T> unmarshaller, KeyMatcher keyMatcher, Function<T, String> keyExtractor) throws IOException {
+        if (listener == null) {
+            return section.batchLookup.load(keys, unmarshaller, keyMatcher, keyExtractor);
+        }
+        listener.lookupStarted();
+        long start = System.nanoTime();
+        List<T> items = null;
+        try {
+            items = section.batchLookup.load(keys, unmarshaller, keyMatcher, keyExtractor);
+            return items;
+        } finally {
+            listener.lookupFinished(keys.size(), items == null ? 0 : items.size(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Load record without blocking calling thread. Node, tunnels and record reads are chained on
+     * {@link IndexStorage#readAsync(long, ByteBuffer)}, which only doesn't block with
+     * {@link IndexReaderConfig#isAsync()}. {@code unmarshaller} runs in the thread completing the record read.
+     */
+    public <T> CompletableFuture<T> loadByKeyAsync(String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) {
+        return loadByKeyAsync(null, key, unmarshaller, keyExtractor);
+    }
+
+    public <T> CompletableFuture<T> loadByKeyAsync(String namespace, String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) {
+        return loadAsync(section(namespace), key, unmarshaller, null, keyExtractor);
+    }
+
+    /**
+     * Same as {@link #loadByKeyAsync(String, Function, Function)}, candidates are verified by {@code keyMatcher} before
+     * unmarshalling.
+     */
+    public <T> CompletableFuture<T> loadByKeyAsync(String key, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher) {
+        return loadByKeyAsync(null, key, unmarshaller, keyMatcher);
+    }
+
+    public <T> CompletableFuture<T> loadByKeyAsync(String namespace, String key, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher) {
+        return loadAsync(section(namespace), key, unmarshaller, keyMatcher, null);
+    }
+
+    private <T> CompletableFuture<T> loadAsync(Section section, String key, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher, Function<T, String> keyExtractor) {
+        if (listener == null) {
+            return loadNodeAsync(section, key, unmarshaller, keyMatcher, keyExtractor);
+        }
+        listener.lookupStarted();
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = loadNodeAsync(section, key, unmarshaller, keyMatcher, keyExtractor);
+        } catch (RuntimeException e) {
+            listener.lookupFinished(1, 0, System.nanoTime() - start);
+            throw e;
+        }
+        return future.whenComplete((item, e) -> listener.lookupFinished(1, item == null ? 0 : 1, System.nanoTime() - start));
+    }
+
+    private <T> CompletableFuture<T> loadNodeAsync(Section section, String key, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher, Function<T, String> keyExtractor) {
+        if (section.profile != null) {
+            section.profile.record(key);
+        }
+        if (section.negativeCache != null && section.negativeCache.contains(key)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        IndexLayout layout = section.layout;
+        long hash = layout.hash(key);
+        if (!layout.mightContain(hash)) {
+            return loadTunnelsAsync(section, key, hash, 0, 0, unmarshaller, keyMatcher, keyExtractor);
+        }
+        int bucket = layout.bucket(hash);
+        if (section.nodeTable != null) {
+            return loadTunnelsAsync(
+                section,
+                key,
+                hash,
+                section.nodeTable.collision(bucket),
+                layout.firstTunnel(hash, section.nodeTable.offset(bucket)),
+                unmarshaller,
+                keyMatcher,
+                keyExtractor
+            );
+        }
+        return indexStorage.readAsync(layout.nodeOffset(bucket), ByteBuffer.allocate(layout.getNodeSize()))
+            .thenCompose(node -> loadTunnelsAsync(
+                section,
+                key,
+                hash,
+                layout.collisionAt(node, 0),
+                layout.firstTunnel(hash, layout.nodeValueAt(node, 0)),
+                unmarshaller,
+                keyMatcher,
+                keyExtractor
+            ));
+    }
+
+    private <T> CompletableFuture<T> loadTunnelsAsync(Section section, String key, long hash, int size, long firstTunnel, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher, Function<T, String> keyExtractor) {
+        if (size == 0) {
+            if (section.negativeCache != null) {
+                section.negativeCache.add(key);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        return indexStorage.readAsync(
+            section.layout.tunnelOffset(firstTunnel),
+            ByteBuffer.allocate(section.layout.getTunnelSize() * size)
+        ).thenCompose(tunnels -> loadCandidateAsync(section, key, hash, tunnels, 0, unmarshaller, keyMatcher, keyExtractor));
+    }
+
+    /**
+     * Load records of all keys concurrently without blocking calling thread. Missing keys are skipped, others keep the
+     * order of {@code keys}.
+     */
+    public <T> CompletableFuture<List<T>> loadByKeysAsync(List<String> keys, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) {
+        return loadByKeysAsync(null, keys, unmarshaller, keyExtractor);
+    }
+
+    public <T> CompletableFuture<List<T>> loadByKeysAsync(String namespace, List<String> keys, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) {
+        Section section = section(namespace);
+        List<CompletableFuture<T>> futures = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            futures.add(loadAsync(section, key, unmarshaller, null, keyExtractor));
+        }
+        return collect(futures);
+    }
+
+    public <T> CompletableFuture<List<T>> loadByKeysAsync(List<String> keys, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher) {
+        return loadByKeysAsync(null, keys, unmarshaller, keyMatcher);
+    }
+
+    public <T> CompletableFuture<List<T>> loadByKeysAsync(String namespace, List<String> keys, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher) {
+        Section section = section(namespace);
+        List<CompletableFuture<T>> futures = new ArrayList<>(keys.size());
         for (String key : keys) {
-            T item = loadByKey(key, unmarshaller, keyExtractor);
-            if (item != null) {
-                items.add(item);
+            futures.add(loadAsync(section, key, unmarshaller, keyMatcher, null));
+        }
+        return collect(futures);
+    }
+
+    /**
+     * @return found items of {@code futures} in order
+     */
+    private static <T> CompletableFuture<List<T>> collect(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+            .thenApply(ignored -> {
+                List<T> items = new ArrayList<>(futures.size());
+                for (CompletableFuture<T> future : futures) {
+                    T item = future.join();
+                    if (item != null) {
+                        items.add(item);
+                    }
+                }
+                return items;
+            });
+    }
+
+    /**
+     * Load candidates from the {@code from}th tunnel one by one, until a record matches {@code key}.
+     */
+    private <T> CompletableFuture<T> loadCandidateAsync(Section section, String key, long hash, ByteBuffer tunnels, int from, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher, Function<T, String> keyExtractor) {
+        IndexLayout layout = section.layout;
+        int size = tunnels.capacity() / layout.getTunnelSize();
+        for (int i = from; i < size; i++) {
+            long actual = layout.hashAt(tunnels, i);
+            if (actual == hash) {
+                int next = i + 1;
+                long offset = layout.offsetAt(tunnels, i);
+                ByteBuffer cachedRecord = recordCache == null ? null : recordCache.get(offset, null);
+                boolean cached = cachedRecord != null;
+                CompletableFuture<ByteBuffer> read = cached
+                    ? CompletableFuture.completedFuture(cachedRecord)
+                    : readRecordAsync(layout, offset, layout.lengthAt(tunnels, i));
+                return read.thenCompose(record -> {
+                    if (!cached) {
+                        record.flip();
+                    }
+                    if (keyMatcher != null) {
+                        if (keyMatcher.matches(key, record)) {
+                            cache(offset, record, cached);
+                            return CompletableFuture.completedFuture(unmarshaller.apply(toArray(record)));
+                        }
+                    } else {
+                        T item = unmarshaller.apply(toArray(record));
+                        if (key.equals(keyExtractor.apply(item))) {
+                            cache(offset, record, cached);
+                            return CompletableFuture.completedFuture(item);
+                        }
+                    }
+                    return loadCandidateAsync(section, key, hash, tunnels, next, unmarshaller, keyMatcher, keyExtractor);
+                });
+            } else if (actual > hash) {
+                break;
             }
         }
-        return items;
+        if (from == 0 && section.negativeCache != null) {
+            section.negativeCache.add(key);
+        }
+        return CompletableFuture.completedFuture(null);
     }
 
+    /**
+     * Load keys of saved profiles by batch of {@link #REPLAY_BATCH}, so their nodes, tunnels and records are read in
+     * file offset order. Records are read without verifying keys, nor counted by profile.
+     * @return keys replayed
+     */
+    private int replay(Map<String, List<String>> profiles) throws IOException {
+        long replayStartTime = System.currentTimeMillis();
+        int replayed = 0;
+        for (Map.Entry<String, List<String>> profile : profiles.entrySet()) {
+            Section section = profiledSection(profile.getKey());
+            if (section == null) {
+                continue;
+            }
+            List<String> keys = profile.getValue();
+            for (int from = 0; from < keys.size(); from += REPLAY_BATCH) {
+                List<String> batch = keys.subList(from, Math.min(keys.size(), from + REPLAY_BATCH));
+                section.batchLookup.load(batch, ByteBuffer::remaining, ANY_RECORD, null);
+                replayed += batch.size();
+            }
+        }
+        log.debug("{} keys of profile replayed in {}.", replayed, formatTime(System.currentTimeMillis() - replayStartTime));
+        return replayed;
+    }
 
-    private FileChannel getRandomSourceFileChannel() {
-        return sourceFileChannels[nextInt(0, sourceFileChannels.length)];
+    private <T> Stream<T> scan(String namespace, byte[] from, byte[] to, byte[] prefix, Function<byte[], T> unmarshaller) {
+        Iterator<List<SortedIndex.Entry>> blocks = scanKeys(namespace, from, to, prefix);
+        return StreamSupport.stream(((Iterable<List<SortedIndex.Entry>>) () -> blocks).spliterator(), false)
+            .flatMap(entries -> {
+                try {
+                    return loadBlock(entries, unmarshaller).stream();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    /**
+     * Sorted keys within range by block, lazily, see {@link SortedIndex#scan(String, byte[], byte[], byte[])}
+     */
+    Iterator<List<SortedIndex.Entry>> scanKeys(String namespace, byte[] from, byte[] to, byte[] prefix) {
+        if (sortedIndex == null) {
+            throw new IllegalStateException("Index file has no sorted keys.");
+        }
+        return sortedIndex.scan(namespace, from, to, prefix);
     }
 
-    private FileChannel getRandomIndexFileChannel() {
-        return indexFileChannels[nextInt(0, indexFileChannels.length)];
+    /**
+     * Read records of a block of keys in order of source offsets
+     * @return records in order of keys
+     */
+    <T> List<T> loadBlock(List<SortedIndex.Entry> entries, Function<byte[], T> unmarshaller) throws IOException {
+        Integer[] order = new Integer[entries.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, comparingLong(i -> entries.get(i).offset));
+        List<T> records = new ArrayList<>(Collections.nCopies(order.length, null));
+        for (int i : order) {
+            SortedIndex.Entry entry = entries.get(i);
+            records.set(i, unmarshaller.apply(toByteArray(sourceStorage.load(entry.offset, entry.length))));
+        }
+        return records;
     }
 
+    /**
+     * @return hash of {@code key} as indexed by section of {@code namespace}, routes keys to shards
+     */
+    long hash(String namespace, String key) {
+        return section(namespace).layout.hash(key);
+    }
+
+    private void record(Section section, List<String> keys) {
+        if (section.profile != null) {
+            for (String key : keys) {
+                section.profile.record(key);
+            }
+        }
+    }
+
+    /**
+     * @param name name of section in profile, empty for index without sections
+     * @return null if index has no such section
+     */
+    private Section profiledSection(String name) {
+        return sections.isEmpty() ? (name.isEmpty() ? defaultSection : null) : sections.get(name);
+    }
+
+    /**
+     * @param namespace null for default section
+     */
+    private Section section(String namespace) {
+        if (namespace == null) {
+            return defaultSection;
+        }
+        Section section = sections.get(namespace);
+        if (section == null) {
+            throw new IllegalArgumentException(String.format("Unknown namespace[%s].", namespace));
+        }
+        return section;
+    }
+
+    private static IndexStorage openStorage(File file, IndexReaderConfig config) throws IOException {
+        if (config.isMapped()) {
+            return new MappedFileStorage(file, config.getSegmentSize());
+        }
+        if (config.isAsync()) {
+            return new AsyncFileChannelStorage(file, config.getAsyncExecutor());
+        }
+        return new FileChannelStorage(config.getChannels(), file);
+    }
+
+    /**
+     * @return backing array of a heap buffer holding exactly the record, or a copy of the record. Position of
+     * {@code byteBuffer} is not changed.
+     */
+    private static byte[] toArray(ByteBuffer byteBuffer) {
+        if (byteBuffer.hasArray() && byteBuffer.arrayOffset() == 0 && byteBuffer.position() == 0
+            && byteBuffer.remaining() == byteBuffer.array().length) {
+            return byteBuffer.array();
+        }
+        return toByteArray(byteBuffer.duplicate());
+    }
+
+    private static byte[] toByteArray(ByteBuffer byteBuffer) {
+        byte[] data = new byte[byteBuffer.remaining()];
+        byteBuffer.get(data);
+        return data;
+    }
+
+    /**
+     * Index of one key namespace
+     */
+    private final class Section {
+        private final IndexLayout layout;
+        private final NodeTable nodeTable;
+        private final NegativeCache negativeCache;
+        private final BatchLookup batchLookup;
+        // name in profile file, empty for index without sections
+        private final String name;
+        // null if not profiled
+        private final KeyProfile profile;
+
+        private Section(String name, IndexLayout layout, IndexReaderConfig config) throws IOException {
+            this.name = name;
+            this.layout = layout;
+            this.profile = config.getProfileFile() != null ? new KeyProfile(config.getProfileKeys()) : null;
+            if (config.isPinNodes()) {
+                long start = System.currentTimeMillis();
+                nodeTable = NodeTable.load(indexStorage, layout);
+                log.debug(
+                    "Pinned {} nodes, {} bytes, in {}.",
+                    layout.getCapacity(),
+                    nodeTable.footprint(),
+                    formatTime(System.currentTimeMillis() - start)
+                );
+            } else {
+                nodeTable = null;
+            }
+            this.negativeCache = config.getNegativeCacheSize() > 0 ? new NegativeCache(config.getNegativeCacheSize()) : null;
+            this.batchLookup = new BatchLookup(
+                sourceStorage,
+                indexStorage,
+                layout,
+                nodeTable,
+                payloadBase,
+                recordTable,
+                recordCache,
+                negativeCache,
+                config.getBatchExecutor(),
+                config.getBatchParallelism(),
+                listener
+            );
+        }
+    }
 }
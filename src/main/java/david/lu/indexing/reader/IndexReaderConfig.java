@@ -0,0 +1,106 @@
+package david.lu.indexing.reader;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CHANNELS;
+
+/**
+ * Options of {@link IndexReader}.
+ */
+@Builder
+@Getter
+public class IndexReaderConfig {
+    /**
+     * channels opened per file, ignored when {@link #mapped} or {@link #async}
+     */
+    @Builder.Default
+    private int channels = DEFAULT_CHANNELS;
+    /**
+     * map source file and index file to memory instead of reading through channels
+     */
+    @Builder.Default
+    private boolean mapped = false;
+    /**
+     * max bytes of each mapped segment
+     */
+    @Builder.Default
+    private int segmentSize = MappedFileStorage.DEFAULT_SEGMENT_SIZE;
+    /**
+     * read through {@link java.nio.channels.AsynchronousFileChannel}, ignored when {@link #mapped}
+     */
+    @Builder.Default
+    private boolean async = false;
+    /**
+     * thread pool completing asynchronous reads, default thread pool of JVM if null. Unmarshaller of asynchronous loads
+     * runs in it.
+     */
+    @Builder.Default
+    private ExecutorService asyncExecutor = null;
+    /**
+     * executor of batched loads, for example {@link java.util.concurrent.ForkJoinPool#commonPool()}. Batched loads run
+     * in calling thread without it.
+     */
+    @Builder.Default
+    private Executor batchExecutor = null;
+    /**
+     * max tasks of each step of a batched load
+     */
+    @Builder.Default
+    private int batchParallelism = Runtime.getRuntime().availableProcessors();
+    /**
+     * load node tables to heap at init, 8 bytes per node, see {@link NodeTable}
+     */
+    @Builder.Default
+    private boolean pinNodes = false;
+    /**
+     * max bytes of verified records cached off heap, see {@link RecordCache}. No record cache if 0. The whole budget is
+     * allocated as direct memory at init, counted by {@code -XX:MaxDirectMemorySize}. Hits are copied to heap buffers,
+     * so unmarshallers see the same kind of buffers with or without the cache.
+     */
+    @Builder.Default
+    private long recordCacheSize = 0;
+    /**
+     * max missing keys cached per namespace, see {@link NegativeCache}. No negative cache if 0.
+     */
+    @Builder.Default
+    private int negativeCacheSize = 0;
+    /**
+     * profile of hot keys, see {@link KeyProfile}. Keys of a saved profile are loaded by init, so their nodes, tunnels
+     * and records are in page cache before or while serving traffic. Hottest keys are saved to it by
+     * {@link IndexReader#saveProfile()} and {@link IndexReader#cleanup()}. Not profiled if null.
+     */
+    @Builder.Default
+    private File profileFile = null;
+    /**
+     * hottest keys kept per namespace by profile
+     */
+    @Builder.Default
+    private int profileKeys = 4096;
+    /**
+     * executor replaying profile in background, see {@link IndexReader#getProfileReplay()}. Profile is replayed by init
+     * before it returns if null. Reads of replay are split by {@link #batchExecutor} as batched loads.
+     */
+    @Builder.Default
+    private Executor profileExecutor = null;
+    /**
+     * max bytes of decompressed blocks cached, for a source rewritten to compressed blocks, see
+     * {@link david.lu.indexing.pojo.IndexSourceBlocks}. Each load decompresses its block if 0.
+     */
+    @Builder.Default
+    private long blockCacheSize = 64L << 20;
+    /**
+     * receives latencies of lookup phases, bytes read and walked tunnels, for example a {@link ReaderMetrics} published
+     * to JMX. Lookups are not measured if null.
+     */
+    @Builder.Default
+    private ReaderMetricsListener metricsListener = null;
+
+    public static IndexReaderConfig defaults() {
+        return builder().build();
+    }
+}
@@ -0,0 +1,271 @@
+package david.lu.indexing.reader;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import static david.lu.indexing.utils.IndexUtils.formatTime;
+
+/**
+ * <pre>
+ * Swappable {@link IndexReader} of an index rebuilt while serving lookups:
+ *  1. {@link #swap(IndexReader)} warms up the new reader, by {@link IndexReader#warmUp()} and replaying keys recently
+ *     looked up through this handle, before lookups see it
+ *  2. current reader is replaced atomically, lookups started later go to the new reader
+ *  3. each lookup holds a reference to its reader, the old reader is cleaned up by the last lookup releasing it
+ * So no lookup runs on a closed reader, and the new reader is not cold. Lookups go through {@link #apply(ReaderFunction)}
+ * or the shortcuts of this handle, a reader must not be kept beyond its function.
+ * </pre>
+ */
+@Slf4j
+public class IndexReaderHandle {
+    private final AtomicReference<Lease> current;
+    // ring of keys recently looked up, null if not recorded
+    private final AtomicReferenceArray<RecentKey> recentKeys;
+    private final AtomicLong recentCount = new AtomicLong();
+    private final AtomicLong swaps = new AtomicLong();
+
+    /**
+     * Lookup on a reader retained by {@link IndexReaderHandle}
+     */
+    @FunctionalInterface
+    public interface ReaderFunction<T> {
+        T apply(IndexReader reader) throws IOException;
+    }
+
+    /**
+     * @param reader current reader, cleaned up by this handle once swapped out or closed
+     * @param recentKeys keys of last lookups replayed on a new reader before swapping, none if 0
+     */
+    public IndexReaderHandle(IndexReader reader, int recentKeys) {
+        this.current = new AtomicReference<>(new Lease(reader));
+        this.recentKeys = recentKeys > 0 ? new AtomicReferenceArray<>(recentKeys) : null;
+    }
+
+    public static IndexReaderHandle open(File sourceFile, File indexFile, IndexReaderConfig config, int recentKeys) throws IOException {
+        IndexReader reader = IndexReader.init(sourceFile, indexFile, config);
+        reader.warmUp();
+        return new IndexReaderHandle(reader, recentKeys);
+    }
+
+    /**
+     * Run {@code function} on current reader, which is not cleaned up before {@code function} returns
+     */
+    public <T> T apply(ReaderFunction<T> function) throws IOException {
+        Lease lease = acquire();
+        try {
+            return function.apply(lease.reader);
+        } finally {
+            lease.release();
+        }
+    }
+
+    /**
+     * Run {@code function} on current reader, which is not cleaned up before the returned future completes
+     */
+    public <T> CompletableFuture<T> applyAsync(Function<IndexReader, CompletableFuture<T>> function) {
+        Lease lease = acquire();
+        CompletableFuture<T> future;
+        try {
+            future = function.apply(lease.reader);
+        } catch (RuntimeException e) {
+            lease.release();
+            throw e;
+        }
+        return future.whenComplete((result, e) -> lease.release());
+    }
+
+    public <T> T loadByKey(String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        return loadByKey(null, key, unmarshaller, keyExtractor);
+    }
+
+    public <T> T loadByKey(String namespace, String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        record(namespace, key);
+        return apply(reader -> reader.loadByKey(namespace, key, unmarshaller, keyExtractor));
+    }
+
+    public <T> List<T> loadByKeys(List<String> keys, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        return loadByKeys(null, keys, unmarshaller, keyExtractor);
+    }
+
+    public <T> List<T> loadByKeys(String namespace, List<String> keys, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        for (String key : keys) {
+            record(namespace, key);
+        }
+        return apply(reader -> reader.loadByKeys(namespace, keys, unmarshaller, keyExtractor));
+    }
+
+    public <T> CompletableFuture<T> loadByKeyAsync(String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) {
+        return loadByKeyAsync(null, key, unmarshaller, keyExtractor);
+    }
+
+    public <T> CompletableFuture<T> loadByKeyAsync(String namespace, String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) {
+        record(namespace, key);
+        return applyAsync(reader -> reader.loadByKeyAsync(namespace, key, unmarshaller, keyExtractor));
+    }
+
+    public boolean containsKey(String key) throws IOException {
+        return containsKey(null, key);
+    }
+
+    public boolean containsKey(String namespace, String key) throws IOException {
+        record(namespace, key);
+        return apply(reader -> reader.containsKey(namespace, key));
+    }
+
+    /**
+     * Warm up {@code reader}, then replace current reader by it. Current reader is cleaned up once lookups on it
+     * complete.
+     * @param reader new reader, cleaned up by this handle
+     */
+    public synchronized void swap(IndexReader reader) throws IOException {
+        long swapStartTime = System.currentTimeMillis();
+        try {
+            reader.warmUp();
+            replay(reader);
+        } catch (IOException | RuntimeException e) {
+            reader.cleanup();
+            throw e;
+        }
+        Lease next = new Lease(reader);
+        Lease previous = current.getAndUpdate(lease -> lease == null ? null : next);
+        if (previous == null) {
+            reader.cleanup();
+            throw new IllegalStateException("Index reader handle is closed.");
+        }
+        previous.release();
+        log.debug("Index reader swapped in {}, swap {}.", formatTime(System.currentTimeMillis() - swapStartTime), swaps.incrementAndGet());
+    }
+
+    /**
+     * Open, warm up and swap a reader of {@code indexFile} in {@code executor}, lookups go to current reader meanwhile
+     */
+    public CompletableFuture<Void> swapAsync(File sourceFile, File indexFile, IndexReaderConfig config, Executor executor) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                swap(IndexReader.init(sourceFile, indexFile, config));
+                future.complete(null);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return readers swapped in since this handle was created
+     */
+    public long getSwaps() {
+        return swaps.get();
+    }
+
+    /**
+     * Release current reader, it's cleaned up once lookups on it complete. Lookups fail after close.
+     */
+    public void close() {
+        Lease lease = current.getAndSet(null);
+        if (lease != null) {
+            lease.release();
+        }
+    }
+
+    private Lease acquire() {
+        while (true) {
+            Lease lease = current.get();
+            if (lease == null) {
+                throw new IllegalStateException("Index reader handle is closed.");
+            }
+            // fails only if lease is swapped out and drained, current is already the next one
+            if (lease.retain()) {
+                return lease;
+            }
+        }
+    }
+
+    private void record(String namespace, String key) {
+        if (recentKeys != null) {
+            recentKeys.lazySet((int) (recentCount.getAndIncrement() % recentKeys.length()), new RecentKey(namespace, key));
+        }
+    }
+
+    /**
+     * Read node, tunnels and first record of recent keys by {@code reader}. Keys of a namespace missing from
+     * {@code reader} are skipped.
+     */
+    private void replay(IndexReader reader) throws IOException {
+        if (recentKeys == null) {
+            return;
+        }
+        int replayed = 0;
+        for (int i = 0; i < recentKeys.length(); i++) {
+            RecentKey recentKey = recentKeys.get(i);
+            if (recentKey == null) {
+                continue;
+            }
+            if (recentKey.namespace != null && !reader.getNamespaces().contains(recentKey.namespace)) {
+                continue;
+            }
+            reader.loadByKeyInPlace(recentKey.namespace, recentKey.key, ByteBuffer::remaining, IndexReader.ANY_RECORD);
+            replayed++;
+        }
+        log.debug("{} recent keys replayed.", replayed);
+    }
+
+    private static final class RecentKey {
+        private final String namespace;
+        private final String key;
+
+        private RecentKey(String namespace, String key) {
+            this.namespace = namespace;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Reader with its references, one held by handle while current, one per lookup
+     */
+    private static final class Lease {
+        private final IndexReader reader;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Lease(IndexReader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return false if reader is cleaned up
+         */
+        private boolean retain() {
+            while (true) {
+                int count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                try {
+                    reader.cleanup();
+                } catch (IOException e) {
+                    log.error("Cleanup of swapped out index reader failed.", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package david.lu.indexing.reader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Read only random access to a file used by {@link IndexReader}, either source file or index file.
+ */
+public interface IndexStorage extends Closeable {
+    /**
+     * @return total bytes of the underlying file
+     */
+    long size();
+
+    /**
+     * @param offset absolute file offset
+     * @param size bytes to load
+     * @return buffer positioned at 0 with {@code size} bytes remaining
+     * @throws IOException
+     */
+    ByteBuffer load(long offset, int size) throws IOException;
+
+    /**
+     * Fill remaining bytes of {@code target} without allocation.
+     * @param offset absolute file offset
+     * @param target buffer to fill from its position to its limit
+     * @throws IOException
+     */
+    void read(long offset, ByteBuffer target) throws IOException;
+
+    /**
+     * Fill remaining bytes of {@code target} asynchronously. Storage without asynchronous support reads in calling
+     * thread and returns a completed future.
+     * @param offset absolute file offset
+     * @param target buffer to fill from its position to its limit
+     * @return future of {@code target}
+     */
+    default CompletableFuture<ByteBuffer> readAsync(long offset, ByteBuffer target) {
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        try {
+            read(offset, target);
+            future.complete(target);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,203 @@
+package david.lu.indexing.reader;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * <pre>
+ * Match key of a JSON record by a string field of the top level object, without parsing the record. Bytes are scanned
+ * once, skipping strings and nested objects, so a field of the same name in a nested object or a string value equal
+ * to the field name is never taken as the key. The value is decoded while compared with the key, any escaping of JSON
+ * is accepted, such as {@code \/} and unicode escapes, and nothing is allocated.
+ * If the top level object has no such field, or its value is not a string, the record is checked by the fallback
+ * {@code keyExtractor}, or rejected without it.
+ * </pre>
+ */
+public class JsonFieldMatcher implements KeyMatcher {
+    private final byte[] name;
+    // null if records without a string field are rejected
+    private final Function<byte[], String> keyExtractor;
+
+    /**
+     * @param field name of key field, written without escaping
+     */
+    public JsonFieldMatcher(String field) {
+        this(field, null);
+    }
+
+    /**
+     * @param field name of key field, written without escaping
+     * @param keyExtractor key of a record without a string {@code field} at top level, from a copy of its bytes
+     */
+    public JsonFieldMatcher(String field, Function<byte[], String> keyExtractor) {
+        byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+        name = new byte[bytes.length + 2];
+        name[0] = '"';
+        System.arraycopy(bytes, 0, name, 1, bytes.length);
+        name[name.length - 1] = '"';
+        this.keyExtractor = keyExtractor;
+    }
+
+    @Override
+    public boolean matches(String key, ByteBuffer record) {
+        int limit = record.limit();
+        int depth = 0;
+        for (int i = record.position(); i < limit; i++) {
+            byte b = record.get(i);
+            if (b == '"') {
+                int end = stringEnd(record, i + 1, limit);
+                if (depth == 1 && end == i + name.length - 1 && regionMatches(record, i, name)) {
+                    int position = skipWhitespace(record, end + 1, limit);
+                    if (position < limit && record.get(position) == ':') {
+                        position = skipWhitespace(record, position + 1, limit);
+                        if (position < limit && record.get(position) == '"') {
+                            return valueEquals(record, position + 1, limit, key);
+                        }
+                        // not a string value
+                        break;
+                    }
+                }
+                i = end;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            }
+        }
+        return keyExtractor != null && key.equals(keyExtractor.apply(toByteArray(record)));
+    }
+
+    /**
+     * @param from index after opening quote
+     * @return index of closing quote, or {@code limit}
+     */
+    private static int stringEnd(ByteBuffer buffer, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\\') {
+                i++;
+            } else if (b == '"') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Decode escapes and UTF-8 of a JSON string while comparing it with {@code key} by UTF-16 units
+     * @param from index after opening quote
+     */
+    private static boolean valueEquals(ByteBuffer buffer, int from, int limit, String key) {
+        int k = 0;
+        int i = from;
+        while (i < limit) {
+            int b = buffer.get(i) & 0xFF;
+            if (b == '"') {
+                return k == key.length();
+            }
+            if (k >= key.length()) {
+                return false;
+            }
+            int c;
+            if (b == '\\') {
+                if (i + 1 >= limit) {
+                    return false;
+                }
+                i += 2;
+                switch (buffer.get(i - 1)) {
+                    case '"':
+                        c = '"';
+                        break;
+                    case '\\':
+                        c = '\\';
+                        break;
+                    case '/':
+                        c = '/';
+                        break;
+                    case 'b':
+                        c = '\b';
+                        break;
+                    case 'f':
+                        c = '\f';
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'u':
+                        if (i + 4 > limit) {
+                            return false;
+                        }
+                        c = 0;
+                        for (int j = 0; j < 4; j++) {
+                            int digit = Character.digit(buffer.get(i + j), 16);
+                            if (digit < 0) {
+                                return false;
+                            }
+                            c = c << 4 | digit;
+                        }
+                        i += 4;
+                        break;
+                    default:
+                        return false;
+                }
+            } else if (b < 0x80) {
+                c = b;
+                i++;
+            } else {
+                // leading byte of UTF-8 sequence, continuation bytes are not validated
+                int length = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : 2;
+                if (i + length > limit) {
+                    return false;
+                }
+                c = b & (0xFF >> (length + 1));
+                for (int j = 1; j < length; j++) {
+                    c = c << 6 | (buffer.get(i + j) & 0x3F);
+                }
+                i += length;
+                if (c >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    if (key.charAt(k++) != Character.highSurrogate(c) || k >= key.length()) {
+                        return false;
+                    }
+                    c = Character.lowSurrogate(c);
+                }
+            }
+            if (key.charAt(k++) != c) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionMatches(ByteBuffer buffer, int from, byte[] target) {
+        for (int i = 0; i < target.length; i++) {
+            if (buffer.get(from + i) != target[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(ByteBuffer buffer, int from, int limit) {
+        while (from < limit) {
+            byte b = buffer.get(from);
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                break;
+            }
+            from++;
+        }
+        return from;
+    }
+
+    private static byte[] toByteArray(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        return data;
+    }
+}
@@ -0,0 +1,18 @@
+package david.lu.indexing.reader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Verify key of a candidate record on its raw bytes, so only the matched record is unmarshalled. It replaces the
+ * {@code keyExtractor} of {@link IndexReader} lookups, see {@link JsonFieldMatcher}.
+ */
+@FunctionalInterface
+public interface KeyMatcher {
+    /**
+     * @param key looked up key
+     * @param record bytes of candidate record between position and limit, it may be a shared buffer, so it's read by
+     *               absolute index and never kept
+     * @return true if key of record equals {@code key}
+     */
+    boolean matches(String key, ByteBuffer record);
+}
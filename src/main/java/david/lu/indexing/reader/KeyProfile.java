@@ -0,0 +1,156 @@
+package david.lu.indexing.reader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Comparator.comparingLong;
+
+/**
+ * <pre>
+ * Approximate most frequently looked up keys of a section, saved to a profile file so a restarted reader replays them
+ * before or while serving traffic, see {@link IndexReaderConfig#getProfileFile()}. One of {@link #SAMPLE} lookups is
+ * counted. Counted keys are pruned to the hottest {@code maxKeys} when they reach twice as many. Profile file is:
+ *  magic           4 bytes
+ *  sections        4 bytes
+ *  per section     name of section, empty for index without sections, 4 bytes of key count, then keys hottest
+ *                  first, each as modified UTF-8 of {@link DataOutputStream#writeUTF(String)}
+ * </pre>
+ */
+final class KeyProfile {
+    private final static int MAGIC = 0x4B455953;
+    /**
+     * count one of so many lookups
+     */
+    private final static int SAMPLE = 8;
+    /**
+     * max bytes of a key written by {@link DataOutputStream#writeUTF(String)}, longer keys are not saved
+     */
+    private final static int MAX_KEY_BYTES = 0xFFFF;
+    private final int maxKeys;
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    KeyProfile(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Count keys of a loaded profile, hottest first, so they stay ahead of keys counted since
+     */
+    void seed(List<String> keys) {
+        for (int i = 0; i < keys.size() && i < maxKeys; i++) {
+            counts.computeIfAbsent(keys.get(i), key -> new LongAdder()).add(SAMPLE * (long) (keys.size() - i));
+        }
+    }
+
+    void record(String key) {
+        if (ThreadLocalRandom.current().nextInt(SAMPLE) != 0) {
+            return;
+        }
+        LongAdder count = counts.get(key);
+        if (count == null) {
+            if (counts.size() >= maxKeys * 2) {
+                prune();
+            }
+            count = counts.computeIfAbsent(key, k -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * @return at most {@code maxKeys} keys, hottest first
+     */
+    List<String> hottest() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.size());
+        for (Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().sum()));
+        }
+        entries.sort(comparingLong((Map.Entry<String, Long> entry) -> entry.getValue()).reversed());
+        List<String> keys = new ArrayList<>(Math.min(maxKeys, entries.size()));
+        for (int i = 0; i < entries.size() && i < maxKeys; i++) {
+            keys.add(entries.get(i).getKey());
+        }
+        return keys;
+    }
+
+    private synchronized void prune() {
+        if (counts.size() < maxKeys * 2) {
+            return;
+        }
+        List<String> hottest = hottest();
+        counts.keySet().retainAll(new HashSet<>(hottest));
+    }
+
+    /**
+     * @param profiles hottest keys by section name
+     */
+    static void write(File file, Map<String, List<String>> profiles) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(profiles.size());
+            for (Map.Entry<String, List<String>> profile : profiles.entrySet()) {
+                output.writeUTF(profile.getKey());
+                List<String> keys = new ArrayList<>(profile.getValue().size());
+                for (String key : profile.getValue()) {
+                    // modified UTF-8 takes at most 3 bytes per char
+                    if (key.length() <= MAX_KEY_BYTES / 3) {
+                        keys.add(key);
+                    }
+                }
+                output.writeInt(keys.size());
+                for (String key : keys) {
+                    output.writeUTF(key);
+                }
+            }
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return hottest keys by section name, empty if {@code file} doesn't exist
+     */
+    static Map<String, List<String>> read(File file) throws IOException {
+        Map<String, List<String>> profiles = new LinkedHashMap<>();
+        if (!file.exists()) {
+            return profiles;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException(String.format("Invalid key profile[%s].", file));
+            }
+            int sections = input.readInt();
+            for (int i = 0; i < sections; i++) {
+                String name = input.readUTF();
+                int size = input.readInt();
+                List<String> keys = new ArrayList<>(Math.min(size, 1 << 16));
+                for (int j = 0; j < size; j++) {
+                    keys.add(input.readUTF());
+                }
+                profiles.put(name, keys);
+            }
+        }
+        return profiles;
+    }
+}
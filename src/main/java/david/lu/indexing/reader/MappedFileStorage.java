@@ -0,0 +1,113 @@
+package david.lu.indexing.reader;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+/**
+ * <pre>
+ * {@link IndexStorage} backed by read only {@link MappedByteBuffer} segments. A single mapping is limited to 2GB, so
+ * file is split into segments of {@link #segmentSize} bytes. Block within one segment is a slice of mapped memory, block
+ * across segments boundary is copied.
+ * </pre>
+ */
+@Slf4j
+public class MappedFileStorage implements IndexStorage {
+    public final static int DEFAULT_SEGMENT_SIZE = 1 << 30;
+    private final MappedByteBuffer[] segments;
+    /**
+     * per thread views of segments, so reads don't share position and limit
+     */
+    private final ThreadLocal<ByteBuffer[]> views;
+    private final int segmentSize;
+    private final long size;
+
+    public MappedFileStorage(File file) throws IOException {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public MappedFileStorage(File file, int segmentSize) throws IOException {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException(String.format("Segment size[%d] should be positive.", segmentSize));
+        }
+        this.segmentSize = segmentSize;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel fileChannel = randomAccessFile.getChannel()) {
+            size = fileChannel.size();
+            int count = (int) ((size + segmentSize - 1) / segmentSize);
+            segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long position = (long) i * segmentSize;
+                segments[i] = fileChannel.map(READ_ONLY, position, Math.min(segmentSize, size - position));
+            }
+        }
+        views = ThreadLocal.withInitial(this::newViews);
+        log.debug("{} mapped in {} segments, size: {}.", file, segments.length, size);
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public ByteBuffer load(long offset, int size) throws IOException {
+        checkRange(offset, size);
+        int index = (int) (offset / segmentSize);
+        int position = (int) (offset % segmentSize);
+        if (position + size <= segmentSize) {
+            ByteBuffer block = segments[index].duplicate();
+            block.position(position).limit(position + size);
+            return block.slice();
+        }
+        ByteBuffer block = ByteBuffer.allocate(size);
+        while (block.hasRemaining()) {
+            ByteBuffer segment = segments[index++].duplicate();
+            segment.position(position).limit(Math.min(segment.capacity(), position + block.remaining()));
+            block.put(segment);
+            position = 0;
+        }
+        block.flip();
+        return block;
+    }
+
+    @Override
+    public void read(long offset, ByteBuffer target) throws IOException {
+        checkRange(offset, target.remaining());
+        ByteBuffer[] segmentViews = views.get();
+        int index = (int) (offset / segmentSize);
+        int position = (int) (offset % segmentSize);
+        while (target.hasRemaining()) {
+            ByteBuffer segment = segmentViews[index++];
+            segment.limit(Math.min(segment.capacity(), position + target.remaining())).position(position);
+            target.put(segment);
+            position = 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        // mapped memory is released once segments are garbage collected
+    }
+
+    private ByteBuffer[] newViews() {
+        ByteBuffer[] segmentViews = new ByteBuffer[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            segmentViews[i] = segments[i].duplicate();
+        }
+        return segmentViews;
+    }
+
+    private void checkRange(long offset, int size) throws IOException {
+        if (offset < 0 || size < 0 || offset + size > this.size) {
+            throw new IOException(String.format("Block[%d, %d] is out of file range[0, %d].", offset, size, this.size));
+        }
+    }
+}
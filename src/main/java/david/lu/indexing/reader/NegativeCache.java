@@ -0,0 +1,68 @@
+package david.lu.indexing.reader;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU set of keys without any tunnel of their hash in one section, so they are known missing without reading
+ * node and tunnels again. It doesn't depend on how callers verify keys. Split to {@link #SEGMENTS} locked segments by
+ * key.
+ */
+final class NegativeCache {
+    private final static int SEGMENTS = 16;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param size max keys
+     */
+    NegativeCache(int size) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, size / SEGMENTS));
+        }
+    }
+
+    boolean contains(String key) {
+        Segment segment = segment(key);
+        boolean found;
+        synchronized (segment) {
+            found = segment.get(key) != null;
+        }
+        if (found) {
+            hits.increment();
+        }
+        return found;
+    }
+
+    void add(String key) {
+        Segment segment = segment(key);
+        synchronized (segment) {
+            segment.put(key, Boolean.TRUE);
+        }
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    private Segment segment(String key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return segments[hash >>> 28];
+    }
+
+    private final static class Segment extends LinkedHashMap<String, Boolean> {
+        private static final long serialVersionUID = 1L;
+        private final int size;
+
+        private Segment(int size) {
+            super(16, 0.75f, true);
+            this.size = size;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > size;
+        }
+    }
+}
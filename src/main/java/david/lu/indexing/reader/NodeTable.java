@@ -0,0 +1,64 @@
+package david.lu.indexing.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <pre>
+ * Node table of an index pinned in heap, so lookups read nodes without I/O. Each node is packed to a long:
+ *  collision       high 8 bits
+ *  value           low 56 bits, index of first tunnel of the node, or pilot of a perfect hash bucket, see
+ *                  {@link IndexLayout#nodeValueAt(ByteBuffer, int)}
+ * </pre>
+ */
+final class NodeTable {
+    private final static int OFFSET_BITS = 56;
+    private final static long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    /**
+     * bytes of node table read at a time
+     */
+    private final static int BLOCK = 1 << 20;
+    private final long[] nodes;
+
+    private NodeTable(long[] nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Read all nodes of {@code layout} sequentially by large blocks
+     */
+    static NodeTable load(IndexStorage indexStorage, IndexLayout layout) throws IOException {
+        long[] nodes = new long[layout.getCapacity()];
+        int nodeSize = layout.getNodeSize();
+        ByteBuffer block = ByteBuffer.allocate(BLOCK / nodeSize * nodeSize);
+        int bucket = 0;
+        while (bucket < nodes.length) {
+            int count = Math.min(nodes.length - bucket, BLOCK / nodeSize);
+            block.clear().limit(count * nodeSize);
+            indexStorage.read(layout.nodeOffset(bucket), block);
+            for (int i = 0; i < count; i++) {
+                long collision = layout.collisionAt(block, i * nodeSize);
+                nodes[bucket++] = collision << OFFSET_BITS | layout.nodeValueAt(block, i * nodeSize);
+            }
+        }
+        return new NodeTable(nodes);
+    }
+
+    int collision(int bucket) {
+        return (int) (nodes[bucket] >>> OFFSET_BITS);
+    }
+
+    /**
+     * @return node value of {@code bucket}, see {@link IndexLayout#firstTunnel(long, long)}
+     */
+    long offset(int bucket) {
+        return nodes[bucket] & OFFSET_MASK;
+    }
+
+    /**
+     * @return bytes of pinned nodes
+     */
+    long footprint() {
+        return (long) nodes.length * Long.BYTES;
+    }
+}
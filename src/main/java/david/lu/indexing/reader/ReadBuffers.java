@@ -0,0 +1,67 @@
+package david.lu.indexing.reader;
+
+import david.lu.indexing.pojo.IndexNode;
+import david.lu.indexing.pojo.IndexFingerprintTunnel;
+import david.lu.indexing.pojo.IndexRecordTable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Per thread scratch buffers of lookup, so a lookup doesn't allocate buffers. Content is only valid until next lookup
+ * of the same thread.
+ */
+final class ReadBuffers {
+    /**
+     * records larger than this are loaded to one-off buffers instead of being kept by the thread
+     */
+    private final static int MAX_RETAINED_RECORD = 1 << 20;
+    private final static int INITIAL_RECORD = 1 << 10;
+    private final static ThreadLocal<ReadBuffers> LOCAL = ThreadLocal.withInitial(ReadBuffers::new);
+
+    private final ByteBuffer node = ByteBuffer.allocate(IndexNode.SIZE);
+    private final ByteBuffer tunnels = ByteBuffer.allocate(IndexFingerprintTunnel.SIZE * 0xFF);
+    private final ByteBuffer recordBlock = ByteBuffer.allocate(IndexRecordTable.MAX_BLOCK);
+    // source offset and length of a record decoded from record table
+    private final long[] pointer = new long[2];
+    private ByteBuffer record = ByteBuffer.allocate(INITIAL_RECORD);
+
+    private ReadBuffers() {
+    }
+
+    static ReadBuffers get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * @param size bytes of a node, see {@link IndexLayout#getNodeSize()}
+     */
+    ByteBuffer node(int size) {
+        node.clear().limit(size);
+        return node;
+    }
+
+    ByteBuffer tunnels(int size) {
+        tunnels.clear().limit(size);
+        return tunnels;
+    }
+
+    ByteBuffer recordBlock(int size) {
+        recordBlock.clear().limit(size);
+        return recordBlock;
+    }
+
+    long[] pointer() {
+        return pointer;
+    }
+
+    ByteBuffer record(int size) {
+        if (size > MAX_RETAINED_RECORD) {
+            return ByteBuffer.allocate(size);
+        }
+        if (size > record.capacity()) {
+            record = ByteBuffer.allocate(Integer.highestOneBit(size - 1) << 1);
+        }
+        record.clear().limit(size);
+        return record;
+    }
+}
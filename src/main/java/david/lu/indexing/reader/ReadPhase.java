@@ -0,0 +1,24 @@
+package david.lu.indexing.reader;
+
+/**
+ * Steps of a lookup of {@link IndexReader}, timed by {@link ReaderMetricsListener#phase(ReadPhase, long, long)}
+ */
+public enum ReadPhase {
+    /**
+     * read of node of key, skipped if nodes are pinned
+     */
+    NODE,
+    /**
+     * read of tunnels of node
+     */
+    TUNNEL,
+    /**
+     * read of a candidate record, from source file or payload region of index file, with its record table block. Skipped
+     * for records in record cache.
+     */
+    SOURCE,
+    /**
+     * verifying key of a candidate record and unmarshalling it
+     */
+    UNMARSHAL
+}
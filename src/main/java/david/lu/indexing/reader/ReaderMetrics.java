@@ -0,0 +1,183 @@
+package david.lu.indexing.reader;
+
+import david.lu.indexing.utils.Histogram;
+
+import javax.management.ObjectName;
+import java.util.concurrent.atomic.LongAdder;
+
+import static david.lu.indexing.utils.IndexUtils.registerMBean;
+import static david.lu.indexing.utils.IndexUtils.unregisterMBean;
+
+/**
+ * Aggregated measures of lookups, counters and {@link Histogram}s updated without allocation. One instance can be
+ * shared by readers of a {@link ShardedIndexReader}, {@link SegmentedIndexReader} or {@link IndexReaderHandle}, so they
+ * are measured together. Published to JMX by {@link #register(String)}.
+ */
+public class ReaderMetrics implements ReaderMetricsListener, ReaderMetricsMXBean {
+    final static String MBEAN_TYPE = "IndexReader";
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder keys = new LongAdder();
+    private final LongAdder found = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final Histogram lookupLatency = new Histogram();
+    // latency of each phase by ordinal
+    private final Histogram[] phaseLatencies = new Histogram[ReadPhase.values().length];
+    private final Histogram chainLengths = new Histogram();
+    // null if not registered
+    private volatile ObjectName objectName;
+
+    public ReaderMetrics() {
+        for (int i = 0; i < phaseLatencies.length; i++) {
+            phaseLatencies[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Register to platform MBean server as {@code david.lu.indexing:type=IndexReader,name="<name>"}
+     * @throws IllegalArgumentException if the name is taken
+     */
+    public synchronized ObjectName register(String name) {
+        if (objectName != null) {
+            throw new IllegalStateException("Metrics are registered as " + objectName);
+        }
+        objectName = registerMBean(this, MBEAN_TYPE, name);
+        return objectName;
+    }
+
+    public synchronized void unregister() {
+        if (objectName != null) {
+            unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    @Override
+    public void lookupStarted() {
+        inFlight.increment();
+    }
+
+    @Override
+    public void phase(ReadPhase phase, long nanos, long bytes) {
+        phaseLatencies[phase.ordinal()].record(nanos);
+        bytesRead.add(bytes);
+    }
+
+    @Override
+    public void chain(int tunnels, int falsePositives) {
+        chainLengths.record(tunnels);
+        this.falsePositives.add(falsePositives);
+    }
+
+    @Override
+    public void lookupFinished(int keys, int found, long nanos) {
+        inFlight.decrement();
+        lookups.increment();
+        this.keys.add(keys);
+        this.found.add(found);
+        lookupLatency.record(nanos);
+    }
+
+    /**
+     * @return finished lookups, a batch is one lookup
+     */
+    @Override
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * @return keys of finished lookups
+     */
+    @Override
+    public long getKeys() {
+        return keys.sum();
+    }
+
+    /**
+     * @return keys found by finished lookups
+     */
+    @Override
+    public long getFound() {
+        return found.sum();
+    }
+
+    /**
+     * @return lookups started but not finished
+     */
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    /**
+     * @return bytes of nodes, tunnels and records read, records of record cache excluded
+     */
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * @return latency of a lookup, a batch or a key
+     */
+    @Override
+    public Histogram.Snapshot getLookupLatency() {
+        return lookupLatency.snapshot();
+    }
+
+    @Override
+    public Histogram.Snapshot getNodeReadLatency() {
+        return getPhaseLatency(ReadPhase.NODE);
+    }
+
+    @Override
+    public Histogram.Snapshot getTunnelReadLatency() {
+        return getPhaseLatency(ReadPhase.TUNNEL);
+    }
+
+    @Override
+    public Histogram.Snapshot getSourceReadLatency() {
+        return getPhaseLatency(ReadPhase.SOURCE);
+    }
+
+    @Override
+    public Histogram.Snapshot getUnmarshalLatency() {
+        return getPhaseLatency(ReadPhase.UNMARSHAL);
+    }
+
+    /**
+     * @return tunnels walked per key
+     */
+    @Override
+    public Histogram.Snapshot getChainLengths() {
+        return chainLengths.snapshot();
+    }
+
+    public Histogram.Snapshot getPhaseLatency(ReadPhase phase) {
+        return phaseLatencies[phase.ordinal()].snapshot();
+    }
+
+    /**
+     * Reset counters and histograms, except lookups in flight
+     */
+    @Override
+    public void reset() {
+        lookups.reset();
+        keys.reset();
+        found.reset();
+        bytesRead.reset();
+        falsePositives.reset();
+        lookupLatency.reset();
+        for (Histogram phaseLatency : phaseLatencies) {
+            phaseLatency.reset();
+        }
+        chainLengths.reset();
+    }
+}
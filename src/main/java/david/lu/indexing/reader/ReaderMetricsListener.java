@@ -0,0 +1,39 @@
+package david.lu.indexing.reader;
+
+/**
+ * <pre>
+ * Receives measures of lookups of {@link IndexReader}, see {@link IndexReaderConfig#getMetricsListener()}:
+ *  1. {@link #lookupStarted()} when a lookup starts, {@link #lookupFinished(int, int, long)} when it ends
+ *  2. {@link #phase(ReadPhase, long, long)} after each step of a lookup. A batched lookup does each step once for all
+ *     keys, see {@link BatchLookup}, so its phases cover all keys of the batch
+ *  3. {@link #chain(int, int)} for each key whose tunnels are walked
+ * Asynchronous lookups are only measured by 1. Methods are called in lookup threads, concurrently, with primitives
+ * only, so they should be cheap and must not block. {@link ReaderMetrics} aggregates them.
+ * </pre>
+ */
+public interface ReaderMetricsListener {
+    default void lookupStarted() {
+    }
+
+    /**
+     * @param nanos time of the step
+     * @param bytes bytes read by the step, 0 for {@link ReadPhase#UNMARSHAL}
+     */
+    default void phase(ReadPhase phase, long nanos, long bytes) {
+    }
+
+    /**
+     * @param tunnels tunnels walked before the key is found or known missing
+     * @param falsePositives candidate records sharing hash of the key but not matching it
+     */
+    default void chain(int tunnels, int falsePositives) {
+    }
+
+    /**
+     * @param keys keys of the lookup
+     * @param found keys found
+     * @param nanos time of the lookup
+     */
+    default void lookupFinished(int keys, int found, long nanos) {
+    }
+}
@@ -0,0 +1,34 @@
+package david.lu.indexing.reader;
+
+import david.lu.indexing.utils.Histogram;
+
+/**
+ * JMX view of {@link ReaderMetrics}, latencies are in nanoseconds
+ */
+public interface ReaderMetricsMXBean {
+    long getLookups();
+
+    long getKeys();
+
+    long getFound();
+
+    long getInFlight();
+
+    long getBytesRead();
+
+    long getFalsePositives();
+
+    Histogram.Snapshot getLookupLatency();
+
+    Histogram.Snapshot getNodeReadLatency();
+
+    Histogram.Snapshot getTunnelReadLatency();
+
+    Histogram.Snapshot getSourceReadLatency();
+
+    Histogram.Snapshot getUnmarshalLatency();
+
+    Histogram.Snapshot getChainLengths();
+
+    void reset();
+}
@@ -0,0 +1,229 @@
+package david.lu.indexing.reader;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * Bounded cache of raw record bytes, keyed by offset of tunnel, which is record id with {@link RecordTable}. Each of
+ * {@link #SEGMENTS} locked segments, split by offset, copies records to its own direct arena, allocated once with the
+ * cache and sized by its share of the budget, so cached bytes stay out of heap without a direct buffer per record.
+ * Records are placed by best fit among free extents of arena, adjacent extents are merged when records are evicted.
+ * Each segment evicts by segmented LRU:
+ *  probation   new records, evicted first
+ *  protected   records hit again, {@link #PROTECTED_RATIO} of segment budget, overflow goes back to probation
+ * A scan of cold records only churns probation, so the hot set in protected survives it. Hits are copied out of
+ * arena under lock, so a record is never seen while its bytes are reused.
+ * </pre>
+ */
+final class RecordCache {
+    private final static int SEGMENTS = 16;
+    /**
+     * max bytes of arena of a segment
+     */
+    private final static int MAX_SEGMENT_SIZE = 1 << 30;
+    private final static double PROTECTED_RATIO = 0.8;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param budget max bytes of cached records, allocated off heap at once. Up to {@link #MAX_SEGMENT_SIZE} per
+     *               segment.
+     */
+    RecordCache(long budget) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment((int) Math.min(MAX_SEGMENT_SIZE, budget / SEGMENTS));
+        }
+    }
+
+    /**
+     * @param readBuffers record is copied to its record buffer, or to a new heap buffer if null
+     * @return copy of cached record from position 0, or null
+     */
+    ByteBuffer get(long offset, ReadBuffers readBuffers) {
+        ByteBuffer record = segment(offset).get(offset, readBuffers);
+        if (record == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return record;
+    }
+
+    /**
+     * Copy remaining bytes of {@code record} to cache, position of {@code record} is not changed
+     */
+    void put(long offset, ByteBuffer record) {
+        segment(offset).put(offset, record);
+    }
+
+    CacheStats stats() {
+        long size = 0;
+        long entries = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+                entries += segment.probation.size() + segment.protect.size();
+            }
+        }
+        return CacheStats.builder()
+            .hitCount(hits.sum())
+            .missCount(misses.sum())
+            .evictionCount(evictions.sum())
+            .size(size)
+            .entries(entries)
+            .build();
+    }
+
+    private Segment segment(long offset) {
+        long mixed = offset * 0x9E3779B97F4A7C15L;
+        return segments[(int) (mixed >>> 60)];
+    }
+
+    /**
+     * @return slot of a record in arena, position in high 32 bits and length in low 32 bits
+     */
+    private static long slot(int position, int length) {
+        return (long) position << 32 | length;
+    }
+
+    private final class Segment {
+        private final int budget;
+        private final int protectedBudget;
+        // view of arena, only used under lock
+        private final ByteBuffer arena;
+        // slots of records, insertion order, eldest is evicted first
+        private final LinkedHashMap<Long, Long> probation = new LinkedHashMap<>();
+        // access order
+        private final LinkedHashMap<Long, Long> protect = new LinkedHashMap<>(16, 0.75f, true);
+        // free extents of arena, length by position
+        private final TreeMap<Integer, Integer> freeExtents = new TreeMap<>();
+        // free extents of arena, length in high 32 bits and position in low 32 bits, for best fit
+        private final TreeSet<Long> freeSizes = new TreeSet<>();
+        private long size;
+        private long protectedSize;
+
+        private Segment(int budget) {
+            this.budget = budget;
+            this.protectedBudget = (int) (budget * PROTECTED_RATIO);
+            this.arena = ByteBuffer.allocateDirect(budget);
+            if (budget > 0) {
+                addFree(0, budget);
+            }
+        }
+
+        private synchronized ByteBuffer get(long offset, ReadBuffers readBuffers) {
+            Long slot = protect.get(offset);
+            if (slot == null) {
+                slot = probation.remove(offset);
+                if (slot == null) {
+                    return null;
+                }
+                protect.put(offset, slot);
+                protectedSize += (int) (long) slot;
+                Iterator<Map.Entry<Long, Long>> eldest = protect.entrySet().iterator();
+                while (protectedSize > protectedBudget && eldest.hasNext()) {
+                    Map.Entry<Long, Long> entry = eldest.next();
+                    eldest.remove();
+                    protectedSize -= (int) (long) entry.getValue();
+                    probation.put(entry.getKey(), entry.getValue());
+                }
+            }
+            int position = (int) (slot >>> 32);
+            int length = (int) (long) slot;
+            ByteBuffer record = readBuffers == null ? ByteBuffer.allocate(length) : readBuffers.record(length);
+            arena.limit(position + length).position(position);
+            record.put(arena).flip();
+            return record;
+        }
+
+        private synchronized void put(long offset, ByteBuffer record) {
+            int length = record.remaining();
+            if (length > budget - protectedBudget || probation.containsKey(offset) || protect.containsKey(offset)) {
+                return;
+            }
+            int position = allocate(length);
+            while (position < 0) {
+                // record fits in arena once all records are evicted, their extents are merged
+                evictEldest();
+                position = allocate(length);
+            }
+            arena.limit(position + length).position(position);
+            arena.put(record.duplicate());
+            probation.put(offset, slot(position, length));
+            size += length;
+        }
+
+        private void evictEldest() {
+            boolean fromProbation = !probation.isEmpty();
+            Iterator<Long> eldest = (fromProbation ? probation : protect).values().iterator();
+            long slot = eldest.next();
+            eldest.remove();
+            int length = (int) slot;
+            size -= length;
+            if (!fromProbation) {
+                protectedSize -= length;
+            }
+            free((int) (slot >>> 32), length);
+            evictions.increment();
+        }
+
+        /**
+         * @return position of the smallest free extent of {@code length} bytes at least, -1 if there's none
+         */
+        private int allocate(int length) {
+            if (length == 0) {
+                return 0;
+            }
+            Long fit = freeSizes.ceiling((long) length << 32);
+            if (fit == null) {
+                return -1;
+            }
+            int position = (int) (long) fit;
+            int extent = (int) (fit >>> 32);
+            removeFree(position, extent);
+            if (extent > length) {
+                addFree(position + length, extent - length);
+            }
+            return position;
+        }
+
+        /**
+         * Free an extent, merged with free extents before and after it
+         */
+        private void free(int position, int length) {
+            if (length == 0) {
+                return;
+            }
+            Map.Entry<Integer, Integer> before = freeExtents.lowerEntry(position);
+            if (before != null && before.getKey() + before.getValue() == position) {
+                removeFree(before.getKey(), before.getValue());
+                position = before.getKey();
+                length += before.getValue();
+            }
+            Integer after = freeExtents.get(position + length);
+            if (after != null) {
+                removeFree(position + length, after);
+                length += after;
+            }
+            addFree(position, length);
+        }
+
+        private void addFree(int position, int length) {
+            freeExtents.put(position, length);
+            freeSizes.add((long) length << 32 | position);
+        }
+
+        private void removeFree(int position, int length) {
+            freeExtents.remove(position);
+            freeSizes.remove((long) length << 32 | position);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package david.lu.indexing.reader;
+
+import david.lu.indexing.pojo.IndexRecordTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link IndexRecordTable} of an index file. Block offsets are loaded to heap, 8 bytes per
+ * {@link IndexRecordTable#BLOCK_RECORDS} records, so a record is resolved by reading and decoding one block.
+ */
+final class RecordTable {
+    private final long base;
+    private final long[] blockOffsets;
+
+    private RecordTable(long base, long[] blockOffsets) {
+        this.base = base;
+        this.blockOffsets = blockOffsets;
+    }
+
+    /**
+     * @param base offset of record table in index file
+     */
+    static RecordTable load(IndexStorage indexStorage, long base) throws IOException {
+        long records = indexStorage.load(base, IndexRecordTable.RECORDS_SIZE).getInt() & 0xFFFFFFFFL;
+        long[] blockOffsets = new long[IndexRecordTable.getBlocks(records) + 1];
+        indexStorage.load(base + IndexRecordTable.getBlockOffsetsOffset(), blockOffsets.length * Long.BYTES)
+            .asLongBuffer()
+            .get(blockOffsets);
+        return new RecordTable(base, blockOffsets);
+    }
+
+    /**
+     * @return offset of block of {@code recordId} in index file
+     */
+    long blockOffset(long recordId) {
+        return base + blockOffsets[block(recordId)];
+    }
+
+    int blockLength(long recordId) {
+        int block = block(recordId);
+        return (int) (blockOffsets[block + 1] - blockOffsets[block]);
+    }
+
+    /**
+     * Decode record from its block
+     * @param block block of {@code recordId} from its position
+     * @param pointer filled with source offset and length of record
+     */
+    static void decode(ByteBuffer block, long recordId, long[] pointer) {
+        IndexRecordTable.decode(block, (int) (recordId % IndexRecordTable.BLOCK_RECORDS), pointer);
+    }
+
+    /**
+     * Read record without allocation, by per thread buffers
+     */
+    void read(IndexStorage indexStorage, long recordId, ReadBuffers readBuffers, long[] pointer) throws IOException {
+        ByteBuffer block = readBuffers.recordBlock(blockLength(recordId));
+        indexStorage.read(blockOffset(recordId), block);
+        block.flip();
+        decode(block, recordId, pointer);
+    }
+
+    /**
+     * @return source offset and length of record
+     */
+    CompletableFuture<long[]> readAsync(IndexStorage indexStorage, long recordId) {
+        return indexStorage.readAsync(blockOffset(recordId), ByteBuffer.allocate(blockLength(recordId)))
+            .thenApply(block -> {
+                long[] pointer = new long[2];
+                block.flip();
+                decode(block, recordId, pointer);
+                return pointer;
+            });
+    }
+
+    /**
+     * @return bytes of block offsets in heap
+     */
+    long footprint() {
+        return (long) blockOffsets.length * Long.BYTES;
+    }
+
+    private static int block(long recordId) {
+        return (int) (recordId / IndexRecordTable.BLOCK_RECORDS);
+    }
+}
@@ -0,0 +1,174 @@
+package david.lu.indexing.reader;
+
+import david.lu.indexing.utils.SegmentManifest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Lookups over segments of an index built by {@link david.lu.indexing.writer.IncrementalIndexer}, listed by
+ * {@link SegmentManifest}. Segments are searched oldest first, a key is loaded from the oldest segment indexing it, so
+ * a key appended again is loaded from its first record in source, as from a full build or a compacted segment. Each
+ * segment is an {@link IndexReader} of {@code config}, so caches of config are per segment. Segments refreshed or
+ * compacted after init are seen by a new reader.
+ */
+@Slf4j
+public class SegmentedIndexReader {
+    // oldest first
+    private final List<IndexReader> readers;
+
+    private SegmentedIndexReader(List<IndexReader> readers) {
+        this.readers = readers;
+    }
+
+    public static SegmentedIndexReader init(File sourceFile, File indexFile) throws IOException {
+        return init(sourceFile, indexFile, IndexReaderConfig.defaults());
+    }
+
+    /**
+     * @param indexFile path of index, segments are listed by its {@link SegmentManifest}
+     */
+    public static SegmentedIndexReader init(File sourceFile, File indexFile, IndexReaderConfig config) throws IOException {
+        List<File> segments = SegmentManifest.read(SegmentManifest.of(indexFile.getPath()));
+        if (segments.isEmpty()) {
+            throw new FileNotFoundException(String.format("No segment of index[%s].", indexFile));
+        }
+        List<IndexReader> readers = new ArrayList<>(segments.size());
+        try {
+            for (File segment : segments) {
+                readers.add(IndexReader.init(sourceFile, segment, config));
+            }
+        } catch (IOException | RuntimeException e) {
+            for (IndexReader reader : readers) {
+                reader.cleanup();
+            }
+            throw e;
+        }
+        log.debug("{} segments of index {} opened.", readers.size(), indexFile);
+        return new SegmentedIndexReader(readers);
+    }
+
+    public void cleanup() throws IOException {
+        for (IndexReader reader : readers) {
+            reader.cleanup();
+        }
+    }
+
+    /**
+     * @return opened segments
+     */
+    public int getSegments() {
+        return readers.size();
+    }
+
+    /**
+     * @return key namespaces of the newest segment, empty if keys share one section
+     */
+    public List<String> getNamespaces() {
+        return readers.get(readers.size() - 1).getNamespaces();
+    }
+
+    public boolean containsKey(String key) throws IOException {
+        return containsKey(null, key);
+    }
+
+    /**
+     * Check segments oldest first, see {@link IndexReader#containsKey(String, String)}
+     */
+    public boolean containsKey(String namespace, String key) throws IOException {
+        for (IndexReader reader : readers) {
+            if (reader.containsKey(namespace, key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public <T> T loadByKey(String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        return loadByKey(null, key, unmarshaller, keyExtractor);
+    }
+
+    public <T> T loadByKey(String namespace, String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        for (IndexReader reader : readers) {
+            T item = reader.loadByKey(namespace, key, unmarshaller, keyExtractor);
+            if (item != null) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    public <T> T loadByKey(String key, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher) throws IOException {
+        return loadByKey(null, key, unmarshaller, keyMatcher);
+    }
+
+    public <T> T loadByKey(String namespace, String key, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher) throws IOException {
+        for (IndexReader reader : readers) {
+            T item = reader.loadByKey(namespace, key, unmarshaller, keyMatcher);
+            if (item != null) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    public <T> List<T> loadByKeys(List<String> keys, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        return loadByKeys(null, keys, unmarshaller, keyExtractor);
+    }
+
+    /**
+     * Load keys by batch from the oldest segment, keys missing from it go to the next one. Missing keys are skipped,
+     * others keep the order of {@code keys}.
+     */
+    public <T> List<T> loadByKeys(String namespace, List<String> keys, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        Map<String, T> found = new HashMap<>();
+        List<String> remaining = keys;
+        for (IndexReader reader : readers) {
+            if (remaining.isEmpty()) {
+                break;
+            }
+            for (T item : reader.loadByKeys(namespace, remaining, unmarshaller, keyExtractor)) {
+                found.putIfAbsent(keyExtractor.apply(item), item);
+            }
+            remaining = remaining.stream().filter(key -> !found.containsKey(key)).collect(Collectors.toList());
+        }
+        if (found.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<T> items = new ArrayList<>(found.size());
+        for (String key : keys) {
+            T item = found.get(key);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    public <T> CompletableFuture<T> loadByKeyAsync(String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) {
+        return loadByKeyAsync(null, key, unmarshaller, keyExtractor);
+    }
+
+    /**
+     * Load from the next segment when the key is missing from an older one, without blocking calling thread.
+     */
+    public <T> CompletableFuture<T> loadByKeyAsync(String namespace, String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) {
+        return loadByKeyAsync(0, namespace, key, unmarshaller, keyExtractor);
+    }
+
+    private <T> CompletableFuture<T> loadByKeyAsync(int segment, String namespace, String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) {
+        return readers.get(segment).loadByKeyAsync(namespace, key, unmarshaller, keyExtractor)
+            .thenCompose(item -> item != null || segment + 1 == readers.size()
+                ? CompletableFuture.completedFuture(item)
+                : loadByKeyAsync(segment + 1, namespace, key, unmarshaller, keyExtractor));
+    }
+}
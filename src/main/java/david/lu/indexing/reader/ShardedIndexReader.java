@@ -0,0 +1,351 @@
+package david.lu.indexing.reader;
+
+import david.lu.indexing.pojo.IndexSortedKeys;
+import david.lu.indexing.utils.IndexUtils;
+import david.lu.indexing.utils.ShardManifest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lookups over shards of an index built by {@link david.lu.indexing.writer.ShardedIndexWriter}, listed by
+ * {@link ShardManifest}. A key is routed to the only shard owning it by {@link IndexUtils#getShard(long, int)} of its
+ * hash. Batched loads are split by shard and run in parallel by {@link IndexReaderConfig#getBatchExecutor()}, or one
+ * shard after another in calling thread without it. Prefix and range loads merge sorted keys of all shards. Each shard is
+ * an {@link IndexReader} of {@code config}, so caches of config are per shard.
+ */
+@Slf4j
+public class ShardedIndexReader {
+    /**
+     * merged keys of a block of records read in order of source offsets
+     */
+    private final static int MERGE_BLOCK = 256;
+    // in order of shard
+    private final List<IndexReader> readers;
+    private final Executor executor;
+
+    private ShardedIndexReader(List<IndexReader> readers, Executor executor) {
+        this.readers = readers;
+        this.executor = executor;
+    }
+
+    public static ShardedIndexReader init(File sourceFile, File indexFile) throws IOException {
+        return init(sourceFile, indexFile, IndexReaderConfig.defaults());
+    }
+
+    /**
+     * @param indexFile path of index, shards are listed by its {@link ShardManifest}
+     */
+    public static ShardedIndexReader init(File sourceFile, File indexFile, IndexReaderConfig config) throws IOException {
+        List<File> shards = ShardManifest.read(ShardManifest.of(indexFile.getPath()));
+        if (shards.isEmpty()) {
+            throw new FileNotFoundException(String.format("No shard of index[%s].", indexFile));
+        }
+        List<IndexReader> readers = new ArrayList<>(shards.size());
+        try {
+            for (File shard : shards) {
+                readers.add(IndexReader.init(sourceFile, shard, config));
+            }
+        } catch (IOException | RuntimeException e) {
+            for (IndexReader reader : readers) {
+                reader.cleanup();
+            }
+            throw e;
+        }
+        log.debug("{} shards of index {} opened.", readers.size(), indexFile);
+        return new ShardedIndexReader(readers, config.getBatchExecutor());
+    }
+
+    public void cleanup() throws IOException {
+        for (IndexReader reader : readers) {
+            reader.cleanup();
+        }
+    }
+
+    /**
+     * @return opened shards
+     */
+    public int getShards() {
+        return readers.size();
+    }
+
+    /**
+     * @return key namespaces of shards, empty if keys share one section
+     */
+    public List<String> getNamespaces() {
+        return readers.get(0).getNamespaces();
+    }
+
+    /**
+     * @return shard owning {@code key} of {@code namespace}
+     */
+    public int shardOf(String namespace, String key) {
+        return readers.size() == 1 ? 0 : IndexUtils.getShard(readers.get(0).hash(namespace, key), readers.size());
+    }
+
+    public boolean containsKey(String key) throws IOException {
+        return containsKey(null, key);
+    }
+
+    public boolean containsKey(String namespace, String key) throws IOException {
+        return readers.get(shardOf(namespace, key)).containsKey(namespace, key);
+    }
+
+    public <T> T loadByKey(String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        return loadByKey(null, key, unmarshaller, keyExtractor);
+    }
+
+    public <T> T loadByKey(String namespace, String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        return readers.get(shardOf(namespace, key)).loadByKey(namespace, key, unmarshaller, keyExtractor);
+    }
+
+    public <T> T loadByKey(String key, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher) throws IOException {
+        return loadByKey(null, key, unmarshaller, keyMatcher);
+    }
+
+    public <T> T loadByKey(String namespace, String key, Function<byte[], T> unmarshaller, KeyMatcher keyMatcher) throws IOException {
+        return readers.get(shardOf(namespace, key)).loadByKey(namespace, key, unmarshaller, keyMatcher);
+    }
+
+    public <T> List<T> loadByKeys(List<String> keys, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        return loadByKeys(null, keys, unmarshaller, keyExtractor);
+    }
+
+    /**
+     * Load keys of each shard by batch, only shards owning any of {@code keys} are searched. Missing keys are skipped,
+     * others keep the order of {@code keys}.
+     */
+    public <T> List<T> loadByKeys(String namespace, List<String> keys, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) throws IOException {
+        List<List<String>> shardKeys = route(namespace, keys);
+        List<List<T>> shardItems = new ArrayList<>(readers.size());
+        if (executor == null) {
+            for (int i = 0; i < readers.size(); i++) {
+                List<String> batch = shardKeys.get(i);
+                shardItems.add(batch.isEmpty() ? new ArrayList<>() : readers.get(i).loadByKeys(namespace, batch, unmarshaller, keyExtractor));
+            }
+        } else {
+            List<CompletableFuture<List<T>>> futures = new ArrayList<>(readers.size());
+            for (int i = 0; i < readers.size(); i++) {
+                IndexReader reader = readers.get(i);
+                List<String> batch = shardKeys.get(i);
+                futures.add(batch.isEmpty()
+                    ? CompletableFuture.completedFuture(new ArrayList<>())
+                    : CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return reader.loadByKeys(namespace, batch, unmarshaller, keyExtractor);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, executor));
+            }
+            for (CompletableFuture<List<T>> future : futures) {
+                shardItems.add(join(future));
+            }
+        }
+        return merge(keys, shardItems, keyExtractor);
+    }
+
+    public <T> CompletableFuture<T> loadByKeyAsync(String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) {
+        return loadByKeyAsync(null, key, unmarshaller, keyExtractor);
+    }
+
+    public <T> CompletableFuture<T> loadByKeyAsync(String namespace, String key, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) {
+        return readers.get(shardOf(namespace, key)).loadByKeyAsync(namespace, key, unmarshaller, keyExtractor);
+    }
+
+    public <T> CompletableFuture<List<T>> loadByKeysAsync(List<String> keys, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) {
+        return loadByKeysAsync(null, keys, unmarshaller, keyExtractor);
+    }
+
+    /**
+     * Load keys of each shard asynchronously, merged like {@link #loadByKeys(String, List, Function, Function)}
+     */
+    public <T> CompletableFuture<List<T>> loadByKeysAsync(String namespace, List<String> keys, Function<byte[], T> unmarshaller, Function<T, String> keyExtractor) {
+        List<List<String>> shardKeys = route(namespace, keys);
+        List<CompletableFuture<List<T>>> futures = new ArrayList<>(readers.size());
+        for (int i = 0; i < readers.size(); i++) {
+            List<String> batch = shardKeys.get(i);
+            futures.add(batch.isEmpty()
+                ? CompletableFuture.completedFuture(new ArrayList<>())
+                : readers.get(i).loadByKeysAsync(namespace, batch, unmarshaller, keyExtractor));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<List<T>> shardItems = new ArrayList<>(futures.size());
+            for (CompletableFuture<List<T>> future : futures) {
+                shardItems.add(future.join());
+            }
+            return merge(keys, shardItems, keyExtractor);
+        });
+    }
+
+    public <T> Stream<T> loadByPrefix(String prefix, Function<byte[], T> unmarshaller) {
+        return loadByPrefix(null, prefix, unmarshaller);
+    }
+
+    /**
+     * Load records whose keys of sorted {@code namespace} start with {@code prefix}, keys of all shards are merged in
+     * order of keys, then of source offsets, like {@link IndexReader#loadByPrefix(String, String, Function)}
+     */
+    public <T> Stream<T> loadByPrefix(String namespace, String prefix, Function<byte[], T> unmarshaller) {
+        byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        return scan(namespace, bytes, null, bytes, unmarshaller);
+    }
+
+    public <T> Stream<T> loadByRange(String from, String to, Function<byte[], T> unmarshaller) {
+        return loadByRange(null, from, to, unmarshaller);
+    }
+
+    /**
+     * Load records whose keys of sorted {@code namespace} are within range, merged like
+     * {@link #loadByPrefix(String, String, Function)}
+     * @param from inclusive, null if not bounded
+     * @param to exclusive, null if not bounded
+     */
+    public <T> Stream<T> loadByRange(String namespace, String from, String to, Function<byte[], T> unmarshaller) {
+        return scan(
+            namespace,
+            from != null ? from.getBytes(StandardCharsets.UTF_8) : null,
+            to != null ? to.getBytes(StandardCharsets.UTF_8) : null,
+            null,
+            unmarshaller
+        );
+    }
+
+    /**
+     * Merge sorted keys of shards by a heap of one cursor per shard, records are read by blocks of
+     * {@link #MERGE_BLOCK} merged keys, from source shared by shards
+     */
+    private <T> Stream<T> scan(String namespace, byte[] from, byte[] to, byte[] prefix, Function<byte[], T> unmarshaller) {
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(readers.size(), (a, b) -> {
+            int diff = IndexSortedKeys.compare(a.current.key, b.current.key);
+            return diff != 0 ? diff : Long.compare(a.current.offset, b.current.offset);
+        });
+        for (IndexReader reader : readers) {
+            Cursor cursor = new Cursor(reader.scanKeys(namespace, from, to, prefix));
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+        Iterator<List<SortedIndex.Entry>> blocks = new Iterator<List<SortedIndex.Entry>>() {
+            @Override
+            public boolean hasNext() {
+                return !cursors.isEmpty();
+            }
+
+            @Override
+            public List<SortedIndex.Entry> next() {
+                if (cursors.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                List<SortedIndex.Entry> entries = new ArrayList<>(MERGE_BLOCK);
+                while (entries.size() < MERGE_BLOCK && !cursors.isEmpty()) {
+                    Cursor cursor = cursors.poll();
+                    entries.add(cursor.current);
+                    if (cursor.advance()) {
+                        cursors.add(cursor);
+                    }
+                }
+                return entries;
+            }
+        };
+        IndexReader source = readers.get(0);
+        return StreamSupport.stream(((Iterable<List<SortedIndex.Entry>>) () -> blocks).spliterator(), false)
+            .flatMap(entries -> {
+                try {
+                    return source.loadBlock(entries, unmarshaller).stream();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    /**
+     * @return keys of each shard, in order of {@code keys}
+     */
+    private List<List<String>> route(String namespace, List<String> keys) {
+        List<List<String>> shardKeys = new ArrayList<>(readers.size());
+        for (int i = 0; i < readers.size(); i++) {
+            shardKeys.add(new ArrayList<>());
+        }
+        for (String key : keys) {
+            shardKeys.get(shardOf(namespace, key)).add(key);
+        }
+        return shardKeys;
+    }
+
+    private static <T> List<T> merge(List<String> keys, List<List<T>> shardItems, Function<T, String> keyExtractor) {
+        Map<String, T> found = new HashMap<>();
+        for (List<T> items : shardItems) {
+            for (T item : items) {
+                found.putIfAbsent(keyExtractor.apply(item), item);
+            }
+        }
+        List<T> items = new ArrayList<>(found.size());
+        if (found.isEmpty()) {
+            return items;
+        }
+        for (String key : keys) {
+            T item = found.get(key);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Sorted keys of a shard, one entry at a time
+     */
+    private static final class Cursor {
+        private final Iterator<List<SortedIndex.Entry>> blocks;
+        private Iterator<SortedIndex.Entry> block = Collections.emptyIterator();
+        private SortedIndex.Entry current;
+
+        private Cursor(Iterator<List<SortedIndex.Entry>> blocks) {
+            this.blocks = blocks;
+        }
+
+        /**
+         * @return false if no more key
+         */
+        private boolean advance() {
+            while (!block.hasNext()) {
+                if (!blocks.hasNext()) {
+                    return false;
+                }
+                block = blocks.next().iterator();
+            }
+            current = block.next();
+            return true;
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package david.lu.indexing.reader;
+
+import david.lu.indexing.pojo.IndexSortedKeys;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Sorted keys of {@link IndexSortedKeys} with directory of blocks in heap. A scan reads blocks from the last one
+ * starting at or before its lower bound, until a key reaches its upper bound.
+ */
+final class SortedIndex {
+    private final IndexStorage storage;
+    private final Map<String, Tree> trees;
+
+    private SortedIndex(IndexStorage storage, Map<String, Tree> trees) {
+        this.storage = storage;
+        this.trees = trees;
+    }
+
+    static SortedIndex load(IndexStorage storage) throws IOException {
+        if (storage.load(0, Integer.BYTES).getInt() != IndexSortedKeys.MAGIC) {
+            throw new IOException("Invalid sorted index.");
+        }
+        long directoryOffset = storage.load(storage.size() - Long.BYTES, Long.BYTES).getLong();
+        // storage may load mapped buffers without array
+        byte[] directory = new byte[(int) (storage.size() - Long.BYTES - directoryOffset)];
+        storage.load(directoryOffset, directory.length).get(directory);
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(directory));
+        Map<String, Tree> trees = new LinkedHashMap<>();
+        int namespaces = input.readInt();
+        for (int i = 0; i < namespaces; i++) {
+            String name = input.readUTF();
+            long keys = input.readLong();
+            int blocks = input.readInt();
+            byte[][] firstKeys = new byte[blocks][];
+            long[] offsets = new long[blocks];
+            int[] lengths = new int[blocks];
+            for (int b = 0; b < blocks; b++) {
+                firstKeys[b] = new byte[input.readInt()];
+                input.readFully(firstKeys[b]);
+                offsets[b] = input.readLong();
+                lengths[b] = input.readInt();
+            }
+            trees.put(name, new Tree(keys, firstKeys, offsets, lengths));
+        }
+        return new SortedIndex(storage, trees);
+    }
+
+    /**
+     * @return sorted namespaces, the first one is default
+     */
+    List<String> getNamespaces() {
+        return new ArrayList<>(trees.keySet());
+    }
+
+    /**
+     * @return keys of namespace
+     */
+    long getKeys(String namespace) {
+        return tree(namespace).keys;
+    }
+
+    /**
+     * Scan keys in order, by block, loading blocks lazily
+     * @param namespace null for the first sorted namespace
+     * @param from inclusive lower bound, null if not bounded
+     * @param to exclusive upper bound, null if not bounded
+     * @param prefix keys must start with it, null if not required
+     * @return iterator of matched entries by block, each list is not empty
+     */
+    Iterator<List<Entry>> scan(String namespace, byte[] from, byte[] to, byte[] prefix) {
+        Tree tree = tree(namespace);
+        return new Iterator<List<Entry>>() {
+            private int block = tree.floor(from);
+            private List<Entry> next;
+            private boolean end;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && !end) {
+                    if (block >= tree.offsets.length) {
+                        end = true;
+                        break;
+                    }
+                    try {
+                        next = read(tree, block++);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (next.isEmpty()) {
+                        next = null;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public List<Entry> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<Entry> entries = next;
+                next = null;
+                return entries;
+            }
+
+            /**
+             * @return matched entries of block, empty if none, {@link #end} is set by the first key beyond bounds
+             */
+            private List<Entry> read(Tree tree, int block) throws IOException {
+                ByteBuffer buffer = storage.load(tree.offsets[block], tree.lengths[block]);
+                List<Entry> entries = new ArrayList<>();
+                long[] pointer = new long[2];
+                byte[] previous = null;
+                while (buffer.hasRemaining()) {
+                    byte[] key = IndexSortedKeys.decode(buffer, previous, pointer);
+                    previous = key;
+                    if (from != null && IndexSortedKeys.compare(key, from) < 0) {
+                        continue;
+                    }
+                    if ((to != null && IndexSortedKeys.compare(key, to) >= 0)
+                        || (prefix != null && !IndexSortedKeys.startsWith(key, prefix))) {
+                        end = true;
+                        break;
+                    }
+                    entries.add(new Entry(key, pointer[0], (int) pointer[1]));
+                }
+                return entries;
+            }
+        };
+    }
+
+    void close() throws IOException {
+        storage.close();
+    }
+
+    private Tree tree(String namespace) {
+        if (namespace == null) {
+            return trees.values().iterator().next();
+        }
+        Tree tree = trees.get(namespace);
+        if (tree == null) {
+            throw new IllegalArgumentException(String.format("Unknown sorted namespace[%s].", namespace));
+        }
+        return tree;
+    }
+
+    /**
+     * Key with source offset and length of its record
+     */
+    static final class Entry {
+        final byte[] key;
+        final long offset;
+        final int length;
+
+        private Entry(byte[] key, long offset, int length) {
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class Tree {
+        private final long keys;
+        private final byte[][] firstKeys;
+        private final long[] offsets;
+        private final int[] lengths;
+
+        private Tree(long keys, byte[][] firstKeys, long[] offsets, int[] lengths) {
+            this.keys = keys;
+            this.firstKeys = firstKeys;
+            this.offsets = offsets;
+            this.lengths = lengths;
+        }
+
+        /**
+         * @return the last block whose first key is before {@code key}, so equal keys spanning blocks are not missed,
+         * 0 if none or {@code key} is null
+         */
+        private int floor(byte[] key) {
+            if (key == null) {
+                return 0;
+            }
+            int low = 0;
+            int high = firstKeys.length - 1;
+            int floor = 0;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (IndexSortedKeys.compare(firstKeys[mid], key) < 0) {
+                    floor = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return floor;
+        }
+    }
+}
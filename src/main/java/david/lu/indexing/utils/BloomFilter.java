@@ -0,0 +1,105 @@
+package david.lu.indexing.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <pre>
+ * Blocked Bloom filter of key hashes. All bits of a key are set in one block of {@link #BLOCK_BITS} bits, so a test
+ * touches one cache line. Serialized as:
+ *  length          4 bytes, bytes after this field
+ *  hash count      1 byte, bits set per key
+ *  blocks          {@link #BLOCK_LONGS} longs per block
+ * </pre>
+ */
+public final class BloomFilter {
+    public final static int BLOCK_BITS = 512;
+    private final static int BLOCK_LONGS = BLOCK_BITS / Long.SIZE;
+    private final static int MAX_HASHES = 16;
+    private final long[] bits;
+    private final int blocks;
+    private final int hashes;
+
+    private BloomFilter(long[] bits, int hashes) {
+        this.bits = bits;
+        this.blocks = bits.length / BLOCK_LONGS;
+        this.hashes = hashes;
+    }
+
+    /**
+     * @param keys expected keys
+     * @param fpp expected false positive probability, in (0, 1)
+     */
+    public static BloomFilter create(long keys, double fpp) {
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException(String.format("False positive probability[%s] is out of (0, 1).", fpp));
+        }
+        double bitsPerKey = -Math.log(fpp) / (Math.log(2) * Math.log(2));
+        long blocks = Math.max(1, (long) Math.ceil(Math.max(1, keys) * bitsPerKey / BLOCK_BITS));
+        if (blocks * BLOCK_LONGS > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(String.format("Too many keys[%d] for a filter.", keys));
+        }
+        int hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitsPerKey * Math.log(2))));
+        return new BloomFilter(new long[(int) blocks * BLOCK_LONGS], hashes);
+    }
+
+    public void add(long hash) {
+        long mixed = IndexUtils.mix(hash);
+        int block = block(mixed) * BLOCK_LONGS;
+        long probe = IndexUtils.mix(mixed + 0x9E3779B97F4A7C15L);
+        int bit = (int) probe;
+        int step = (int) (probe >>> 32) | 1;
+        for (int i = 0; i < hashes; i++, bit += step) {
+            int index = bit & (BLOCK_BITS - 1);
+            bits[block + (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    /**
+     * @return false if {@code hash} is never added
+     */
+    public boolean mightContain(long hash) {
+        long mixed = IndexUtils.mix(hash);
+        int block = block(mixed) * BLOCK_LONGS;
+        long probe = IndexUtils.mix(mixed + 0x9E3779B97F4A7C15L);
+        int bit = (int) probe;
+        int step = (int) (probe >>> 32) | 1;
+        for (int i = 0; i < hashes; i++, bit += step) {
+            int index = bit & (BLOCK_BITS - 1);
+            if ((bits[block + (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return serialized bytes, including length field
+     */
+    public int getSize() {
+        return 4 + 1 + bits.length * Long.BYTES;
+    }
+
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer byteBuffer = ByteBuffer.allocate(getSize())
+            .putInt(getSize() - 4)
+            .put((byte) hashes);
+        byteBuffer.asLongBuffer().put(bits);
+        byteBuffer.position(byteBuffer.limit());
+        byteBuffer.flip();
+        return byteBuffer;
+    }
+
+    /**
+     * @param byteBuffer bytes after length field
+     */
+    public static BloomFilter fromByteBuffer(ByteBuffer byteBuffer) {
+        int hashes = byteBuffer.get();
+        long[] bits = new long[byteBuffer.remaining() / Long.BYTES];
+        byteBuffer.asLongBuffer().get(bits);
+        return new BloomFilter(bits, hashes);
+    }
+
+    private int block(long mixed) {
+        return (int) (((mixed >>> 32) * blocks) >>> 32);
+    }
+}
@@ -0,0 +1,125 @@
+package david.lu.indexing.utils;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * Concurrent histogram of non-negative values, for latencies in nanoseconds and sizes. Values are counted in
+ * log-linear buckets: values under {@link #SUB_BUCKETS} have their own bucket, each power of two above is split to
+ * {@link #SUB_BUCKETS} buckets, so a percentile is within 25% of the recorded value. Buckets are fixed at creation,
+ * recording a value doesn't allocate.
+ * </pre>
+ */
+public final class Histogram {
+    /**
+     * buckets per power of two
+     */
+    private final static int SUB_BUCKETS = 4;
+    private final static int BUCKETS = (63 - 1) * SUB_BUCKETS;
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param value negative value is counted as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts[bucket(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public void reset() {
+        for (LongAdder count : counts) {
+            count.reset();
+        }
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * @return counts of buckets summed at call, values recorded meanwhile may be partially counted
+     */
+    public Snapshot snapshot() {
+        long[] bucketCounts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketCounts[i] = counts[i].sum();
+            count += bucketCounts[i];
+        }
+        long maxValue = max.get();
+        return Snapshot.builder()
+            .count(count)
+            .mean(count == 0 ? 0 : (double) sum.sum() / count)
+            .p50(percentile(bucketCounts, count, 0.5, maxValue))
+            .p90(percentile(bucketCounts, count, 0.9, maxValue))
+            .p99(percentile(bucketCounts, count, 0.99, maxValue))
+            .max(maxValue)
+            .build();
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return (exponent - 1) * SUB_BUCKETS + (int) ((value >>> (exponent - 2)) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return the largest value of {@code bucket}
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2);
+        return lower + (1L << (exponent - 2)) - 1;
+    }
+
+    /**
+     * @return upper bound of the bucket of {@code quantile}, not above the max recorded value
+     */
+    private static long percentile(long[] bucketCounts, long count, double quantile, long maxValue) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * quantile);
+        long seen = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            seen += bucketCounts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * Counts of a histogram at a time, an open type of JMX by its getters
+     */
+    @Builder
+    @Getter
+    @ToString
+    public static class Snapshot {
+        private long count;
+        private double mean;
+        private long p50;
+        private long p90;
+        private long p99;
+        private long max;
+    }
+}
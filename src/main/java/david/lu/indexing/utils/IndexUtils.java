@@ -5,9 +5,15 @@ import david.lu.indexing.pojo.IndexNode;
 import david.lu.indexing.pojo.IndexTunnel;
 import lombok.NoArgsConstructor;
 
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.InputMismatchException;
 import java.util.List;
@@ -18,6 +24,15 @@ import static lombok.AccessLevel.NONE;
 public final class IndexUtils {
     public final static int DEFAULT_CAPACITY = 0xFF;
     public final static int DEFAULT_CHANNELS = 5;
+    /**
+     * domain of MBeans registered by {@link #registerMBean(Object, String, String)}
+     */
+    public final static String JMX_DOMAIN = "david.lu.indexing";
+    /**
+     * keys longer than this are encoded to one-off buffers by {@link #fingerprint(String)}
+     */
+    private final static int MAX_RETAINED_KEY = 1 << 12;
+    private final static ThreadLocal<byte[]> KEY_BYTES = ThreadLocal.withInitial(() -> new byte[1 << 8]);
     public static int getCapacity(int size) {
         if (size > (Integer.MAX_VALUE >> 1)) {
             return Integer.MAX_VALUE;
@@ -49,6 +64,12 @@ public final class IndexUtils {
                 time % 1000
         );
     }
+    /**
+     * @return MB per second of {@code bytes} in {@code time} ms
+     */
+    public static String formatThroughput(long bytes, long time) {
+        return String.format("%.2f", bytes * 1000.0 / (1 << 20) / Math.max(1, time));
+    }
     public static int formatToMillions(long value) {
         return (int) value / (1 << 21);
     }
@@ -75,25 +96,140 @@ public final class IndexUtils {
         return val;
     }
     public static long getNodeOffset(int index) {
+        return getNodeOffset(IndexHeader.SIZE, index);
+    }
+    public static long getNodeOffset(long firstNodeOffset, int index) {
         long offset = index;
         offset *= IndexNode.SIZE;
-        offset += IndexHeader.SIZE;
+        offset += firstNodeOffset;
         return offset;
     }
     public static long getFirstTunnelOffset(int capacity) {
+        return getFirstTunnelOffset(IndexHeader.SIZE, capacity);
+    }
+    public static long getFirstTunnelOffset(long firstNodeOffset, int capacity) {
         long firstTunnelOffset = capacity;
         firstTunnelOffset *= IndexNode.SIZE;
-        firstTunnelOffset += IndexHeader.SIZE;
+        firstTunnelOffset += firstNodeOffset;
         return firstTunnelOffset;
     }
 
     public static long getTunnelOffset(long firstTunnelIndex, long index) {
+        return getTunnelOffset(firstTunnelIndex, index, IndexTunnel.SIZE);
+    }
+    public static long getTunnelOffset(long firstTunnelIndex, long index, int tunnelSize) {
         long offset = index;
-        offset *= IndexTunnel.SIZE;
+        offset *= tunnelSize;
         offset += firstTunnelIndex;
         return offset;
     }
 
+    /**
+     * @return 64 bits fingerprint of key, xxHash64 of its UTF-8 bytes. Key is encoded to a per thread scratch buffer, so
+     * it doesn't allocate unless key is longer than {@link #MAX_RETAINED_KEY} chars
+     */
+    public static long fingerprint(String key) {
+        int length = key.length();
+        if (length > MAX_RETAINED_KEY) {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            return fingerprint(bytes, 0, bytes.length);
+        }
+        byte[] bytes = KEY_BYTES.get();
+        if (bytes.length < length * 3) {
+            bytes = new byte[Integer.highestOneBit(length * 3 - 1) << 1];
+            KEY_BYTES.set(bytes);
+        }
+        return fingerprint(bytes, 0, encodeUtf8(key, bytes));
+    }
+
+    /**
+     * Encode {@code key} as {@link String#getBytes(java.nio.charset.Charset)} of UTF-8, an unpaired surrogate is
+     * replaced by '?'
+     * @param bytes at least 3 bytes per char of key
+     * @return bytes encoded
+     */
+    private static int encodeUtf8(String key, byte[] bytes) {
+        int size = 0;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < 0x80) {
+                bytes[size++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[size++] = (byte) (0xC0 | c >> 6);
+                bytes[size++] = (byte) (0x80 | c & 0x3F);
+            } else if (!Character.isSurrogate(c)) {
+                bytes[size++] = (byte) (0xE0 | c >> 12);
+                bytes[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[size++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < key.length() && Character.isLowSurrogate(key.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, key.charAt(++i));
+                bytes[size++] = (byte) (0xF0 | codePoint >> 18);
+                bytes[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                bytes[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                bytes[size++] = (byte) (0x80 | codePoint & 0x3F);
+            } else {
+                bytes[size++] = '?';
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return 64 bits fingerprint of UTF-8 bytes of key
+     */
+    public static long fingerprint(byte[] data, int from, int length) {
+        return XXHash64.hash(data, from, length, 0);
+    }
+
+    /**
+     * finalizer of MurmurHash3, spreads 32 bits hashes to all bits
+     */
+    public static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * @param hash hash or fingerprint of key, as indexed
+     * @return shard owning key, from 0 to {@code shards} - 1. Hash is mixed first, so keys of a shard still spread
+     * over all buckets, which are taken from low bits of hash.
+     */
+    public static int getShard(long hash, int shards) {
+        return (int) (((hash * 0x9E3779B97F4A7C15L) >>> 32) % shards);
+    }
+
+    /**
+     * Register {@code bean} to platform MBean server as {@code david.lu.indexing:type=<type>,name="<name>"}
+     * @throws IllegalArgumentException if the name is taken
+     */
+    public static ObjectName registerMBean(Object bean, String type, String name) {
+        try {
+            ObjectName objectName = new ObjectName(String.format("%s:type=%s,name=%s", JMX_DOMAIN, type, ObjectName.quote(name)));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalArgumentException(String.format("Failed to register MBean[%s] of %s.", name, type), e);
+        }
+    }
+
+    /**
+     * Unregister MBean of {@code objectName} from platform MBean server, if it's registered
+     */
+    public static void unregisterMBean(ObjectName objectName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName);
+        } catch (InstanceNotFoundException e) {
+            // unregistered already
+        } catch (JMException e) {
+            throw new IllegalStateException(String.format("Failed to unregister MBean[%s].", objectName), e);
+        }
+    }
+
     public static ByteBuffer loadByteBuffer(FileChannel fileChannel, long offset, int size) throws IOException {
         ByteBuffer block = ByteBuffer.allocate(size);
         fileChannel.read(block, offset);
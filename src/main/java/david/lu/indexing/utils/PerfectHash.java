@@ -0,0 +1,118 @@
+package david.lu.indexing.utils;
+
+/**
+ * <pre>
+ * Minimal perfect hash of distinct 64 bits key hashes, by hash and displace (as CHD and PTHash):
+ *  1. keys are split to buckets of about {@link #BUCKET_KEYS} keys by {@link #bucket(long, int)}
+ *  2. from the largest bucket, a pilot is searched for each bucket, so all keys of the bucket go to free slots by
+ *     {@link #slot(long, int, int)}
+ * Each of n keys maps to exactly one of n slots. Lookup takes the pilot of its bucket, 4 bytes per bucket.
+ * </pre>
+ */
+public final class PerfectHash {
+    public final static int BUCKET_KEYS = 4;
+    /**
+     * give up a bucket after so many pilots, only happens to equal hashes
+     */
+    private final static int MAX_PILOT = 1 << 30;
+
+    private PerfectHash() {
+    }
+
+    /**
+     * @return buckets of pilots for {@code keys}
+     */
+    public static int getBuckets(int keys) {
+        return Math.max(1, (keys + BUCKET_KEYS - 1) / BUCKET_KEYS);
+    }
+
+    public static int bucket(long hash, int buckets) {
+        return reduce(IndexUtils.mix(hash), buckets);
+    }
+
+    public static int slot(long hash, int pilot, int slots) {
+        return reduce(IndexUtils.mix(hash ^ IndexUtils.mix(pilot + 0x9E3779B97F4A7C15L)), slots);
+    }
+
+    /**
+     * Search pilots of all buckets
+     * @param hashes distinct hashes, slots are [0, count)
+     * @param count keys in {@code hashes}
+     * @return pilot of each bucket, {@link #getBuckets(int)} of {@code count}
+     */
+    public static int[] build(long[] hashes, int count) {
+        int buckets = getBuckets(count);
+        // keys of bucket b are sorted[starts[b], starts[b + 1])
+        int[] starts = new int[buckets + 1];
+        for (int i = 0; i < count; i++) {
+            starts[bucket(hashes[i], buckets) + 1]++;
+        }
+        int maxBucketKeys = 0;
+        for (int b = 0; b < buckets; b++) {
+            maxBucketKeys = Math.max(maxBucketKeys, starts[b + 1]);
+            starts[b + 1] += starts[b];
+        }
+        long[] sorted = new long[count];
+        int[] positions = new int[buckets];
+        for (int i = 0; i < count; i++) {
+            int b = bucket(hashes[i], buckets);
+            sorted[starts[b] + positions[b]++] = hashes[i];
+        }
+        // buckets ordered by size descending, by counting sort
+        int[] sizeStarts = new int[maxBucketKeys + 2];
+        for (int b = 0; b < buckets; b++) {
+            sizeStarts[maxBucketKeys - (starts[b + 1] - starts[b]) + 1]++;
+        }
+        for (int s = 0; s <= maxBucketKeys; s++) {
+            sizeStarts[s + 1] += sizeStarts[s];
+        }
+        int[] order = new int[buckets];
+        for (int b = 0; b < buckets; b++) {
+            order[sizeStarts[maxBucketKeys - (starts[b + 1] - starts[b])]++] = b;
+        }
+
+        int[] pilots = new int[buckets];
+        long[] taken = new long[(count + Long.SIZE - 1) / Long.SIZE];
+        int[] slots = new int[maxBucketKeys];
+        for (int b : order) {
+            int from = starts[b];
+            int size = starts[b + 1] - from;
+            if (size == 0) {
+                break;
+            }
+            int pilot = 0;
+            while (!place(sorted, from, size, pilot, count, taken, slots)) {
+                if (++pilot == MAX_PILOT) {
+                    throw new IllegalArgumentException("No pilot for bucket " + b + ", hashes are not distinct.");
+                }
+            }
+            pilots[b] = pilot;
+        }
+        return pilots;
+    }
+
+    /**
+     * Take slots of keys of a bucket if they are all free and distinct by {@code pilot}
+     */
+    private static boolean place(long[] sorted, int from, int size, int pilot, int count, long[] taken, int[] slots) {
+        for (int i = 0; i < size; i++) {
+            int slot = slot(sorted[from + i], pilot, count);
+            if ((taken[slot >>> 6] & (1L << slot)) != 0) {
+                for (int j = 0; j < i; j++) {
+                    taken[slots[j] >>> 6] &= ~(1L << slots[j]);
+                }
+                return false;
+            }
+            taken[slot >>> 6] |= 1L << slot;
+            slots[i] = slot;
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code hash} mapped to [0, range) by its high 32 bits
+     */
+    private static int reduce(long hash, int range) {
+        return (int) (((hash >>> 32) * range) >>> 32);
+    }
+}
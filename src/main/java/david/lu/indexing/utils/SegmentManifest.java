@@ -0,0 +1,66 @@
+package david.lu.indexing.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <pre>
+ * Segments of an incrementally built index, listed by a text file next to the index, {@link #SUFFIX} appended to path
+ * of the index. One file name of a segment per line, oldest first, relative to directory of the manifest. Each
+ * segment indexes the source range after the previous one, see
+ * {@link david.lu.indexing.pojo.IndexHeader#SEGMENT_FLAG}. Manifest is replaced by a rename, so readers never see a
+ * partial one.
+ * </pre>
+ */
+public final class SegmentManifest {
+    public final static String SUFFIX = ".segments";
+
+    private SegmentManifest() {
+    }
+
+    /**
+     * @return manifest of index at {@code indexFilePath}
+     */
+    public static File of(String indexFilePath) {
+        return new File(indexFilePath + SUFFIX);
+    }
+
+    /**
+     * @return segments oldest first, empty if manifest doesn't exist
+     */
+    public static List<File> read(File manifest) throws IOException {
+        List<File> segments = new ArrayList<>();
+        if (!manifest.exists()) {
+            return segments;
+        }
+        for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                segments.add(new File(manifest.getAbsoluteFile().getParentFile(), line.trim()));
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Replace manifest by {@code segments}, oldest first, which must be in directory of the manifest
+     */
+    public static void write(File manifest, List<File> segments) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (File segment : segments) {
+            content.append(segment.getName()).append('\n');
+        }
+        File temp = new File(manifest.getPath() + ".tmp");
+        Files.write(temp.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(temp.toPath(), manifest.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package david.lu.indexing.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <pre>
+ * Shards of an index split by hash of keys, listed by a text file next to the index, {@link #SUFFIX} appended to path
+ * of the index. One path of a shard file per line, in order of shard, see {@link IndexUtils#getShard(long, int)}.
+ * Shard files in directory of the manifest are listed by name, others by absolute path, so shards may be spread over
+ * disks. Manifest is replaced by a rename, so readers never see a partial one.
+ * </pre>
+ */
+public final class ShardManifest {
+    public final static String SUFFIX = ".shards";
+
+    private ShardManifest() {
+    }
+
+    /**
+     * @return manifest of index at {@code indexFilePath}
+     */
+    public static File of(String indexFilePath) {
+        return new File(indexFilePath + SUFFIX);
+    }
+
+    /**
+     * @return shard files in order of shard, empty if manifest doesn't exist
+     */
+    public static List<File> read(File manifest) throws IOException {
+        List<File> shards = new ArrayList<>();
+        if (!manifest.exists()) {
+            return shards;
+        }
+        for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                File shard = new File(line.trim());
+                shards.add(shard.isAbsolute() ? shard : new File(manifest.getAbsoluteFile().getParentFile(), line.trim()));
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Replace manifest by {@code shards}, in order of shard
+     */
+    public static void write(File manifest, List<File> shards) throws IOException {
+        File directory = manifest.getAbsoluteFile().getParentFile();
+        StringBuilder content = new StringBuilder();
+        for (File shard : shards) {
+            File absolute = shard.getAbsoluteFile();
+            content.append(directory.equals(absolute.getParentFile()) ? absolute.getName() : absolute.getPath()).append('\n');
+        }
+        File temp = new File(manifest.getPath() + ".tmp");
+        Files.write(temp.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(temp.toPath(), manifest.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package david.lu.indexing.utils;
+
+import lombok.NoArgsConstructor;
+
+import static lombok.AccessLevel.NONE;
+
+/**
+ * Pure java xxHash64, see https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md
+ */
+@NoArgsConstructor(access = NONE)
+public final class XXHash64 {
+    private final static long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private final static long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private final static long PRIME64_3 = 0x165667B19E3779F9L;
+    private final static long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private final static long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    public static long hash(byte[] data, int from, int length, long seed) {
+        int end = from + length;
+        int index = from;
+        long hash;
+        if (length >= 32) {
+            long v1 = seed + PRIME64_1 + PRIME64_2;
+            long v2 = seed + PRIME64_2;
+            long v3 = seed;
+            long v4 = seed - PRIME64_1;
+            for (; index + 32 <= end; index += 32) {
+                v1 = round(v1, getLong(data, index));
+                v2 = round(v2, getLong(data, index + 8));
+                v3 = round(v3, getLong(data, index + 16));
+                v4 = round(v4, getLong(data, index + 24));
+            }
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = seed + PRIME64_5;
+        }
+        hash += length;
+        for (; index + 8 <= end; index += 8) {
+            hash ^= round(0, getLong(data, index));
+            hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+        }
+        if (index + 4 <= end) {
+            hash ^= (getInt(data, index) & 0xFFFFFFFFL) * PRIME64_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+            index += 4;
+        }
+        for (; index < end; index++) {
+            hash ^= (data[index] & 0xFFL) * PRIME64_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+        }
+        hash ^= hash >>> 33;
+        hash *= PRIME64_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME64_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME64_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME64_1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME64_1 + PRIME64_4;
+    }
+
+    private static long getLong(byte[] data, int index) {
+        return (data[index] & 0xFFL)
+            | (data[index + 1] & 0xFFL) << 8
+            | (data[index + 2] & 0xFFL) << 16
+            | (data[index + 3] & 0xFFL) << 24
+            | (data[index + 4] & 0xFFL) << 32
+            | (data[index + 5] & 0xFFL) << 40
+            | (data[index + 6] & 0xFFL) << 48
+            | (data[index + 7] & 0xFFL) << 56;
+    }
+
+    private static int getInt(byte[] data, int index) {
+        return (data[index] & 0xFF)
+            | (data[index + 1] & 0xFF) << 8
+            | (data[index + 2] & 0xFF) << 16
+            | (data[index + 3] & 0xFF) << 24;
+    }
+}
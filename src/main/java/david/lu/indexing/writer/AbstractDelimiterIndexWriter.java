@@ -3,41 +3,44 @@ package david.lu.indexing.writer;
 import io.vavr.Tuple;
 import io.vavr.Tuple2;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
 
+import static david.lu.indexing.writer.DelimiterScanner.DEFAULT_CHUNK_SIZE;
+
+/**
+ * Index items split by delimiters. With {@link IndexWriterConfig#isSegment()}, the last item is indexed only if it ends
+ * with a delimiter, so an item being appended is left to the next segment, which starts after the last delimiter.
+ */
 public abstract class AbstractDelimiterIndexWriter extends AbstractIndexWriter {
 
-    private final Set<Integer> delimiters;
+    private final DelimiterScanner scanner;
+    // last item without delimiter is not indexed
+    private final boolean segment;
 
-    protected AbstractDelimiterIndexWriter(int size, String sourceFilePath, String indexFilePath, char[] delimiters) throws IOException {
-        super(size, sourceFilePath, indexFilePath);
-        this.delimiters = new HashSet<>();
-        for (char delimiter : delimiters) {
-            this.delimiters.add((int) delimiter);
-        }
+    protected AbstractDelimiterIndexWriter(int size, String sourceFilePath, String indexFilePath, char[] delimiters, IndexWriterConfig config) throws IOException {
+        super(size, sourceFilePath, indexFilePath, config);
+        this.scanner = new DelimiterScanner(sourceChannel(), offset, delimiters, DEFAULT_CHUNK_SIZE);
+        this.segment = config.isSegment();
     }
 
     @Override
     protected Tuple2<Long, byte[]> nextItem() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        int bt;
-        long start = offset;
-        while ((bt = sourceInput.read()) != -1) {
-            offset++;
-            if (delimiters.contains(bt)) {
-                if (buffer.size() == 0) {
-                    // skip empty item
-                    start = offset;
-                } else {
-                    break;
-                }
-            } else {
-                buffer.write(bt);
-            }
+        if (!scanner.next() || segment && !scanner.terminated()) {
+            return null;
+        }
+        offset = scanner.position();
+        int from = scanner.from();
+        return Tuple.of(scanner.offset(), Arrays.copyOfRange(scanner.array(), from, from + scanner.length()));
+    }
+
+    @Override
+    protected boolean nextItem(SourceItem item) throws IOException {
+        if (!scanner.next() || segment && !scanner.terminated()) {
+            return false;
         }
-        return buffer.size() == 0 ? null : Tuple.of(start, buffer.toByteArray());
+        offset = scanner.position();
+        item.set(scanner.offset(), scanner.array(), scanner.from(), scanner.length());
+        return true;
     }
 }
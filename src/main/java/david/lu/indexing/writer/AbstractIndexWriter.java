@@ -1,6 +1,9 @@
 package david.lu.indexing.writer;
 
-import david.lu.indexing.pojo.IndexNode;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.pojo.IndexSortedKeys;
 import david.lu.indexing.pojo.IndexTunnel;
 import io.vavr.Tuple2;
 import lombok.extern.slf4j.Slf4j;
@@ -10,148 +13,728 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
-import static david.lu.indexing.utils.IndexUtils.appendTunnel;
-import static david.lu.indexing.utils.IndexUtils.byteToByteBuffer;
+import static david.lu.indexing.utils.IndexUtils.formatThroughput;
 import static david.lu.indexing.utils.IndexUtils.formatTime;
 import static david.lu.indexing.utils.IndexUtils.formatToMillions;
 import static david.lu.indexing.utils.IndexUtils.getCapacity;
-import static david.lu.indexing.utils.IndexUtils.getFirstTunnelOffset;
-import static david.lu.indexing.utils.IndexUtils.getNodeOffset;
-import static david.lu.indexing.utils.IndexUtils.getTunnelOffset;
-import static david.lu.indexing.utils.IndexUtils.intToByte;
-import static david.lu.indexing.utils.IndexUtils.intToByteBuffer;
-import static david.lu.indexing.utils.IndexUtils.longToByteBuffer;
-import static java.util.Collections.sort;
-import static java.util.Comparator.comparing;
+import static david.lu.indexing.utils.IndexUtils.getIndex;
+import static david.lu.indexing.utils.IndexUtils.getShard;
 
 @Slf4j
 public abstract class AbstractIndexWriter {
     private final static int BLOCK = 4096;
+    /**
+     * items queued to workers at a time, see {@link #scanInParallel(Output[])}
+     */
+    private final static int BATCH_ITEMS = 1024;
     private final int capacity;
     private final FileChannel indexFileChannel;
+    private final IndexWriterConfig config;
+    // null without IndexWriterConfig#getBlockSourceFile()
+    private SourceBlockWriter sourceBlocks;
+    private final File sortedFile;
+    private final String sourceFilePath;
+    // throttle of source reads, null if not limited
+    private final RateLimiter rateLimiter;
+    private final FileInputStream sourceFileInput;
     protected final InputStream sourceInput;
+    // source offset after the last item read, maintained by subclass
     protected long offset;
+    // null if not measured
+    private final WriterMetricsListener listener;
 
     /**
      * @param size Estimate record count
      * @param sourceFilePath
      * @param indexFilePath
+     * @param config
      * @throws IOException
      */
-    AbstractIndexWriter(int size, String sourceFilePath, String indexFilePath) throws IOException {
+    AbstractIndexWriter(int size, String sourceFilePath, String indexFilePath, IndexWriterConfig config) throws IOException {
+        if (config.getVersion() != IndexHeader.LEGACY_VERSION && config.getVersion() != IndexHeader.FINGERPRINT_VERSION
+            && config.getVersion() != IndexHeader.PERFECT_HASH_VERSION) {
+            throw new IllegalArgumentException("Unsupported index version: " + config.getVersion());
+        }
+        if (config.getVersion() == IndexHeader.LEGACY_VERSION && config.getHashFunction() == null) {
+            throw new IllegalArgumentException("Hash function is required by legacy index version.");
+        }
+        if (config.getVersion() != IndexHeader.LEGACY_VERSION && config.getFingerprintFunction() == null) {
+            throw new IllegalArgumentException("Fingerprint function is required by index version " + config.getVersion());
+        }
+        if (!config.getSortedNamespaces().isEmpty() && config.getSortKeyFunction() == null) {
+            throw new IllegalArgumentException("Sort key function is required by sorted namespaces: " + config.getSortedNamespaces());
+        }
+        if (config.isRecordTable() && config.getVersion() == IndexHeader.LEGACY_VERSION) {
+            throw new IllegalArgumentException("Record table is not supported by legacy index version.");
+        }
+        if (config.getSourceStart() < 0 || config.getSourceEnd() < config.getSourceStart()) {
+            throw new IllegalArgumentException(
+                String.format("Invalid source range [%d, %d).", config.getSourceStart(), config.getSourceEnd())
+            );
+        }
+        if (config.isSegment() && config.getBlockSourceFile() != null) {
+            throw new IllegalArgumentException("Source blocks are not supported by segments.");
+        }
+        if (config.getShards() < 1 || config.getShard() < 0 || config.getShard() >= config.getShards()) {
+            throw new IllegalArgumentException(String.format("Invalid shard %d of %d.", config.getShard(), config.getShards()));
+        }
+        if (new HashSet<>(config.getNamespaces()).size() < config.getNamespaces().size()) {
+            throw new IllegalArgumentException("Duplicated namespaces: " + config.getNamespaces());
+        }
+        if (new HashSet<>(config.getSortedNamespaces()).size() < config.getSortedNamespaces().size()) {
+            throw new IllegalArgumentException("Duplicated sorted namespaces: " + config.getSortedNamespaces());
+        }
         File indexFile = new File(indexFilePath);
         indexFile.getParentFile().mkdirs();
         this.capacity = getCapacity(size);
-        this.sourceInput = new BufferedInputStream(new FileInputStream(sourceFilePath), BLOCK);
+        if (config.getNamespaces().size() * (capacity + 1L) - 1 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many namespaces for size: " + size);
+        }
+        this.config = config;
+        this.listener = config.getMetricsListener();
+        this.rateLimiter = config.getMaxBytesPerSecond() > 0 ? RateLimiter.create(config.getMaxBytesPerSecond()) : null;
+        this.sourceFilePath = sourceFilePath;
+        this.sourceFileInput = new FileInputStream(sourceFilePath);
+        // subclass starts reading at sourceStart
+        sourceFileInput.getChannel().position(config.getSourceStart());
+        this.offset = config.getSourceStart();
+        this.sourceInput = new BufferedInputStream(sourceFileInput, BLOCK);
         this.indexFileChannel = new RandomAccessFile(indexFilePath, "rw").getChannel();
+        this.sortedFile = new File(indexFilePath + IndexSortedKeys.SUFFIX);
     }
 
     public void process() throws IOException {
+        process(new Output[]{new Output(config.getShard(), indexFileChannel, sortedFile)});
+    }
+
+    /**
+     * Index all {@link IndexWriterConfig#getShards()} in one scan of source, each item is hashed once and its keys are
+     * routed to their shard, then shards are emitted in parallel, see {@link ShardedIndexWriter}. Index file of this
+     * writer is the one of {@link IndexWriterConfig#getShard()}.
+     * @param shardFilePaths index file of each shard, in order of shard
+     */
+    void processShards(List<String> shardFilePaths) throws IOException {
+        if (shardFilePaths.size() != config.getShards()) {
+            throw new IllegalArgumentException(
+                String.format("%d index files for %d shards.", shardFilePaths.size(), config.getShards())
+            );
+        }
+        Output[] outputs = new Output[config.getShards()];
+        try {
+            for (int i = 0; i < outputs.length; i++) {
+                if (i == config.getShard()) {
+                    outputs[i] = new Output(i, indexFileChannel, sortedFile);
+                } else {
+                    File indexFile = new File(shardFilePaths.get(i));
+                    indexFile.getAbsoluteFile().getParentFile().mkdirs();
+                    outputs[i] = new Output(
+                        i,
+                        new RandomAccessFile(indexFile, "rw").getChannel(),
+                        new File(indexFile.getPath() + IndexSortedKeys.SUFFIX)
+                    );
+                }
+            }
+        } catch (IOException e) {
+            for (Output output : outputs) {
+                if (output != null) {
+                    output.indexFileChannel.close();
+                }
+            }
+            indexFileChannel.close();
+            sourceInput.close();
+            throw e;
+        }
+        process(outputs);
+    }
+
+    private void process(Output[] outputs) throws IOException {
         log.debug("==================== Starting index process... ====================");
         long indexStartTime = System.currentTimeMillis();
+        long scanStartNanos = System.nanoTime();
         log.debug("Index started @ {}", indexStartTime);
-        // processed items
-        long processed = 0l;
-        // max collision
-        int maxCollision = 0;
-        List<IndexTunnel>[] tunnelLists = new ArrayList[capacity];
-        IndexTunnel[] itemIndexes = nextItemIndexes();
-        while (itemIndexes != null) {
-            processed ++;
-            if (processed % 0x10000 == 0) {
-                System.gc();
-                log.debug(
-                    "{} items indexed.",
-                    processed
+        try {
+            for (Output output : outputs) {
+                output.open(config.getMemoryBudget() / outputs.length);
+            }
+            if (config.getBlockSourceFile() != null) {
+                sourceBlocks = new SourceBlockWriter(
+                    sourceFilePath,
+                    config.getBlockSourceFile(),
+                    config.getSourceStart(),
+                    config.getSourceBlockSize(),
+                    config.getSourceBlockLevel()
                 );
+            }
+            // processed items
+            long processed = config.getThreads() > 1
+                ? scanInParallel(outputs)
+                : scan(outputs);
+            if (listener != null) {
+                listener.scanned(processed, System.nanoTime() - scanStartNanos);
+            }
+            long indexCompleteTime = System.currentTimeMillis();
+            log.debug(
+                "Index completed @ {}, time cost is {}",
+                indexCompleteTime,
+                formatTime(indexCompleteTime - indexStartTime)
+            );
+            log.debug("Node capacity: {}", capacity);
+            log.debug("Threads: {}", config.getThreads());
+            log.debug("{} items processed.", processed);
+            if (sourceBlocks != null) {
+                long sourceEnd = Math.min(offset, config.getSourceEnd());
+                long compressed = sourceBlocks.finish(sourceEnd);
                 log.debug(
-                    "Memory - max: {} M, total: {} M, free: {} M",
-                    formatToMillions(Runtime.getRuntime().maxMemory()),
-                    formatToMillions(Runtime.getRuntime().totalMemory()),
-                    formatToMillions(Runtime.getRuntime().freeMemory())
+                    "{} bytes of source compressed to {} blocks, {} bytes.",
+                    sourceEnd - config.getSourceStart(),
+                    sourceBlocks.getBlocks(),
+                    compressed
                 );
             }
-            for (IndexTunnel itemIndex : itemIndexes) {
-                maxCollision = Math.max(maxCollision, appendTunnel(tunnelLists, itemIndex, capacity));
+            log.debug("==================== Index process finished ====================\n");
+
+            if (outputs.length == 1) {
+                dump(outputs[0], processed);
+            } else {
+                dumpInParallel(outputs, processed);
+            }
+        } finally {
+            for (Output output : outputs) {
+                output.close();
             }
-            itemIndexes = nextItemIndexes();
+            if (sourceBlocks != null) {
+                sourceBlocks.close();
+            }
+            sourceInput.close();
         }
-        long indexCompleteTime = System.currentTimeMillis();
-        log.debug(
-            "Index completed @ {}, time cost is {}",
-            indexCompleteTime,
-            formatTime(indexCompleteTime - indexStartTime)
+        log.debug("==================== Indexing file created ====================\n");
+
+    }
+
+    /**
+     * Emit each shard in a thread of its own
+     */
+    private void dumpInParallel(Output[] outputs, long processed) throws IOException {
+        ExecutorService emitters = Executors.newFixedThreadPool(
+            outputs.length,
+            new ThreadFactoryBuilder().setNameFormat("shard-writer-%d").setDaemon(true).build()
         );
-        log.debug("Node capacity: {}", capacity);
-        log.debug("{} items processed.", processed);
-        log.debug("Max stack size: {}", maxCollision);
-        log.debug("==================== Index process finished ====================\n");
+        try {
+            List<Future<?>> futures = new ArrayList<>(outputs.length);
+            for (Output output : outputs) {
+                futures.add(emitters.submit((Callable<Void>) () -> {
+                    dump(output, processed);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                await(future);
+            }
+        } finally {
+            emitters.shutdownNow();
+        }
+    }
 
+    /**
+     * Merge tunnels of {@code output} to its index file, then append its record table, inlined records and sorted keys
+     */
+    private void dump(Output output, long processed) throws IOException {
         log.debug("==================== Starting generating index file... ====================");
-        // indexed items
-        int indexed = 0;
-        long firstTunnelIndex = getFirstTunnelOffset(capacity);
-
+        if (config.getShards() > 1) {
+            log.debug("Shard {} of {}.", output.shard, config.getShards());
+        }
+        log.debug("{} runs spilled.", output.spills.size());
         long dumpStartTime = System.currentTimeMillis();
-        indexFileChannel.write(longToByteBuffer(processed), 8);
-        indexFileChannel.write(intToByteBuffer(capacity), 16);
-        indexFileChannel.write(byteToByteBuffer(intToByte(maxCollision)), 20);
-        for (int i = 0; i< tunnelLists.length; i++) {
-            List<IndexTunnel> tunnels = tunnelLists[i];
-            if (tunnels != null) {
-                sort(tunnels, comparing(IndexTunnel::getHash));
-                int collision = tunnels.size();
-                IndexNode node = IndexNode.builder()
-                    .offset(indexed)
-                    .collision(intToByte(collision))
-                    .build();
-                indexFileChannel.write(node.toByteBuffer(), getNodeOffset(i));
-
-                for (IndexTunnel tunnel : tunnels) {
-                    indexFileChannel.write(tunnel.toByteBuffer(), getTunnelOffset(firstTunnelIndex, indexed));
-                    indexed++;
-                }
-            }
+        long dumpStartNanos = System.nanoTime();
+        List<TunnelRun> runs = new ArrayList<>();
+        for (File spill : output.spills) {
+            runs.add(TunnelBuffer.run(spill));
+        }
+        for (TunnelBuffer tunnelBuffer : output.tunnelBuffers) {
+            runs.add(tunnelBuffer.run());
+        }
+        IndexFileEmitter emitter = new IndexFileEmitter(
+            output.indexFileChannel,
+            capacity,
+            IndexHeader.builder()
+                .version(config.getVersion())
+                .inlined(output.payload != null)
+                .recordTable(output.records != null)
+                .segment(config.isSegment())
+                .build(),
+            config.getFilterFpp(),
+            output.memoryBudget
+        );
+        long[] sectionKeys = new long[output.keys.length];
+        for (int i = 0; i < output.keys.length; i++) {
+            sectionKeys[i] = output.keys[i].sum();
+        }
+        long written;
+        if (config.getNamespaces().isEmpty()) {
+            emitter.start(0, sectionKeys[0]);
+            TunnelMerger.merge(runs, emitter);
+            written = emitter.finish(processed);
+        } else {
+            SectionedIndexEmitter sectionedEmitter = new SectionedIndexEmitter(
+                emitter,
+                config.getNamespaces(),
+                sectionKeys
+            );
+            TunnelMerger.merge(runs, sectionedEmitter);
+            written = sectionedEmitter.finish(processed);
+        }
+        // offsets of record table and payload region, then source range of segment
+        ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES * 4);
+        if (output.records != null) {
+            trailer.putLong(written);
+            written = output.records.write(emitter, written);
+            log.debug("{} records in record table, {} bytes.", output.records.getRecords(), written - trailer.getLong(0));
+        }
+        if (output.payload != null) {
+            trailer.putLong(written);
+            written = output.payload.copyTo(output.indexFileChannel, written);
+            log.debug("{} bytes of records inlined.", output.payload.size());
+        }
+        if (config.isSegment()) {
+            // offset is after the last item read, which is not indexed if it starts at sourceEnd
+            long sourceEnd = Math.min(offset, config.getSourceEnd());
+            trailer.putLong(config.getSourceStart()).putLong(sourceEnd);
+            log.debug("Source range [{}, {}) indexed.", config.getSourceStart(), sourceEnd);
+        }
+        trailer.flip();
+        int trailerSize = trailer.remaining();
+        emitter.write(trailer, written);
+        written += trailerSize;
+        output.indexFileChannel.truncate(written);
+        if (output.sortedKeys != null) {
+            long sorted = output.sortedKeys.write(output.sortedFile, config.getSortedNamespaces());
+            log.debug("{} sorted keys, {} bytes written.", sorted, output.sortedFile.length());
         }
         long dumpCompleteTime = System.currentTimeMillis();
-        indexFileChannel.write(longToByteBuffer(dumpCompleteTime), 0);
+        if (listener != null) {
+            listener.dumped(emitter.getIndexed(), written, System.nanoTime() - dumpStartNanos);
+            listener.bucketSizes(emitter.getBucketSizes());
+        }
+        log.debug("Max stack size: {}", emitter.getMaxCollision());
         log.debug("Indexing completed time: {}", dumpCompleteTime);
         log.debug(
                 "{} items indexed in {}.",
                 processed,
                 formatTime(dumpCompleteTime - dumpStartTime)
         );
-        indexFileChannel.close();
-        log.debug("==================== Indexing file created ====================\n");
+        log.debug(
+            "{} tunnels, {} bytes written, {} MB/s.",
+            emitter.getIndexed(),
+            written,
+            formatThroughput(written, dumpCompleteTime - dumpStartTime)
+        );
+    }
+
+    /**
+     * Read and hash items in current thread
+     * @return processed items
+     */
+    private long scan(Output[] outputs) throws IOException {
+        TunnelBuffer[] tunnelBuffers = tunnelBuffers(outputs, config.getMemoryBudget());
+        long processed = 0l;
+        SourceItem item = new SourceItem();
+        while (nextItem(item) && accept(item)) {
+            sequence(outputs, item, processed);
+            logProgress(++processed);
+            append(outputs, tunnelBuffers, item);
+        }
+        return processed;
+    }
 
+    /**
+     * <pre>
+     * Read items in current thread, hash them in {@link IndexWriterConfig#getThreads()} workers:
+     *  1. current thread reads items by {@link #nextItem(SourceItem)} and queues copies of them by batch of
+     *     {@link #BATCH_ITEMS}
+     *  2. each worker hashes items to its own {@link TunnelBuffer} of each shard, sharing the memory budget
+     *  3. buffers and their spilled runs are merged by dump phase
+     * </pre>
+     * @return processed items
+     */
+    private long scanInParallel(Output[] outputs) throws IOException {
+        int threads = config.getThreads();
+        BlockingQueue<List<SourceItem>> queue = new ArrayBlockingQueue<>(threads * 2);
+        ExecutorService workers = Executors.newFixedThreadPool(
+            threads,
+            new ThreadFactoryBuilder().setNameFormat("index-writer-%d").setDaemon(true).build()
+        );
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                TunnelBuffer[] tunnelBuffers = tunnelBuffers(outputs, config.getMemoryBudget() / threads);
+                futures.add(workers.submit((Callable<Void>) () -> {
+                    List<SourceItem> batch = queue.take();
+                    // empty batch is the end of items
+                    while (!batch.isEmpty()) {
+                        for (SourceItem item : batch) {
+                            append(outputs, tunnelBuffers, item);
+                        }
+                        batch = queue.take();
+                    }
+                    return null;
+                }));
+            }
+            long processed = 0l;
+            List<SourceItem> batch = new ArrayList<>(BATCH_ITEMS);
+            SourceItem item = new SourceItem();
+            while (nextItem(item) && accept(item)) {
+                sequence(outputs, item, processed);
+                logProgress(++processed);
+                batch.add(item.copy());
+                if (batch.size() == BATCH_ITEMS) {
+                    enqueue(queue, batch, futures);
+                    batch = new ArrayList<>(BATCH_ITEMS);
+                }
+            }
+            if (!batch.isEmpty()) {
+                enqueue(queue, batch, futures);
+            }
+            for (int i = 0; i < threads; i++) {
+                enqueue(queue, Collections.emptyList(), futures);
+            }
+            for (Future<?> future : futures) {
+                await(future);
+            }
+            return processed;
+        } finally {
+            workers.shutdownNow();
+        }
     }
 
-    private IndexTunnel[] nextItemIndexes() throws IOException {
-        Tuple2<Long, byte[]> item = nextItem();
-        if (item == null) {
-            return null;
+    /**
+     * @param memoryBudget bytes shared by buffers of all shards
+     * @return a new buffer of each shard, by shard
+     */
+    private static TunnelBuffer[] tunnelBuffers(Output[] outputs, long memoryBudget) {
+        TunnelBuffer[] tunnelBuffers = new TunnelBuffer[outputs.length];
+        for (int i = 0; i < outputs.length; i++) {
+            tunnelBuffers[i] = new TunnelBuffer(memoryBudget / outputs.length);
+            outputs[i].tunnelBuffers.add(tunnelBuffers[i]);
         }
-        long start = item._1();
-        byte[] data = item._2();
-        int length = data.length;
-        int[] hashes = hash(data);
-        IndexTunnel[] indexTunnels = new IndexTunnel[hashes.length];
-        for (int i = 0; i < hashes.length; i++) {
-            indexTunnels[i] = IndexTunnel.builder()
-                .offset(start)
-                .length(length)
-                .hash(hashes[i])
-                .build();
+        return tunnelBuffers;
+    }
+
+    /**
+     * Queue a batch, fail fast if any worker failed while waiting for space.
+     */
+    private void enqueue(BlockingQueue<List<SourceItem>> queue, List<SourceItem> batch, List<Future<?>> futures) throws IOException {
+        try {
+            while (!queue.offer(batch, 1, TimeUnit.SECONDS)) {
+                for (Future<?> future : futures) {
+                    if (future.isDone()) {
+                        await(future);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Index process interrupted.");
         }
-        return indexTunnels;
+    }
+
+    private void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Index process interrupted.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Index worker failed.", e.getCause());
+        }
+    }
+
+    /**
+     * Check item against {@link IndexWriterConfig#getSourceEnd()} and wait for its bytes by
+     * {@link IndexWriterConfig#getMaxBytesPerSecond()}, in scanning thread, which also cuts compressed blocks of source
+     * at the end of item
+     * @return false if item is after source range, so scanning stops
+     */
+    private boolean accept(SourceItem item) throws IOException {
+        if (item.getOffset() >= config.getSourceEnd()) {
+            return false;
+        }
+        if (rateLimiter != null && item.getLength() > 0) {
+            rateLimiter.acquire(item.getLength());
+        }
+        if (sourceBlocks != null) {
+            sourceBlocks.add(item.getOffset() + item.getLength());
+        }
+        return true;
+    }
+
+    /**
+     * Set id of item in scanning thread, in order of source
+     */
+    private void sequence(Output[] outputs, SourceItem item, long id) {
+        item.id(id);
+        for (Output output : outputs) {
+            if (output.records != null) {
+                output.records.reserve(id);
+            }
+        }
+    }
+
+    /**
+     * Hash item once, then append its keys to buffers of their shards
+     */
+    private void append(Output[] outputs, TunnelBuffer[] tunnelBuffers, SourceItem item) throws IOException {
+        long hashStartNanos = listener == null ? 0 : System.nanoTime();
+        long[] hashes;
+        if (config.getVersion() == IndexHeader.LEGACY_VERSION) {
+            int[] legacyHashes = config.getHashFunction().apply(item.getData(), item.getFrom(), item.getLength());
+            hashes = new long[legacyHashes.length];
+            for (int i = 0; i < legacyHashes.length; i++) {
+                hashes[i] = legacyHashes[i];
+            }
+        } else {
+            hashes = config.getFingerprintFunction().apply(item.getData(), item.getFrom(), item.getLength());
+        }
+        if (listener != null) {
+            listener.itemHashed(System.nanoTime() - hashStartNanos);
+        }
+        String[] itemKeys = null;
+        if (!config.getSortedNamespaces().isEmpty()) {
+            itemKeys = config.getSortKeyFunction().apply(item.getData(), item.getFrom(), item.getLength());
+            if (itemKeys.length > config.getSortedNamespaces().size()) {
+                throw new IllegalStateException(
+                    String.format("%d sort keys for sorted namespaces %s.", itemKeys.length, config.getSortedNamespaces())
+                );
+            }
+        }
+        for (int s = 0; s < outputs.length; s++) {
+            Output output = outputs[s];
+            boolean owned = false;
+            for (long hash : hashes) {
+                owned |= owns(output, hash);
+            }
+            long start = item.getOffset();
+            int length = item.getLength();
+            // records of other shards are not inlined, record table keeps them so ids stay in order of source
+            if (output.payload != null && owned) {
+                ByteBuffer projection = project(item.getData(), item.getFrom(), length);
+                if (projection != null && projection.remaining() <= config.getInlineThreshold()) {
+                    length = projection.remaining();
+                    start = IndexTunnel.INLINE_BIT | output.payload.append(projection);
+                }
+            }
+            if (output.records != null) {
+                output.records.set(item.getId(), start, length);
+                start = item.getId();
+                length = 0;
+            }
+            // sort keys of item are kept by the shard of its first key only, readers merge shards
+            if (output.sortedKeys != null && owns(output, hashes.length == 0 ? 0 : hashes[0])) {
+                for (int i = 0; i < itemKeys.length; i++) {
+                    if (itemKeys[i] != null) {
+                        output.sortedKeys.add(i, itemKeys[i], item.getOffset(), item.getLength());
+                    }
+                }
+            }
+            for (int i = 0; i < hashes.length; i++) {
+                if (owns(output, hashes[i])) {
+                    append(output, tunnelBuffers[s], slot(output, i, (int) hashes[i], hashes.length), hashes[i], start, length);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether key of {@code hash} belongs to shard of {@code output}
+     */
+    private boolean owns(Output output, long hash) {
+        return config.getShards() == 1 || getShard(hash, config.getShards()) == output.shard;
+    }
+
+    /**
+     * @param key index of key in hashes of item
+     * @param itemKeys keys of item
+     * @return bucket of hash, offset by its section with {@link IndexWriterConfig#getNamespaces()}
+     */
+    private int slot(Output output, int key, int hash, int itemKeys) {
+        int bucket = getIndex(hash, capacity);
+        List<String> namespaces = config.getNamespaces();
+        if (namespaces.isEmpty()) {
+            output.keys[0].increment();
+            return bucket;
+        }
+        if (itemKeys > namespaces.size()) {
+            throw new IllegalStateException(String.format("%d keys hashed for namespaces %s.", itemKeys, namespaces));
+        }
+        output.keys[key].increment();
+        return key * (capacity + 1) + bucket;
+    }
+
+    private void append(Output output, TunnelBuffer tunnelBuffer, int bucket, long hash, long start, int length) throws IOException {
+        if (!tunnelBuffer.add(bucket, hash, start, length)) {
+            output.spills.add(spill(tunnelBuffer));
+            tunnelBuffer.add(bucket, hash, start, length);
+        }
+    }
+
+    private void logProgress(long processed) {
+        if (processed % 0x10000 == 0) {
+            log.debug(
+                "{} items indexed.",
+                processed
+            );
+            log.debug(
+                "Memory - max: {} M, total: {} M, free: {} M",
+                formatToMillions(Runtime.getRuntime().maxMemory()),
+                formatToMillions(Runtime.getRuntime().totalMemory()),
+                formatToMillions(Runtime.getRuntime().freeMemory())
+            );
+        }
+    }
+
+    /**
+     * Sort and spill tunnels in memory to a temporary file
+     */
+    private File spill(TunnelBuffer tunnelBuffer) throws IOException {
+        File file = File.createTempFile("index-", ".run", config.getTempDirectory());
+        file.deleteOnExit();
+        long spillStartTime = System.currentTimeMillis();
+        int size = tunnelBuffer.size();
+        tunnelBuffer.spill(file);
+        log.debug(
+            "{} tunnels spilled to {} in {}.",
+            size,
+            file,
+            formatTime(System.currentTimeMillis() - spillStartTime)
+        );
+        return file;
+    }
+
+    /**
+     * @return channel of source file, sharing position with {@link #sourceInput}, so a subclass should only read one of
+     * them
+     */
+    protected FileChannel sourceChannel() {
+        return sourceFileInput.getChannel();
     }
 
     protected abstract Tuple2<Long, byte[]> nextItem() throws IOException;
 
-    protected abstract int[] hash(byte[] data) throws IOException;
+    /**
+     * Move to next item without copying it when possible, default wraps {@link #nextItem()}.
+     * @param item filled with next item, its buffer may be reused by next call
+     * @return false if no more item
+     * @throws IOException
+     */
+    protected boolean nextItem(SourceItem item) throws IOException {
+        Tuple2<Long, byte[]> next = nextItem();
+        if (next == null) {
+            return false;
+        }
+        item.set(next._1(), next._2(), 0, next._2().length);
+        return true;
+    }
+
+    /**
+     * Bytes of item inlined in index file with {@link IndexWriterConfig#getInlineThreshold()}, default the whole item.
+     * Override it to inline a projection of fields covering the lookups, which is returned by reader instead of the
+     * item, so keys verified by reader must be kept.
+     * @param data buffer holding item
+     * @param from index of item in {@code data}
+     * @param length length of item
+     * @return bytes to inline, or null to read the item from source file. Called concurrently when
+     * {@link IndexWriterConfig#getThreads()} is more than 1
+     * @throws IOException
+     */
+    protected ByteBuffer project(byte[] data, int from, int length) throws IOException {
+        return ByteBuffer.wrap(data, from, length);
+    }
+
+    /**
+     * Index file of a shard and what is collected for it while scanning source
+     */
+    private final class Output {
+        private final int shard;
+        private final FileChannel indexFileChannel;
+        private final File sortedFile;
+        // tunnels of each section
+        private final LongAdder[] keys;
+        // a buffer of each scanning thread
+        private final List<TunnelBuffer> tunnelBuffers = new ArrayList<>();
+        private final List<File> spills = Collections.synchronizedList(new ArrayList<>());
+        // records inlined in index file, null if not enabled
+        private InlinePayload payload;
+        // records by id, null if not enabled
+        private RecordTableWriter records;
+        // keys of sorted namespaces, null if not enabled
+        private SortedKeyWriter sortedKeys;
+        // bytes of this shard, out of memory budget of writer
+        private long memoryBudget;
+
+        private Output(int shard, FileChannel indexFileChannel, File sortedFile) {
+            this.shard = shard;
+            this.indexFileChannel = indexFileChannel;
+            this.sortedFile = sortedFile;
+            this.keys = new LongAdder[Math.max(1, config.getNamespaces().size())];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * @param memoryBudget bytes of sorted keys buffered for this shard, and of its tunnels kept in heap by a perfect
+         * hash index
+         */
+        private void open(long memoryBudget) throws IOException {
+            this.memoryBudget = memoryBudget;
+            if (config.getInlineThreshold() > 0) {
+                payload = new InlinePayload(config.getTempDirectory());
+            }
+            if (config.isRecordTable()) {
+                records = new RecordTableWriter(config.getTempDirectory());
+            }
+            if (!config.getSortedNamespaces().isEmpty()) {
+                sortedKeys = new SortedKeyWriter(memoryBudget, config.getTempDirectory());
+            } else {
+                // stale keys of a previous build
+                sortedFile.delete();
+            }
+        }
+
+        private void close() throws IOException {
+            for (File spill : spills) {
+                spill.delete();
+            }
+            if (payload != null) {
+                payload.close();
+            }
+            if (records != null) {
+                records.close();
+            }
+            if (sortedKeys != null) {
+                sortedKeys.close();
+            }
+            indexFileChannel.close();
+        }
+    }
 }
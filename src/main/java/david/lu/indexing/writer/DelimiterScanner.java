@@ -0,0 +1,191 @@
+package david.lu.indexing.writer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * <pre>
+ * Split source to items by delimiters, reading source by large chunks. Empty items are skipped. Current item is a slice
+ * of chunk, see {@link #array()}, {@link #from()} and {@link #length()}, valid until next call of {@link #next()}.
+ * Delimiters are found by a 256 entries table, or 8 bytes at a time (SWAR) for a single delimiter.
+ * </pre>
+ */
+public final class DelimiterScanner {
+    public final static int DEFAULT_CHUNK_SIZE = 1 << 20;
+    private final static long ONES = 0x0101010101010101L;
+    private final static long HIGHS = 0x8080808080808080L;
+    private final ReadableByteChannel channel;
+    private final boolean[] table = new boolean[256];
+    /**
+     * delimiter repeated in 8 bytes if single delimiter, otherwise 0
+     */
+    private final long pattern;
+    private final boolean single;
+    private byte[] array;
+    private ByteBuffer chunk;
+    // source offset of array[0]
+    private long chunkStart;
+    private int position;
+    private int limit;
+    private boolean eof;
+    private int itemFrom;
+    private int itemLength;
+    private boolean terminated;
+
+    /**
+     * @param channel source, read from its current position
+     * @param start source offset of current position of {@code channel}
+     * @param delimiters
+     * @param chunkSize initial chunk size, grown for longer items
+     */
+    public DelimiterScanner(ReadableByteChannel channel, long start, char[] delimiters, int chunkSize) {
+        this.channel = channel;
+        this.chunkStart = start;
+        int count = 0;
+        int last = 0;
+        for (char delimiter : delimiters) {
+            if (delimiter < table.length && !table[delimiter]) {
+                table[delimiter] = true;
+                last = delimiter;
+                count++;
+            }
+        }
+        single = count == 1;
+        pattern = single ? ONES * last : 0;
+        array = new byte[Math.max(Long.BYTES, chunkSize)];
+        chunk = ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Move to next item
+     * @return false if no more item
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+        // skip delimiters of empty items
+        while (true) {
+            while (position < limit && table[array[position] & 0xFF]) {
+                position++;
+            }
+            if (position < limit) {
+                break;
+            }
+            if (!fill(position)) {
+                return false;
+            }
+        }
+        itemFrom = position;
+        while (true) {
+            int end = indexOfDelimiter(position, limit);
+            if (end >= 0) {
+                itemLength = end - itemFrom;
+                position = end + 1;
+                terminated = true;
+                return true;
+            }
+            position = limit;
+            if (!fill(itemFrom)) {
+                // last item without delimiter
+                itemLength = limit - itemFrom;
+                terminated = false;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return source offset of current item
+     */
+    public long offset() {
+        return chunkStart + itemFrom;
+    }
+
+    /**
+     * @return buffer holding current item
+     */
+    public byte[] array() {
+        return array;
+    }
+
+    /**
+     * @return index of current item in {@link #array()}
+     */
+    public int from() {
+        return itemFrom;
+    }
+
+    public int length() {
+        return itemLength;
+    }
+
+    /**
+     * @return false if current item is the last one and ends at the end of source without delimiter, so it may be
+     * still being written
+     */
+    public boolean terminated() {
+        return terminated;
+    }
+
+    /**
+     * @return source offset after current item and its delimiter
+     */
+    public long position() {
+        return chunkStart + position;
+    }
+
+    private int indexOfDelimiter(int from, int to) {
+        int i = from;
+        if (single) {
+            for (; i + Long.BYTES <= to; i += Long.BYTES) {
+                long word = chunk.getLong(i) ^ pattern;
+                // lowest flagged byte is the first delimiter, little endian keeps it exact
+                long found = (word - ONES) & ~word & HIGHS;
+                if (found != 0) {
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+                }
+            }
+        }
+        for (; i < to; i++) {
+            if (table[array[i] & 0xFF]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Keep bytes from {@code keepFrom}, move them to start of chunk and read more source after them. Chunk is doubled
+     * if it is full of kept bytes.
+     * @return false if end of source
+     */
+    private boolean fill(int keepFrom) throws IOException {
+        if (eof) {
+            return false;
+        }
+        int keep = limit - keepFrom;
+        if (keepFrom == 0 && limit == array.length) {
+            array = Arrays.copyOf(array, array.length << 1);
+            chunk = ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+        } else if (keepFrom > 0) {
+            System.arraycopy(array, keepFrom, array, 0, keep);
+        }
+        chunkStart += keepFrom;
+        position -= keepFrom;
+        itemFrom -= keepFrom;
+        limit = keep;
+        chunk.limit(array.length).position(limit);
+        int read = 0;
+        while (read == 0) {
+            read = channel.read(chunk);
+        }
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+}
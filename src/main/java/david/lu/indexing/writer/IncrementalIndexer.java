@@ -0,0 +1,282 @@
+package david.lu.indexing.writer;
+
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.pojo.IndexSortedKeys;
+import david.lu.indexing.utils.SegmentManifest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static david.lu.indexing.utils.IndexUtils.formatTime;
+
+/**
+ * <pre>
+ * Index a source file growing by appends as segments, listed by {@link SegmentManifest} of index path:
+ *  1. {@link #refresh()} indexes items appended after the last segment to a new segment, from the source end offset
+ *     recorded by the last segment, see {@link IndexHeader#SEGMENT_FLAG}
+ *  2. {@link #compact()} rebuilds source range of all segments to one base segment, reading source at most
+ *     {@code compactionBytesPerSecond}. Segments refreshed meanwhile are kept after the base.
+ * Segment files are named by index path and a generation, for example {@code sample.index.3}. A refresh ends at the
+ * last delimiter of source, an item being written without its delimiter yet is left to the next refresh, see
+ * {@link AbstractDelimiterIndexWriter}. Other writers should not read an incomplete last item. Read segments by
+ * {@link david.lu.indexing.reader.SegmentedIndexReader}, oldest first, so a key indexed by more than one segment is
+ * loaded from its first record in source before and after compaction, as by a full build. Segments replaced by
+ * compaction are deleted, readers opened before should be reopened.
+ * </pre>
+ */
+@Slf4j
+public class IncrementalIndexer {
+    private final String sourceFilePath;
+    private final String indexFilePath;
+    private final File manifest;
+    private final IndexWriterConfig config;
+    private final double compactionBytesPerSecond;
+    private final IndexWriterFactory writerFactory;
+    // estimate record count of source before the first segment
+    private final int size;
+    // guards segments, generation and manifest
+    private final Object lock = new Object();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    // oldest first
+    private List<Segment> segments;
+    private long generation;
+
+    /**
+     * @param size Estimate record count of source, sizes the first segment. Later segments are sized by records per
+     *             byte of existing segments.
+     * @param config options of segments, source range and throttle are set by this indexer
+     * @param compactionBytesPerSecond max bytes of source read per second by compaction, not limited if 0
+     */
+    public IncrementalIndexer(int size, String sourceFilePath, String indexFilePath, IndexWriterConfig config,
+                              double compactionBytesPerSecond, IndexWriterFactory writerFactory) throws IOException {
+        this.size = size;
+        this.sourceFilePath = sourceFilePath;
+        this.indexFilePath = indexFilePath;
+        this.manifest = SegmentManifest.of(indexFilePath);
+        this.config = config;
+        this.compactionBytesPerSecond = compactionBytesPerSecond;
+        this.writerFactory = writerFactory;
+        this.segments = new ArrayList<>();
+        String prefix = new File(indexFilePath).getName() + ".";
+        for (File file : SegmentManifest.read(manifest)) {
+            segments.add(Segment.read(file));
+            if (file.getName().startsWith(prefix)) {
+                try {
+                    generation = Math.max(generation, Long.parseLong(file.getName().substring(prefix.length())));
+                } catch (NumberFormatException e) {
+                    log.debug("Segment {} is not named by generation.", file);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return segment files, oldest first
+     */
+    public List<File> getSegments() {
+        synchronized (lock) {
+            return filesOf(segments);
+        }
+    }
+
+    /**
+     * Index items appended after the last segment to a new segment. Doesn't block lookups or compaction.
+     * @return false if no item is appended
+     */
+    public synchronized boolean refresh() throws IOException {
+        long refreshStartTime = System.currentTimeMillis();
+        long start;
+        List<Segment> current;
+        synchronized (lock) {
+            start = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).end;
+            current = new ArrayList<>(segments);
+        }
+        long length = new File(sourceFilePath).length();
+        if (length <= start) {
+            return false;
+        }
+        File file = nextFile();
+        writerFactory.create(
+            estimate(current, length - start),
+            sourceFilePath,
+            file.getPath(),
+            config.toBuilder()
+                .segment(true)
+                .sourceStart(start)
+                .sourceEnd(Long.MAX_VALUE)
+                .maxBytesPerSecond(0)
+                .build()
+        ).process();
+        Segment segment = Segment.read(file);
+        if (segment.records == 0) {
+            file.delete();
+            return false;
+        }
+        synchronized (lock) {
+            List<Segment> next = new ArrayList<>(segments);
+            next.add(segment);
+            SegmentManifest.write(manifest, filesOf(next));
+            segments = next;
+        }
+        log.debug(
+            "Segment {} refreshed in {}, {} items of source range [{}, {}).",
+            file,
+            formatTime(System.currentTimeMillis() - refreshStartTime),
+            segment.records,
+            segment.start,
+            segment.end
+        );
+        return true;
+    }
+
+    /**
+     * Rebuild all segments to one base segment, reading source at most {@code compactionBytesPerSecond}. Refreshes may
+     * run meanwhile, their segments are kept after the base.
+     * @return false if there is less than 2 segments, or another compaction is running
+     */
+    public boolean compact() throws IOException {
+        if (!compacting.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            long compactStartTime = System.currentTimeMillis();
+            List<Segment> merged;
+            synchronized (lock) {
+                if (segments.size() < 2) {
+                    return false;
+                }
+                merged = new ArrayList<>(segments);
+            }
+            long records = 0;
+            for (Segment segment : merged) {
+                records += segment.records;
+            }
+            File file = nextFile();
+            writerFactory.create(
+                (int) Math.min(records, Integer.MAX_VALUE),
+                sourceFilePath,
+                file.getPath(),
+                config.toBuilder()
+                    .segment(true)
+                    .sourceStart(merged.get(0).start)
+                    .sourceEnd(merged.get(merged.size() - 1).end)
+                    .maxBytesPerSecond(compactionBytesPerSecond)
+                    .build()
+            ).process();
+            Segment base = Segment.read(file);
+            synchronized (lock) {
+                // only compaction removes segments, so merged ones are still the oldest
+                List<Segment> next = new ArrayList<>();
+                next.add(base);
+                next.addAll(segments.subList(merged.size(), segments.size()));
+                SegmentManifest.write(manifest, filesOf(next));
+                segments = next;
+            }
+            for (Segment segment : merged) {
+                if (!segment.file.delete()) {
+                    log.debug("Compacted segment {} is not deleted.", segment.file);
+                }
+                new File(segment.file.getPath() + IndexSortedKeys.SUFFIX).delete();
+            }
+            log.debug(
+                "{} segments compacted to {} in {}, {} items of source range [{}, {}).",
+                merged.size(),
+                file,
+                formatTime(System.currentTimeMillis() - compactStartTime),
+                base.records,
+                base.start,
+                base.end
+            );
+            return true;
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * Run {@link #compact()} in background
+     */
+    public CompletableFuture<Boolean> compactAsync(Executor executor) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(compact());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private File nextFile() {
+        synchronized (lock) {
+            return new File(indexFilePath + "." + ++generation);
+        }
+    }
+
+    /**
+     * @return estimate records of {@code bytes} appended
+     */
+    private int estimate(List<Segment> current, long bytes) {
+        long records = 0;
+        long indexed = 0;
+        for (Segment segment : current) {
+            records += segment.records;
+            indexed += segment.end - segment.start;
+        }
+        if (records == 0 || indexed == 0) {
+            return size;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, (long) ((double) records * bytes / indexed)));
+    }
+
+    private static List<File> filesOf(List<Segment> segments) {
+        List<File> files = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            files.add(segment.file);
+        }
+        return Collections.unmodifiableList(files);
+    }
+
+    private static final class Segment {
+        private final File file;
+        private final long records;
+        private final long start;
+        private final long end;
+
+        private Segment(File file, long records, long start, long end) {
+            this.file = file;
+            this.records = records;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Read item count and source range of segment from its header and trailer
+         */
+        static Segment read(File file) throws IOException {
+            try (RandomAccessFile indexFile = new RandomAccessFile(file, "r")) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(indexFile.length(), IndexHeader.VERSIONED_SIZE));
+                indexFile.getChannel().read(buffer, 0);
+                buffer.flip();
+                IndexHeader header = IndexHeader.fromByteBuffer(buffer);
+                if (!header.isSegment()) {
+                    throw new IOException(String.format("Index file[%s] is not a segment.", file));
+                }
+                ByteBuffer range = ByteBuffer.allocate(Long.BYTES * 2);
+                indexFile.getChannel().read(range, indexFile.length() - range.capacity());
+                range.flip();
+                return new Segment(file, header.getSize(), range.getLong(), range.getLong());
+            }
+        }
+    }
+}
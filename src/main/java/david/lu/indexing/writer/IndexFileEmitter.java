@@ -0,0 +1,330 @@
+package david.lu.indexing.writer;
+
+import david.lu.indexing.pojo.IndexFingerprintTunnel;
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.pojo.IndexNode;
+import david.lu.indexing.pojo.IndexRecordTunnel;
+import david.lu.indexing.pojo.IndexTunnel;
+import david.lu.indexing.utils.BloomFilter;
+import david.lu.indexing.utils.PerfectHash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static david.lu.indexing.utils.IndexUtils.getFirstTunnelOffset;
+import static david.lu.indexing.utils.IndexUtils.intToByte;
+
+/**
+ * <pre>
+ * Write merged tunnels to index file. Node table and tunnel region are both written sequentially, so each of them is
+ * assembled in a large direct buffer and flushed by one write when full, instead of one write per node and tunnel.
+ * Nodes of empty buckets are written as zero, filter and header are written last. An emitter writes one index at a
+ * time from {@link #start(long, long)}, several indexes are written one after another as sections, see
+ * {@link SectionedIndexEmitter}.
+ * Tunnels of {@link IndexHeader#PERFECT_HASH_VERSION} are kept in heap until the index is finished, about
+ * {@link #PERFECT_KEY_SIZE} bytes per key with building of {@link PerfectHash}, which must fit memory budget. Then pilots
+ * are written as nodes and tunnels are written in slot order.
+ * </pre>
+ */
+final class IndexFileEmitter implements TunnelMerger.TunnelConsumer {
+    private final static int BUFFER_SIZE = 1 << 20;
+    /**
+     * heap bytes of a key of {@link IndexHeader#PERFECT_HASH_VERSION}: hash, offset and length of its tunnel, its copy
+     * sorted by bucket and its slot, with arrays of buckets
+     */
+    final static int PERFECT_KEY_SIZE = 36;
+    private final FileChannel indexFileChannel;
+    private final int capacity;
+    private final byte version;
+    // version and file flags of headers written
+    private final IndexHeader template;
+    // false positive probability of filter, no filter if 0
+    private final double filterFpp;
+    // max heap bytes of tunnels of PERFECT_HASH_VERSION
+    private final long memoryBudget;
+    // tunnels of IndexRecordTunnel
+    private final boolean recordTable;
+    private final int headerSize;
+    private final int tunnelSize;
+    private final ByteBuffer nodes = ByteBuffer.allocateDirect(BUFFER_SIZE - BUFFER_SIZE % IndexNode.SIZE);
+    private final ByteBuffer tunnelBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long base;
+    private BloomFilter filter;
+    // tunnels of current index of PERFECT_HASH_VERSION, by merge order
+    private long[] hashes;
+    private long[] offsets;
+    private int[] lengths;
+    private long nodePosition;
+    private long tunnelPosition;
+    // next bucket to write node
+    private int nextBucket;
+    // indexed tunnels of all indexes
+    private long indexed = 0;
+    // indexed tunnels of current index
+    private long tunnels;
+    private int bucket;
+    private long bucketStart;
+    private int collision;
+    private int maxCollision = 0;
+    // buckets of all indexes by tunnels, see WriterMetrics#MAX_BUCKET_SIZE
+    private final long[] bucketSizes = new long[WriterMetrics.MAX_BUCKET_SIZE + 1];
+
+    /**
+     * @param template version and flags of index file of headers, except {@link IndexHeader#isFiltered()}
+     * @param memoryBudget max bytes of tunnels of an index of {@link IndexHeader#PERFECT_HASH_VERSION} kept in heap
+     */
+    IndexFileEmitter(FileChannel indexFileChannel, int capacity, IndexHeader template, double filterFpp, long memoryBudget) {
+        IndexHeader layout = template.toBuilder()
+            .filtered(filterFpp > 0)
+            .build();
+        this.indexFileChannel = indexFileChannel;
+        this.capacity = capacity;
+        this.template = template;
+        this.version = template.getVersion();
+        this.filterFpp = filterFpp;
+        this.memoryBudget = memoryBudget;
+        this.recordTable = template.isRecordTable();
+        this.headerSize = layout.getHeaderSize();
+        this.tunnelSize = layout.getTunnelSize();
+    }
+
+    /**
+     * Start writing an index at {@code base} of index file
+     * @param keys tunnels of the index, to size filter
+     */
+    void start(long base, long keys) {
+        this.base = base;
+        nodePosition = base + headerSize;
+        if (filterFpp > 0) {
+            filter = BloomFilter.create(keys, filterFpp);
+            nodePosition += filter.getSize();
+        }
+        tunnelPosition = getFirstTunnelOffset(nodePosition, capacity);
+        if (version == IndexHeader.PERFECT_HASH_VERSION) {
+            if (keys > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException(String.format("Too many keys[%d] for a perfect hash index.", keys));
+            }
+            if (keys * PERFECT_KEY_SIZE > memoryBudget) {
+                throw new IllegalArgumentException(String.format(
+                    "%d keys of a perfect hash index take about %d bytes, more than memory budget %d.",
+                    keys, keys * PERFECT_KEY_SIZE, memoryBudget
+                ));
+            }
+            hashes = new long[(int) keys];
+            offsets = new long[(int) keys];
+            lengths = new int[(int) keys];
+        }
+        nextBucket = 0;
+        tunnels = 0;
+        bucket = -1;
+        collision = 0;
+    }
+
+    @Override
+    public void accept(int bucket, long hash, long offset, int length) throws IOException {
+        if (version == IndexHeader.PERFECT_HASH_VERSION) {
+            acceptPerfect(hash, offset, length);
+            return;
+        }
+        if (bucket != this.bucket) {
+            finishBucket();
+            this.bucket = bucket;
+            bucketStart = tunnels;
+        }
+        if (tunnelBuffer.remaining() < tunnelSize) {
+            tunnelPosition = flush(tunnelBuffer, tunnelPosition);
+        }
+        putTunnel(hash, offset, length);
+        if (filter != null) {
+            filter.add(version == IndexHeader.LEGACY_VERSION ? (int) hash : hash);
+        }
+        tunnels++;
+        indexed++;
+    }
+
+    /**
+     * Flush remaining nodes and tunnels of current index, then write its header.
+     * @return end offset of current index in index file
+     */
+    long finish(long size) throws IOException {
+        int indexCapacity = capacity;
+        if (version == IndexHeader.PERFECT_HASH_VERSION) {
+            indexCapacity = finishPerfect();
+            size = tunnels;
+        } else {
+            finishBucket();
+            while (nextBucket < capacity) {
+                putNode((byte) 0, 0);
+            }
+            nodePosition = flush(nodes, nodePosition);
+            tunnelPosition = flush(tunnelBuffer, tunnelPosition);
+        }
+        if (filter != null) {
+            write(filter.toByteBuffer(), base + headerSize);
+        }
+        IndexHeader header = template.toBuilder()
+            .filtered(filter != null)
+            .createTime(System.currentTimeMillis())
+            .size(size)
+            .capacity(indexCapacity)
+            .maxCollision(intToByte(collision))
+            .build();
+        write(header.toByteBuffer(), base);
+        return tunnelPosition;
+    }
+
+    /**
+     * Write {@code buffer} at {@code position} directly
+     */
+    void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += indexFileChannel.write(buffer, position);
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    byte getVersion() {
+        return version;
+    }
+
+    IndexHeader getTemplate() {
+        return template;
+    }
+
+    int getMaxCollision() {
+        return maxCollision;
+    }
+
+    long getIndexed() {
+        return indexed;
+    }
+
+    /**
+     * @return buckets by tunnels, slots of {@link IndexHeader#PERFECT_HASH_VERSION} are buckets of one tunnel
+     */
+    long[] getBucketSizes() {
+        return bucketSizes;
+    }
+
+    /**
+     * @return indexed tunnels of current index
+     */
+    long getTunnels() {
+        return tunnels;
+    }
+
+    /**
+     * Keep a tunnel of {@link IndexHeader#PERFECT_HASH_VERSION}. Tunnels of a hash come together in merge order, a slot
+     * holds one tunnel, so a duplicated key, or distinct keys of one fingerprint, fail the build instead of being
+     * dropped.
+     */
+    private void acceptPerfect(long hash, long offset, int length) {
+        int count = (int) tunnels;
+        if (count > 0 && hashes[count - 1] == hash) {
+            throw new IllegalStateException(String.format(
+                "Duplicated fingerprint %016x of records at %d and %d, keys of a perfect hash index must be distinct.",
+                hash, offsets[count - 1], offset
+            ));
+        }
+        hashes[count] = hash;
+        offsets[count] = offset;
+        lengths[count] = length;
+        if (filter != null) {
+            filter.add(hash);
+        }
+        tunnels++;
+        indexed++;
+    }
+
+    /**
+     * Build perfect hash of kept tunnels, write its pilots as nodes and tunnels in slot order.
+     * @return buckets of pilots
+     */
+    private int finishPerfect() throws IOException {
+        int count = (int) tunnels;
+        int[] pilots = PerfectHash.build(hashes, count);
+        for (int pilot : pilots) {
+            if (nodes.remaining() < Integer.BYTES) {
+                nodePosition = flush(nodes, nodePosition);
+            }
+            nodes.putInt(pilot);
+        }
+        nodePosition = flush(nodes, nodePosition);
+        tunnelPosition = nodePosition;
+        // tunnel of each slot
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            long hash = hashes[i];
+            order[PerfectHash.slot(hash, pilots[PerfectHash.bucket(hash, pilots.length)], count)] = i;
+        }
+        for (int i : order) {
+            if (tunnelBuffer.remaining() < tunnelSize) {
+                tunnelPosition = flush(tunnelBuffer, tunnelPosition);
+            }
+            putTunnel(hashes[i], offsets[i], lengths[i]);
+        }
+        tunnelPosition = flush(tunnelBuffer, tunnelPosition);
+        collision = count > 0 ? 1 : 0;
+        maxCollision = Math.max(maxCollision, collision);
+        bucketSizes[1] += count;
+        hashes = null;
+        offsets = null;
+        lengths = null;
+        return pilots.length;
+    }
+
+    /**
+     * Write node of current bucket, with empty nodes of skipped buckets
+     */
+    private void finishBucket() throws IOException {
+        if (bucket < 0) {
+            return;
+        }
+        int bucketCollision = (int) (tunnels - bucketStart);
+        collision = Math.max(collision, bucketCollision);
+        maxCollision = Math.max(maxCollision, bucketCollision);
+        while (nextBucket < bucket) {
+            putNode((byte) 0, 0);
+        }
+        putNode(intToByte(bucketCollision), bucketStart);
+    }
+
+    /**
+     * @param offset record id with record table
+     */
+    private void putTunnel(long hash, long offset, int length) {
+        if (recordTable) {
+            IndexRecordTunnel.put(tunnelBuffer, hash, offset);
+        } else if (version == IndexHeader.LEGACY_VERSION) {
+            IndexTunnel.put(tunnelBuffer, (int) hash, offset, length);
+        } else {
+            IndexFingerprintTunnel.put(tunnelBuffer, hash, offset, length);
+        }
+    }
+
+    private void putNode(byte collision, long offset) throws IOException {
+        if (!nodes.hasRemaining()) {
+            nodePosition = flush(nodes, nodePosition);
+        }
+        IndexNode.put(nodes, collision, offset);
+        bucketSizes[Math.min(collision & 0xFF, WriterMetrics.MAX_BUCKET_SIZE)]++;
+        nextBucket++;
+    }
+
+    /**
+     * Write buffered bytes at {@code position} and clear the buffer
+     * @return position after written bytes
+     */
+    private long flush(ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += indexFileChannel.write(buffer, position);
+        }
+        buffer.clear();
+        return position;
+    }
+}
@@ -0,0 +1,159 @@
+package david.lu.indexing.writer;
+
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.pojo.IndexSourceBlocks;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Options of {@link AbstractIndexWriter}.
+ */
+@Builder(toBuilder = true)
+@Getter
+public class IndexWriterConfig {
+    /**
+     * max bytes of tunnels kept in memory while scanning source, sorted runs are spilled to {@link #tempDirectory}
+     * beyond it
+     */
+    @Builder.Default
+    private long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+    /**
+     * directory of spilled runs, default temporary directory of JVM if null
+     */
+    @Builder.Default
+    private File tempDirectory = null;
+    /**
+     * threads hashing items, items are read by calling thread. Key functions of this config are called concurrently
+     * with more than 1 thread.
+     */
+    @Builder.Default
+    private int threads = 1;
+    /**
+     * index format, {@link IndexHeader#LEGACY_VERSION} hashes keys by {@link #hashFunction},
+     * {@link IndexHeader#FINGERPRINT_VERSION} and {@link IndexHeader#PERFECT_HASH_VERSION} by
+     * {@link #fingerprintFunction}
+     */
+    @Builder.Default
+    private byte version = IndexHeader.LEGACY_VERSION;
+    /**
+     * hashes of item keys by {@link String#hashCode()} of each key, the nth hash is a key of the nth namespace. Required
+     * by {@link IndexHeader#LEGACY_VERSION}.
+     */
+    @Builder.Default
+    private ItemKeyFunction<int[]> hashFunction = null;
+    /**
+     * fingerprints of item keys by {@link david.lu.indexing.utils.IndexUtils#fingerprint(String)} of each key, the nth
+     * fingerprint is a key of the nth namespace. Required by {@link IndexHeader#FINGERPRINT_VERSION} and
+     * {@link IndexHeader#PERFECT_HASH_VERSION}.
+     */
+    @Builder.Default
+    private ItemKeyFunction<long[]> fingerprintFunction = null;
+    /**
+     * names of key namespaces, the nth hash of an item is a key of the nth namespace. Each namespace is written to its
+     * own section of {@link IndexHeader#SECTIONED_VERSION}, with capacity of estimated record count. Keys of all
+     * namespaces share one section if empty.
+     */
+    @Builder.Default
+    private List<String> namespaces = Collections.emptyList();
+    /**
+     * false positive probability of filter of each index or section, no filter if 0. A filter takes about
+     * {@code -ln(fpp) / ln(2)^2} bits per key, for example 10 bits per key for 0.01.
+     */
+    @Builder.Default
+    private double filterFpp = 0;
+    /**
+     * max bytes of a record inlined in index file, see {@link AbstractIndexWriter#project(byte[], int, int)}. Inlined
+     * records are read from index file instead of source file. No record is inlined if 0.
+     */
+    @Builder.Default
+    private int inlineThreshold = 0;
+    /**
+     * tunnels refer to records by id, offset and length of each record are stored once in a record table shared by
+     * all keys and sections, see {@link david.lu.indexing.pojo.IndexRecordTable}. A tunnel takes 12 bytes instead of 20,
+     * not supported by {@link IndexHeader#LEGACY_VERSION}. Writer keeps 12 bytes per record in heap until its block is
+     * complete, then spills it encoded to {@link #tempDirectory}.
+     */
+    @Builder.Default
+    private boolean recordTable = false;
+    /**
+     * names of sorted key namespaces, keys of {@link #sortKeyFunction} are written to a
+     * sorted index next to index file for prefix and range lookups, see
+     * {@link david.lu.indexing.pojo.IndexSortedKeys}. Sorted keys are buffered up to another {@link #memoryBudget}.
+     * With {@link #shards}, sort keys of an item are written next to the shard of its first key only. No sorted index if
+     * empty.
+     */
+    @Builder.Default
+    private List<String> sortedNamespaces = Collections.emptyList();
+    /**
+     * keys of item for sorted index, the nth key is a key of the nth of {@link #sortedNamespaces}, null if item has no
+     * such key. Called with the hashing of item, required by sorted namespaces.
+     */
+    @Builder.Default
+    private ItemKeyFunction<String[]> sortKeyFunction = null;
+    /**
+     * source offset of the first item to index, at the start of an item, see {@link IndexHeader#isSegment()}
+     */
+    @Builder.Default
+    private long sourceStart = 0;
+    /**
+     * items starting at or after this source offset are not indexed
+     */
+    @Builder.Default
+    private long sourceEnd = Long.MAX_VALUE;
+    /**
+     * index file ends with indexed source range, so appended items can be indexed to another segment from its end, see
+     * {@link IncrementalIndexer}. The last item is not indexed without its delimiter, see
+     * {@link AbstractDelimiterIndexWriter}.
+     */
+    @Builder.Default
+    private boolean segment = false;
+    /**
+     * max bytes of items read from source per second, to keep a background build from starving lookups of source
+     * file. Not limited if 0.
+     */
+    @Builder.Default
+    private double maxBytesPerSecond = 0;
+    /**
+     * shards splitting keys by hash, see {@link david.lu.indexing.utils.IndexUtils#getShard(long, int)}. Index file
+     * only indexes keys of {@link #shard}, see {@link ShardedIndexWriter}.
+     */
+    @Builder.Default
+    private int shards = 1;
+    /**
+     * shard of index file, from 0 to {@link #shards} - 1
+     */
+    @Builder.Default
+    private int shard = 0;
+    /**
+     * source is also rewritten to compressed blocks of this file while scanned, see
+     * {@link david.lu.indexing.pojo.IndexSourceBlocks}. Index file reads the blocks the same as the source, so the
+     * source may be dropped. Not rewritten if null.
+     */
+    @Builder.Default
+    private File blockSourceFile = null;
+    /**
+     * bytes of source per compressed block, a block ends at the first item end reaching it
+     */
+    @Builder.Default
+    private int sourceBlockSize = IndexSourceBlocks.DEFAULT_BLOCK_SIZE;
+    /**
+     * level of {@link java.util.zip.Deflater} compressing blocks, fastest by default
+     */
+    @Builder.Default
+    private int sourceBlockLevel = Deflater.BEST_SPEED;
+    /**
+     * receives hash time of items, scan and dump times and sizes of buckets, for example a {@link WriterMetrics}
+     * published to JMX. Shards and segments built from this config share it. Not measured if null.
+     */
+    @Builder.Default
+    private WriterMetricsListener metricsListener = null;
+
+    public static IndexWriterConfig defaults() {
+        return builder().build();
+    }
+}
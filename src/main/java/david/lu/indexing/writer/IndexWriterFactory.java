@@ -0,0 +1,12 @@
+package david.lu.indexing.writer;
+
+import java.io.IOException;
+
+/**
+ * Writer of an index file built by {@link IncrementalIndexer} or {@link ShardedIndexWriter}, for example a constructor
+ * of a subclass of {@link AbstractDelimiterIndexWriter}.
+ */
+@FunctionalInterface
+public interface IndexWriterFactory {
+    AbstractIndexWriter create(int size, String sourceFilePath, String indexFilePath, IndexWriterConfig config) throws IOException;
+}
@@ -0,0 +1,58 @@
+package david.lu.indexing.writer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records inlined in index file, appended to a temporary file while scanning source, then copied to the end of index
+ * file. Appends are positional writes at reserved offsets, so workers append concurrently.
+ */
+final class InlinePayload {
+    private final File file;
+    private final FileChannel channel;
+    private final AtomicLong size = new AtomicLong();
+
+    InlinePayload(File tempDirectory) throws IOException {
+        file = File.createTempFile("index-", ".payload", tempDirectory);
+        file.deleteOnExit();
+        channel = new RandomAccessFile(file, "rw").getChannel();
+    }
+
+    /**
+     * @return offset of {@code record} in payload region
+     */
+    long append(ByteBuffer record) throws IOException {
+        long offset = size.getAndAdd(record.remaining());
+        long position = offset;
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        return offset;
+    }
+
+    /**
+     * Copy payload to {@code position} of {@code target}
+     * @return position after payload
+     */
+    long copyTo(FileChannel target, long position) throws IOException {
+        long end = position + size.get();
+        long copied = 0;
+        while (copied < size.get()) {
+            copied += channel.transferTo(copied, size.get() - copied, target.position(position + copied));
+        }
+        return end;
+    }
+
+    long size() {
+        return size.get();
+    }
+
+    void close() throws IOException {
+        channel.close();
+        file.delete();
+    }
+}
@@ -0,0 +1,18 @@
+package david.lu.indexing.writer;
+
+import java.io.IOException;
+
+/**
+ * Keys of an item in a slice of buffer, for example hashes or fingerprints of its keys, see {@link IndexWriterConfig}.
+ * Called concurrently when {@link IndexWriterConfig#getThreads()} is more than 1.
+ * @param <T> keys of item
+ */
+@FunctionalInterface
+public interface ItemKeyFunction<T> {
+    /**
+     * @param data buffer holding item
+     * @param from index of item in {@code data}
+     * @param length length of item
+     */
+    T apply(byte[] data, int from, int length) throws IOException;
+}
@@ -0,0 +1,206 @@
+package david.lu.indexing.writer;
+
+import david.lu.indexing.pojo.IndexRecordTable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Offset and length of each record kept in heap by record id while scanning source, 12 bytes per record, until all
+ * records of its block of {@link IndexRecordTable#BLOCK_RECORDS} are set. Complete blocks are encoded in order of id to
+ * a temporary file, with their offsets to another one, and their chunk is released, so heap only holds records of items
+ * in flight. Both files are copied to {@link IndexRecordTable} at the end. Chunks are allocated by scanning thread
+ * before items are queued to workers, so workers set records of their items without locking.
+ */
+final class RecordTableWriter {
+    private final static int CHUNK_BITS = 16;
+    private final static int CHUNK = 1 << CHUNK_BITS;
+    // records of an unsigned int
+    private final static long MAX_RECORDS = (1L << 32) - 1;
+    private final static int BUFFER_SIZE = 1 << 20;
+    private final Chunk[] chunks = new Chunk[1 << (Integer.SIZE - CHUNK_BITS)];
+    private final File blocksFile;
+    private final File offsetsFile;
+    private final FileChannel blocksChannel;
+    private final DataOutputStream offsetsOutput;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long records = 0;
+    // guarded by this
+    private int encodedBlocks = 0;
+    // bytes of encoded blocks, guarded by this
+    private long encodedSize = 0;
+
+    RecordTableWriter(File tempDirectory) throws IOException {
+        blocksFile = File.createTempFile("index-", ".blocks", tempDirectory);
+        blocksFile.deleteOnExit();
+        offsetsFile = File.createTempFile("index-", ".offsets", tempDirectory);
+        offsetsFile.deleteOnExit();
+        blocksChannel = new RandomAccessFile(blocksFile, "rw").getChannel();
+        offsetsOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(offsetsFile), 1 << 16));
+    }
+
+    /**
+     * Make room for record {@code id}, called by scanning thread in order of id
+     */
+    void reserve(long id) {
+        if (id >= MAX_RECORDS) {
+            throw new IllegalStateException(String.format("Too many records[%d] for a record table.", id + 1));
+        }
+        int chunk = (int) (id >>> CHUNK_BITS);
+        if (chunks[chunk] == null) {
+            chunks[chunk] = new Chunk();
+        }
+        records = Math.max(records, id + 1);
+    }
+
+    void set(long id, long offset, int length) throws IOException {
+        Chunk chunk = chunks[(int) (id >>> CHUNK_BITS)];
+        chunk.offsets[(int) id & (CHUNK - 1)] = offset;
+        chunk.lengths[(int) id & (CHUNK - 1)] = length;
+        // the last record set completes the block, earlier records of block are visible through the counter
+        if (chunk.counts.incrementAndGet(((int) id & (CHUNK - 1)) / IndexRecordTable.BLOCK_RECORDS) == IndexRecordTable.BLOCK_RECORDS) {
+            encodeCompleteBlocks();
+        }
+    }
+
+    long getRecords() {
+        return records;
+    }
+
+    /**
+     * Encode remaining records, then copy record table to {@code emitter} at {@code position}, after all records are set
+     * @return position after record table
+     */
+    synchronized long write(IndexFileEmitter emitter, long position) throws IOException {
+        int blocks = IndexRecordTable.getBlocks(records);
+        while (encodedBlocks < blocks) {
+            encodeBlock();
+        }
+        flush();
+        offsetsOutput.close();
+
+        long firstBlockOffset = IndexRecordTable.getFirstBlockOffset(records);
+        ByteBuffer blockOffsets = ByteBuffer.allocate(BUFFER_SIZE);
+        long offsetsPosition = position + IndexRecordTable.getBlockOffsetsOffset();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(offsetsFile), 1 << 16))) {
+            for (int b = 0; b < blocks; b++) {
+                if (!blockOffsets.hasRemaining()) {
+                    offsetsPosition = write(emitter, blockOffsets, offsetsPosition);
+                }
+                blockOffsets.putLong(firstBlockOffset + input.readLong());
+            }
+        }
+        if (!blockOffsets.hasRemaining()) {
+            offsetsPosition = write(emitter, blockOffsets, offsetsPosition);
+        }
+        blockOffsets.putLong(firstBlockOffset + encodedSize);
+        write(emitter, blockOffsets, offsetsPosition);
+
+        long copied = 0;
+        while (copied < encodedSize) {
+            buffer.clear();
+            buffer.limit((int) Math.min(BUFFER_SIZE, encodedSize - copied));
+            while (buffer.hasRemaining()) {
+                blocksChannel.read(buffer, copied + buffer.position());
+            }
+            int size = buffer.position();
+            write(emitter, buffer, position + firstBlockOffset + copied);
+            copied += size;
+        }
+        emitter.write(
+            ByteBuffer.allocate(IndexRecordTable.RECORDS_SIZE).putInt(0, (int) records),
+            position
+        );
+        return position + firstBlockOffset + encodedSize;
+    }
+
+    /**
+     * Delete temporary files
+     */
+    void close() throws IOException {
+        offsetsOutput.close();
+        blocksChannel.close();
+        blocksFile.delete();
+        offsetsFile.delete();
+    }
+
+    /**
+     * Encode blocks in order of id while they are complete
+     */
+    private synchronized void encodeCompleteBlocks() throws IOException {
+        while (true) {
+            long id = (long) encodedBlocks * IndexRecordTable.BLOCK_RECORDS;
+            Chunk chunk = chunks[(int) (id >>> CHUNK_BITS)];
+            if (chunk == null
+                || chunk.counts.get(((int) id & (CHUNK - 1)) / IndexRecordTable.BLOCK_RECORDS) != IndexRecordTable.BLOCK_RECORDS) {
+                return;
+            }
+            encodeBlock();
+        }
+    }
+
+    /**
+     * Encode the next block, records never set are encoded as empty records at offset 0
+     */
+    private void encodeBlock() throws IOException {
+        if (buffer.remaining() < IndexRecordTable.MAX_BLOCK) {
+            flush();
+        }
+        offsetsOutput.writeLong(encodedSize + buffer.position());
+        long first = (long) encodedBlocks * IndexRecordTable.BLOCK_RECORDS;
+        Chunk chunk = chunks[(int) (first >>> CHUNK_BITS)];
+        long end = 0;
+        for (int i = 0; i < IndexRecordTable.BLOCK_RECORDS; i++) {
+            long id = first + i;
+            if (id == records) {
+                break;
+            }
+            long offset = chunk.offsets[(int) id & (CHUNK - 1)];
+            int length = chunk.lengths[(int) id & (CHUNK - 1)];
+            IndexRecordTable.put(buffer, i, offset, length, end);
+            end = offset + length;
+        }
+        encodedBlocks++;
+        if (((long) encodedBlocks * IndexRecordTable.BLOCK_RECORDS & (CHUNK - 1)) == 0) {
+            // all blocks of chunk are encoded
+            chunks[(int) (first >>> CHUNK_BITS)] = null;
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            encodedSize += blocksChannel.write(buffer, encodedSize);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Write filled part of {@code buffer} at {@code position} and clear it
+     * @return position after written bytes
+     */
+    private static long write(IndexFileEmitter emitter, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        int size = buffer.remaining();
+        emitter.write(buffer, position);
+        buffer.clear();
+        return position + size;
+    }
+
+    private final static class Chunk {
+        private final long[] offsets = new long[CHUNK];
+        private final int[] lengths = new int[CHUNK];
+        // records set by block
+        private final AtomicIntegerArray counts = new AtomicIntegerArray(CHUNK / IndexRecordTable.BLOCK_RECORDS);
+    }
+}
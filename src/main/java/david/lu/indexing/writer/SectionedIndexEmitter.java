@@ -0,0 +1,102 @@
+package david.lu.indexing.writer;
+
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.pojo.IndexSection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static david.lu.indexing.utils.IndexUtils.intToByte;
+
+/**
+ * <pre>
+ * Write index file of {@link IndexHeader#SECTIONED_VERSION}, one section per key namespace. Merged tunnels come in
+ * slot order, slot of a tunnel is {@code section * (capacity + 1) + bucket}, so sections are written one after another
+ * by {@link IndexFileEmitter}. Directory and header are written last.
+ * </pre>
+ */
+final class SectionedIndexEmitter implements TunnelMerger.TunnelConsumer {
+    private final IndexFileEmitter emitter;
+    private final List<String> namespaces;
+    private final long[] offsets;
+    private final long[] keys;
+    private final long slots;
+    private int section = 0;
+
+    /**
+     * @param keys tunnels of each section
+     */
+    SectionedIndexEmitter(IndexFileEmitter emitter, List<String> namespaces, long[] keys) {
+        this.emitter = emitter;
+        this.namespaces = namespaces;
+        this.keys = keys;
+        this.offsets = new long[namespaces.size()];
+        this.slots = emitter.getCapacity() + 1L;
+        offsets[0] = IndexHeader.VERSIONED_SIZE + IndexSection.DIRECTORY_LENGTH_SIZE + directory().remaining();
+        emitter.start(offsets[0], keys[0]);
+    }
+
+    @Override
+    public void accept(int slot, long hash, long offset, int length) throws IOException {
+        int slotSection = (int) (slot / slots);
+        while (section < slotSection) {
+            nextSection();
+        }
+        emitter.accept((int) (slot % slots), hash, offset, length);
+    }
+
+    /**
+     * Finish all sections, then write directory and header.
+     * @param size processed items
+     * @return bytes of index file
+     */
+    long finish(long size) throws IOException {
+        while (section < namespaces.size() - 1) {
+            nextSection();
+        }
+        long end = emitter.finish(emitter.getTunnels());
+        ByteBuffer directory = directory();
+        emitter.write(
+            ByteBuffer.allocate(IndexSection.DIRECTORY_LENGTH_SIZE).putInt(0, directory.remaining()),
+            IndexHeader.VERSIONED_SIZE
+        );
+        emitter.write(directory, IndexHeader.VERSIONED_SIZE + IndexSection.DIRECTORY_LENGTH_SIZE);
+        IndexHeader header = emitter.getTemplate().toBuilder()
+            .version(IndexHeader.SECTIONED_VERSION)
+            .createTime(System.currentTimeMillis())
+            .size(size)
+            .capacity(emitter.getCapacity())
+            .maxCollision(intToByte(emitter.getMaxCollision()))
+            .build();
+        emitter.write(header.toByteBuffer(), 0);
+        return end;
+    }
+
+    /**
+     * Finish current section, the next one starts at its end. Size in header of a section is its tunnels.
+     */
+    private void nextSection() throws IOException {
+        long end = emitter.finish(emitter.getTunnels());
+        offsets[++section] = end;
+        emitter.start(end, keys[section]);
+    }
+
+    private ByteBuffer directory() {
+        int size = 0;
+        IndexSection[] sections = new IndexSection[namespaces.size()];
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = IndexSection.builder()
+                .name(namespaces.get(i))
+                .offset(offsets[i])
+                .build();
+            size += sections[i].getSize();
+        }
+        ByteBuffer directory = ByteBuffer.allocate(size);
+        for (IndexSection indexSection : sections) {
+            directory.put(indexSection.toByteBuffer());
+        }
+        directory.flip();
+        return directory;
+    }
+}
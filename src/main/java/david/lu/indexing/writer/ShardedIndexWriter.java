@@ -0,0 +1,132 @@
+package david.lu.indexing.writer;
+
+import david.lu.indexing.utils.ShardManifest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static david.lu.indexing.utils.IndexUtils.formatTime;
+
+/**
+ * <pre>
+ * Index a source file to shards split by hash of keys, listed by {@link ShardManifest} of index path:
+ *  1. one writer scans source once, hashes each item once and routes its keys to tunnel buffers of their shards, see
+ *     {@link IndexWriterConfig#getShard()}. Shards share {@link IndexWriterConfig#getMemoryBudget()} and threads.
+ *  2. each shard is emitted to its own index file, all shards in parallel, one thread each
+ *  3. manifest is written after all shards are built
+ * Shard files are named by index path and shard by default, for example {@code sample.index.shard3}, or given per
+ * shard to spread them over disks. A shard is rebuilt alone by {@link #process(int)}, readers of it should be reopened.
+ * Read shards by {@link david.lu.indexing.reader.ShardedIndexReader}.
+ * </pre>
+ */
+@Slf4j
+public class ShardedIndexWriter {
+    private final int size;
+    private final String sourceFilePath;
+    private final File manifest;
+    private final List<String> shardFilePaths;
+    private final IndexWriterConfig config;
+    private final IndexWriterFactory writerFactory;
+
+    /**
+     * @param size Estimate record count of source, each shard is sized for its part of it
+     * @param shards shard files, named by {@code indexFilePath}
+     */
+    public ShardedIndexWriter(int size, String sourceFilePath, String indexFilePath, int shards, IndexWriterConfig config,
+                              IndexWriterFactory writerFactory) {
+        this(size, sourceFilePath, indexFilePath, shardFilePaths(indexFilePath, shards), config, writerFactory);
+    }
+
+    /**
+     * @param size Estimate record count of source, each shard is sized for its part of it
+     * @param shardFilePaths index file of each shard, in order of shard
+     * @param config options of shards, shard is set by this writer
+     */
+    public ShardedIndexWriter(int size, String sourceFilePath, String indexFilePath, List<String> shardFilePaths,
+                              IndexWriterConfig config, IndexWriterFactory writerFactory) {
+        if (shardFilePaths.isEmpty()) {
+            throw new IllegalArgumentException("No shard of index: " + indexFilePath);
+        }
+        this.size = size;
+        this.sourceFilePath = sourceFilePath;
+        this.manifest = ShardManifest.of(indexFilePath);
+        this.shardFilePaths = new ArrayList<>(shardFilePaths);
+        this.config = config;
+        this.writerFactory = writerFactory;
+    }
+
+    /**
+     * @return default index file of {@code shard}
+     */
+    public static String shardFilePath(String indexFilePath, int shard) {
+        return indexFilePath + ".shard" + shard;
+    }
+
+    public int getShards() {
+        return shardFilePaths.size();
+    }
+
+    /**
+     * Build all shards by one scan of source, then write manifest
+     */
+    public void process() throws IOException {
+        long startTime = System.currentTimeMillis();
+        writer(0, config.getBlockSourceFile()).processShards(shardFilePaths);
+        writeManifest();
+        log.debug("{} shards built in {}.", getShards(), formatTime(System.currentTimeMillis() - startTime));
+    }
+
+    /**
+     * Rebuild {@code shard} alone by a scan of the whole source, other shards are not touched
+     */
+    public void process(int shard) throws IOException {
+        if (shard < 0 || shard >= getShards()) {
+            throw new IllegalArgumentException(String.format("Invalid shard %d of %d.", shard, getShards()));
+        }
+        long startTime = System.currentTimeMillis();
+        build(shard);
+        writeManifest();
+        log.debug("Shard {} rebuilt in {}.", shard, formatTime(System.currentTimeMillis() - startTime));
+    }
+
+    private void build(int shard) throws IOException {
+        // source is rewritten once, with the first shard
+        writer(shard, shard == 0 ? config.getBlockSourceFile() : null).process();
+    }
+
+    /**
+     * @return writer of index file of {@code shard}, sized for a shard
+     */
+    private AbstractIndexWriter writer(int shard, File blockSourceFile) throws IOException {
+        int shards = getShards();
+        return writerFactory.create(
+            (int) Math.min(Integer.MAX_VALUE, (size + (long) shards - 1) / shards),
+            sourceFilePath,
+            shardFilePaths.get(shard),
+            config.toBuilder()
+                .shards(shards)
+                .shard(shard)
+                .blockSourceFile(blockSourceFile)
+                .build()
+        );
+    }
+
+    private void writeManifest() throws IOException {
+        List<File> shards = new ArrayList<>(shardFilePaths.size());
+        for (String shardFilePath : shardFilePaths) {
+            shards.add(new File(shardFilePath));
+        }
+        ShardManifest.write(manifest, shards);
+    }
+
+    private static List<String> shardFilePaths(String indexFilePath, int shards) {
+        List<String> shardFilePaths = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            shardFilePaths.add(shardFilePath(indexFilePath, i));
+        }
+        return shardFilePaths;
+    }
+}
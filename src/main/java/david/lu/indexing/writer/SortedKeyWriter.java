@@ -0,0 +1,286 @@
+package david.lu.indexing.writer;
+
+import david.lu.indexing.pojo.IndexSortedKeys;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keys of {@link IndexWriterConfig#getSortedNamespaces()} collected while scanning source, sorted in memory up to the
+ * memory budget, spilled to sorted runs beyond it, then merged to a file of {@link IndexSortedKeys}. Keys are added
+ * concurrently by workers.
+ */
+final class SortedKeyWriter {
+    /**
+     * heap bytes of an entry besides its key
+     */
+    private final static int ENTRY_OVERHEAD = 64;
+    private final static int SPILL_BUFFER = 1 << 16;
+    private final static Comparator<Entry> ORDER = (a, b) -> {
+        if (a.namespace != b.namespace) {
+            return Integer.compare(a.namespace, b.namespace);
+        }
+        int diff = IndexSortedKeys.compare(a.key, b.key);
+        return diff != 0 ? diff : Long.compare(a.offset, b.offset);
+    };
+    private final long memoryBudget;
+    private final File tempDirectory;
+    private final List<File> runs = new ArrayList<>();
+    private List<Entry> entries = new ArrayList<>();
+    private long bytes;
+
+    SortedKeyWriter(long memoryBudget, File tempDirectory) {
+        this.memoryBudget = memoryBudget;
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * @param namespace index of sorted namespace
+     */
+    synchronized void add(int namespace, String key, long offset, int length) throws IOException {
+        Entry entry = new Entry(namespace, key.getBytes(StandardCharsets.UTF_8), offset, length);
+        entries.add(entry);
+        bytes += entry.key.length + ENTRY_OVERHEAD;
+        if (bytes >= memoryBudget) {
+            spill();
+        }
+    }
+
+    /**
+     * Merge keys to {@code file}
+     * @return keys written
+     */
+    long write(File file, List<String> namespaces) throws IOException {
+        entries.sort(ORDER);
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>((a, b) -> ORDER.compare(a.current, b.current));
+        List<DataInputStream> inputs = new ArrayList<>();
+        try (CountingOutputStream output = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), SPILL_BUFFER))) {
+            for (File run : runs) {
+                DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(run), SPILL_BUFFER));
+                inputs.add(input);
+                addCursor(cursors, () -> readEntry(input));
+            }
+            Iterator<Entry> memory = entries.iterator();
+            addCursor(cursors, () -> memory.hasNext() ? memory.next() : null);
+
+            DataOutputStream data = new DataOutputStream(output);
+            data.writeInt(IndexSortedKeys.MAGIC);
+            BlockWriter blocks = new BlockWriter(data, output, namespaces.size());
+            while (!cursors.isEmpty()) {
+                Cursor cursor = cursors.poll();
+                blocks.add(cursor.current);
+                cursor.current = cursor.source.next();
+                if (cursor.current != null) {
+                    cursors.add(cursor);
+                }
+            }
+            blocks.flush();
+
+            long directoryOffset = output.count;
+            data.writeInt(namespaces.size());
+            long written = 0;
+            for (int i = 0; i < namespaces.size(); i++) {
+                data.writeUTF(namespaces.get(i));
+                data.writeLong(blocks.keys[i]);
+                data.writeInt(blocks.firstKeys.get(i).size());
+                for (int b = 0; b < blocks.firstKeys.get(i).size(); b++) {
+                    byte[] firstKey = blocks.firstKeys.get(i).get(b);
+                    data.writeInt(firstKey.length);
+                    data.write(firstKey);
+                    data.writeLong(blocks.offsets.get(i).get(b));
+                    data.writeInt(blocks.lengths.get(i).get(b));
+                }
+                written += blocks.keys[i];
+            }
+            data.writeLong(directoryOffset);
+            data.flush();
+            return written;
+        } finally {
+            for (DataInputStream input : inputs) {
+                input.close();
+            }
+        }
+    }
+
+    /**
+     * Delete spilled runs
+     */
+    void close() {
+        for (File run : runs) {
+            run.delete();
+        }
+        entries = new ArrayList<>();
+    }
+
+    private void spill() throws IOException {
+        entries.sort(ORDER);
+        File run = File.createTempFile("index-", ".keys", tempDirectory);
+        run.deleteOnExit();
+        runs.add(run);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), SPILL_BUFFER))) {
+            for (Entry entry : entries) {
+                output.writeInt(entry.namespace);
+                output.writeInt(entry.key.length);
+                output.write(entry.key);
+                output.writeLong(entry.offset);
+                output.writeInt(entry.length);
+            }
+        }
+        entries = new ArrayList<>();
+        bytes = 0;
+    }
+
+    private static Entry readEntry(DataInputStream input) throws IOException {
+        int namespace;
+        try {
+            namespace = input.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        byte[] key = new byte[input.readInt()];
+        input.readFully(key);
+        return new Entry(namespace, key, input.readLong(), input.readInt());
+    }
+
+    private static void addCursor(PriorityQueue<Cursor> cursors, EntrySource source) throws IOException {
+        Cursor cursor = new Cursor(source);
+        if (cursor.current != null) {
+            cursors.add(cursor);
+        }
+    }
+
+    @FunctionalInterface
+    private interface EntrySource {
+        /**
+         * @return null at the end
+         */
+        Entry next() throws IOException;
+    }
+
+    private static final class Cursor {
+        private final EntrySource source;
+        private Entry current;
+
+        private Cursor(EntrySource source) throws IOException {
+            this.source = source;
+            this.current = source.next();
+        }
+    }
+
+    private static final class Entry {
+        private final int namespace;
+        private final byte[] key;
+        private final long offset;
+        private final int length;
+
+        private Entry(int namespace, byte[] key, long offset, int length) {
+            this.namespace = namespace;
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Front code entries in merge order to blocks, recording directory of each namespace
+     */
+    private static final class BlockWriter {
+        private final DataOutputStream data;
+        private final CountingOutputStream output;
+        private final long[] keys;
+        private final List<List<byte[]>> firstKeys = new ArrayList<>();
+        private final List<List<Long>> offsets = new ArrayList<>();
+        private final List<List<Integer>> lengths = new ArrayList<>();
+        private ByteBuffer block = ByteBuffer.allocate(IndexSortedKeys.BLOCK_SIZE * 2);
+        private int namespace = -1;
+        private byte[] previous;
+
+        private BlockWriter(DataOutputStream data, CountingOutputStream output, int namespaces) {
+            this.data = data;
+            this.output = output;
+            this.keys = new long[namespaces];
+            for (int i = 0; i < namespaces; i++) {
+                firstKeys.add(new ArrayList<>());
+                offsets.add(new ArrayList<>());
+                lengths.add(new ArrayList<>());
+            }
+        }
+
+        private void add(Entry entry) throws IOException {
+            if (entry.namespace != namespace || block.position() >= IndexSortedKeys.BLOCK_SIZE) {
+                flush();
+                namespace = entry.namespace;
+            }
+            if (block.remaining() < IndexSortedKeys.getMaxSize(entry.key)) {
+                ByteBuffer grown = ByteBuffer.allocate(block.position() + IndexSortedKeys.getMaxSize(entry.key));
+                block.flip();
+                block = grown.put(block);
+            }
+            if (previous == null) {
+                firstKeys.get(namespace).add(entry.key);
+            }
+            IndexSortedKeys.put(block, entry.key, previous, entry.offset, entry.length);
+            previous = entry.key;
+            keys[namespace]++;
+        }
+
+        private void flush() throws IOException {
+            if (block.position() > 0) {
+                offsets.get(namespace).add(output.count);
+                lengths.get(namespace).add(block.position());
+                data.write(block.array(), 0, block.position());
+                block.clear();
+            }
+            previous = null;
+        }
+    }
+
+    /**
+     * Counts bytes written, which is the offset in file
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream output;
+        private long count;
+
+        private CountingOutputStream(OutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            output.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            output.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+}
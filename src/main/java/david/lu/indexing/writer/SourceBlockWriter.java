@@ -0,0 +1,148 @@
+package david.lu.indexing.writer;
+
+import david.lu.indexing.pojo.IndexSourceBlocks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.Deflater;
+
+/**
+ * Rewrite source to {@link IndexSourceBlocks} while it's scanned. Scanning thread reports the end of each item, a block
+ * is cut at the first item end reaching block size, and its bytes are read back from source, which was just scanned
+ * and is likely in page cache. Blocks are written to a temporary file, which replaces the target when finished.
+ */
+final class SourceBlockWriter {
+    private final FileChannel source;
+    private final File target;
+    private final File temp;
+    private final FileChannel output;
+    private final int blockSize;
+    private final Deflater deflater;
+    private final long sourceStart;
+    private final ByteArrayOutputStream directoryBytes = new ByteArrayOutputStream();
+    private final DataOutputStream directory = new DataOutputStream(directoryBytes);
+    private byte[] block = new byte[0];
+    private byte[] compressed = new byte[0];
+    private long blockStart;
+    private long written;
+    private int blocks;
+
+    SourceBlockWriter(String sourceFilePath, File target, long sourceStart, int blockSize, int level) throws IOException {
+        this.source = new RandomAccessFile(sourceFilePath, "r").getChannel();
+        this.target = target;
+        this.temp = new File(target.getPath() + ".tmp");
+        this.output = new RandomAccessFile(temp, "rw").getChannel();
+        output.truncate(0);
+        this.blockSize = blockSize;
+        this.deflater = new Deflater(level, true);
+        this.sourceStart = sourceStart;
+        this.blockStart = sourceStart;
+        this.written = write(ByteBuffer.allocate(Integer.BYTES).putInt(0, IndexSourceBlocks.MAGIC), 0);
+    }
+
+    /**
+     * Cut a block at {@code itemEnd} if it's reached, called by scanning thread in order of source
+     * @param itemEnd source offset after an item
+     */
+    void add(long itemEnd) throws IOException {
+        if (itemEnd - blockStart >= blockSize) {
+            flush(itemEnd);
+        }
+    }
+
+    /**
+     * Write the last block, directory and trailer, then replace target
+     * @param sourceEnd source offset after the last item scanned
+     * @return bytes written
+     */
+    long finish(long sourceEnd) throws IOException {
+        if (sourceEnd > blockStart) {
+            flush(sourceEnd);
+        }
+        long directoryOffset = written;
+        ByteBuffer head = ByteBuffer.allocate(Integer.BYTES + Long.BYTES).putInt(blocks).putLong(sourceStart);
+        head.flip();
+        written += write(head, written);
+        written += write(ByteBuffer.wrap(directoryBytes.toByteArray()), written);
+        written += write(ByteBuffer.allocate(Long.BYTES).putLong(0, directoryOffset), written);
+        output.force(false);
+        output.close();
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return written;
+    }
+
+    /**
+     * @return blocks written
+     */
+    int getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Release files, a temporary file not finished is deleted
+     */
+    void close() throws IOException {
+        deflater.end();
+        source.close();
+        if (output.isOpen()) {
+            output.close();
+            temp.delete();
+        }
+    }
+
+    private void flush(long end) throws IOException {
+        int length = (int) (end - blockStart);
+        if (block.length < length) {
+            block = new byte[length];
+        }
+        ByteBuffer input = ByteBuffer.wrap(block, 0, length);
+        while (input.hasRemaining()) {
+            if (source.read(input, blockStart + input.position()) < 0) {
+                throw new EOFException(String.format("Source ends before offset %d.", end));
+            }
+        }
+        deflater.reset();
+        deflater.setInput(block, 0, length);
+        deflater.finish();
+        // deflate expands incompressible bytes by a few bytes per 16K
+        if (compressed.length < length + (length >> 12) + 64) {
+            compressed = new byte[length + (length >> 12) + 64];
+        }
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                byte[] grown = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, grown, 0, compressedLength);
+                compressed = grown;
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+        directory.writeLong(written);
+        directory.writeInt(compressedLength);
+        directory.writeInt(length);
+        written += write(ByteBuffer.wrap(compressed, 0, compressedLength), written);
+        blockStart = end;
+        blocks++;
+    }
+
+    private int write(ByteBuffer buffer, long position) throws IOException {
+        int size = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            position += output.write(buffer, position);
+        }
+        return size;
+    }
+}
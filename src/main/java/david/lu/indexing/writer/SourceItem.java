@@ -0,0 +1,52 @@
+package david.lu.indexing.writer;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * An item of source, as a slice of a buffer which may be reused for next item.
+ */
+@Getter
+public final class SourceItem {
+    /**
+     * source offset of item
+     */
+    private long offset;
+    /**
+     * buffer holding item
+     */
+    private byte[] data;
+    /**
+     * index of item in {@link #data}
+     */
+    private int from;
+    /**
+     * length of item
+     */
+    private int length;
+    /**
+     * sequence of item in source, set by {@link AbstractIndexWriter}
+     */
+    private long id;
+
+    public SourceItem set(long offset, byte[] data, int from, int length) {
+        this.offset = offset;
+        this.data = data;
+        this.from = from;
+        this.length = length;
+        return this;
+    }
+
+    SourceItem id(long id) {
+        this.id = id;
+        return this;
+    }
+
+    /**
+     * @return item with own copy of bytes
+     */
+    public SourceItem copy() {
+        return new SourceItem().set(offset, Arrays.copyOfRange(data, from, from + length), 0, length).id(id);
+    }
+}
@@ -0,0 +1,247 @@
+package david.lu.indexing.writer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <pre>
+ * Tunnels packed in primitive arrays instead of {@link david.lu.indexing.pojo.IndexTunnel} objects, {@link #ENTRY_SIZE}
+ * bytes each. Sorted in order of index file: by bucket, then by signed hash, then by source offset. Hash is either a
+ * 32 bits hash or a 64 bits fingerprint.
+ *  bucket          4 bytes
+ *  hash            8 bytes
+ *  source offset   8 bytes
+ *  source length   4 bytes
+ * </pre>
+ */
+final class TunnelBuffer {
+    final static int ENTRY_SIZE = 24;
+    private final static int INITIAL_ENTRIES = 1 << 16;
+    private final static int INSERTION_SORT_THRESHOLD = 16;
+    private final static int SPILL_BUFFER = 1 << 16;
+    private final int maxEntries;
+    private int[] buckets;
+    private long[] hashes;
+    private long[] offsets;
+    private int[] lengths;
+    private int size;
+
+    /**
+     * @param memoryBudget max bytes of entries
+     */
+    TunnelBuffer(long memoryBudget) {
+        maxEntries = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, memoryBudget / ENTRY_SIZE));
+        int initial = Math.min(INITIAL_ENTRIES, maxEntries);
+        buckets = new int[initial];
+        hashes = new long[initial];
+        offsets = new long[initial];
+        lengths = new int[initial];
+    }
+
+    /**
+     * @return false if buffer is full, the tunnel isn't added
+     */
+    boolean add(int bucket, long hash, long offset, int length) {
+        if (size == buckets.length) {
+            if (size == maxEntries) {
+                return false;
+            }
+            int grown = (int) Math.min(maxEntries, (long) size << 1);
+            buckets = Arrays.copyOf(buckets, grown);
+            hashes = Arrays.copyOf(hashes, grown);
+            offsets = Arrays.copyOf(offsets, grown);
+            lengths = Arrays.copyOf(lengths, grown);
+        }
+        buckets[size] = bucket;
+        hashes[size] = hash;
+        offsets[size] = offset;
+        lengths[size] = length;
+        size++;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void sort() {
+        sort(0, size - 1);
+    }
+
+    /**
+     * Write sorted tunnels to {@code file}, then clear the buffer.
+     */
+    void spill(File file) throws IOException {
+        sort();
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), SPILL_BUFFER))) {
+            for (int i = 0; i < size; i++) {
+                output.writeInt(buckets[i]);
+                output.writeLong(hashes[i]);
+                output.writeLong(offsets[i]);
+                output.writeInt(lengths[i]);
+            }
+        }
+        clear();
+    }
+
+    /**
+     * @return run over sorted tunnels in memory, valid until buffer is changed
+     */
+    TunnelRun run() {
+        sort();
+        return new TunnelRun() {
+            private int index = -1;
+
+            @Override
+            public boolean next() {
+                return ++index < size;
+            }
+
+            @Override
+            public int bucket() {
+                return buckets[index];
+            }
+
+            @Override
+            public long hash() {
+                return hashes[index];
+            }
+
+            @Override
+            public long offset() {
+                return offsets[index];
+            }
+
+            @Override
+            public int length() {
+                return lengths[index];
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * @return run over tunnels spilled to {@code file}
+     */
+    static TunnelRun run(File file) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), SPILL_BUFFER));
+        return new TunnelRun() {
+            private int bucket;
+            private long hash;
+            private long offset;
+            private int length;
+
+            @Override
+            public boolean next() throws IOException {
+                try {
+                    bucket = input.readInt();
+                } catch (EOFException e) {
+                    return false;
+                }
+                hash = input.readLong();
+                offset = input.readLong();
+                length = input.readInt();
+                return true;
+            }
+
+            @Override
+            public int bucket() {
+                return bucket;
+            }
+
+            @Override
+            public long hash() {
+                return hash;
+            }
+
+            @Override
+            public long offset() {
+                return offset;
+            }
+
+            @Override
+            public int length() {
+                return length;
+            }
+
+            @Override
+            public void close() throws IOException {
+                input.close();
+            }
+        };
+    }
+
+    private void sort(int low, int high) {
+        while (high - low > INSERTION_SORT_THRESHOLD) {
+            int middle = (low + high) >>> 1;
+            // median of three as pivot, moved to high
+            if (compare(middle, low) < 0) {
+                swap(middle, low);
+            }
+            if (compare(high, low) < 0) {
+                swap(high, low);
+            }
+            if (compare(middle, high) < 0) {
+                swap(middle, high);
+            }
+            int store = low;
+            for (int i = low; i < high; i++) {
+                if (compare(i, high) < 0) {
+                    swap(i, store++);
+                }
+            }
+            swap(store, high);
+            // recurse into smaller part, loop on larger part
+            if (store - low < high - store) {
+                sort(low, store - 1);
+                low = store + 1;
+            } else {
+                sort(store + 1, high);
+                high = store - 1;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compare(j, j - 1) < 0; j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private int compare(int i, int j) {
+        int result = Integer.compare(buckets[i], buckets[j]);
+        if (result == 0) {
+            result = Long.compare(hashes[i], hashes[j]);
+        }
+        return result != 0 ? result : Long.compare(offsets[i], offsets[j]);
+    }
+
+    private void swap(int i, int j) {
+        int bucket = buckets[i];
+        buckets[i] = buckets[j];
+        buckets[j] = bucket;
+        long hash = hashes[i];
+        hashes[i] = hashes[j];
+        hashes[j] = hash;
+        long offset = offsets[i];
+        offsets[i] = offsets[j];
+        offsets[j] = offset;
+        int length = lengths[i];
+        lengths[i] = lengths[j];
+        lengths[j] = length;
+    }
+}
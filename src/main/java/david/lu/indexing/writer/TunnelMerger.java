@@ -0,0 +1,48 @@
+package david.lu.indexing.writer;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge of sorted {@link TunnelRun}s into one sorted stream.
+ */
+final class TunnelMerger {
+    private final static Comparator<TunnelRun> ORDER = Comparator.comparingInt(TunnelRun::bucket)
+        .thenComparingLong(TunnelRun::hash)
+        .thenComparingLong(TunnelRun::offset);
+
+    private TunnelMerger() {
+    }
+
+    @FunctionalInterface
+    interface TunnelConsumer {
+        void accept(int bucket, long hash, long offset, int length) throws IOException;
+    }
+
+    /**
+     * Merge all {@code runs} to {@code consumer} in order of bucket, hash and source offset. Runs are closed.
+     */
+    static void merge(List<TunnelRun> runs, TunnelConsumer consumer) throws IOException {
+        PriorityQueue<TunnelRun> queue = new PriorityQueue<>(Math.max(1, runs.size()), ORDER);
+        try {
+            for (TunnelRun run : runs) {
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+            while (!queue.isEmpty()) {
+                TunnelRun run = queue.poll();
+                consumer.accept(run.bucket(), run.hash(), run.offset(), run.length());
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+        } finally {
+            for (TunnelRun run : runs) {
+                run.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package david.lu.indexing.writer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Tunnels sorted by bucket, hash then source offset, iterated one by one.
+ */
+interface TunnelRun extends Closeable {
+    /**
+     * Move to next tunnel
+     * @return false if no more tunnel
+     * @throws IOException
+     */
+    boolean next() throws IOException;
+
+    int bucket();
+
+    long hash();
+
+    long offset();
+
+    int length();
+}
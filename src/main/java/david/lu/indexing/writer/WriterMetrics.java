@@ -0,0 +1,167 @@
+package david.lu.indexing.writer;
+
+import javax.management.ObjectName;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static david.lu.indexing.utils.IndexUtils.registerMBean;
+import static david.lu.indexing.utils.IndexUtils.unregisterMBean;
+
+/**
+ * Aggregated measures of builds, summed over builds sharing it: shards of a {@link ShardedIndexWriter}, segments of an
+ * {@link IncrementalIndexer}, or writers run one after another. Published to JMX by {@link #register(String)}, items
+ * hashed are updated while a build is scanning.
+ */
+public class WriterMetrics implements WriterMetricsListener, WriterMetricsMXBean {
+    /**
+     * buckets of more tunnels are counted as this size
+     */
+    public final static int MAX_BUCKET_SIZE = 32;
+    final static String MBEAN_TYPE = "IndexWriter";
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder itemsHashed = new LongAdder();
+    private final LongAdder itemsScanned = new LongAdder();
+    private final LongAdder tunnels = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder scanNanos = new LongAdder();
+    private final LongAdder dumpNanos = new LongAdder();
+    private final AtomicLongArray bucketSizes = new AtomicLongArray(MAX_BUCKET_SIZE + 1);
+    // null if not registered
+    private volatile ObjectName objectName;
+
+    /**
+     * Register to platform MBean server as {@code david.lu.indexing:type=IndexWriter,name="<name>"}
+     * @throws IllegalArgumentException if the name is taken
+     */
+    public synchronized ObjectName register(String name) {
+        if (objectName != null) {
+            throw new IllegalStateException("Metrics are registered as " + objectName);
+        }
+        objectName = registerMBean(this, MBEAN_TYPE, name);
+        return objectName;
+    }
+
+    public synchronized void unregister() {
+        if (objectName != null) {
+            unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    @Override
+    public void itemHashed(long nanos) {
+        itemsHashed.increment();
+        hashNanos.add(nanos);
+    }
+
+    @Override
+    public void scanned(long items, long nanos) {
+        itemsScanned.add(items);
+        scanNanos.add(nanos);
+    }
+
+    @Override
+    public void dumped(long tunnels, long bytes, long nanos) {
+        builds.increment();
+        this.tunnels.add(tunnels);
+        bytesWritten.add(bytes);
+        dumpNanos.add(nanos);
+    }
+
+    @Override
+    public void bucketSizes(long[] sizes) {
+        for (int i = 0; i < sizes.length; i++) {
+            bucketSizes.addAndGet(Math.min(i, MAX_BUCKET_SIZE), sizes[i]);
+        }
+    }
+
+    /**
+     * @return index files written
+     */
+    @Override
+    public long getBuilds() {
+        return builds.sum();
+    }
+
+    /**
+     * @return items hashed so far, including builds still scanning
+     */
+    @Override
+    public long getItemsHashed() {
+        return itemsHashed.sum();
+    }
+
+    /**
+     * @return items of finished scans
+     */
+    @Override
+    public long getItemsScanned() {
+        return itemsScanned.sum();
+    }
+
+    @Override
+    public long getTunnels() {
+        return tunnels.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * @return time of hashing items, summed over hashing workers
+     */
+    @Override
+    public long getHashMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(hashNanos.sum());
+    }
+
+    @Override
+    public long getScanMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(scanNanos.sum());
+    }
+
+    @Override
+    public long getDumpMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(dumpNanos.sum());
+    }
+
+    /**
+     * @return items of finished scans per second of their scan and dump phases, 0 before the first build ends
+     */
+    @Override
+    public double getRecordsPerSecond() {
+        long nanos = scanNanos.sum() + dumpNanos.sum();
+        return nanos == 0 || builds.sum() == 0 ? 0 : itemsScanned.sum() * 1e9 / nanos;
+    }
+
+    /**
+     * @return buckets by tunnels, the last one counts buckets of {@link #MAX_BUCKET_SIZE} tunnels or more
+     */
+    @Override
+    public long[] getBucketSizes() {
+        long[] sizes = new long[bucketSizes.length()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = bucketSizes.get(i);
+        }
+        return sizes;
+    }
+
+    @Override
+    public void reset() {
+        builds.reset();
+        itemsHashed.reset();
+        itemsScanned.reset();
+        tunnels.reset();
+        bytesWritten.reset();
+        hashNanos.reset();
+        scanNanos.reset();
+        dumpNanos.reset();
+        for (int i = 0; i < bucketSizes.length(); i++) {
+            bucketSizes.set(i, 0);
+        }
+    }
+}
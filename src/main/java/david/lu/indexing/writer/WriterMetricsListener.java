@@ -0,0 +1,41 @@
+package david.lu.indexing.writer;
+
+/**
+ * <pre>
+ * Receives measures of {@link AbstractIndexWriter#process()}, see {@link IndexWriterConfig#getMetricsListener()}:
+ *  1. {@link #itemHashed(long)} for each item, in scanning thread or hashing workers, concurrently
+ *  2. {@link #scanned(long, long)} after all items are hashed
+ *  3. {@link #dumped(long, long, long)} and {@link #bucketSizes(long[])} after index file is written
+ * {@link #itemHashed(long)} is called with primitives only, so it should be cheap and must not block.
+ * {@link WriterMetrics} aggregates them.
+ * </pre>
+ */
+public interface WriterMetricsListener {
+    /**
+     * @param nanos time of hashing keys of an item
+     */
+    default void itemHashed(long nanos) {
+    }
+
+    /**
+     * @param items items scanned
+     * @param nanos time of scan phase, reading and hashing items
+     */
+    default void scanned(long items, long nanos) {
+    }
+
+    /**
+     * @param tunnels tunnels written
+     * @param bytes bytes of index file
+     * @param nanos time of dump phase, merging tunnels and writing index file
+     */
+    default void dumped(long tunnels, long bytes, long nanos) {
+    }
+
+    /**
+     * @param sizes buckets by tunnels, {@code sizes[i]} buckets hold {@code i} tunnels, the last one counts larger
+     *              buckets too, see {@link WriterMetrics#MAX_BUCKET_SIZE}
+     */
+    default void bucketSizes(long[] sizes) {
+    }
+}
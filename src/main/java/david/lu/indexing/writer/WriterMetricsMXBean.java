@@ -0,0 +1,28 @@
+package david.lu.indexing.writer;
+
+/**
+ * JMX view of {@link WriterMetrics}, times are in milliseconds
+ */
+public interface WriterMetricsMXBean {
+    long getBuilds();
+
+    long getItemsHashed();
+
+    long getItemsScanned();
+
+    long getTunnels();
+
+    long getBytesWritten();
+
+    long getHashMillis();
+
+    long getScanMillis();
+
+    long getDumpMillis();
+
+    double getRecordsPerSecond();
+
+    long[] getBucketSizes();
+
+    void reset();
+}
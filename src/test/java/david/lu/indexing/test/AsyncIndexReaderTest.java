@@ -0,0 +1,93 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.IndexReaderConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.SAMPLE_ALIAS;
+import static david.lu.indexing.test.TestUtils.SAMPLE_IDS;
+import static david.lu.indexing.test.TestUtils.SOURCE_FILE_RESOURCE_SAMPLE;
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CAPACITY;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class AsyncIndexReaderTest {
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "async.index";
+    private static final int THREADS = 2;
+
+    private ExecutorService service;
+
+    private IndexReader reader;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setUp() throws IOException {
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'}
+        ).process();
+        service = Executors.newFixedThreadPool(THREADS);
+        reader = IndexReader.init(
+            new File(SOURCE_FILE_RESOURCE_SAMPLE),
+            new File(INDEX_FILE),
+            IndexReaderConfig.builder()
+                .async(true)
+                .asyncExecutor(service)
+                .build()
+        );
+    }
+
+    @Test
+    public void testIds() {
+        runTest(SAMPLE_IDS, Data::getId);
+    }
+
+    @Test
+    public void testAlias() {
+        runTest(SAMPLE_ALIAS, Data::getAlias);
+    }
+
+    @Test
+    public void testMissing() {
+        assertThat(reader.loadByKeyAsync("missing-key", this::unmarshal, Data::getId).join()).isNull();
+    }
+
+    private void runTest(List<String> keys, Function<Data, String> keyExtractor) {
+        List<Data> items = reader.loadByKeysAsync(keys, this::unmarshal, keyExtractor).join();
+        List<String> actual = items.stream()
+            .map(keyExtractor)
+            .collect(Collectors.toList());
+        assertThat(actual).containsExactlyElementsOf(keys);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (reader != null) {
+            reader.cleanup();
+        }
+        service.shutdown();
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
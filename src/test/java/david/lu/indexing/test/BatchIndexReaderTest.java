@@ -0,0 +1,88 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.IndexReaderConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.SAMPLE_ALIAS;
+import static david.lu.indexing.test.TestUtils.SAMPLE_IDS;
+import static david.lu.indexing.test.TestUtils.SOURCE_FILE_RESOURCE_SAMPLE;
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CAPACITY;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class BatchIndexReaderTest {
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "batch.index";
+    private static final int PARALLELISM = 3;
+
+    private ExecutorService service;
+
+    private IndexReader reader;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setUp() throws IOException {
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'}
+        ).process();
+        service = Executors.newFixedThreadPool(PARALLELISM);
+        reader = IndexReader.init(
+            new File(SOURCE_FILE_RESOURCE_SAMPLE),
+            new File(INDEX_FILE),
+            IndexReaderConfig.builder()
+                .batchExecutor(service)
+                .batchParallelism(PARALLELISM)
+                .build()
+        );
+    }
+
+    @Test
+    public void testKeyOrder() throws IOException {
+        List<String> keys = new ArrayList<>(SAMPLE_IDS);
+        Collections.reverse(keys);
+        List<Data> items = reader.loadByKeys(keys, this::unmarshal, Data::getId);
+        assertThat(items.stream().map(Data::getId).collect(Collectors.toList())).containsExactlyElementsOf(keys);
+    }
+
+    @Test
+    public void testMissingAndDuplicatedKeys() throws IOException {
+        List<String> keys = asList(SAMPLE_ALIAS.get(3), "missing-alias", SAMPLE_ALIAS.get(0), SAMPLE_ALIAS.get(3));
+        List<Data> items = reader.loadByKeys(keys, this::unmarshal, Data::getAlias);
+        assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList()))
+            .containsExactly(SAMPLE_ALIAS.get(3), SAMPLE_ALIAS.get(0), SAMPLE_ALIAS.get(3));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (reader != null) {
+            reader.cleanup();
+        }
+        service.shutdown();
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
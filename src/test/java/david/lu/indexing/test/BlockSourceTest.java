@@ -0,0 +1,109 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.reader.CacheStats;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.IndexReaderConfig;
+import david.lu.indexing.writer.IndexWriterConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class BlockSourceTest {
+    private static final String SOURCE_FILE = TEST_OUTPUT_PATH + "blocks.data";
+    private static final File BLOCK_SOURCE_FILE = new File(TEST_OUTPUT_PATH + "blocks.data.blocks");
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "blocks.index";
+    private static final String PLAIN_INDEX_FILE = TEST_OUTPUT_PATH + "blocks-plain.index";
+    private static final int ITEMS = 5000;
+    // bytes of magic, version and create time in header
+    private static final int CREATE_TIME_END = 13;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setUp() throws IOException {
+        new File(TEST_OUTPUT_PATH).mkdirs();
+        try (PrintWriter writer = new PrintWriter(SOURCE_FILE)) {
+            for (int i = 0; i < ITEMS; i++) {
+                writer.printf("{\"id\":\"id-%d\",\"alias\":\"alias-%d\"}\n", i, i);
+            }
+        }
+    }
+
+    @Test
+    public void testBlockSource() throws IOException {
+        IndexWriterConfig config = IndexWriterConfig.builder()
+            .version(IndexHeader.FINGERPRINT_VERSION)
+            .threads(4)
+            .build();
+        write(PLAIN_INDEX_FILE, config);
+        write(INDEX_FILE, config.toBuilder().blockSourceFile(BLOCK_SOURCE_FILE).sourceBlockSize(4096).build());
+        // tunnels keep offsets of source, so index file is the same
+        byte[] expected = Files.readAllBytes(new File(PLAIN_INDEX_FILE).toPath());
+        byte[] actual = Files.readAllBytes(new File(INDEX_FILE).toPath());
+        assertThat(Arrays.copyOfRange(actual, CREATE_TIME_END, actual.length))
+            .isEqualTo(Arrays.copyOfRange(expected, CREATE_TIME_END, expected.length));
+        assertThat(BLOCK_SOURCE_FILE.length()).isLessThan(new File(SOURCE_FILE).length() / 2);
+
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i += 13) {
+            keys.add("id-" + i);
+        }
+        for (IndexReaderConfig readerConfig : Arrays.asList(
+            IndexReaderConfig.defaults(),
+            IndexReaderConfig.builder().mapped(true).blockCacheSize(0).build()
+        )) {
+            IndexReader reader = IndexReader.init(BLOCK_SOURCE_FILE, new File(INDEX_FILE), readerConfig);
+            try {
+                for (int i = 0; i < ITEMS; i++) {
+                    assertThat(reader.loadByKey("alias-" + i, this::unmarshal, Data::getAlias).getId()).isEqualTo("id-" + i);
+                }
+                List<Data> items = reader.loadByKeys(keys, this::unmarshal, Data::getId);
+                assertThat(items.stream().map(Data::getId).collect(Collectors.toList())).containsExactlyElementsOf(keys);
+                assertThat(reader.loadByKeyAsync("id-42", this::unmarshal, Data::getId).join().getAlias()).isEqualTo("alias-42");
+                CacheStats stats = reader.getCacheStats();
+                if (readerConfig.getBlockCacheSize() > 0) {
+                    // each block is decompressed once
+                    assertThat(stats.getBlockMissCount()).isLessThan(ITEMS / 10);
+                    assertThat(stats.getBlockHitCount()).isGreaterThan(ITEMS);
+                } else {
+                    assertThat(stats.getBlockHitCount()).isZero();
+                    assertThat(stats.getBlockMissCount()).isGreaterThan(ITEMS);
+                }
+            } finally {
+                reader.cleanup();
+            }
+        }
+    }
+
+    private void write(String indexFile, IndexWriterConfig config) throws IOException {
+        new DelimiterIndexWriter(
+            ITEMS,
+            SOURCE_FILE,
+            indexFile,
+            new char[]{'\r', '\n'},
+            config
+        ).process();
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
@@ -1,22 +1,54 @@
 package david.lu.indexing.test;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.utils.IndexUtils;
 import david.lu.indexing.writer.AbstractDelimiterIndexWriter;
+import david.lu.indexing.writer.IndexWriterConfig;
 
 import java.io.IOException;
 
 public class DelimiterIndexWriter extends AbstractDelimiterIndexWriter {
 
     public DelimiterIndexWriter(int size, String sourceFilePath, String indexFilePath, char[] delimiters) throws IOException {
-        super(size, sourceFilePath, indexFilePath, delimiters);
+        this(size, sourceFilePath, indexFilePath, delimiters, IndexWriterConfig.defaults());
     }
 
-    @Override
-    protected int[] hash(byte[] data) throws IOException {
-        Data obj = new ObjectMapper().readValue(data, Data.class);
+    public DelimiterIndexWriter(int size, String sourceFilePath, String indexFilePath, char[] delimiters, IndexWriterConfig config) throws IOException {
+        super(size, sourceFilePath, indexFilePath, delimiters, withKeys(config));
+    }
+
+    /**
+     * @return config keying {@link Data} by id and alias, functions already set are kept
+     */
+    static IndexWriterConfig withKeys(IndexWriterConfig config) {
+        return config.toBuilder()
+            .hashFunction(config.getHashFunction() != null ? config.getHashFunction() : DelimiterIndexWriter::hash)
+            .fingerprintFunction(config.getFingerprintFunction() != null ? config.getFingerprintFunction() : DelimiterIndexWriter::fingerprint)
+            .sortKeyFunction(config.getSortKeyFunction() != null ? config.getSortKeyFunction() : DelimiterIndexWriter::sortKeys)
+            .build();
+    }
+
+    private static int[] hash(byte[] data, int from, int length) throws IOException {
+        Data obj = new ObjectMapper().readValue(data, from, length, Data.class);
         return new int[] {
             obj.getId().hashCode(),
             obj.getAlias().hashCode()
         };
     }
+
+    private static long[] fingerprint(byte[] data, int from, int length) throws IOException {
+        Data obj = new ObjectMapper().readValue(data, from, length, Data.class);
+        return new long[] {
+            IndexUtils.fingerprint(obj.getId()),
+            IndexUtils.fingerprint(obj.getAlias())
+        };
+    }
+
+    private static String[] sortKeys(byte[] data, int from, int length) throws IOException {
+        Data obj = new ObjectMapper().readValue(data, from, length, Data.class);
+        return new String[] {
+            obj.getId(),
+            obj.getAlias()
+        };
+    }
 }
@@ -0,0 +1,53 @@
+package david.lu.indexing.test;
+
+import david.lu.indexing.writer.DelimiterScanner;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DelimiterScannerTest {
+    // smaller than items, so items are across chunks
+    private static final int CHUNK_SIZE = 4;
+
+    @Test
+    public void testSingleDelimiter() throws IOException {
+        assertThat(scan("\nfirst-item\n\n\nsecond\nlast-item-without-delimiter", '\n'))
+            .containsExactly("1:first-item", "14:second", "21:last-item-without-delimiter");
+    }
+
+    @Test
+    public void testMultiDelimiters() throws IOException {
+        assertThat(scan("a\r\nbb\r\n\r\nccc-ccc-ccc\r\n", '\r', '\n'))
+            .containsExactly("0:a", "3:bb", "9:ccc-ccc-ccc");
+    }
+
+    @Test
+    public void testOnlyDelimiters() throws IOException {
+        assertThat(scan("\n\n\n", '\n')).isEmpty();
+        assertThat(scan("", '\n')).isEmpty();
+    }
+
+    /**
+     * @return items as offset:content
+     */
+    private List<String> scan(String source, char... delimiters) throws IOException {
+        DelimiterScanner scanner = new DelimiterScanner(
+            Channels.newChannel(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8))),
+            0,
+            delimiters,
+            CHUNK_SIZE
+        );
+        List<String> items = new ArrayList<>();
+        while (scanner.next()) {
+            items.add(scanner.offset() + ":" + new String(scanner.array(), scanner.from(), scanner.length(), StandardCharsets.UTF_8));
+        }
+        return items;
+    }
+}
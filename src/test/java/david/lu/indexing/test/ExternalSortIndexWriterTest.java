@@ -0,0 +1,70 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.writer.IndexWriterConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.SAMPLE_IDS;
+import static david.lu.indexing.test.TestUtils.SOURCE_FILE_RESOURCE_SAMPLE;
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CAPACITY;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class ExternalSortIndexWriterTest {
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "in-memory.index";
+    private static final String SPILLED_INDEX_FILE = TEST_OUTPUT_PATH + "spilled.index";
+    // 3 tunnels per run
+    private static final long MEMORY_BUDGET = 60;
+    // bytes of create time in header
+    private static final int CREATE_TIME_SIZE = 8;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testSpilledRuns() throws IOException {
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'}
+        ).process();
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            SPILLED_INDEX_FILE,
+            new char[]{'\r', '\n'},
+            IndexWriterConfig.builder()
+                .memoryBudget(MEMORY_BUDGET)
+                .build()
+        ).process();
+        byte[] expected = Files.readAllBytes(new File(INDEX_FILE).toPath());
+        byte[] actual = Files.readAllBytes(new File(SPILLED_INDEX_FILE).toPath());
+        assertThat(Arrays.copyOfRange(actual, CREATE_TIME_SIZE, actual.length))
+            .isEqualTo(Arrays.copyOfRange(expected, CREATE_TIME_SIZE, expected.length));
+
+        IndexReader reader = IndexReader.init(new File(SOURCE_FILE_RESOURCE_SAMPLE), new File(SPILLED_INDEX_FILE));
+        try {
+            List<Data> items = reader.loadByKeys(SAMPLE_IDS, this::unmarshal, Data::getId);
+            assertThat(items.stream().map(Data::getId).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_IDS);
+        } finally {
+            reader.cleanup();
+        }
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
@@ -0,0 +1,115 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.IndexReaderConfig;
+import david.lu.indexing.utils.BloomFilter;
+import david.lu.indexing.writer.IndexWriterConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.SAMPLE_ALIAS;
+import static david.lu.indexing.test.TestUtils.SAMPLE_IDS;
+import static david.lu.indexing.test.TestUtils.SOURCE_FILE_RESOURCE_SAMPLE;
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CAPACITY;
+import static david.lu.indexing.utils.IndexUtils.fingerprint;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class FilterIndexTest {
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "filtered.index";
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testFilteredLegacyIndex() throws IOException {
+        verify(IndexWriterConfig.builder().filterFpp(0.01).build(), null);
+    }
+
+    @Test
+    public void testFilteredFingerprintIndex() throws IOException {
+        verify(IndexWriterConfig.builder().version(IndexHeader.FINGERPRINT_VERSION).filterFpp(0.01).build(), null);
+    }
+
+    @Test
+    public void testFilteredSections() throws IOException {
+        verify(IndexWriterConfig.builder().namespaces(asList("id", "alias")).filterFpp(0.01).build(), "alias");
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        BloomFilter filter = BloomFilter.create(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add(fingerprint("key-" + i));
+        }
+        ByteBuffer byteBuffer = filter.toByteBuffer();
+        assertThat(byteBuffer.getInt()).isEqualTo(filter.getSize() - 4);
+        BloomFilter loaded = BloomFilter.fromByteBuffer(byteBuffer);
+        for (int i = 0; i < 10000; i++) {
+            assertThat(loaded.mightContain(fingerprint("key-" + i))).isTrue();
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (loaded.mightContain(fingerprint("missing-" + i))) {
+                falsePositives++;
+            }
+        }
+        log.debug("{} false positives of 100000 missing keys.", falsePositives);
+        assertThat(falsePositives).isLessThan(2000);
+    }
+
+    private void verify(IndexWriterConfig writerConfig, String aliasNamespace) throws IOException {
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'},
+            writerConfig
+        ).process();
+        for (IndexReaderConfig readerConfig : asList(
+            IndexReaderConfig.defaults(),
+            IndexReaderConfig.builder().pinNodes(true).negativeCacheSize(100).build()
+        )) {
+            IndexReader reader = IndexReader.init(
+                new File(SOURCE_FILE_RESOURCE_SAMPLE),
+                new File(INDEX_FILE),
+                readerConfig
+            );
+            try {
+                for (String id : SAMPLE_IDS) {
+                    assertThat(reader.containsKey(id)).isTrue();
+                    assertThat(reader.loadByKey(id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+                }
+                for (String alias : SAMPLE_ALIAS) {
+                    assertThat(reader.containsKey(aliasNamespace, alias)).isTrue();
+                }
+                for (int i = 0; i < 100; i++) {
+                    assertThat(reader.containsKey("missing-id-" + i)).isFalse();
+                    assertThat(reader.loadByKey("missing-id-" + i, this::unmarshal, Data::getId)).isNull();
+                }
+                List<Data> items = reader.loadByKeys(aliasNamespace, SAMPLE_ALIAS, this::unmarshal, Data::getAlias);
+                assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_ALIAS);
+                items = reader.loadByKeysAsync(aliasNamespace, SAMPLE_ALIAS, this::unmarshal, Data::getAlias).join();
+                assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_ALIAS);
+            } finally {
+                reader.cleanup();
+            }
+        }
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
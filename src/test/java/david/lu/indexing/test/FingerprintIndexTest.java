@@ -0,0 +1,133 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.utils.IndexUtils;
+import david.lu.indexing.writer.AbstractDelimiterIndexWriter;
+import david.lu.indexing.writer.IndexWriterConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.SAMPLE_ALIAS;
+import static david.lu.indexing.test.TestUtils.SAMPLE_IDS;
+import static david.lu.indexing.test.TestUtils.SOURCE_FILE_RESOURCE_SAMPLE;
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CAPACITY;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class FingerprintIndexTest {
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "fingerprint.index";
+
+    private IndexReader reader;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setUp() throws IOException {
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'},
+            IndexWriterConfig.builder()
+                .version(IndexHeader.FINGERPRINT_VERSION)
+                .hashFunction((data, from, length) -> new int[0])
+                .build()
+        ).process();
+        reader = IndexReader.init(new File(SOURCE_FILE_RESOURCE_SAMPLE), new File(INDEX_FILE));
+    }
+
+    @Test
+    public void testHeader() throws IOException {
+        IndexHeader header = IndexHeader.fromByteBuffer(ByteBuffer.wrap(Files.readAllBytes(new File(INDEX_FILE).toPath())));
+        assertThat(header.getVersion()).isEqualTo(IndexHeader.FINGERPRINT_VERSION);
+        assertThat(header.getSize()).isEqualTo(SAMPLE_IDS.size());
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        for (String id : SAMPLE_IDS) {
+            assertThat(reader.loadByKey(id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+        }
+        for (String alias : SAMPLE_ALIAS) {
+            assertThat(reader.loadByKey(alias, this::unmarshal, Data::getAlias).getAlias()).isEqualTo(alias);
+        }
+        assertThat(reader.loadByKey("missing-id", this::unmarshal, Data::getId)).isNull();
+    }
+
+    @Test
+    public void testBatchAndAsyncLoad() throws IOException {
+        List<Data> items = reader.loadByKeys(SAMPLE_ALIAS, this::unmarshal, Data::getAlias);
+        assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_ALIAS);
+        items = reader.loadByKeysAsync(SAMPLE_IDS, this::unmarshal, Data::getId).join();
+        assertThat(items.stream().map(Data::getId).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_IDS);
+    }
+
+    @Test
+    public void testFingerprintOfString() {
+        StringBuilder longKey = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            longKey.append("id-\u00e9\u4e2d\ud83d\ude00");
+        }
+        Random random = new Random(0);
+        List<String> keys = new ArrayList<>(asList(
+            "", "id-1", "caf\u00e9", "\u4e2d\u6587", "\ud83d\ude00", "\ud83d", "a\ude00b", "\ud83d\ud83d\ude00", longKey.toString()
+        ));
+        for (int i = 0; i < 1000; i++) {
+            char[] chars = new char[random.nextInt(100)];
+            for (int c = 0; c < chars.length; c++) {
+                chars[c] = (char) random.nextInt(1 << 16);
+            }
+            keys.add(new String(chars));
+        }
+        for (String key : keys) {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            assertThat(IndexUtils.fingerprint(key)).isEqualTo(IndexUtils.fingerprint(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    public void testFingerprintRequired() {
+        assertThatThrownBy(() -> new AbstractDelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            TEST_OUTPUT_PATH + "no-fingerprint.index",
+            new char[]{'\r', '\n'},
+            IndexWriterConfig.builder()
+                .version(IndexHeader.FINGERPRINT_VERSION)
+                .hashFunction((data, from, length) -> new int[0])
+                .build()
+        ) {
+        }).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("Fingerprint function");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (reader != null) {
+            reader.cleanup();
+        }
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
@@ -0,0 +1,210 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.IndexReaderConfig;
+import david.lu.indexing.reader.SegmentedIndexReader;
+import david.lu.indexing.writer.IncrementalIndexer;
+import david.lu.indexing.writer.IndexWriterConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.SAMPLE_ALIAS;
+import static david.lu.indexing.test.TestUtils.SAMPLE_IDS;
+import static david.lu.indexing.test.TestUtils.SOURCE_FILE_RESOURCE_SAMPLE;
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CAPACITY;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class IncrementalIndexTest {
+    private static final String SOURCE_FILE = TEST_OUTPUT_PATH + "incremental.data";
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "incremental.index";
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testIncrementalIndex() throws IOException {
+        verify(IndexWriterConfig.builder().build(), null);
+    }
+
+    @Test
+    public void testIncrementalSections() throws IOException {
+        verify(
+            IndexWriterConfig.builder()
+                .version(IndexHeader.PERFECT_HASH_VERSION)
+                .namespaces(asList("id", "alias"))
+                .filterFpp(0.01)
+                .inlineThreshold(70)
+                .recordTable(true)
+                .threads(2)
+                .build(),
+            "alias"
+        );
+    }
+
+    @Test
+    public void testDuplicatedKey() throws IOException {
+        for (IndexWriterConfig writerConfig : asList(
+            IndexWriterConfig.builder().build(),
+            IndexWriterConfig.builder()
+                .version(IndexHeader.FINGERPRINT_VERSION)
+                .namespaces(asList("id", "alias"))
+                .recordTable(true)
+                .threads(2)
+                .build()
+        )) {
+            clean();
+            List<String> lines = Files.readAllLines(new File(SOURCE_FILE_RESOURCE_SAMPLE).toPath());
+            append(lines.subList(0, 5));
+            IncrementalIndexer indexer = indexer(writerConfig);
+            assertThat(indexer.refresh()).isTrue();
+            String id = SAMPLE_IDS.get(0);
+            Data first = objectMapper.readValue(lines.stream().filter(line -> line.contains(id)).findFirst().get(), Data.class);
+            // the key appended again by a newer segment
+            append(asList(String.format("{\"id\":\"%s\",\"alias\":\"alias-appended\"}", id)));
+            append(lines.subList(5, lines.size()));
+            assertThat(indexer.refresh()).isTrue();
+            String before = aliasOf(id);
+            assertThat(indexer.compact()).isTrue();
+            assertThat(aliasOf(id)).isEqualTo(before).isEqualTo(first.getAlias());
+        }
+    }
+
+    /**
+     * @return alias of {@code id} loaded by each kind of lookup, which must agree
+     */
+    private String aliasOf(String id) throws IOException {
+        SegmentedIndexReader reader = SegmentedIndexReader.init(new File(SOURCE_FILE), new File(INDEX_FILE));
+        try {
+            String alias = reader.loadByKey(reader.getNamespaces().isEmpty() ? null : "id", id, this::unmarshal, Data::getId).getAlias();
+            assertThat(reader.loadByKeyAsync(reader.getNamespaces().isEmpty() ? null : "id", id, this::unmarshal, Data::getId).join().getAlias())
+                .isEqualTo(alias);
+            assertThat(reader.loadByKeys(reader.getNamespaces().isEmpty() ? null : "id", asList(id), this::unmarshal, Data::getId).get(0).getAlias())
+                .isEqualTo(alias);
+            return alias;
+        } finally {
+            reader.cleanup();
+        }
+    }
+
+    private void verify(IndexWriterConfig writerConfig, String aliasNamespace) throws IOException {
+        clean();
+        List<String> lines = Files.readAllLines(new File(SOURCE_FILE_RESOURCE_SAMPLE).toPath());
+        append(lines.subList(0, 4));
+        long firstEnd = new File(SOURCE_FILE).length();
+        IncrementalIndexer indexer = indexer(writerConfig);
+        assertThat(indexer.refresh()).isTrue();
+        assertThat(indexer.refresh()).isFalse();
+        append(lines.subList(4, 8));
+        assertThat(indexer.refresh()).isTrue();
+        append(lines.subList(8, lines.size() - 1));
+        long thirdEnd = new File(SOURCE_FILE).length();
+        // the last item is being written, left to the next refresh
+        String last = lines.get(lines.size() - 1);
+        appendPartial(last.substring(0, last.length() / 2));
+        assertThat(indexer.refresh()).isTrue();
+        assertThat(indexer.refresh()).isFalse();
+        appendPartial(last.substring(last.length() / 2) + "\n");
+        assertThat(indexer.refresh()).isTrue();
+        assertThat(indexer.getSegments()).hasSize(4);
+        IndexReader segmentReader = IndexReader.init(new File(SOURCE_FILE), indexer.getSegments().get(1));
+        try {
+            assertThat(segmentReader.getSourceStart()).isEqualTo(firstEnd);
+        } finally {
+            segmentReader.cleanup();
+        }
+        segmentReader = IndexReader.init(new File(SOURCE_FILE), indexer.getSegments().get(2));
+        try {
+            assertThat(segmentReader.getSourceEnd()).isEqualTo(thirdEnd);
+        } finally {
+            segmentReader.cleanup();
+        }
+        verify(4, aliasNamespace);
+
+        // a new indexer continues from the manifest
+        indexer = indexer(writerConfig);
+        assertThat(indexer.getSegments()).hasSize(4);
+        assertThat(indexer.compactAsync(ForkJoinPool.commonPool()).join()).isTrue();
+        assertThat(indexer.getSegments()).hasSize(1);
+        assertThat(indexer.compact()).isFalse();
+        assertThat(new File(INDEX_FILE + ".1")).doesNotExist();
+        verify(1, aliasNamespace);
+    }
+
+    private void verify(int segments, String aliasNamespace) throws IOException {
+        for (IndexReaderConfig readerConfig : asList(
+            IndexReaderConfig.defaults(),
+            IndexReaderConfig.builder().mapped(true).pinNodes(true).build()
+        )) {
+            SegmentedIndexReader reader = SegmentedIndexReader.init(new File(SOURCE_FILE), new File(INDEX_FILE), readerConfig);
+            try {
+                assertThat(reader.getSegments()).isEqualTo(segments);
+                for (String id : SAMPLE_IDS) {
+                    assertThat(reader.loadByKey(id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+                    assertThat(reader.loadByKeyAsync(id, this::unmarshal, Data::getId).join().getId()).isEqualTo(id);
+                    assertThat(reader.containsKey(id)).isTrue();
+                }
+                assertThat(reader.loadByKey("missing-id", this::unmarshal, Data::getId)).isNull();
+                assertThat(reader.loadByKeyAsync("missing-id", this::unmarshal, Data::getId).join()).isNull();
+                assertThat(reader.containsKey("missing-id")).isFalse();
+                List<Data> items = reader.loadByKeys(aliasNamespace, SAMPLE_ALIAS, this::unmarshal, Data::getAlias);
+                assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_ALIAS);
+            } finally {
+                reader.cleanup();
+            }
+        }
+    }
+
+    private IncrementalIndexer indexer(IndexWriterConfig writerConfig) throws IOException {
+        return new IncrementalIndexer(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE,
+            INDEX_FILE,
+            writerConfig,
+            1 << 20,
+            (size, sourceFilePath, indexFilePath, config) ->
+                new DelimiterIndexWriter(size, sourceFilePath, indexFilePath, new char[]{'\r', '\n'}, config)
+        );
+    }
+
+    private void append(List<String> lines) throws IOException {
+        new File(SOURCE_FILE).getParentFile().mkdirs();
+        Files.write(
+            new File(SOURCE_FILE).toPath(),
+            lines,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND
+        );
+    }
+
+    private void appendPartial(String text) throws IOException {
+        Files.write(new File(SOURCE_FILE).toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private void clean() {
+        File[] files = new File(TEST_OUTPUT_PATH).listFiles((dir, name) -> name.startsWith("incremental."));
+        if (files != null) {
+            Arrays.stream(files).forEach(File::delete);
+        }
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
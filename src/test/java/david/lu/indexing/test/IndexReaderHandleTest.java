@@ -0,0 +1,144 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.IndexReaderConfig;
+import david.lu.indexing.reader.IndexReaderHandle;
+import david.lu.indexing.writer.IndexWriterConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.SAMPLE_ALIAS;
+import static david.lu.indexing.test.TestUtils.SAMPLE_IDS;
+import static david.lu.indexing.test.TestUtils.SOURCE_FILE_RESOURCE_SAMPLE;
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CAPACITY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class IndexReaderHandleTest {
+    private static final String LEGACY_INDEX_FILE = TEST_OUTPUT_PATH + "handle-legacy.index";
+    private static final String FINGERPRINT_INDEX_FILE = TEST_OUTPUT_PATH + "handle-fingerprint.index";
+    private static final int THREADS = 4;
+
+    private ExecutorService service;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setUp() throws IOException {
+        write(IndexWriterConfig.defaults(), LEGACY_INDEX_FILE);
+        write(IndexWriterConfig.builder().version(IndexHeader.FINGERPRINT_VERSION).build(), FINGERPRINT_INDEX_FILE);
+        service = Executors.newFixedThreadPool(THREADS + 1);
+    }
+
+    @After
+    public void tearDown() {
+        service.shutdownNow();
+    }
+
+    @Test
+    public void testSwapUnderLoad() throws Exception {
+        IndexReaderHandle handle = IndexReaderHandle.open(
+            new File(SOURCE_FILE_RESOURCE_SAMPLE),
+            new File(LEGACY_INDEX_FILE),
+            IndexReaderConfig.defaults(),
+            16
+        );
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(service.submit(() -> {
+                long lookups = 0;
+                while (running.get()) {
+                    for (String id : SAMPLE_IDS) {
+                        assertThat(handle.loadByKey(id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+                        assertThat(handle.loadByKeyAsync(id, this::unmarshal, Data::getId).join().getId()).isEqualTo(id);
+                    }
+                    List<Data> items = handle.loadByKeys(SAMPLE_ALIAS, this::unmarshal, Data::getAlias);
+                    assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_ALIAS);
+                    lookups++;
+                }
+                return lookups;
+            }));
+        }
+        for (int i = 0; i < 20; i++) {
+            String indexFile = i % 2 == 0 ? FINGERPRINT_INDEX_FILE : LEGACY_INDEX_FILE;
+            IndexReaderConfig readerConfig = i % 4 < 2
+                ? IndexReaderConfig.defaults()
+                : IndexReaderConfig.builder().mapped(true).recordCacheSize(1 << 20).build();
+            handle.swapAsync(new File(SOURCE_FILE_RESOURCE_SAMPLE), new File(indexFile), readerConfig, service).join();
+        }
+        running.set(false);
+        for (Future<Long> future : futures) {
+            assertThat(future.get()).isPositive();
+        }
+        assertThat(handle.getSwaps()).isEqualTo(20);
+        handle.close();
+        assertThatThrownBy(() -> handle.containsKey(SAMPLE_IDS.get(0))).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testRetirementAfterDrain() throws Exception {
+        IndexReaderHandle handle = IndexReaderHandle.open(
+            new File(SOURCE_FILE_RESOURCE_SAMPLE),
+            new File(LEGACY_INDEX_FILE),
+            IndexReaderConfig.defaults(),
+            0
+        );
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch swapped = new CountDownLatch(1);
+        AtomicReference<IndexReader> retained = new AtomicReference<>();
+        CompletableFuture<Data> inFlight = CompletableFuture.supplyAsync(() -> Try.of(() -> handle.apply(reader -> {
+            retained.set(reader);
+            entered.countDown();
+            Try.run(swapped::await);
+            // swapped out reader is still open for lookups started before
+            return reader.loadByKey(SAMPLE_IDS.get(0), this::unmarshal, Data::getId);
+        })).get(), service);
+        entered.await();
+        handle.swap(IndexReader.init(new File(SOURCE_FILE_RESOURCE_SAMPLE), new File(FINGERPRINT_INDEX_FILE)));
+        IndexReader current = handle.apply(reader -> reader);
+        assertThat(current).isNotSameAs(retained.get());
+        swapped.countDown();
+        assertThat(inFlight.join().getId()).isEqualTo(SAMPLE_IDS.get(0));
+        // cleaned up by the last lookup
+        assertThatThrownBy(() -> retained.get().loadByKey(SAMPLE_IDS.get(0), this::unmarshal, Data::getId))
+            .isInstanceOf(IOException.class);
+        handle.close();
+    }
+
+    private void write(IndexWriterConfig writerConfig, String indexFile) throws IOException {
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            indexFile,
+            new char[]{'\r', '\n'},
+            writerConfig
+        ).process();
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
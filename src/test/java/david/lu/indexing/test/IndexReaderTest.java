@@ -11,6 +11,7 @@ import org.junit.Test;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -55,6 +56,15 @@ public class IndexReaderTest {
         runTest(SAMPLE_ALIAS, Data::getAlias);
     }
 
+    @Test
+    public void testInPlace() throws IOException {
+        List<Data> items = reader.loadByKeysInPlace(SAMPLE_IDS, this::unmarshal, Data::getId);
+        List<String> actual = items.stream()
+            .map(Data::getId)
+            .collect(Collectors.toList());
+        assertThat(actual).containsExactlyElementsOf(SAMPLE_IDS);
+    }
+
     private void runTest(List<String> keys, Function<Data, String> keyExtractor) throws IOException {
         long s = System.currentTimeMillis();
         List<Data> items = reader.loadByKeys(keys, this::unmarshal, keyExtractor);
@@ -78,4 +88,10 @@ public class IndexReaderTest {
             .onFailure(e -> log.error("Unmarshal failed.", e))
             .getOrNull();
     }
+
+    private Data unmarshal(ByteBuffer buffer) {
+        return Try.of(() -> objectMapper.readValue(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
 }
@@ -0,0 +1,122 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.IndexReaderConfig;
+import david.lu.indexing.writer.IndexWriterConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.SAMPLE_ALIAS;
+import static david.lu.indexing.test.TestUtils.SAMPLE_IDS;
+import static david.lu.indexing.test.TestUtils.SOURCE_FILE_RESOURCE_SAMPLE;
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CAPACITY;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class InlineRecordTest {
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "inline.index";
+    private static final String EMPTY_SOURCE_FILE = TEST_OUTPUT_PATH + "inline-empty.data";
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testAllInlined() throws IOException {
+        write(IndexWriterConfig.builder().inlineThreshold(1024).build());
+        // records are never read from source file
+        Files.write(Paths.get(EMPTY_SOURCE_FILE), new byte[0]);
+        verify(EMPTY_SOURCE_FILE, null);
+    }
+
+    @Test
+    public void testSmallRecordsInlined() throws IOException {
+        write(IndexWriterConfig.builder().inlineThreshold(70).build());
+        verify(SOURCE_FILE_RESOURCE_SAMPLE, null);
+        write(
+            IndexWriterConfig.builder()
+                .version(IndexHeader.PERFECT_HASH_VERSION)
+                .namespaces(asList("id", "alias"))
+                .inlineThreshold(70)
+                .build()
+        );
+        verify(SOURCE_FILE_RESOURCE_SAMPLE, "alias");
+    }
+
+    @Test
+    public void testProjectionInlined() throws IOException {
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'},
+            IndexWriterConfig.builder().version(IndexHeader.FINGERPRINT_VERSION).inlineThreshold(1024).build()
+        ) {
+            @Override
+            protected ByteBuffer project(byte[] data, int from, int length) throws IOException {
+                Data item = objectMapper.readValue(data, from, length, Data.class);
+                return ByteBuffer.wrap(("{\"id\":\"" + item.getId() + "\"}").getBytes(StandardCharsets.UTF_8));
+            }
+        }.process();
+        IndexReader reader = IndexReader.init(new File(SOURCE_FILE_RESOURCE_SAMPLE), new File(INDEX_FILE));
+        try {
+            for (String id : SAMPLE_IDS) {
+                Data item = reader.loadByKey(id, this::unmarshal, Data::getId);
+                assertThat(item.getId()).isEqualTo(id);
+                assertThat(item.getAlias()).isNull();
+            }
+        } finally {
+            reader.cleanup();
+        }
+    }
+
+    private void write(IndexWriterConfig writerConfig) throws IOException {
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'},
+            writerConfig
+        ).process();
+    }
+
+    private void verify(String sourceFile, String aliasNamespace) throws IOException {
+        for (IndexReaderConfig readerConfig : asList(
+            IndexReaderConfig.defaults(),
+            IndexReaderConfig.builder().mapped(true).recordCacheSize(1 << 20).build(),
+            IndexReaderConfig.builder().async(true).build()
+        )) {
+            IndexReader reader = IndexReader.init(new File(sourceFile), new File(INDEX_FILE), readerConfig);
+            try {
+                for (String id : SAMPLE_IDS) {
+                    assertThat(reader.loadByKey(id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+                    assertThat(reader.loadByKey(id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+                    assertThat(reader.loadByKeyAsync(id, this::unmarshal, Data::getId).join().getId()).isEqualTo(id);
+                }
+                assertThat(reader.loadByKey("missing-id", this::unmarshal, Data::getId)).isNull();
+                List<Data> items = reader.loadByKeys(aliasNamespace, SAMPLE_ALIAS, this::unmarshal, Data::getAlias);
+                assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_ALIAS);
+            } finally {
+                reader.cleanup();
+            }
+        }
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
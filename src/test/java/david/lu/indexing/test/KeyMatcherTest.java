@@ -0,0 +1,121 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.JsonFieldMatcher;
+import david.lu.indexing.reader.KeyMatcher;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class KeyMatcherTest {
+    private static final String SOURCE_FILE = TEST_OUTPUT_PATH + "collision.data";
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "collision.index";
+    // same String.hashCode()
+    private static final List<String> COLLIDED_IDS = asList("AaAa", "AaBB", "BBAa", "BBBB");
+
+    private IndexReader reader;
+
+    private AtomicInteger unmarshalled = new AtomicInteger();
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setUp() throws IOException {
+        new File(TEST_OUTPUT_PATH).mkdirs();
+        try (PrintWriter writer = new PrintWriter(SOURCE_FILE)) {
+            for (String id : COLLIDED_IDS) {
+                writer.printf("{\"id\":\"%s\",\"alias\":\"alias-%s\"}\n", id, id);
+            }
+        }
+        new DelimiterIndexWriter(
+            COLLIDED_IDS.size(),
+            SOURCE_FILE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'}
+        ).process();
+        reader = IndexReader.init(new File(SOURCE_FILE), new File(INDEX_FILE));
+    }
+
+    @Test
+    public void testUnmarshalMatchedOnly() throws IOException {
+        KeyMatcher idMatcher = new JsonFieldMatcher("id");
+        for (String id : COLLIDED_IDS) {
+            unmarshalled.set(0);
+            assertThat(reader.loadByKey(id, this::unmarshal, idMatcher).getId()).isEqualTo(id);
+            assertThat(unmarshalled.get()).isEqualTo(1);
+        }
+        unmarshalled.set(0);
+        assertThat(reader.loadByKey("missing-id", this::unmarshal, idMatcher)).isNull();
+        assertThat(unmarshalled.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void testBatchAndAsync() throws IOException {
+        List<String> keys = asList("BBBB", "missing-id", "AaAa");
+        unmarshalled.set(0);
+        List<Data> items = reader.loadByKeys(keys, this::unmarshal, new JsonFieldMatcher("id"));
+        assertThat(items.stream().map(Data::getId).collect(Collectors.toList())).containsExactly("BBBB", "AaAa");
+        assertThat(unmarshalled.get()).isEqualTo(2);
+        items = reader.loadByKeysAsync(keys, this::unmarshal, new JsonFieldMatcher("id")).join();
+        assertThat(items.stream().map(Data::getId).collect(Collectors.toList())).containsExactly("BBBB", "AaAa");
+    }
+
+    @Test
+    public void testJsonFieldMatcher() {
+        KeyMatcher matcher = new JsonFieldMatcher("alias");
+        assertThat(matcher.matches("a", record("{\"id\":\"alias\", \"alias\" : \"a\"}"))).isTrue();
+        assertThat(matcher.matches("a", record("{\"alias\":\"ab\"}"))).isFalse();
+        assertThat(matcher.matches("a", record("{\"alias\":1}"))).isFalse();
+        assertThat(matcher.matches("a", record("{\"id\":\"a\"}"))).isFalse();
+        assertThat(matcher.matches("say \"hi\"\n", record("{\"alias\":\"say \\\"hi\\\"\\n\"}"))).isTrue();
+        assertThat(matcher.matches("caf\u00e9", record("{\"alias\":\"caf\u00e9\"}"))).isTrue();
+        // escaped differently from the key
+        assertThat(matcher.matches("caf\u00e9", record("{\"alias\":\"caf\\u00e9\"}"))).isTrue();
+        assertThat(matcher.matches("a/b", record("{\"alias\":\"a\\/b\"}"))).isTrue();
+        assertThat(matcher.matches("\ud83d\ude00", record("{\"alias\":\"\ud83d\ude00\"}"))).isTrue();
+        // field of a nested object, or a value before the top level field
+        assertThat(matcher.matches("a", record("{\"other\":{\"alias\":\"b\"},\"alias\":\"a\"}"))).isTrue();
+        assertThat(matcher.matches("b", record("{\"other\":{\"alias\":\"b\"},\"alias\":\"a\"}"))).isFalse();
+        assertThat(matcher.matches("a", record("{\"note\":\"\\\"alias\\\":1\",\"alias\":\"a\"}"))).isTrue();
+
+        KeyMatcher fallback = new JsonFieldMatcher("alias", bytes -> new String(bytes, StandardCharsets.UTF_8).contains("1") ? "1" : null);
+        assertThat(fallback.matches("1", record("{\"alias\":1}"))).isTrue();
+        assertThat(fallback.matches("1", record("{\"id\":\"1\"}"))).isTrue();
+        assertThat(fallback.matches("1", record("{\"alias\":\"2\"}"))).isFalse();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (reader != null) {
+            reader.cleanup();
+        }
+    }
+
+    private static ByteBuffer record(String json) {
+        return ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        unmarshalled.incrementAndGet();
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
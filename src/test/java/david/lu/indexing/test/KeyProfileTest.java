@@ -0,0 +1,115 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.IndexReaderConfig;
+import david.lu.indexing.writer.IndexWriterConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.SAMPLE_ALIAS;
+import static david.lu.indexing.test.TestUtils.SAMPLE_IDS;
+import static david.lu.indexing.test.TestUtils.SOURCE_FILE_RESOURCE_SAMPLE;
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CAPACITY;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class KeyProfileTest {
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "profiled.index";
+    private static final File PROFILE_FILE = new File(TEST_OUTPUT_PATH + "profiled.keys");
+    private static final int LOOKUPS = 100;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setUp() {
+        PROFILE_FILE.delete();
+    }
+
+    @Test
+    public void testProfileReplay() throws IOException {
+        write(IndexWriterConfig.defaults());
+        IndexReader reader = IndexReader.init(
+            new File(SOURCE_FILE_RESOURCE_SAMPLE),
+            new File(INDEX_FILE),
+            IndexReaderConfig.builder().profileFile(PROFILE_FILE).build()
+        );
+        assertThat(reader.getProfileReplay().join()).isZero();
+        for (int i = 0; i < LOOKUPS; i++) {
+            for (String id : SAMPLE_IDS) {
+                assertThat(reader.loadByKey(id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+            }
+        }
+        reader.cleanup();
+        assertThat(PROFILE_FILE).exists();
+
+        // replayed by init, then profile is kept by the next reader
+        for (int i = 0; i < 2; i++) {
+            reader = IndexReader.init(
+                new File(SOURCE_FILE_RESOURCE_SAMPLE),
+                new File(INDEX_FILE),
+                IndexReaderConfig.builder().profileFile(PROFILE_FILE).mapped(true).build()
+            );
+            assertThat(reader.getProfileReplay().join()).isEqualTo(SAMPLE_IDS.size());
+            reader.cleanup();
+        }
+    }
+
+    @Test
+    public void testProfileSections() throws IOException {
+        write(IndexWriterConfig.builder().namespaces(asList("id", "alias")).build());
+        IndexReaderConfig readerConfig = IndexReaderConfig.builder()
+            .profileFile(PROFILE_FILE)
+            .profileKeys(4)
+            .profileExecutor(ForkJoinPool.commonPool())
+            .batchExecutor(ForkJoinPool.commonPool())
+            .build();
+        IndexReader reader = IndexReader.init(new File(SOURCE_FILE_RESOURCE_SAMPLE), new File(INDEX_FILE), readerConfig);
+        for (int i = 0; i < LOOKUPS; i++) {
+            for (String id : SAMPLE_IDS) {
+                assertThat(reader.loadByKeyAsync(id, this::unmarshal, Data::getId).join().getId()).isEqualTo(id);
+            }
+            List<Data> items = reader.loadByKeys("alias", SAMPLE_ALIAS, this::unmarshal, Data::getAlias);
+            assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_ALIAS);
+        }
+        reader.saveProfile();
+        reader.cleanup();
+
+        reader = IndexReader.init(new File(SOURCE_FILE_RESOURCE_SAMPLE), new File(INDEX_FILE), readerConfig);
+        try {
+            // hottest 4 keys per namespace
+            assertThat(reader.getProfileReplay().join()).isEqualTo(8);
+            for (String id : SAMPLE_IDS) {
+                assertThat(reader.loadByKey(id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+            }
+        } finally {
+            reader.cleanup();
+        }
+    }
+
+    private void write(IndexWriterConfig writerConfig) throws IOException {
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'},
+            writerConfig
+        ).process();
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
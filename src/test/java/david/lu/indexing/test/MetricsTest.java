@@ -0,0 +1,168 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.IndexReaderConfig;
+import david.lu.indexing.reader.ReadPhase;
+import david.lu.indexing.reader.ReaderMetrics;
+import david.lu.indexing.writer.IndexWriterConfig;
+import david.lu.indexing.writer.WriterMetrics;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.getCapacity;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class MetricsTest {
+    private static final String SOURCE_FILE = TEST_OUTPUT_PATH + "metrics.data";
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "metrics.index";
+    private static final int ITEMS = 2000;
+    private static final int MISSES = 100;
+    private static final int BATCH = 50;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setUp() throws IOException {
+        new File(TEST_OUTPUT_PATH).mkdirs();
+        try (PrintWriter writer = new PrintWriter(SOURCE_FILE)) {
+            for (int i = 0; i < ITEMS; i++) {
+                writer.printf("{\"id\":\"id-%d\",\"alias\":\"alias-%d\"}\n", i, i);
+            }
+            // same String#hashCode(), so "BB" walks past record of "Aa" with legacy index
+            writer.print("{\"id\":\"Aa\",\"alias\":\"alias-Aa\"}\n");
+            writer.print("{\"id\":\"BB\",\"alias\":\"alias-BB\"}\n");
+        }
+    }
+
+    @Test
+    public void testWriterMetrics() throws IOException, JMException {
+        WriterMetrics metrics = new WriterMetrics();
+        ObjectName objectName = metrics.register("metrics-test");
+        try {
+            write(IndexWriterConfig.builder().threads(2).metricsListener(metrics).build());
+            assertThat(metrics.getBuilds()).isEqualTo(1);
+            assertThat(metrics.getItemsScanned()).isEqualTo(ITEMS + 2);
+            assertThat(metrics.getItemsHashed()).isEqualTo(ITEMS + 2);
+            assertThat(metrics.getTunnels()).isEqualTo((ITEMS + 2) * 2);
+            assertThat(metrics.getBytesWritten()).isEqualTo(new File(INDEX_FILE).length());
+            assertThat(metrics.getRecordsPerSecond()).isPositive();
+            long buckets = 0;
+            long tunnels = 0;
+            long[] bucketSizes = metrics.getBucketSizes();
+            for (int i = 0; i < bucketSizes.length; i++) {
+                buckets += bucketSizes[i];
+                tunnels += i * bucketSizes[i];
+            }
+            assertThat(buckets).isEqualTo(getCapacity(ITEMS + 2));
+            assertThat(tunnels).isEqualTo(metrics.getTunnels());
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertThat(server.getAttribute(objectName, "ItemsScanned")).isEqualTo((long) ITEMS + 2);
+            assertThat((long[]) server.getAttribute(objectName, "BucketSizes")).containsExactly(bucketSizes);
+            assertThatThrownBy(() -> new WriterMetrics().register("metrics-test"))
+                .isInstanceOf(IllegalArgumentException.class);
+
+            // shared by following builds
+            write(IndexWriterConfig.builder().metricsListener(metrics).build());
+            assertThat(metrics.getBuilds()).isEqualTo(2);
+            assertThat(metrics.getItemsScanned()).isEqualTo((ITEMS + 2) * 2);
+        } finally {
+            metrics.unregister();
+        }
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)).isFalse();
+    }
+
+    @Test
+    public void testReaderMetrics() throws IOException, JMException {
+        write(IndexWriterConfig.defaults());
+        ReaderMetrics metrics = new ReaderMetrics();
+        ObjectName objectName = metrics.register("metrics-test");
+        IndexReader reader = IndexReader.init(
+            new File(SOURCE_FILE),
+            new File(INDEX_FILE),
+            IndexReaderConfig.builder().metricsListener(metrics).build()
+        );
+        try {
+            for (int i = 0; i < ITEMS; i++) {
+                assertThat(reader.loadByKey("id-" + i, this::unmarshal, Data::getId)).isNotNull();
+            }
+            for (int i = 0; i < MISSES; i++) {
+                assertThat(reader.loadByKey("missing-" + i, this::unmarshal, Data::getId)).isNull();
+            }
+            assertThat(metrics.getLookups()).isEqualTo(ITEMS + MISSES);
+            assertThat(metrics.getFound()).isEqualTo(ITEMS);
+            assertThat(metrics.getInFlight()).isZero();
+            assertThat(metrics.getNodeReadLatency().getCount()).isEqualTo(ITEMS + MISSES);
+            assertThat(metrics.getUnmarshalLatency().getCount()).isGreaterThanOrEqualTo(ITEMS);
+            assertThat(metrics.getSourceReadLatency().getCount()).isGreaterThanOrEqualTo(ITEMS);
+            assertThat(metrics.getChainLengths().getCount()).isGreaterThanOrEqualTo(ITEMS);
+            assertThat(metrics.getChainLengths().getMax()).isPositive();
+            assertThat(metrics.getLookupLatency().getP99()).isGreaterThanOrEqualTo(metrics.getLookupLatency().getP50());
+            assertThat(metrics.getLookupLatency().getMax()).isGreaterThanOrEqualTo(metrics.getLookupLatency().getP99());
+            assertThat(metrics.getBytesRead()).isGreaterThan(0);
+            assertThat(metrics.getFalsePositives()).isZero();
+
+            assertThat(reader.loadByKey("BB", this::unmarshal, Data::getId).getAlias()).isEqualTo("alias-BB");
+            assertThat(metrics.getFalsePositives()).isEqualTo(1);
+
+            metrics.reset();
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < BATCH; i++) {
+                keys.add("alias-" + i * 7);
+            }
+            assertThat(reader.loadByKeys(keys, this::unmarshal, Data::getAlias)).hasSize(BATCH);
+            assertThat(reader.loadByKeyAsync("id-42", this::unmarshal, Data::getId).join().getAlias()).isEqualTo("alias-42");
+            assertThat(reader.containsKey("id-7")).isTrue();
+            assertThat(metrics.getLookups()).isEqualTo(3);
+            assertThat(metrics.getKeys()).isEqualTo(BATCH + 2);
+            assertThat(metrics.getFound()).isEqualTo(BATCH + 2);
+            assertThat(metrics.getInFlight()).isZero();
+            // one batch and containsKey, asynchronous lookups are not split to phases
+            assertThat(metrics.getPhaseLatency(ReadPhase.TUNNEL).getCount()).isEqualTo(2);
+            assertThat(metrics.getPhaseLatency(ReadPhase.SOURCE).getCount()).isEqualTo(1);
+            assertThat(metrics.getChainLengths().getCount()).isEqualTo(BATCH + 1);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertThat(server.getAttribute(objectName, "Keys")).isEqualTo((long) BATCH + 2);
+            CompositeData tunnelRead = (CompositeData) server.getAttribute(objectName, "TunnelReadLatency");
+            assertThat(tunnelRead.get("count")).isEqualTo(2L);
+            assertThat((long) tunnelRead.get("max")).isGreaterThanOrEqualTo((long) tunnelRead.get("p50"));
+        } finally {
+            reader.cleanup();
+            metrics.unregister();
+        }
+    }
+
+    private void write(IndexWriterConfig config) throws IOException {
+        new DelimiterIndexWriter(
+            ITEMS,
+            SOURCE_FILE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'},
+            config
+        ).process();
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
@@ -0,0 +1,84 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.JsonFieldMatcher;
+import david.lu.indexing.writer.IndexWriterConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.SAMPLE_ALIAS;
+import static david.lu.indexing.test.TestUtils.SAMPLE_IDS;
+import static david.lu.indexing.test.TestUtils.SOURCE_FILE_RESOURCE_SAMPLE;
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CAPACITY;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class NamespaceIndexTest {
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "namespace.index";
+    private static final List<String> NAMESPACES = asList("id", "alias");
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testLegacySections() throws IOException {
+        verify(IndexHeader.LEGACY_VERSION);
+    }
+
+    @Test
+    public void testFingerprintSections() throws IOException {
+        verify(IndexHeader.FINGERPRINT_VERSION);
+    }
+
+    private void verify(byte version) throws IOException {
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'},
+            IndexWriterConfig.builder()
+                .version(version)
+                .namespaces(NAMESPACES)
+                .build()
+        ).process();
+        IndexReader reader = IndexReader.init(new File(SOURCE_FILE_RESOURCE_SAMPLE), new File(INDEX_FILE));
+        try {
+            assertThat(reader.getNamespaces()).containsExactlyElementsOf(NAMESPACES);
+            for (String id : SAMPLE_IDS) {
+                assertThat(reader.loadByKey("id", id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+                assertThat(reader.loadByKey("alias", id, this::unmarshal, Data::getAlias)).isNull();
+                // first namespace by default
+                assertThat(reader.loadByKey(id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+            }
+            for (String alias : SAMPLE_ALIAS) {
+                assertThat(reader.loadByKey("alias", alias, this::unmarshal, new JsonFieldMatcher("alias")).getAlias())
+                    .isEqualTo(alias);
+                assertThat(reader.loadByKey("id", alias, this::unmarshal, Data::getId)).isNull();
+            }
+            List<Data> items = reader.loadByKeys("alias", SAMPLE_ALIAS, this::unmarshal, Data::getAlias);
+            assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_ALIAS);
+            items = reader.loadByKeysAsync("id", SAMPLE_IDS, this::unmarshal, Data::getId).join();
+            assertThat(items.stream().map(Data::getId).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_IDS);
+            assertThatThrownBy(() -> reader.loadByKey("name", SAMPLE_IDS.get(0), this::unmarshal, Data::getId))
+                .isInstanceOf(IllegalArgumentException.class);
+        } finally {
+            reader.cleanup();
+        }
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
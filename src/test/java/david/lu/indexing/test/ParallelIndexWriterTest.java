@@ -0,0 +1,86 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.writer.IndexWriterConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class ParallelIndexWriterTest {
+    private static final String SOURCE_FILE = TEST_OUTPUT_PATH + "parallel.data";
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "serial.index";
+    private static final String PARALLEL_INDEX_FILE = TEST_OUTPUT_PATH + "parallel.index";
+    private static final int ITEMS = 5000;
+    private static final int THREADS = 4;
+    // bytes of create time in header
+    private static final int CREATE_TIME_SIZE = 8;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setUp() throws IOException {
+        new File(TEST_OUTPUT_PATH).mkdirs();
+        try (PrintWriter writer = new PrintWriter(SOURCE_FILE)) {
+            for (int i = 0; i < ITEMS; i++) {
+                writer.printf("{\"id\":\"id-%d\",\"alias\":\"alias-%d\"}\n", i, i);
+            }
+        }
+    }
+
+    @Test
+    public void testParallelBuild() throws IOException {
+        new DelimiterIndexWriter(
+            ITEMS,
+            SOURCE_FILE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'}
+        ).process();
+        new DelimiterIndexWriter(
+            ITEMS,
+            SOURCE_FILE,
+            PARALLEL_INDEX_FILE,
+            new char[]{'\r', '\n'},
+            IndexWriterConfig.builder()
+                .threads(THREADS)
+                .memoryBudget(ITEMS * 8)
+                .build()
+        ).process();
+        byte[] expected = Files.readAllBytes(new File(INDEX_FILE).toPath());
+        byte[] actual = Files.readAllBytes(new File(PARALLEL_INDEX_FILE).toPath());
+        assertThat(Arrays.copyOfRange(actual, CREATE_TIME_SIZE, actual.length))
+            .isEqualTo(Arrays.copyOfRange(expected, CREATE_TIME_SIZE, expected.length));
+
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i += 97) {
+            keys.add("alias-" + i);
+        }
+        IndexReader reader = IndexReader.init(new File(SOURCE_FILE), new File(PARALLEL_INDEX_FILE));
+        try {
+            List<Data> items = reader.loadByKeys(keys, this::unmarshal, Data::getAlias);
+            assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList())).containsExactlyElementsOf(keys);
+        } finally {
+            reader.cleanup();
+        }
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
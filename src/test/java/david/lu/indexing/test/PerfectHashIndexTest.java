@@ -0,0 +1,145 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.IndexReaderConfig;
+import david.lu.indexing.utils.PerfectHash;
+import david.lu.indexing.writer.IndexWriterConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.SAMPLE_ALIAS;
+import static david.lu.indexing.test.TestUtils.SAMPLE_IDS;
+import static david.lu.indexing.test.TestUtils.SOURCE_FILE_RESOURCE_SAMPLE;
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CAPACITY;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class PerfectHashIndexTest {
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "perfect.index";
+    private static final String CHAINED_INDEX_FILE = TEST_OUTPUT_PATH + "perfect-chained.index";
+    private static final String DUPLICATED_SOURCE_FILE = TEST_OUTPUT_PATH + "perfect-duplicated.data";
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testPerfectHash() {
+        Random random = new Random(0);
+        for (int count : new int[]{0, 1, 7, 100000}) {
+            long[] hashes = random.longs(count).toArray();
+            int[] pilots = PerfectHash.build(hashes, count);
+            assertThat(pilots).hasSize(PerfectHash.getBuckets(count));
+            BitSet slots = new BitSet(count);
+            for (long hash : hashes) {
+                int slot = PerfectHash.slot(hash, pilots[PerfectHash.bucket(hash, pilots.length)], count);
+                assertThat(slot).isBetween(0, count - 1);
+                assertThat(slots.get(slot)).isFalse();
+                slots.set(slot);
+            }
+            assertThat(slots.cardinality()).isEqualTo(count);
+        }
+    }
+
+    @Test
+    public void testPerfectHashIndex() throws IOException {
+        write(IndexWriterConfig.builder().version(IndexHeader.FINGERPRINT_VERSION).build(), CHAINED_INDEX_FILE);
+        write(IndexWriterConfig.builder().version(IndexHeader.PERFECT_HASH_VERSION).build(), INDEX_FILE);
+        assertThat(new File(INDEX_FILE).length()).isLessThan(new File(CHAINED_INDEX_FILE).length());
+        verify(null);
+    }
+
+    @Test
+    public void testPerfectHashSections() throws IOException {
+        write(
+            IndexWriterConfig.builder()
+                .version(IndexHeader.PERFECT_HASH_VERSION)
+                .namespaces(asList("id", "alias"))
+                .filterFpp(0.01)
+                .build(),
+            INDEX_FILE
+        );
+        verify("alias");
+    }
+
+    @Test
+    public void testPerfectHashDuplicatedKey() throws IOException {
+        List<String> lines = Files.readAllLines(new File(SOURCE_FILE_RESOURCE_SAMPLE).toPath());
+        lines.add(lines.get(0));
+        Files.createDirectories(new File(TEST_OUTPUT_PATH).toPath());
+        Files.write(new File(DUPLICATED_SOURCE_FILE).toPath(), lines);
+        assertThatThrownBy(() -> write(
+            IndexWriterConfig.builder().version(IndexHeader.PERFECT_HASH_VERSION).build(),
+            DUPLICATED_SOURCE_FILE,
+            INDEX_FILE
+        )).isInstanceOf(IllegalStateException.class).hasMessageContaining("Duplicated fingerprint");
+    }
+
+    @Test
+    public void testPerfectHashMemoryBudget() {
+        assertThatThrownBy(() -> write(
+            IndexWriterConfig.builder().version(IndexHeader.PERFECT_HASH_VERSION).memoryBudget(500).build(),
+            INDEX_FILE
+        )).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("memory budget 500");
+    }
+
+    private void write(IndexWriterConfig writerConfig, String indexFile) throws IOException {
+        write(writerConfig, SOURCE_FILE_RESOURCE_SAMPLE, indexFile);
+    }
+
+    private void write(IndexWriterConfig writerConfig, String sourceFile, String indexFile) throws IOException {
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            sourceFile,
+            indexFile,
+            new char[]{'\r', '\n'},
+            writerConfig
+        ).process();
+    }
+
+    private void verify(String aliasNamespace) throws IOException {
+        for (IndexReaderConfig readerConfig : asList(
+            IndexReaderConfig.defaults(),
+            IndexReaderConfig.builder().pinNodes(true).build(),
+            IndexReaderConfig.builder().mapped(true).build()
+        )) {
+            IndexReader reader = IndexReader.init(
+                new File(SOURCE_FILE_RESOURCE_SAMPLE),
+                new File(INDEX_FILE),
+                readerConfig
+            );
+            try {
+                for (String id : SAMPLE_IDS) {
+                    assertThat(reader.containsKey(id)).isTrue();
+                    assertThat(reader.loadByKey(id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+                    assertThat(reader.loadByKeyAsync(id, this::unmarshal, Data::getId).join().getId()).isEqualTo(id);
+                }
+                assertThat(reader.containsKey("missing-id")).isFalse();
+                assertThat(reader.loadByKey("missing-id", this::unmarshal, Data::getId)).isNull();
+                assertThat(reader.loadByKeyAsync("missing-id", this::unmarshal, Data::getId).join()).isNull();
+                List<Data> items = reader.loadByKeys(aliasNamespace, SAMPLE_ALIAS, this::unmarshal, Data::getAlias);
+                assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_ALIAS);
+            } finally {
+                reader.cleanup();
+            }
+        }
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
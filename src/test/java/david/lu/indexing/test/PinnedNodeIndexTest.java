@@ -0,0 +1,72 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.IndexReaderConfig;
+import david.lu.indexing.writer.IndexWriterConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.SAMPLE_ALIAS;
+import static david.lu.indexing.test.TestUtils.SAMPLE_IDS;
+import static david.lu.indexing.test.TestUtils.SOURCE_FILE_RESOURCE_SAMPLE;
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CAPACITY;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class PinnedNodeIndexTest {
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "pinned.index";
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testPinnedNodes() throws IOException {
+        verify(IndexWriterConfig.defaults(), null);
+    }
+
+    @Test
+    public void testPinnedSections() throws IOException {
+        verify(IndexWriterConfig.builder().namespaces(asList("id", "alias")).build(), "alias");
+    }
+
+    private void verify(IndexWriterConfig writerConfig, String aliasNamespace) throws IOException {
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'},
+            writerConfig
+        ).process();
+        IndexReader reader = IndexReader.init(
+            new File(SOURCE_FILE_RESOURCE_SAMPLE),
+            new File(INDEX_FILE),
+            IndexReaderConfig.builder().pinNodes(true).build()
+        );
+        try {
+            for (String id : SAMPLE_IDS) {
+                assertThat(reader.loadByKey(id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+            }
+            assertThat(reader.loadByKey("missing-id", this::unmarshal, Data::getId)).isNull();
+            List<Data> items = reader.loadByKeys(aliasNamespace, SAMPLE_ALIAS, this::unmarshal, Data::getAlias);
+            assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_ALIAS);
+            items = reader.loadByKeysAsync(aliasNamespace, SAMPLE_ALIAS, this::unmarshal, Data::getAlias).join();
+            assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_ALIAS);
+        } finally {
+            reader.cleanup();
+        }
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
@@ -0,0 +1,136 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.reader.CacheStats;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.IndexReaderConfig;
+import david.lu.indexing.reader.JsonFieldMatcher;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.SAMPLE_ALIAS;
+import static david.lu.indexing.test.TestUtils.SAMPLE_IDS;
+import static david.lu.indexing.test.TestUtils.SOURCE_FILE_RESOURCE_SAMPLE;
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CAPACITY;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class RecordCacheTest {
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "cache.index";
+    private static final String EVICTION_SOURCE_FILE = TEST_OUTPUT_PATH + "eviction.data";
+    private static final String EVICTION_INDEX_FILE = TEST_OUTPUT_PATH + "eviction.index";
+    private static final int EVICTION_ITEMS = 2000;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setUp() throws IOException {
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'}
+        ).process();
+    }
+
+    @Test
+    public void testHits() throws IOException {
+        IndexReader reader = init(1 << 20);
+        try {
+            for (String id : SAMPLE_IDS) {
+                assertThat(reader.loadByKey(id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+            }
+            CacheStats stats = reader.getCacheStats();
+            assertThat(stats.getHitCount()).isEqualTo(0);
+            assertThat(stats.getEntries()).isEqualTo(SAMPLE_IDS.size());
+
+            List<Data> items = reader.loadByKeys(SAMPLE_ALIAS, this::unmarshal, new JsonFieldMatcher("alias"));
+            assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_ALIAS);
+            items = reader.loadByKeysAsync(SAMPLE_IDS, this::unmarshal, Data::getId).join();
+            assertThat(items.stream().map(Data::getId).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_IDS);
+            stats = reader.getCacheStats();
+            assertThat(stats.getHitCount()).isEqualTo(SAMPLE_ALIAS.size() + SAMPLE_IDS.size());
+            assertThat(stats.getEntries()).isEqualTo(SAMPLE_IDS.size());
+            assertThat(stats.getEvictionCount()).isEqualTo(0);
+        } finally {
+            reader.cleanup();
+        }
+    }
+
+    @Test
+    public void testNegativeHits() throws IOException {
+        IndexReader reader = init(1 << 20);
+        try {
+            List<String> keys = asList("missing-id", "missing-alias");
+            for (int i = 0; i < 3; i++) {
+                for (String key : keys) {
+                    assertThat(reader.loadByKey(key, this::unmarshal, Data::getId)).isNull();
+                }
+            }
+            assertThat(reader.loadByKeys(keys, this::unmarshal, Data::getId)).isEmpty();
+            assertThat(reader.loadByKeysAsync(keys, this::unmarshal, Data::getId).join()).isEmpty();
+            assertThat(reader.getCacheStats().getNegativeHitCount()).isEqualTo(8);
+        } finally {
+            reader.cleanup();
+        }
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        try (PrintWriter writer = new PrintWriter(EVICTION_SOURCE_FILE)) {
+            for (int i = 0; i < EVICTION_ITEMS; i++) {
+                writer.printf("{\"id\":\"id-%d\",\"alias\":\"alias-%d\"}\n", i, i);
+            }
+        }
+        new DelimiterIndexWriter(EVICTION_ITEMS, EVICTION_SOURCE_FILE, EVICTION_INDEX_FILE, new char[]{'\r', '\n'}).process();
+        int budget = 16 << 10;
+        IndexReader reader = IndexReader.init(
+            new File(EVICTION_SOURCE_FILE),
+            new File(EVICTION_INDEX_FILE),
+            IndexReaderConfig.builder().recordCacheSize(budget).build()
+        );
+        try {
+            for (int i = 0; i < EVICTION_ITEMS; i++) {
+                // hot keys are loaded again after each cold key
+                String hot = "id-" + (i % 8);
+                assertThat(reader.loadByKey("id-" + i, this::unmarshal, Data::getId).getId()).isEqualTo("id-" + i);
+                assertThat(reader.loadByKey(hot, this::unmarshal, Data::getId).getId()).isEqualTo(hot);
+            }
+            CacheStats stats = reader.getCacheStats();
+            log.debug("{}", stats);
+            assertThat(stats.getEvictionCount()).isGreaterThan(0);
+            assertThat(stats.getSize()).isLessThanOrEqualTo(budget);
+            // hot keys survive the scan of cold keys
+            assertThat(stats.getHitRate()).isGreaterThan(0.45);
+        } finally {
+            reader.cleanup();
+        }
+    }
+
+    private IndexReader init(long recordCacheSize) throws IOException {
+        return IndexReader.init(
+            new File(SOURCE_FILE_RESOURCE_SAMPLE),
+            new File(INDEX_FILE),
+            IndexReaderConfig.builder()
+                .recordCacheSize(recordCacheSize)
+                .negativeCacheSize(64)
+                .build()
+        );
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
@@ -0,0 +1,162 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.pojo.IndexRecordTable;
+import david.lu.indexing.pojo.IndexTunnel;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.IndexReaderConfig;
+import david.lu.indexing.writer.IndexWriterConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static david.lu.indexing.test.TestUtils.SAMPLE_ALIAS;
+import static david.lu.indexing.test.TestUtils.SAMPLE_IDS;
+import static david.lu.indexing.test.TestUtils.SOURCE_FILE_RESOURCE_SAMPLE;
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CAPACITY;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class RecordTableIndexTest {
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "record-table.index";
+    private static final String TUNNEL_INDEX_FILE = TEST_OUTPUT_PATH + "record-table-tunnel.index";
+    private static final String LARGE_SOURCE_FILE = TEST_OUTPUT_PATH + "record-table-large.data";
+    private static final String LARGE_INDEX_FILE = TEST_OUTPUT_PATH + "record-table-large.index";
+    // more than two chunks of records kept by writer
+    private static final int LARGE_ITEMS = 150000;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testRecordTableEncoding() {
+        Random random = new Random(0);
+        long[] offsets = new long[IndexRecordTable.BLOCK_RECORDS];
+        int[] lengths = new int[offsets.length];
+        long end = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = i % 10 == 9 ? IndexTunnel.INLINE_BIT | random.nextInt(1 << 20) : end + random.nextInt(3);
+            lengths[i] = random.nextInt(1 << 16);
+            end = offsets[i] + lengths[i];
+        }
+        ByteBuffer block = ByteBuffer.allocate(IndexRecordTable.MAX_BLOCK);
+        for (int i = 0; i < offsets.length; i++) {
+            IndexRecordTable.put(block, i, offsets[i], lengths[i], i == 0 ? 0 : offsets[i - 1] + lengths[i - 1]);
+        }
+        block.flip();
+        long[] pointer = new long[2];
+        for (int i = 0; i < offsets.length; i++) {
+            IndexRecordTable.decode(block.duplicate(), i, pointer);
+            assertThat(pointer[0]).isEqualTo(offsets[i]);
+            assertThat(pointer[1]).isEqualTo(lengths[i]);
+        }
+    }
+
+    @Test
+    public void testRecordTableIndex() throws IOException {
+        write(IndexWriterConfig.builder().version(IndexHeader.FINGERPRINT_VERSION).build(), TUNNEL_INDEX_FILE);
+        write(IndexWriterConfig.builder().version(IndexHeader.FINGERPRINT_VERSION).recordTable(true).build(), INDEX_FILE);
+        assertThat(new File(INDEX_FILE).length()).isLessThan(new File(TUNNEL_INDEX_FILE).length());
+        verify(null);
+    }
+
+    @Test
+    public void testRecordTableSections() throws IOException {
+        write(
+            IndexWriterConfig.builder()
+                .version(IndexHeader.PERFECT_HASH_VERSION)
+                .namespaces(asList("id", "alias"))
+                .filterFpp(0.01)
+                .inlineThreshold(70)
+                .recordTable(true)
+                .threads(2)
+                .build(),
+            INDEX_FILE
+        );
+        verify("alias");
+    }
+
+    @Test
+    public void testLargeRecordTable() throws IOException {
+        new File(TEST_OUTPUT_PATH).mkdirs();
+        try (PrintWriter writer = new PrintWriter(LARGE_SOURCE_FILE)) {
+            for (int i = 0; i < LARGE_ITEMS; i++) {
+                writer.printf("{\"id\":\"id-%d\",\"alias\":\"alias-%d\"}\n", i, i);
+            }
+        }
+        new DelimiterIndexWriter(
+            LARGE_ITEMS,
+            LARGE_SOURCE_FILE,
+            LARGE_INDEX_FILE,
+            new char[]{'\r', '\n'},
+            IndexWriterConfig.builder().version(IndexHeader.FINGERPRINT_VERSION).recordTable(true).threads(4).build()
+        ).process();
+        IndexReader reader = IndexReader.init(new File(LARGE_SOURCE_FILE), new File(LARGE_INDEX_FILE), IndexReaderConfig.defaults());
+        try {
+            for (int i = 0; i < LARGE_ITEMS; i += 97) {
+                assertThat(reader.loadByKey("id-" + i, this::unmarshal, Data::getId).getAlias()).isEqualTo("alias-" + i);
+            }
+            assertThat(reader.loadByKey("id-" + (LARGE_ITEMS - 1), this::unmarshal, Data::getId).getAlias())
+                .isEqualTo("alias-" + (LARGE_ITEMS - 1));
+        } finally {
+            reader.cleanup();
+        }
+    }
+
+    @Test
+    public void testLegacyRecordTable() {
+        assertThatThrownBy(() -> write(IndexWriterConfig.builder().recordTable(true).build(), INDEX_FILE))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void write(IndexWriterConfig writerConfig, String indexFile) throws IOException {
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            indexFile,
+            new char[]{'\r', '\n'},
+            writerConfig
+        ).process();
+    }
+
+    private void verify(String aliasNamespace) throws IOException {
+        for (IndexReaderConfig readerConfig : asList(
+            IndexReaderConfig.defaults(),
+            IndexReaderConfig.builder().mapped(true).recordCacheSize(1 << 20).build(),
+            IndexReaderConfig.builder().async(true).pinNodes(true).build()
+        )) {
+            IndexReader reader = IndexReader.init(new File(SOURCE_FILE_RESOURCE_SAMPLE), new File(INDEX_FILE), readerConfig);
+            try {
+                for (String id : SAMPLE_IDS) {
+                    assertThat(reader.loadByKey(id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+                    assertThat(reader.loadByKey(id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+                    assertThat(reader.loadByKeyAsync(id, this::unmarshal, Data::getId).join().getId()).isEqualTo(id);
+                }
+                assertThat(reader.loadByKey("missing-id", this::unmarshal, Data::getId)).isNull();
+                List<Data> items = reader.loadByKeys(aliasNamespace, SAMPLE_ALIAS, this::unmarshal, Data::getAlias);
+                assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_ALIAS);
+                items = reader.loadByKeys(aliasNamespace, SAMPLE_ALIAS, this::unmarshal, Data::getAlias);
+                assertThat(items.stream().map(Data::getAlias).collect(Collectors.toList())).containsExactlyElementsOf(SAMPLE_ALIAS);
+            } finally {
+                reader.cleanup();
+            }
+        }
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
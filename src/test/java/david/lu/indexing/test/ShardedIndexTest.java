@@ -0,0 +1,218 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.pojo.IndexHeader;
+import david.lu.indexing.pojo.IndexSortedKeys;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.reader.IndexReaderConfig;
+import david.lu.indexing.reader.ShardedIndexReader;
+import david.lu.indexing.utils.ShardManifest;
+import david.lu.indexing.writer.IndexWriterConfig;
+import david.lu.indexing.writer.ShardedIndexWriter;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class ShardedIndexTest {
+    private static final String SOURCE_FILE = TEST_OUTPUT_PATH + "sharded.data";
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "sharded.index";
+    private static final String UNSHARDED_INDEX_FILE = TEST_OUTPUT_PATH + "unsharded.index";
+    private static final String OTHER_DISK_PATH = TEST_OUTPUT_PATH + "other-disk/";
+    private static final int ITEMS = 5000;
+    private static final int SHARDS = 4;
+    // bytes of magic, version and create time in header
+    private static final int CREATE_TIME_END = 13;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setUp() throws IOException {
+        new File(TEST_OUTPUT_PATH).mkdirs();
+        try (PrintWriter writer = new PrintWriter(SOURCE_FILE)) {
+            for (int i = 0; i < ITEMS; i++) {
+                writer.printf("{\"id\":\"id-%d\",\"alias\":\"alias-%d\"}\n", i, i);
+            }
+        }
+    }
+
+    @Test
+    public void testShardedLookups() throws IOException {
+        new ShardedIndexWriter(
+            ITEMS,
+            SOURCE_FILE,
+            INDEX_FILE,
+            SHARDS,
+            IndexWriterConfig.builder().namespaces(asList("id", "alias")).build(),
+            (size, sourceFilePath, indexFilePath, config) ->
+                new DelimiterIndexWriter(size, sourceFilePath, indexFilePath, new char[]{'\r', '\n'}, config)
+        ).process();
+        List<File> shards = ShardManifest.read(ShardManifest.of(INDEX_FILE));
+        assertThat(shards).hasSize(SHARDS);
+
+        // each key is indexed by its shard only
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) {
+            ids.add("id-" + i);
+        }
+        int indexed = 0;
+        for (File shard : shards) {
+            IndexReader reader = IndexReader.init(new File(SOURCE_FILE), shard);
+            try {
+                int keys = 0;
+                for (String id : ids) {
+                    keys += reader.containsKey("id", id) ? 1 : 0;
+                }
+                assertThat(keys).isBetween(ITEMS / SHARDS / 2, ITEMS / SHARDS * 2);
+                indexed += keys;
+            } finally {
+                reader.cleanup();
+            }
+        }
+        assertThat(indexed).isEqualTo(ITEMS);
+
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i += 37) {
+            keys.add("alias-" + i);
+        }
+        keys.add("alias-missing");
+        List<String> expected = keys.subList(0, keys.size() - 1);
+        for (IndexReaderConfig config : asList(
+            IndexReaderConfig.defaults(),
+            IndexReaderConfig.builder().batchExecutor(ForkJoinPool.commonPool()).build()
+        )) {
+            ShardedIndexReader reader = ShardedIndexReader.init(new File(SOURCE_FILE), new File(INDEX_FILE), config);
+            try {
+                assertThat(reader.getShards()).isEqualTo(SHARDS);
+                assertThat(reader.getNamespaces()).containsExactly("id", "alias");
+                for (String id : ids.subList(0, 100)) {
+                    assertThat(reader.loadByKey(id, this::unmarshal, Data::getId).getId()).isEqualTo(id);
+                }
+                assertThat(reader.loadByKey("id-missing", this::unmarshal, Data::getId)).isNull();
+                assertThat(reader.loadByKeys("alias", keys, this::unmarshal, Data::getAlias).stream().map(Data::getAlias).collect(Collectors.toList()))
+                    .containsExactlyElementsOf(expected);
+                assertThat(reader.loadByKeysAsync("alias", keys, this::unmarshal, Data::getAlias).join().stream().map(Data::getAlias).collect(Collectors.toList()))
+                    .containsExactlyElementsOf(expected);
+                assertThat(reader.loadByKeyAsync("alias", "alias-7", this::unmarshal, Data::getAlias).join().getId()).isEqualTo("id-7");
+            } finally {
+                reader.cleanup();
+            }
+        }
+    }
+
+    @Test
+    public void testRebuildShard() throws IOException {
+        List<String> shardFilePaths = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            // odd shards on another disk
+            shardFilePaths.add(i % 2 == 0 ? ShardedIndexWriter.shardFilePath(INDEX_FILE, i) : new File(OTHER_DISK_PATH + "sharded.index.shard" + i).getAbsolutePath());
+        }
+        ShardedIndexWriter writer = new ShardedIndexWriter(
+            ITEMS,
+            SOURCE_FILE,
+            INDEX_FILE,
+            shardFilePaths,
+            IndexWriterConfig.builder()
+                .version(IndexHeader.FINGERPRINT_VERSION)
+                .recordTable(true)
+                .inlineThreshold(64)
+                .build(),
+            (size, sourceFilePath, indexFilePath, config) ->
+                new DelimiterIndexWriter(size, sourceFilePath, indexFilePath, new char[]{'\r', '\n'}, config)
+        );
+        writer.process();
+        assertThat(ShardManifest.read(ShardManifest.of(INDEX_FILE)).stream().map(File::getAbsolutePath).collect(Collectors.toList()))
+            .containsExactlyElementsOf(shardFilePaths.stream().map(path -> new File(path).getAbsolutePath()).collect(Collectors.toList()));
+
+        File rebuilt = new File(shardFilePaths.get(1));
+        byte[] built = Files.readAllBytes(rebuilt.toPath());
+        long lastModified = new File(shardFilePaths.get(0)).lastModified();
+        assertThat(rebuilt.delete()).isTrue();
+        writer.process(1);
+        assertThat(rebuilt).exists();
+        // a shard routed by the scan of all shards is the same as one built alone
+        byte[] actual = Files.readAllBytes(rebuilt.toPath());
+        assertThat(Arrays.copyOfRange(actual, CREATE_TIME_END, actual.length))
+            .isEqualTo(Arrays.copyOfRange(built, CREATE_TIME_END, built.length));
+        assertThat(new File(shardFilePaths.get(0)).lastModified()).isEqualTo(lastModified);
+
+        ShardedIndexReader reader = ShardedIndexReader.init(new File(SOURCE_FILE), new File(INDEX_FILE));
+        try {
+            for (int i = 0; i < ITEMS; i += 7) {
+                assertThat(reader.loadByKey("alias-" + i, this::unmarshal, Data::getAlias).getId()).isEqualTo("id-" + i);
+            }
+        } finally {
+            reader.cleanup();
+        }
+    }
+
+    @Test
+    public void testShardedSortedKeys() throws IOException {
+        IndexWriterConfig writerConfig = IndexWriterConfig.builder()
+            .version(IndexHeader.FINGERPRINT_VERSION)
+            .namespaces(asList("id", "alias"))
+            .sortedNamespaces(asList("id", "alias"))
+            .threads(2)
+            .build();
+        new ShardedIndexWriter(
+            ITEMS,
+            SOURCE_FILE,
+            INDEX_FILE,
+            SHARDS,
+            writerConfig,
+            (size, sourceFilePath, indexFilePath, config) ->
+                new DelimiterIndexWriter(size, sourceFilePath, indexFilePath, new char[]{'\r', '\n'}, config)
+        ).process();
+        new DelimiterIndexWriter(ITEMS, SOURCE_FILE, UNSHARDED_INDEX_FILE, new char[]{'\r', '\n'}, writerConfig).process();
+
+        // each sort key is kept by one shard
+        long sortedSize = 0;
+        for (File shard : ShardManifest.read(ShardManifest.of(INDEX_FILE))) {
+            sortedSize += new File(shard.getPath() + IndexSortedKeys.SUFFIX).length();
+        }
+        assertThat(sortedSize).isLessThan(new File(UNSHARDED_INDEX_FILE + IndexSortedKeys.SUFFIX).length() * 2);
+
+        ShardedIndexReader reader = ShardedIndexReader.init(new File(SOURCE_FILE), new File(INDEX_FILE));
+        IndexReader unsharded = IndexReader.init(new File(SOURCE_FILE), new File(UNSHARDED_INDEX_FILE));
+        try {
+            assertThat(ids(reader.loadByPrefix("alias", "alias-12", this::unmarshal)))
+                .hasSize(111)
+                .containsExactlyElementsOf(ids(unsharded.loadByPrefix("alias", "alias-12", this::unmarshal)));
+            assertThat(ids(reader.loadByRange("id-100", "id-2", this::unmarshal)))
+                .hasSize(1109)
+                .containsExactlyElementsOf(ids(unsharded.loadByRange("id-100", "id-2", this::unmarshal)));
+            assertThat(ids(reader.loadByRange("id", null, null, this::unmarshal)))
+                .containsExactlyElementsOf(ids(unsharded.loadByRange("id", null, null, this::unmarshal)));
+            assertThat(reader.loadByPrefix("alias", "missing", this::unmarshal).count()).isZero();
+        } finally {
+            reader.cleanup();
+            unsharded.cleanup();
+        }
+    }
+
+    private static List<String> ids(Stream<Data> items) {
+        return items.map(Data::getId).collect(Collectors.toList());
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
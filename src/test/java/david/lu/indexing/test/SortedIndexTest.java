@@ -0,0 +1,157 @@
+package david.lu.indexing.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import david.lu.indexing.reader.IndexReader;
+import david.lu.indexing.writer.AbstractDelimiterIndexWriter;
+import david.lu.indexing.writer.IndexWriterConfig;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static david.lu.indexing.test.TestUtils.SAMPLE_ALIAS;
+import static david.lu.indexing.test.TestUtils.SAMPLE_IDS;
+import static david.lu.indexing.test.TestUtils.SOURCE_FILE_RESOURCE_SAMPLE;
+import static david.lu.indexing.test.TestUtils.TEST_OUTPUT_PATH;
+import static david.lu.indexing.utils.IndexUtils.DEFAULT_CAPACITY;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class SortedIndexTest {
+    private static final String INDEX_FILE = TEST_OUTPUT_PATH + "sorted.index";
+    private static final String SOURCE_FILE = TEST_OUTPUT_PATH + "sorted.data";
+    private static final String LARGE_INDEX_FILE = TEST_OUTPUT_PATH + "sorted-large.index";
+    private static final int ITEMS = 5000;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setUp() throws IOException {
+        new File(TEST_OUTPUT_PATH).mkdirs();
+        // written in reverse order of keys, so records of a block are out of source order
+        try (PrintWriter writer = new PrintWriter(SOURCE_FILE)) {
+            for (int i = ITEMS - 1; i >= 0; i--) {
+                writer.printf("{\"id\":\"id-%05d\",\"alias\":\"alias-%d\"}\n", i, i % 100);
+            }
+        }
+    }
+
+    @Test
+    public void testPrefixAndRange() throws IOException {
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'},
+            IndexWriterConfig.builder().sortedNamespaces(asList("id", "alias")).build()
+        ).process();
+        IndexReader reader = IndexReader.init(new File(SOURCE_FILE_RESOURCE_SAMPLE), new File(INDEX_FILE));
+        try {
+            assertThat(reader.getSortedNamespaces()).containsExactly("id", "alias");
+            assertThat(reader.loadByPrefix("alias", "ma", this::unmarshal).map(Data::getAlias).collect(Collectors.toList()))
+                .containsExactly("marathon-gas-station-miami-7", "martin-j-and-sons-cleaners-worth");
+            assertThat(reader.loadByRange("alias", "art", "b", this::unmarshal).map(Data::getAlias).collect(Collectors.toList()))
+                .containsExactly("artificial-turf-new-hyde-park", "artzs-liquor-and-deli-taft", "atlas-motel-cheyenne", "avenue-southfield");
+            assertThat(reader.loadByRange("alias", null, null, this::unmarshal).map(Data::getAlias).collect(Collectors.toList()))
+                .containsExactlyElementsOf(SAMPLE_ALIAS.stream().sorted().collect(Collectors.toList()));
+            // ids by default
+            assertThat(reader.loadByPrefix("-0", this::unmarshal).map(Data::getId).collect(Collectors.toList()))
+                .containsExactly("-05ARBpak3_KTPu3YSo2ZA", "-06d0pz-C8gVoTDojnk9uQ", "-08tPj7h6CmxsidEWPF6kg");
+            assertThat(reader.loadByPrefix("x", this::unmarshal).count()).isZero();
+            // hashed lookups are not affected
+            assertThat(reader.loadByKey(SAMPLE_IDS.get(0), this::unmarshal, Data::getId).getId()).isEqualTo(SAMPLE_IDS.get(0));
+        } finally {
+            reader.cleanup();
+        }
+
+        // sorted keys of a previous build are removed
+        new DelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            INDEX_FILE,
+            new char[]{'\r', '\n'}
+        ).process();
+        IndexReader unsorted = IndexReader.init(new File(SOURCE_FILE_RESOURCE_SAMPLE), new File(INDEX_FILE));
+        try {
+            assertThat(unsorted.getSortedNamespaces()).isEmpty();
+            assertThatThrownBy(() -> unsorted.loadByPrefix("a", this::unmarshal)).isInstanceOf(IllegalStateException.class);
+        } finally {
+            unsorted.cleanup();
+        }
+    }
+
+    @Test
+    public void testSortKeysRequired() {
+        assertThatThrownBy(() -> new AbstractDelimiterIndexWriter(
+            DEFAULT_CAPACITY,
+            SOURCE_FILE_RESOURCE_SAMPLE,
+            TEST_OUTPUT_PATH + "no-sort-keys.index",
+            new char[]{'\r', '\n'},
+            IndexWriterConfig.builder()
+                .sortedNamespaces(asList("id"))
+                .hashFunction((data, from, length) -> new int[0])
+                .build()
+        ) {
+        }).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("Sort key function");
+    }
+
+    @Test
+    public void testSpilledBlocks() throws IOException {
+        new DelimiterIndexWriter(
+            ITEMS,
+            SOURCE_FILE,
+            LARGE_INDEX_FILE,
+            new char[]{'\r', '\n'},
+            IndexWriterConfig.builder()
+                .namespaces(asList("id", "alias"))
+                .sortedNamespaces(asList("id", "alias"))
+                .memoryBudget(ITEMS * 8)
+                .threads(4)
+                .build()
+        ).process();
+        IndexReader reader = IndexReader.init(new File(SOURCE_FILE), new File(LARGE_INDEX_FILE));
+        try {
+            List<String> ids = reader.loadByRange("id", "id-01000", "id-03000", this::unmarshal)
+                .map(Data::getId)
+                .collect(Collectors.toList());
+            assertThat(ids).containsExactlyElementsOf(
+                IntStream.range(1000, 3000).mapToObj(i -> String.format("id-%05d", i)).collect(Collectors.toList())
+            );
+            assertThat(reader.loadByRange("id", "id-04990", null, this::unmarshal).count()).isEqualTo(10);
+
+            // duplicated keys spanning blocks, in order of source offsets
+            List<Data> items = reader.loadByPrefix("alias", "alias-7", this::unmarshal).collect(Collectors.toList());
+            assertThat(items).hasSize(ITEMS / 100 * 11);
+            assertThat(items.subList(0, ITEMS / 100).stream().map(Data::getId).collect(Collectors.toList()))
+                .containsExactlyElementsOf(
+                    IntStream.range(0, ITEMS / 100)
+                        .mapToObj(i -> String.format("id-%05d", ITEMS - 100 + 7 - i * 100))
+                        .collect(Collectors.toList())
+                );
+            assertThat(items.stream().map(Data::getAlias).distinct().collect(Collectors.toList()))
+                .containsExactly("alias-7", "alias-70", "alias-71", "alias-72", "alias-73", "alias-74", "alias-75",
+                    "alias-76", "alias-77", "alias-78", "alias-79");
+
+            // streams are lazy
+            assertThat(reader.loadByRange("id", null, null, this::unmarshal).limit(3).map(Data::getId).collect(Collectors.toList()))
+                .containsExactly("id-00000", "id-00001", "id-00002");
+        } finally {
+            reader.cleanup();
+        }
+    }
+
+    private Data unmarshal(byte[] bytes) {
+        return Try.of(() -> objectMapper.readValue(bytes, Data.class))
+            .onFailure(e -> log.error("Unmarshal failed.", e))
+            .getOrNull();
+    }
+}
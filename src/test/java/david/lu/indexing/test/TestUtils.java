@@ -14,6 +14,8 @@ public class TestUtils {
     public static final int BIG_SIZE = 0x1ffffff;
     public static final String SOURCE_FILE_RESOURCE_SAMPLE = "src/test/data/sample.data";
     public static final String INDEX_FILE_RESOURCE_SAMPLE = "src/test/data/sample.index";
+    // generated index files, rebuilt by each test
+    public static final String TEST_OUTPUT_PATH = "build/test-data/";
     // TODO update path to large data set
     public static final String SOURCE_FILE_RESOURCE_LARGE = "[large source file]";
     public static final String INDEX_FILE_RESOURCE_LARGE = "[large indexing file]";